@@ -41,6 +41,9 @@ public interface CodingLoop {
      *
      *    "exp"    - Use the logarithm/exponent table.
      *
+     *    "nibble" - Use per-nibble multiplication tables over long words
+     *               ("long" replaces "byte" as the innermost loop).
+     *
      * The ReedSolomonBenchmark class compares the performance of the different
      * loops, which will depend on the specific processor you're running on.
      *
@@ -61,6 +64,7 @@ public interface CodingLoop {
                     new InputByteOutputTableCodingLoop(),
                     new InputOutputByteExpCodingLoop(),
                     new InputOutputByteTableCodingLoop(),
+                    new InputOutputLongNibbleCodingLoop(),
                     new OutputByteInputExpCodingLoop(),
                     new OutputByteInputTableCodingLoop(),
                     new OutputInputByteExpCodingLoop(),
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.JavaReedSolomon.src.main.java.com.backblaze.erasure;
+
+import org.apache.cassandra.utils.Architecture;
+import org.apache.cassandra.utils.memory.MemoryUtil;
+
+/**
+ * Same loop nesting as InputOutputByteTableCodingLoop, but the inner loop
+ * handles 8 bytes per iteration: each long word read from the input shard is
+ * multiplied lane by lane through two 16-entry tables (one for the low nibble
+ * of each byte, one for the high nibble, since multiplication distributes over
+ * the xor of the two nibbles), and the product is xor-ed into the output shard
+ * with a single long write.
+ *
+ * The nibble tables of a coefficient are tiny, so all the tables of a coding
+ * matrix stay in L1 where the 256-byte rows of the full multiplication table
+ * may not.  This is also the layout a vectorizing compiler can turn into
+ * byte shuffles; with scalar code it trades twice as many lookups for fewer
+ * memory accesses, so whether it beats the byte loops depends on the CPU,
+ * which is why ReedSolomonRegistry picks the loop by benchmark before it
+ * builds its first codec.
+ * Multiplications by 0 and 1, which are common in the coding matrices, skip
+ * the tables altogether.
+ *
+ * Words are accessed through MemoryUtil on architectures allowing unaligned
+ * access; elsewhere, and for the tail of each shard, bytes go through the
+ * multiplication table one at a time.
+ */
+public class InputOutputLongNibbleCodingLoop extends CodingLoopBase {
+
+    private static final boolean USE_WORDS = Architecture.IS_UNALIGNED;
+
+    /**
+     * LOW_NIBBLE_TABLE[a][x] = a * x, HIGH_NIBBLE_TABLE[a][x] = a * (x << 4), for x < 16.
+     */
+    private static final int [] [] LOW_NIBBLE_TABLE = new int [256] [16];
+    private static final int [] [] HIGH_NIBBLE_TABLE = new int [256] [16];
+
+    static {
+        for (int a = 0; a < 256; a++) {
+            for (int x = 0; x < 16; x++) {
+                LOW_NIBBLE_TABLE[a][x] = Galois.MULTIPLICATION_TABLE[a][x] & 0xFF;
+                HIGH_NIBBLE_TABLE[a][x] = Galois.MULTIPLICATION_TABLE[a][x << 4] & 0xFF;
+            }
+        }
+    }
+
+    @Override
+    public void codeSomeShards(
+            byte[][] matrixRows,
+            byte[][] inputs, int inputCount,
+            byte[][] outputs, int outputCount,
+            int offset, int byteCount) {
+
+        for (int iInput = 0; iInput < inputCount; iInput++) {
+            final byte[] inputShard = inputs[iInput];
+            for (int iOutput = 0; iOutput < outputCount; iOutput++) {
+                multiply(matrixRows[iOutput][iInput], inputShard, outputs[iOutput], offset, byteCount, iInput > 0);
+            }
+        }
+    }
+
+    @Override
+    public boolean checkSomeShards(
+            byte[][] matrixRows,
+            byte[][] inputs, int inputCount,
+            byte[][] toCheck, int checkCount,
+            int offset, int byteCount,
+            byte[] tempBuffer) {
+
+        if (tempBuffer == null) {
+            return super.checkSomeShards(matrixRows, inputs, inputCount, toCheck, checkCount, offset, byteCount, null);
+        }
+
+        for (int iOutput = 0; iOutput < checkCount; iOutput++) {
+            final byte[] matrixRow = matrixRows[iOutput];
+            for (int iInput = 0; iInput < inputCount; iInput++) {
+                multiply(matrixRow[iInput], inputs[iInput], tempBuffer, offset, byteCount, iInput > 0);
+            }
+            final byte[] outputShard = toCheck[iOutput];
+            for (int iByte = offset; iByte < offset + byteCount; iByte++) {
+                if (tempBuffer[iByte] != outputShard[iByte]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes output = coefficient * input, or output ^= coefficient * input
+     * when accumulate is set, over [offset, offset + byteCount).
+     */
+    private static void multiply(byte coefficient, byte[] input, byte[] output,
+                                 int offset, int byteCount, boolean accumulate) {
+        final int end = offset + byteCount;
+        final int wordEnd = USE_WORDS ? offset + (byteCount & ~7) : offset;
+        final int c = coefficient & 0xFF;
+
+        if (c == 0) {
+            if (!accumulate) {
+                for (int iByte = offset; iByte < end; iByte++) {
+                    output[iByte] = 0;
+                }
+            }
+            return;
+        }
+
+        if (c == 1) {
+            for (int iByte = offset; iByte < wordEnd; iByte += 8) {
+                final long word = MemoryUtil.getLong(input, iByte);
+                MemoryUtil.setLong(output, iByte, accumulate ? MemoryUtil.getLong(output, iByte) ^ word : word);
+            }
+            for (int iByte = wordEnd; iByte < end; iByte++) {
+                output[iByte] = (byte) (accumulate ? output[iByte] ^ input[iByte] : input[iByte]);
+            }
+            return;
+        }
+
+        final int[] low = LOW_NIBBLE_TABLE[c];
+        final int[] high = HIGH_NIBBLE_TABLE[c];
+        for (int iByte = offset; iByte < wordEnd; iByte += 8) {
+            final long word = MemoryUtil.getLong(input, iByte);
+            final int lo = (int) word;
+            final int hi = (int) (word >>> 32);
+            final int productLo = (low[lo & 0x0F] ^ high[(lo >>> 4) & 0x0F])
+                                  | (low[(lo >>> 8) & 0x0F] ^ high[(lo >>> 12) & 0x0F]) << 8
+                                  | (low[(lo >>> 16) & 0x0F] ^ high[(lo >>> 20) & 0x0F]) << 16
+                                  | (low[(lo >>> 24) & 0x0F] ^ high[lo >>> 28]) << 24;
+            final int productHi = (low[hi & 0x0F] ^ high[(hi >>> 4) & 0x0F])
+                                  | (low[(hi >>> 8) & 0x0F] ^ high[(hi >>> 12) & 0x0F]) << 8
+                                  | (low[(hi >>> 16) & 0x0F] ^ high[(hi >>> 20) & 0x0F]) << 16
+                                  | (low[(hi >>> 24) & 0x0F] ^ high[hi >>> 28]) << 24;
+            final long product = (productLo & 0xFFFFFFFFL) | ((long) productHi << 32);
+            MemoryUtil.setLong(output, iByte, accumulate ? MemoryUtil.getLong(output, iByte) ^ product : product);
+        }
+
+        final byte[] multTableRow = Galois.MULTIPLICATION_TABLE[c];
+        for (int iByte = wordEnd; iByte < end; iByte++) {
+            final byte product = multTableRow[input[iByte] & 0xFF];
+            output[iByte] = accumulate ? (byte) (output[iByte] ^ product) : product;
+        }
+    }
+}
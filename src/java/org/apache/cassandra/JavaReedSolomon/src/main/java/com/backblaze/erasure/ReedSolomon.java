@@ -18,8 +18,17 @@
 
 package org.apache.cassandra.JavaReedSolomon.src.main.java.com.backblaze.erasure;
 
+import java.util.BitSet;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.MoreExecutors;
+
 /**
  * Reed-Solomon Coding over 8-bit values.
+ *
+ * Instances are immutable, apart from the optional decode matrix cache
+ * which is thread-safe, so a single codec can be shared by all threads.
  */
 public class ReedSolomon {
 
@@ -35,6 +44,12 @@ public class ReedSolomon {
      */
     private final byte [] [] parityRows;
 
+    /**
+     * Rows of the inverted decode matrix, keyed by the set of shards that
+     * were present, or null if decode matrices are not cached.
+     */
+    private final Cache<BitSet, byte [] []> decodeRowsCache;
+
     /**
      * Creates a ReedSolomon codec with the default coding loop.
      */
@@ -46,6 +61,15 @@ public class ReedSolomon {
      * Initializes a new encoder/decoder, with a chosen coding loop.
      */
     public ReedSolomon(int dataShardCount, int parityShardCount, CodingLoop codingLoop) {
+        this(dataShardCount, parityShardCount, codingLoop, 0);
+    }
+
+    /**
+     * Initializes a new encoder/decoder, with a chosen coding loop, that
+     * keeps the inverted decode matrices of the last decodeCacheSize
+     * erasure patterns around.  A size of 0 disables the cache.
+     */
+    public ReedSolomon(int dataShardCount, int parityShardCount, CodingLoop codingLoop, int decodeCacheSize) {
 
         // We can have at most 256 shards total, as any more would
         // lead to duplicate rows in the Vandermonde matrix, which
@@ -65,6 +89,12 @@ public class ReedSolomon {
         for (int i = 0; i < parityShardCount; i++) {
             parityRows[i] = matrix.getRow(dataShardCount + i);
         }
+        decodeRowsCache = decodeCacheSize > 0
+                          ? Caffeine.newBuilder()
+                                    .maximumSize(decodeCacheSize)
+                                    .executor(MoreExecutors.directExecutor())
+                                    .build()
+                          : null;
     }
 
     /**
@@ -209,36 +239,28 @@ public class ReedSolomon {
             throw new IllegalArgumentException("Not enough shards present");
         }
 
-        // Pull out the rows of the matrix that correspond to the
-        // shards that we have and build a square matrix.  This
-        // matrix could be used to generate the shards that we have
-        // from the original data.
-        //
-        // Also, pull out an array holding just the shards that
-        // correspond to the rows of the submatrix.  These shards
-        // will be the input to the decoding process that re-creates
-        // the missing data shards.
-        Matrix subMatrix = new Matrix(dataShardCount, dataShardCount);
+        // Pull out an array holding just the shards that correspond to the
+        // first dataShardCount present shards.  These shards will be the
+        // input to the decoding process that re-creates the missing data
+        // shards.
         byte [] [] subShards = new byte [dataShardCount] [];
+        BitSet present = new BitSet(totalShardCount);
         {
             int subMatrixRow = 0;
             for (int matrixRow = 0; matrixRow < totalShardCount && subMatrixRow < dataShardCount; matrixRow++) {
                 if (shardPresent[matrixRow]) {
-                    for (int c = 0; c < dataShardCount; c++) {
-                        subMatrix.set(subMatrixRow, c, matrix.get(matrixRow, c));
-                    }
                     subShards[subMatrixRow] = shards[matrixRow];
+                    present.set(matrixRow);
                     subMatrixRow += 1;
                 }
             }
         }
 
-        // Invert the matrix, so we can go from the encoded shards
-        // back to the original data.  Then pull out the row that
-        // generates the shard that we want to decode.  Note that
-        // since this matrix maps back to the orginal data, it can
-        // be used to create a data shard, but not a parity shard.
-        Matrix dataDecodeMatrix = subMatrix.invert();
+        // In steady state the same few erasure patterns repeat, so the
+        // inverted matrix is looked up before being computed.
+        byte [] [] dataDecodeRows = decodeRowsCache == null
+                                    ? buildDecodeRows(present)
+                                    : decodeRowsCache.get(present, this::buildDecodeRows);
 
         // Re-create any data shards that were missing.
         //
@@ -251,7 +273,7 @@ public class ReedSolomon {
         for (int iShard = 0; iShard < dataShardCount; iShard++) {
             if (!shardPresent[iShard]) {
                 outputs[outputCount] = shards[iShard];
-                matrixRows[outputCount] = dataDecodeMatrix.getRow(iShard);
+                matrixRows[outputCount] = dataDecodeRows[iShard];
                 outputCount += 1;
             }
         }
@@ -282,6 +304,37 @@ public class ReedSolomon {
                 offset, byteCount);
     }
 
+    /**
+     * Builds the rows of the matrix that re-creates the data shards from
+     * the shards flagged in present.
+     *
+     * Pull out the rows of the matrix that correspond to the shards that
+     * we have and build a square matrix.  This matrix could be used to
+     * generate the shards that we have from the original data.
+     *
+     * Invert the matrix, so we can go from the encoded shards back to the
+     * original data.  Note that since this matrix maps back to the
+     * orginal data, it can be used to create a data shard, but not a
+     * parity shard.
+     */
+    private byte [] [] buildDecodeRows(BitSet present) {
+        Matrix subMatrix = new Matrix(dataShardCount, dataShardCount);
+        int subMatrixRow = 0;
+        for (int matrixRow = present.nextSetBit(0); matrixRow >= 0; matrixRow = present.nextSetBit(matrixRow + 1)) {
+            for (int c = 0; c < dataShardCount; c++) {
+                subMatrix.set(subMatrixRow, c, matrix.get(matrixRow, c));
+            }
+            subMatrixRow += 1;
+        }
+
+        Matrix dataDecodeMatrix = subMatrix.invert();
+        byte [] [] rows = new byte [dataShardCount] [];
+        for (int r = 0; r < dataShardCount; r++) {
+            rows[r] = dataDecodeMatrix.getRow(r);
+        }
+        return rows;
+    }
+
     /**
      * Checks the consistency of arguments passed to public methods.
      */
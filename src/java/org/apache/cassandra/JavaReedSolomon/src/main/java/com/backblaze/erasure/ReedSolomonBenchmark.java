@@ -113,6 +113,53 @@ public class ReedSolomonBenchmark {
         }
     }
 
+    /**
+     * Runs a short encode benchmark of every coding loop at the given
+     * geometry and returns the one with the best throughput.  Loops whose
+     * parity does not match the one of a reference loop are skipped.
+     *
+     * @param millisPerLoop How long each loop is measured, after a warm up
+     *                      of the same duration.
+     */
+    public static CodingLoop fastestCodingLoop(int dataCount, int parityCount, int shardSize, long millisPerLoop) {
+        final int totalCount = dataCount + parityCount;
+        final byte [] [] shards = new byte [totalCount] [shardSize];
+        for (int iShard = 0; iShard < dataCount; iShard++) {
+            random.nextBytes(shards[iShard]);
+        }
+        final ReedSolomon reference = new ReedSolomon(dataCount, parityCount, new InputOutputByteTableCodingLoop());
+        final byte [] tempBuffer = new byte [shardSize];
+
+        CodingLoop fastest = null;
+        double fastestRate = 0;
+        for (CodingLoop codingLoop : CodingLoop.ALL_CODING_LOOPS) {
+            ReedSolomon codec = new ReedSolomon(dataCount, parityCount, codingLoop);
+            codec.encodeParity(shards, 0, shardSize);
+            if (!reference.isParityCorrect(shards, 0, shardSize, tempBuffer)) {
+                continue;
+            }
+            encodeFor(codec, shards, shardSize, millisPerLoop);
+            long start = System.nanoTime();
+            long passes = encodeFor(codec, shards, shardSize, millisPerLoop);
+            double rate = passes / (double) (System.nanoTime() - start);
+            if (fastest == null || rate > fastestRate) {
+                fastest = codingLoop;
+                fastestRate = rate;
+            }
+        }
+        return fastest;
+    }
+
+    private static long encodeFor(ReedSolomon codec, byte [] [] shards, int shardSize, long millis) {
+        final long deadline = System.nanoTime() + millis * 1000000L;
+        long passes = 0;
+        do {
+            codec.encodeParity(shards, 0, shardSize);
+            passes++;
+        } while (System.nanoTime() < deadline);
+        return passes;
+    }
+
     private Measurement doOneEncodeMeasurement(ReedSolomon codec, BufferSet[] bufferSets) {
         long passesCompleted = 0;
         long bytesEncoded = 0;
@@ -18,6 +18,7 @@
 
 package org.apache.cassandra.Treas;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.apache.cassandra.db.DecoratedKey;
@@ -29,10 +30,11 @@ public class DoubleTreasTag
 {
     private Long quorumMaxTreasTag = null;
     private Long recoverMaxTreasTag = null;
-    private List<String> codes = null;
+    private List<ByteBuffer> codes = null;
     private ReadResponse readResponse;
-    private String readResult;
+    private ByteBuffer readResult;
     private boolean needWriteBack = true;
+    private boolean recoverTagCommitted = false;
 
     private DecoratedKey key;
     private TableMetadata tableMetadata;
@@ -48,11 +50,25 @@ public class DoubleTreasTag
         this.needWriteBack = needWriteBack;
     }
 
-    public String getReadResult () {
+    /**
+     * @return whether the recovered tag was already reported by intersect replicas, in which case writing its value
+     * back doesn't have to hold up the read
+     */
+    public boolean isRecoverTagCommitted()
+    {
+        return recoverTagCommitted;
+    }
+
+    public void setRecoverTagCommitted(boolean recoverTagCommitted)
+    {
+        this.recoverTagCommitted = recoverTagCommitted;
+    }
+
+    public ByteBuffer getReadResult () {
         return this.readResult;
     }
 
-    public void setReadResult(String readResult) {
+    public void setReadResult(ByteBuffer readResult) {
         this.readResult = readResult;
     }
 
@@ -76,12 +92,12 @@ public class DoubleTreasTag
         this.recoverMaxTreasTag = recoverMaxTreasTag;
     }
 
-    public List<String> getCodes()
+    public List<ByteBuffer> getCodes()
     {
         return codes;
     }
 
-    public void setCodes(List<String> codes)
+    public void setCodes(List<ByteBuffer> codes)
     {
         this.codes = codes;
     }
@@ -18,228 +18,213 @@
 
 package org.apache.cassandra.Treas;
 
-
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
-import java.util.Base64;
-import java.util.Random;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.JavaReedSolomon.src.main.java.com.backblaze.erasure.ReedSolomon;
-import org.apache.cassandra.service.StorageProxy;
-import org.mortbay.util.IO;
+import org.apache.cassandra.schema.ErasureCodingParams;
 
 public class ErasureCode
 {
-
-    public static final int DATA_SHARDS = TreasConfig.num_recover;
-    public static final int PARITY_SHARDS = TreasConfig.num_server - TreasConfig.num_recover;
-    public static final int TOTAL_SHARDS = TreasConfig.num_server;
-    private static final Logger logger = LoggerFactory.getLogger(ErasureCode.class);
-
     public static final int BYTES_IN_INT = 4;
 
-//    public static ReedSolomon getReedSolomon () {
-//        if (reedSolomon == null) {
-//            reedSolomon = ReedSolomon.create(TreasConfig.num_recover, TreasConfig.num_server - TreasConfig.num_recover);
-//        }
-//        return reedSolomon;
-//    }
-
-    //Can make this function static since String is immutable
-    public byte[][] encodeData(String value) {
-        //logger.debug("The value is" + value);
-        ReedSolomon reedSolomon = ReedSolomon.create(TreasConfig.num_recover, TreasConfig.num_server - TreasConfig.num_recover);
-        final int valueSize =  value.length();
-        //logger.debug("Inside encodeData");
-
-        // Figure out how big each shard will be.  The total size stored
-        // will be the file size (8 bytes) plus the file.
-        final int storedSize = valueSize + BYTES_IN_INT;
-        final int shardSize = (storedSize + DATA_SHARDS - 1) / DATA_SHARDS;
-
-
-        // Create a buffer holding the file size, followed by
-        // the contents of the file.
-        final int bufferSize = shardSize * DATA_SHARDS;
-        final byte [] allBytes = new byte[bufferSize];
+    private final int dataShards;
+    private final int parityShards;
+    private final int totalShards;
 
+    /**
+     * Codec for the geometry configured by a table's {@code erasure_coding} option.
+     */
+    public ErasureCode(ErasureCodingParams params)
+    {
+        this(params.dataShards(), params.parityShards());
+    }
 
-        ByteBuffer.wrap(allBytes).putInt(valueSize);
-        InputStream in = new ByteArrayInputStream(value.getBytes(Charset.forName("UTF-8")));
+    public ErasureCode(int dataShards, int parityShards)
+    {
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+        this.totalShards = dataShards + parityShards;
+    }
 
-        try {
-            in.read(allBytes, BYTES_IN_INT, valueSize);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally
+    /**
+     * Splits {@code value} into {@link #totalShards()} equally sized shards, the first {@link #dataShards()}
+     * holding a 4 byte length header followed by the value and the remaining ones holding parity.
+     *
+     * The value bytes are copied exactly once, straight into the data shards, and each returned buffer
+     * wraps its shard array so it can be added to a blob column without any further copy or text encoding.
+     * The position of {@code value} is not modified.
+     */
+    public ByteBuffer[] encode(ByteBuffer value)
+    {
+        ReedSolomon reedSolomon = ReedSolomonRegistry.get(dataShards, parityShards);
+        final int valueSize = value.remaining();
+        final int shardSize = shardSize(valueSize);
+
+        byte[][] shards = new byte[totalShards][shardSize];
+
+        // Write the big-endian length header, which spans several data shards for tiny values
+        ByteBuffer src = value.duplicate();
+        int headerRemaining = BYTES_IN_INT;
+        int shard = 0;
+        int offset = 0;
+        while (headerRemaining > 0)
         {
-            try
+            shards[shard][offset] = (byte) (valueSize >>> (8 * (headerRemaining - 1)));
+            headerRemaining--;
+            if (++offset == shardSize)
             {
-                in.close();
-            }
-            catch (IOException e)
-            {
-                e.printStackTrace();
+                offset = 0;
+                shard++;
             }
         }
 
-        // Make the buffers to hold the shards.
-        byte [] [] shards = new byte [TOTAL_SHARDS] [shardSize];
-
-        // Fill in the data shards
-        for (int i = 0; i < DATA_SHARDS; i++) {
-            System.arraycopy(allBytes, i * shardSize, shards[i], 0, shardSize);
+        // Fill in the data shards directly from the value
+        while (src.hasRemaining())
+        {
+            int length = Math.min(shardSize - offset, src.remaining());
+            src.get(shards[shard], offset, length);
+            offset = 0;
+            shard++;
         }
 
         // Use Reed-Solomon to calculate the parity.
-        //logger.debug("Before Encode Parity");
         reedSolomon.encodeParity(shards, 0, shardSize);
-//        logger.debug("Coding looks like the folliowing");
-//        for (int i = 0; i < shards.length; i++) {
-//            logger.debug(TreasConfig.byteToString(shards[i]));
-//        }
-        return shards;
+
+        ByteBuffer[] encoded = new ByteBuffer[totalShards];
+        for (int i = 0; i < totalShards; i++)
+            encoded[i] = ByteBuffer.wrap(shards[i]);
+        return encoded;
     }
 
-    // Cannot make is static since our input is mutatble
-    public String decodeData(byte[][] shards, boolean []shardPresent, int shardSize, String key) {
-        ReedSolomon reedSolomon = ReedSolomon.create(TreasConfig.num_recover, TreasConfig.num_server - TreasConfig.num_recover);
-        reedSolomon.decodeMissing(shards, shardPresent, 0, shardSize);
+    /**
+     * Rebuilds the value encoded by {@link #encode(ByteBuffer)}.
+     *
+     * @param shards the shards indexed by server id, {@code null} or empty for those that are missing. At least
+     *               {@link #dataShards()} of them must be present and all present shards must have the same size.
+     * @return a buffer holding exactly the originally encoded value
+     */
+    public ByteBuffer decode(ByteBuffer[] shards)
+    {
+        byte[][] matrix = reconstruct(shards);
+        int shardSize = matrix[0].length;
+
+        // Read back the length header, which may span several data shards for tiny shard sizes
+        int valueSize = 0;
+        int shard = 0;
+        int offset = 0;
+        for (int i = 0; i < BYTES_IN_INT; i++)
+        {
+            valueSize = (valueSize << 8) | (matrix[shard][offset] & 0xFF);
+            if (++offset == shardSize)
+            {
+                offset = 0;
+                shard++;
+            }
+        }
 
-        byte [] decodeBytes = new byte[shardSize * DATA_SHARDS];
+        if (valueSize < 0 || valueSize > shardSize * dataShards - BYTES_IN_INT)
+            throw new IllegalArgumentException("Corrupted shards, decoded value size is " + valueSize);
 
-        //System.out.println("valueSize is" + shardSize);
-        for (int i = 0; i < DATA_SHARDS; i++) {
-            System.arraycopy(shards[i], 0, decodeBytes, shardSize * i, shardSize);
-        }
+        // When the whole value sits in the first shard, hand out a view over it instead of copying
+        if (shard == 0 && offset + valueSize <= shardSize)
+            return ByteBuffer.wrap(matrix[0], offset, valueSize).slice();
 
-//        int valueSize = ByteBuffer.wrap(decodeBytes).getInt();
+        byte[] value = new byte[valueSize];
+        int written = 0;
+        while (written < valueSize)
+        {
+            int length = Math.min(shardSize - offset, valueSize - written);
+            System.arraycopy(matrix[shard], offset, value, written, length);
+            written += length;
+            offset = 0;
+            shard++;
+        }
+        return ByteBuffer.wrap(value);
+    }
 
-        int valueSize = decodeBytes.length - 4;
+    /**
+     * Recomputes a single shard of a value from the others, without decoding the value.
+     *
+     * @param shards the shards indexed by server id, as for {@link #decode(ByteBuffer[])}
+     * @param index the index of the shard to recompute
+     * @return the shard {@code index} as {@link #encode(ByteBuffer)} would have produced it
+     */
+    public ByteBuffer regenerate(ByteBuffer[] shards, int index)
+    {
+        return ByteBuffer.wrap(reconstruct(shards)[index]);
+    }
 
-        OutputStream out = new ByteArrayOutputStream();
+    /**
+     * @return all the shards, the missing ones being recomputed from the present ones
+     */
+    private byte[][] reconstruct(ByteBuffer[] shards)
+    {
+        assert shards.length == totalShards : "wrong number of shards: " + shards.length;
 
-        try
+        int shardSize = -1;
+        for (ByteBuffer shard : shards)
         {
-            //logger.debug(decodeBytes.length + " " + valueSize + " " + key);
-            out.write(decodeBytes, BYTES_IN_INT, valueSize);
+            if (isPresent(shard))
+            {
+                shardSize = shard.remaining();
+                break;
+            }
         }
-        catch (IOException e)
+        if (shardSize < 0)
+            throw new IllegalArgumentException("Not enough shards present");
+
+        boolean[] shardPresent = new boolean[totalShards];
+        byte[][] matrix = new byte[totalShards][];
+        for (int i = 0; i < totalShards; i++)
         {
-            e.printStackTrace();
+            ByteBuffer shard = shards[i];
+            if (isPresent(shard))
+            {
+                shardPresent[i] = true;
+                matrix[i] = toArray(shard);
+            }
+            else
+            {
+                matrix[i] = new byte[shardSize];
+            }
         }
 
-        return out.toString();
+        ReedSolomon reedSolomon = ReedSolomonRegistry.get(dataShards, parityShards);
+        reedSolomon.decodeMissing(matrix, shardPresent, 0, shardSize);
+        return matrix;
+    }
+
+    /**
+     * @return the size of each shard produced by {@link #encode(ByteBuffer)} for a value of {@code valueSize} bytes
+     */
+    public int shardSize(int valueSize)
+    {
+        return (valueSize + BYTES_IN_INT + dataShards - 1) / dataShards;
+    }
+
+    public int dataShards()
+    {
+        return dataShards;
     }
 
+    public int totalShards()
+    {
+        return totalShards;
+    }
+
+    private static boolean isPresent(ByteBuffer shard)
+    {
+        return shard != null && shard.hasRemaining();
+    }
 
-//    public static void test(String value, ReedSolomon reedSolomon) {
-//        //logger.debug("The value is" + value);
-//        //System.out.println(value);
-//
-//        final int valueSize =  value.length();
-//        //logger.debug("Inside encodeData");
-//
-//        // Figure out how big each shard will be.  The total size stored
-//        // will be the file size (8 bytes) plus the file.
-//        final int storedSize = valueSize + BYTES_IN_INT;
-//        final int shardSize = (storedSize + DATA_SHARDS - 1) / DATA_SHARDS;
-//
-//
-//        // Create a buffer holding the file size, followed by
-//        // the contents of the file.
-//        final int bufferSize = shardSize * DATA_SHARDS;
-//        final byte [] allBytes = new byte[bufferSize];
-//
-//
-//        ByteBuffer.wrap(allBytes).putInt(valueSize);
-//        InputStream in = new ByteArrayInputStream(value.getBytes(Charset.forName("UTF-8")));
-//
-//        try {
-//            in.read(allBytes, BYTES_IN_INT, valueSize);
-//        } catch (IOException e) {
-//            e.printStackTrace();
-//        } finally
-//        {
-//            try
-//            {
-//                in.close();
-//            }
-//            catch (IOException e)
-//            {
-//                e.printStackTrace();
-//            }
-//        }
-//
-//        // Make the buffers to hold the shards.
-//        byte [] [] shards = new byte [TOTAL_SHARDS] [shardSize];
-//
-//        // Fill in the data shards
-//        for (int i = 0; i < DATA_SHARDS; i++) {
-//            System.arraycopy(allBytes, i * shardSize, shards[i], 0, shardSize);
-//        }
-//
-//        // Use Reed-Solomon to calculate the parity.
-//        //logger.debug("Before Encode Parity");
-//        reedSolomon.encodeParity(shards, 0, shardSize);
-//
-//        boolean[] present = new boolean[TOTAL_SHARDS];
-//        for (int i = 0; i < TOTAL_SHARDS; i++) {
-//            present[i] = true;
-//        }
-//
-//        //Decode
-//        reedSolomon = ReedSolomon.create(TreasConfig.num_recover, TreasConfig.num_server - TreasConfig.num_recover);
-//        reedSolomon.decodeMissing(shards, present, 0, shardSize);
-//
-//        byte [] decodeBytes = new byte[shardSize * DATA_SHARDS];
-//
-//        //System.out.println("valueSize is" + shardSize);
-//        for (int i = 0; i < DATA_SHARDS; i++) {
-//            System.arraycopy(shards[i], 0, decodeBytes, shardSize * i, shardSize);
-//        }
-//
-////        int valueSize = ByteBuffer.wrap(decodeBytes).getInt();
-//
-//        OutputStream out = new ByteArrayOutputStream();
-//        //System.out.println(out.toString());
-//
-//        try
-//        {
-//            //logger.debug(decodeBytes.length + " " + valueSize + " " + key);
-//            out.write(decodeBytes, BYTES_IN_INT, valueSize);
-//        }
-//        catch (IOException e)
-//        {
-//            e.printStackTrace();
-//        }
-//
-//
-//    }
-//
-//    public static void main (String[] args) {
-//        ErasureCode ec = new ErasureCode();
-//        int count = 5000;
-//        int length = 8192;
-//        Random rd = new Random();
-//        byte[] arr = new byte[length];
-//        rd.nextBytes(arr);
-//        long start = System.nanoTime();
-//        String value = null;
-//        ReedSolomon reedSolomon = ReedSolomon.create(TreasConfig.num_recover, TreasConfig.num_server - TreasConfig.num_recover);
-//        for (int i = 0; i < count; i++) {
-//            value = Base64.getEncoder().encodeToString(arr);
-//            test(value,reedSolomon);
-//        }
-//        long latency = (System.nanoTime() - start)/count;
-//        System.out.println(latency);
-//    }
-}
\ No newline at end of file
+    private static byte[] toArray(ByteBuffer shard)
+    {
+        // shards produced by encode() and most deserialized cells wrap exactly their backing array
+        if (shard.hasArray() && shard.arrayOffset() == 0 && shard.position() == 0 && shard.remaining() == shard.array().length)
+            return shard.array();
+
+        byte[] bytes = new byte[shard.remaining()];
+        shard.duplicate().get(bytes);
+        return bytes;
+    }
+}
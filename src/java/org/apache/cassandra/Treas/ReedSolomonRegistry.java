@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.Treas;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.JavaReedSolomon.src.main.java.com.backblaze.erasure.CodingLoop;
+import org.apache.cassandra.JavaReedSolomon.src.main.java.com.backblaze.erasure.InputOutputByteTableCodingLoop;
+import org.apache.cassandra.JavaReedSolomon.src.main.java.com.backblaze.erasure.ReedSolomon;
+import org.apache.cassandra.JavaReedSolomon.src.main.java.com.backblaze.erasure.ReedSolomonBenchmark;
+
+/**
+ * Shares one {@link ReedSolomon} codec per (data shards, parity shards) geometry.
+ *
+ * Building a codec computes and inverts a Vandermonde matrix, which used to be done for every request. The codecs are
+ * immutable and thread-safe, and each of them also keeps a bounded cache of the inverted decode matrices of the
+ * erasure patterns it recently saw.
+ *
+ * The {@link CodingLoop} used by the codecs is picked when the first codec is built, since which loop is fastest
+ * depends on the processor. Nodes without erasure coded tables never pay for the selection.
+ */
+public final class ReedSolomonRegistry
+{
+    private static final Logger logger = LoggerFactory.getLogger(ReedSolomonRegistry.class);
+
+    /**
+     * Number of erasure patterns (sets of present shards) whose decode matrix is cached per geometry.
+     */
+    public static final int DECODE_CACHE_SIZE = Integer.getInteger("cassandra.treas.decode_matrix_cache_size", 128);
+
+    /**
+     * Simple class name of the coding loop to use, skipping the startup benchmark.
+     */
+    public static final String CODING_LOOP_PROPERTY = "cassandra.treas.coding_loop";
+
+    /**
+     * How long each coding loop is measured when selecting one (after a warm up of the same duration).
+     */
+    private static final int SELECTION_MILLIS_PER_LOOP = Integer.getInteger("cassandra.treas.coding_loop_selection_ms", 20);
+    private static final int SELECTION_SHARD_SIZE = 64 * 1024;
+
+    private static final ConcurrentMap<Long, ReedSolomon> codecs = new ConcurrentHashMap<>();
+
+    private static volatile CodingLoop codingLoop;
+
+    private ReedSolomonRegistry()
+    {
+    }
+
+    public static ReedSolomon get(int dataShards, int parityShards)
+    {
+        Long geometry = ((long) dataShards << 32) | parityShards;
+        ReedSolomon codec = codecs.get(geometry);
+        if (codec != null)
+            return codec;
+
+        return codecs.computeIfAbsent(geometry, k -> new ReedSolomon(dataShards,
+                                                                     parityShards,
+                                                                     codingLoop(),
+                                                                     DECODE_CACHE_SIZE));
+    }
+
+    public static CodingLoop codingLoop()
+    {
+        CodingLoop loop = codingLoop;
+        return loop == null ? selectCodingLoop() : loop;
+    }
+
+    /**
+     * Picks the coding loop named by {@link #CODING_LOOP_PROPERTY}, or else the fastest one according to a brief run
+     * of {@link ReedSolomonBenchmark} at the default TREAS geometry, unless one was already picked.
+     */
+    private static synchronized CodingLoop selectCodingLoop()
+    {
+        if (codingLoop != null)
+            return codingLoop;
+
+        String name = System.getProperty(CODING_LOOP_PROPERTY);
+        CodingLoop selected = name == null ? null : codingLoop(name);
+        if (name != null && selected == null)
+            logger.warn("Unknown Reed-Solomon coding loop {}, selecting one by benchmark", name);
+
+        if (selected == null)
+        {
+            long start = System.nanoTime();
+            selected = ReedSolomonBenchmark.fastestCodingLoop(TreasConfig.num_recover,
+                                                              TreasConfig.num_server - TreasConfig.num_recover,
+                                                              SELECTION_SHARD_SIZE,
+                                                              SELECTION_MILLIS_PER_LOOP);
+            logger.debug("Benchmarked Reed-Solomon coding loops in {} ms", (System.nanoTime() - start) / 1000000);
+        }
+
+        if (selected == null)
+            selected = new InputOutputByteTableCodingLoop();
+        logger.info("Using Reed-Solomon coding loop {}", selected.getClass().getSimpleName());
+        codingLoop = selected;
+        return selected;
+    }
+
+    private static CodingLoop codingLoop(String name)
+    {
+        for (CodingLoop loop : CodingLoop.ALL_CODING_LOOPS)
+        {
+            if (loop.getClass().getSimpleName().equals(name))
+                return loop;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.Treas;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.ReadResponse;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.db.partitions.PartitionIterator;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterators;
+import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.db.rows.RowIterator;
+import org.apache.cassandra.locator.InetAddressAndPort;
+import org.apache.cassandra.metrics.TableMetrics;
+import org.apache.cassandra.schema.ErasureCodingParams;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Collects the (tag, shard) slots of the replicas answering a TREAS read as their responses arrive, rather than
+ * going through all of them once the quorum has answered.
+ *
+ * As soon as {@link ErasureCodingParams#dataShards()} shards of a tag larger than any decodable one so far have
+ * been received, that tag is decoded on the response thread, so the value is usually ready by the time the quorum
+ * is reached. The quorum still decides which tag the read returns: {@link #resolve(DoubleTreasTag)} only uses the
+ * eagerly decoded value if its tag is the largest decodable one among all the responses.
+ */
+public class TreasShardCollector
+{
+    private static final Logger logger = LoggerFactory.getLogger(TreasShardCollector.class);
+
+    private final ReadCommand command;
+    private final ErasureCodingParams erasureCoding;
+    private final ErasureCode codec;
+    private final List<InetAddressAndPort> shardOwners;
+
+    // the number of replicas that reported each tag
+    private final Map<Long, Integer> tagCounts = new HashMap<>();
+    // the shards received for each tag, indexed by shard, and how many of them are present
+    private final Map<Long, ByteBuffer[]> shards = new HashMap<>();
+    private final Map<Long, Integer> shardCounts = new HashMap<>();
+    private int responses;
+
+    // the largest tag reported by intersect replicas, and the largest one with enough shards to be decoded
+    private Long committedTagMax;
+    private Long decodableTagMax;
+    // the smallest tag reported by any replica
+    private Long tagMin;
+
+    private Long decodedTag;
+    private ByteBuffer decodedValue;
+
+    private DecoratedKey key;
+    private TableMetadata metadata;
+
+    public TreasShardCollector(SinglePartitionReadCommand command)
+    {
+        this.command = command;
+        this.erasureCoding = command.metadata().params.erasureCoding;
+        this.codec = new ErasureCode(erasureCoding);
+        this.shardOwners = TreasUtil.shardOwners(command.metadata(), command.partitionKey().getToken());
+    }
+
+    /**
+     * Adds the slots of a replica response, decoding the value of a new largest decodable tag right away.
+     */
+    public void add(InetAddressAndPort from, ReadResponse response)
+    {
+        assert !response.isDigestResponse();
+
+        int id = TreasUtil.shardIndex(shardOwners, from);
+        List<Long> tags = new ArrayList<>(erasureCoding.concurrency());
+        List<Long> shardTags = new ArrayList<>(1);
+        List<ByteBuffer> shardValues = new ArrayList<>(1);
+        DecoratedKey partitionKey = null;
+        TableMetadata partitionMetadata = null;
+
+        try (PartitionIterator pi = UnfilteredPartitionIterators.filter(response.makeIterator(command), command.nowInSec()))
+        {
+            while (pi.hasNext())
+            {
+                try (RowIterator ri = pi.next())
+                {
+                    partitionKey = ri.partitionKey();
+                    partitionMetadata = ri.metadata();
+                    while (ri.hasNext())
+                        readSlots(ri.metadata(), ri.next(), tags, shardTags, shardValues);
+                }
+            }
+        }
+
+        Long tagToDecode = null;
+        ByteBuffer[] toDecode = null;
+        synchronized (this)
+        {
+            if (key == null && partitionKey != null)
+            {
+                key = partitionKey;
+                metadata = partitionMetadata;
+            }
+            responses++;
+
+            for (Long tag : tags)
+            {
+                if (tagMin == null || tag < tagMin)
+                    tagMin = tag;
+                int count = tagCounts.merge(tag, 1, Integer::sum);
+                if (count >= erasureCoding.intersect() && (committedTagMax == null || tag > committedTagMax))
+                    committedTagMax = tag;
+            }
+
+            for (int i = 0; i < shardTags.size(); i++)
+            {
+                Long tag = shardTags.get(i);
+                ByteBuffer[] tagShards = shards.computeIfAbsent(tag, t -> new ByteBuffer[erasureCoding.totalShards()]);
+                if (tagShards[id] != null)
+                    continue;
+
+                tagShards[id] = shardValues.get(i);
+                int count = shardCounts.merge(tag, 1, Integer::sum);
+                if (count >= erasureCoding.dataShards() && (decodableTagMax == null || tag > decodableTagMax))
+                {
+                    decodableTagMax = tag;
+                    tagToDecode = tag;
+                    toDecode = tagShards.clone();
+                }
+            }
+        }
+
+        if (toDecode == null)
+            return;
+
+        ByteBuffer value;
+        try
+        {
+            value = codec.decode(toDecode);
+        }
+        catch (RuntimeException e)
+        {
+            // resolve() decodes again and reports the failure to the client
+            logger.debug("Could not decode the shards of tag {} for {}", tagToDecode, command, e);
+            return;
+        }
+
+        synchronized (this)
+        {
+            if (decodedTag == null || tagToDecode > decodedTag)
+            {
+                decodedTag = tagToDecode;
+                decodedValue = value;
+            }
+        }
+    }
+
+    /**
+     * @return the tag whose value was decoded as the responses arrived, if any
+     */
+    @VisibleForTesting
+    synchronized Long decodedTag()
+    {
+        return decodedTag;
+    }
+
+    static void readSlots(TableMetadata metadata, Row row, List<Long> tags, List<Long> shardTags, List<ByteBuffer> shardValues)
+    {
+        for (Cell c : row.cells())
+        {
+            String name = c.column().name.toString();
+            if (name.startsWith(TreasConfig.TAG_PREFIX))
+            {
+                tags.add(TreasUtil.getTag(c.value()));
+            }
+            else if (name.startsWith(TreasConfig.VAL_PREFIX) && !name.equals("field0"))
+            {
+                // only the slot of the largest tag keeps a shard, whose tag lives in the column of the same index
+                String tagColumn = TreasConfig.TAG_PREFIX + name.substring(TreasConfig.VAL_PREFIX.length());
+                Cell tagCell = row.getCell(metadata.getColumn(ByteBufferUtil.bytes(tagColumn)));
+                if (tagCell == null)
+                    continue;
+
+                shardTags.add(TreasUtil.getTag(tagCell.value()));
+                shardValues.add(c.value());
+            }
+        }
+    }
+
+    /**
+     * Fills {@code result} from the responses received so far: the largest committed tag, the largest decodable tag
+     * and its value, and whether the value has to be written back.
+     */
+    public void resolve(DoubleTreasTag result)
+    {
+        Long committed;
+        Long decodable;
+        ByteBuffer value;
+        ByteBuffer[] toDecode = null;
+        int responseCount;
+        int shardCount;
+        synchronized (this)
+        {
+            responseCount = responses;
+            shardCount = decodableTagMax != null ? shardCounts.get(decodableTagMax) : 0;
+            if (key != null)
+            {
+                result.setKey(key);
+                result.setTableMetadata(metadata);
+                result.setKeySpace(metadata.keyspace);
+            }
+
+            committed = committedTagMax;
+            decodable = decodableTagMax;
+            if (decodable != null)
+            {
+                // write back unless every replica that answered already holds the shard of the decoded tag, or, once
+                // the tag is committed, also to let the replicas still holding smaller tags free their slots
+                boolean tagCommitted = tagCounts.get(decodable) >= erasureCoding.intersect();
+                result.setNeedWriteBack(shardCounts.get(decodable) < responses || (tagCommitted && tagMin < decodable));
+                result.setRecoverTagCommitted(tagCommitted);
+            }
+
+            value = decodable != null && decodable.equals(decodedTag) ? decodedValue : null;
+            if (decodable != null && value == null)
+                toDecode = shards.get(decodable).clone();
+        }
+
+        TableMetrics metrics = Keyspace.open(command.metadata().keyspace).getColumnFamilyStore(command.metadata().id).metric;
+        metrics.treasReadResponses.update(responseCount);
+        metrics.treasReadShards.update(shardCount);
+
+        if (committed == null || decodable == null)
+        {
+            result.setReadResult(null);
+            return;
+        }
+
+        result.setQuorumMaxTreasTag(committed);
+        result.setRecoverMaxTreasTag(decodable);
+        result.setReadResult(value != null ? value : codec.decode(toDecode));
+    }
+}
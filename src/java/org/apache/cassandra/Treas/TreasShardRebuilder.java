@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.Treas;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DataRange;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.db.PartitionRangeReadCommand;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.ReadResponse;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.db.filter.ColumnFilter;
+import org.apache.cassandra.db.filter.DataLimits;
+import org.apache.cassandra.db.filter.RowFilter;
+import org.apache.cassandra.db.partitions.PartitionIterator;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterators;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.db.rows.RowIterator;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.gms.FailureDetector;
+import org.apache.cassandra.locator.InetAddressAndPort;
+import org.apache.cassandra.net.AsyncOneResponse;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.schema.ErasureCodingParams;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * Regenerates the shards a replica of an erasure coded table should hold, for {@code nodetool rebuild}, bootstrap
+ * and repair.
+ *
+ * Each replica of a TREAS table stores a different shard, so streaming the SSTables of another replica would give
+ * this node shards it doesn't own. Instead, the partitions of each range are paged from {@code data_shards} live
+ * replicas of the range, and for each key the shard of this node is recomputed from theirs with Reed-Solomon and
+ * written into the local slots like any TREAS write. A key whose shards don't agree between these replicas (a write
+ * in progress, or a replica that missed it) is read from the remaining live replicas of the range. The network
+ * traffic is about {@code data_shards} shards per key, a {@code data_shards}-th of the value size each, rather than
+ * the whole data of a replica.
+ *
+ * Only the largest tag that can be decoded is regenerated: the slots of older tags are left to later writes and reads.
+ */
+public final class TreasShardRebuilder
+{
+    private static final Logger logger = LoggerFactory.getLogger(TreasShardRebuilder.class);
+
+    /**
+     * Number of partitions fetched from each replica at a time.
+     */
+    public static final int PAGE_SIZE = Integer.getInteger("cassandra.treas.rebuild_page_size", 1000);
+
+    private final TableMetadata metadata;
+    private final ErasureCodingParams erasureCoding;
+    private final ErasureCode codec;
+    private final InetAddressAndPort local = FBUtilities.getBroadcastAddressAndPort();
+
+    private long keys;
+    private long regenerated;
+    private long unrecoverable;
+    private long bytesFetched;
+
+    @VisibleForTesting
+    TreasShardRebuilder(TableMetadata metadata)
+    {
+        this.metadata = metadata;
+        this.erasureCoding = metadata.params.erasureCoding;
+        this.codec = new ErasureCode(erasureCoding);
+    }
+
+    /**
+     * Regenerates the shards of {@code ranges} of every erasure coded table of {@code keyspace}.
+     */
+    public static void rebuild(String keyspace, Collection<Range<Token>> ranges)
+    {
+        for (ColumnFamilyStore cfs : Keyspace.open(keyspace).getColumnFamilyStores())
+        {
+            if (cfs.metadata().params.erasureCoding.isEnabled())
+                rebuild(cfs, ranges);
+        }
+    }
+
+    /**
+     * Regenerates the shards of {@code ranges} of the erasure coded table {@code cfs}.
+     */
+    public static void rebuild(ColumnFamilyStore cfs, Collection<Range<Token>> ranges)
+    {
+        assert cfs.metadata().params.erasureCoding.isEnabled() : cfs.metadata() + " is not erasure coded";
+        new TreasShardRebuilder(cfs.metadata()).rebuild(ranges);
+    }
+
+    private void rebuild(Collection<Range<Token>> ranges)
+    {
+        long start = System.nanoTime();
+        for (Range<Token> range : ranges)
+        {
+            for (Range<Token> unwrapped : range.unwrap())
+                rebuild(unwrapped);
+        }
+        logger.info("Regenerated {} shards of {} out of {} keys in {} ms ({} bytes fetched), {} keys could not be decoded",
+                    regenerated, metadata, keys, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    bytesFetched, unrecoverable);
+    }
+
+    private void rebuild(Range<Token> range)
+    {
+        // every key of the range is stored by the same replicas, in the same order
+        List<InetAddressAndPort> owners = TreasUtil.shardOwners(metadata, range.right);
+        int localIndex = TreasUtil.shardIndex(owners, local);
+
+        List<InetAddressAndPort> live = new ArrayList<>(owners.size());
+        for (InetAddressAndPort owner : owners)
+        {
+            if (!owner.equals(local) && FailureDetector.instance.isAlive(owner))
+                live.add(owner);
+        }
+        if (live.size() < erasureCoding.dataShards())
+            throw new IllegalStateException(String.format("Cannot rebuild %s for range %s: %d live replicas, %d needed",
+                                                          metadata, range, live.size(), erasureCoding.dataShards()));
+
+        DatabaseDescriptor.getEndpointSnitch().sortByProximity(local, live);
+        List<InetAddressAndPort> sources = live.subList(0, erasureCoding.dataShards());
+        List<InetAddressAndPort> others = live.subList(erasureCoding.dataShards(), live.size());
+
+        Range<PartitionPosition> remaining = Range.makeRowRange(range);
+        while (remaining != null)
+        {
+            PartitionRangeReadCommand command = PartitionRangeReadCommand.create(metadata,
+                                                                                 FBUtilities.nowInSeconds(),
+                                                                                 ColumnFilter.all(metadata),
+                                                                                 RowFilter.NONE,
+                                                                                 DataLimits.cqlLimits(PAGE_SIZE),
+                                                                                 DataRange.forKeyRange(remaining));
+            Map<DecoratedKey, KeySlots> page = new TreeMap<>();
+            // keys past the last key of a full page may be missing from that replica's page, they are left for the next
+            PartitionPosition pageEnd = null;
+            for (InetAddressAndPort source : sources)
+            {
+                DecoratedKey last = fetch(command, source, owners, page);
+                if (last != null && (pageEnd == null || last.compareTo(pageEnd) < 0))
+                    pageEnd = last;
+            }
+
+            for (KeySlots slots : page.values())
+            {
+                if (pageEnd != null && slots.key.compareTo(pageEnd) > 0)
+                    break;
+                regenerate(slots, owners, localIndex, others);
+            }
+
+            remaining = pageEnd == null ? null : new Range<>(pageEnd, remaining.right);
+        }
+    }
+
+    /**
+     * Adds the slots of the partitions returned by {@code source} to {@code page}.
+     *
+     * @return the last key returned if the page is full, {@code null} if {@code source} has no more keys in the range
+     */
+    private DecoratedKey fetch(ReadCommand command, InetAddressAndPort source, List<InetAddressAndPort> owners, Map<DecoratedKey, KeySlots> page)
+    {
+        ReadResponse response = read(command, source);
+        int index = TreasUtil.shardIndex(owners, source);
+        int partitions = 0;
+        DecoratedKey last = null;
+        try (PartitionIterator iterator = UnfilteredPartitionIterators.filter(response.makeIterator(command), command.nowInSec()))
+        {
+            while (iterator.hasNext())
+            {
+                try (RowIterator partition = iterator.next())
+                {
+                    last = partition.partitionKey();
+                    partitions++;
+                    KeySlots slots = page.computeIfAbsent(last, KeySlots::new);
+                    while (partition.hasNext())
+                        slots.add(partition.metadata(), partition.next(), index);
+                }
+            }
+        }
+        return partitions < PAGE_SIZE ? null : last;
+    }
+
+    private ReadResponse read(ReadCommand command, InetAddressAndPort source)
+    {
+        AsyncOneResponse<ReadResponse> response = MessagingService.instance().sendRR(command.createMessage(), source);
+        try
+        {
+            return response.get(DatabaseDescriptor.getRangeRpcTimeout(), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            throw new RuntimeException(String.format("Timed out reading %s from %s", metadata, source), e);
+        }
+    }
+
+    private void regenerate(KeySlots slots, List<InetAddressAndPort> owners, int localIndex, List<InetAddressAndPort> others)
+    {
+        keys++;
+        if (slots.decodableTag() == null && !others.isEmpty())
+        {
+            SinglePartitionReadCommand command = SinglePartitionReadCommand.fullPartitionRead(metadata, FBUtilities.nowInSeconds(), slots.key);
+            for (InetAddressAndPort other : others)
+            {
+                int index = TreasUtil.shardIndex(owners, other);
+                try (PartitionIterator iterator = UnfilteredPartitionIterators.filter(read(command, other).makeIterator(command), command.nowInSec()))
+                {
+                    while (iterator.hasNext())
+                    {
+                        try (RowIterator partition = iterator.next())
+                        {
+                            while (partition.hasNext())
+                                slots.add(partition.metadata(), partition.next(), index);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!regenerate(slots, localIndex))
+        {
+            unrecoverable++;
+            logger.debug("Not enough shards of any tag of key {} of {} to regenerate its shard", slots.key, metadata);
+        }
+    }
+
+    /**
+     * Writes shard {@code localIndex} of the largest tag of {@code slots} that can be decoded.
+     *
+     * @return whether a tag could be decoded
+     */
+    @VisibleForTesting
+    boolean regenerate(KeySlots slots, int localIndex)
+    {
+        Long tag = slots.decodableTag();
+        if (tag == null)
+            return false;
+
+        ByteBuffer shard = codec.regenerate(slots.shards.get(tag), localIndex);
+        Mutation.SimpleBuilder builder = Mutation.simpleBuilder(metadata.keyspace, slots.key);
+        builder.update(metadata)
+               .timestamp(FBUtilities.timestampMicros())
+               .row()
+               .add(TreasConfig.TAG_ONE, tag)
+               .add(TreasConfig.VAL_ONE, shard)
+               .add("field0", "");
+        boolean committed = slots.tagCounts.get(tag) >= erasureCoding.intersect();
+        TreasTagIndex.forTable(metadata).apply(builder.build(), committed);
+        regenerated++;
+        return true;
+    }
+
+    /**
+     * The tags and shards replicas reported for a key.
+     */
+    @VisibleForTesting
+    final class KeySlots
+    {
+        final DecoratedKey key;
+        final Map<Long, Integer> tagCounts = new HashMap<>();
+        final Map<Long, ByteBuffer[]> shards = new HashMap<>();
+
+        KeySlots(DecoratedKey key)
+        {
+            this.key = key;
+        }
+
+        void add(TableMetadata metadata, Row row, int index)
+        {
+            List<Long> tags = new ArrayList<>(erasureCoding.concurrency());
+            List<Long> shardTags = new ArrayList<>(1);
+            List<ByteBuffer> shardValues = new ArrayList<>(1);
+            TreasShardCollector.readSlots(metadata, row, tags, shardTags, shardValues);
+            for (Long tag : tags)
+                tagCounts.merge(tag, 1, Integer::sum);
+            for (int i = 0; i < shardTags.size(); i++)
+            {
+                shards.computeIfAbsent(shardTags.get(i), t -> new ByteBuffer[erasureCoding.totalShards()])[index] = shardValues.get(i);
+                bytesFetched += shardValues.get(i).remaining();
+            }
+        }
+
+        /**
+         * @return the largest tag with at least {@code data_shards} shards, or {@code null}
+         */
+        Long decodableTag()
+        {
+            Long decodable = null;
+            for (Map.Entry<Long, ByteBuffer[]> entry : shards.entrySet())
+            {
+                int present = 0;
+                for (ByteBuffer shard : entry.getValue())
+                {
+                    if (shard != null)
+                        present++;
+                }
+                if (present >= erasureCoding.dataShards() && (decodable == null || entry.getKey() > decodable))
+                    decodable = entry.getKey();
+            }
+            return decodable;
+        }
+    }
+}
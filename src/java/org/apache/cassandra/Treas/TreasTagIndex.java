@@ -0,0 +1,639 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.Treas;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.Striped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.concurrent.ScheduledExecutors;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.PartitionRangeReadCommand;
+import org.apache.cassandra.db.ReadExecutionController;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.db.WriteType;
+import org.apache.cassandra.db.partitions.PartitionIterator;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterators;
+import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.db.rows.RowIterator;
+import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.dht.Bounds;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.exceptions.WriteTimeoutException;
+import org.apache.cassandra.metrics.TableMetrics;
+import org.apache.cassandra.net.ParameterType;
+import org.apache.cassandra.schema.Schema;
+import org.apache.cassandra.schema.TableId;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.schema.TableMetadataRef;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.HybridLogicalClock;
+import org.caffinitas.ohc.CacheSerializer;
+import org.caffinitas.ohc.CloseableIterator;
+import org.caffinitas.ohc.OHCache;
+import org.caffinitas.ohc.OHCacheBuilder;
+
+/**
+ * Off-heap index of the (tag, shard) slots a replica holds for each partition of an erasure coded table.
+ *
+ * A TREAS replica write has to know the tags currently in the slots of the partition to choose which slot the new
+ * tag goes to, which used to be found by reading the partition before every write. The index keeps the slot tags of
+ * recently written partitions, together with the timestamp of the last write, so that slot selection is a lookup.
+ * Writes to a partition are serialized by a striped lock, as counter writes are, and its entry is only updated once
+ * the write is applied, so that each write chooses its slot knowing the previous ones and the index never holds a tag
+ * that failed to be written. Each write has a timestamp greater than the previous one. On a miss (partition never
+ * seen, or evicted), the slots are read from the partition as before.
+ *
+ * Slots are used as the writes of a key need them rather than all at once: a write goes to the first free slot, and
+ * once a tag is known to be committed, that is reported by {@code intersect} replicas, the slots of the smaller tags
+ * are superseded and freed (their tag and shard cells deleted). A key written by one writer at a time therefore uses
+ * one or two slots whatever the table's {@code concurrency}, which only bounds the number of slots of a key. A
+ * replica learns that a tag is committed from the read write-backs flagged with {@link ParameterType#TREAS_COMMITTED}.
+ *
+ * The index is populated from the table data in the background at startup. Its entries are dropped when the table is
+ * truncated, and so are those of the partitions covered by sstables added without going through it, by streaming or
+ * import. Its off-heap memory is released once the table is dropped and the writes in progress are done with it.
+ */
+public final class TreasTagIndex
+{
+    private static final Logger logger = LoggerFactory.getLogger(TreasTagIndex.class);
+
+    @VisibleForTesting
+    static final long EMPTY = Long.MIN_VALUE;
+
+    private static final ConcurrentMap<TableId, TreasTagIndex> indexes = new ConcurrentHashMap<>();
+
+    private static final Striped<Lock> LOCKS = Striped.lazyWeakLock(DatabaseDescriptor.getConcurrentWriters() * 1024);
+
+    // the metadata of the table as of its last ALTER, which may change its concurrency
+    private final TableMetadataRef metadata;
+    private final OHCache<ByteBuffer, Slots> slots;
+    // one reference held by the registry of indexes until the table is dropped, and one by each use in progress
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private TreasTagIndex(TableMetadata metadata)
+    {
+        TableMetadataRef ref = Schema.instance.getTableMetadataRef(metadata.id);
+        this.metadata = ref == null ? TableMetadataRef.forOfflineTools(metadata) : ref;
+        this.slots = OHCacheBuilder.<ByteBuffer, Slots>newBuilder()
+                                   .capacity(DatabaseDescriptor.getTreasTagIndexSizeInMB() * 1024 * 1024)
+                                   .keySerializer(KeySerializer.instance)
+                                   .valueSerializer(Slots.serializer)
+                                   .build();
+    }
+
+    public static TreasTagIndex forTable(TableMetadata metadata)
+    {
+        TreasTagIndex index = indexes.get(metadata.id);
+        if (index != null)
+            return index;
+        return indexes.computeIfAbsent(metadata.id, id -> new TreasTagIndex(metadata));
+    }
+
+    /**
+     * Drops all the entries of the index of a table, whose data was truncated. Writes in progress may keep using the
+     * index.
+     */
+    public static void invalidate(TableId id)
+    {
+        TreasTagIndex index = indexes.get(id);
+        if (index != null)
+            index.invalidate(key -> true);
+    }
+
+    /**
+     * Releases the index of a dropped table, once the writes in progress are done with it.
+     */
+    public static void release(TableId id)
+    {
+        TreasTagIndex index = indexes.remove(id);
+        if (index != null)
+            index.release();
+    }
+
+    /**
+     * Drops the entries of the partitions in {@code boundsToInvalidate} from the index of a table, so that their next
+     * write reads the slots from the partition, as sstables covering them were added without going through the index.
+     *
+     * @return the number of entries dropped
+     */
+    public static int invalidate(TableId id, Collection<Bounds<Token>> boundsToInvalidate)
+    {
+        TreasTagIndex index = indexes.get(id);
+        return index == null ? 0 : index.invalidate(boundsToInvalidate);
+    }
+
+    private int invalidate(Collection<Bounds<Token>> boundsToInvalidate)
+    {
+        TableMetadata current = metadata.get();
+        return invalidate(key -> Bounds.isInBounds(current.partitioner.getToken(key), boundsToInvalidate));
+    }
+
+    private int invalidate(Predicate<ByteBuffer> toInvalidate)
+    {
+        if (!reference())
+            return 0;
+
+        TableMetadata current = metadata.get();
+        int invalidatedKeys = 0;
+        try (CloseableIterator<ByteBuffer> keyIter = slots.keyIterator())
+        {
+            while (keyIter.hasNext())
+            {
+                ByteBuffer key = keyIter.next();
+                if (!toInvalidate.test(key))
+                    continue;
+
+                // a write holding the lock may still put the slots it read before the sstables were added
+                Lock lock = LOCKS.get(Objects.hashCode(current.id, key));
+                lock.lock();
+                try
+                {
+                    slots.remove(key);
+                    invalidatedKeys++;
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            release();
+        }
+        return invalidatedKeys;
+    }
+
+    /**
+     * Populates the index of every erasure coded table from its data, in the background.
+     */
+    public static void rebuildAll()
+    {
+        for (Keyspace keyspace : Keyspace.all())
+        {
+            for (ColumnFamilyStore cfs : keyspace.getColumnFamilyStores())
+            {
+                if (cfs.metadata().params.erasureCoding.isEnabled())
+                    ScheduledExecutors.optionalTasks.execute(() -> forTable(cfs.metadata()).rebuild());
+            }
+        }
+    }
+
+    public void apply(Mutation incoming) throws WriteTimeoutException
+    {
+        apply(incoming, false);
+    }
+
+    /**
+     * Stores the tag, and shard if needed, of an incoming TREAS write (tag in {@code tag1}, shard in {@code field1})
+     * into this replica's slots, then records the new slot tags. Nothing is written if the write is already reflected
+     * by the slots.
+     *
+     * @param committed whether the tag of the write is known to be committed, in which case the slots of the smaller
+     * tags are freed
+     * @throws WriteTimeoutException if the partition is not available for writing within the write timeout
+     */
+    public void apply(Mutation incoming, boolean committed) throws WriteTimeoutException
+    {
+        Long tag = null;
+        ByteBuffer shard = null;
+        Row data = incoming.getPartitionUpdates().iterator().next().getRow(Clustering.EMPTY);
+        for (Cell cell : data.cells())
+        {
+            String name = cell.column().name.toString();
+            if (name.equals(TreasConfig.TAG_ONE))
+                tag = TreasUtil.getTag(cell.value());
+            else if (name.equals(TreasConfig.VAL_ONE))
+                shard = cell.value();
+        }
+        assert tag != null : "TREAS write without " + TreasConfig.TAG_ONE;
+
+        // writes this node coordinates from now on are ordered after the ones it stores
+        HybridLogicalClock.instance().update(tag);
+
+        TableMetadata current = metadata.get();
+        TableMetrics metrics = Keyspace.open(current.keyspace).getColumnFamilyStore(current.id).metric;
+        int concurrency = current.params.erasureCoding.concurrency();
+        ByteBuffer key = incoming.key().getKey();
+
+        // a write racing with the drop of the table reads its slots from the partition
+        boolean indexed = reference();
+        Lock lock = null;
+        try
+        {
+            lock = lock(current.id, key);
+            Slots slotTags = indexed ? slots.get(key) : null;
+            if (slotTags == null || slotTags.tags.length < concurrency)
+            {
+                metrics.treasTagIndexMisses.inc();
+                slotTags = read(current, incoming.key(), concurrency);
+            }
+            else
+            {
+                metrics.treasTagIndexHits.inc();
+            }
+
+            Decision decision = decide(slotTags, tag, committed, concurrency);
+            if (decision == null)
+                return;
+
+            long timestamp = Math.max(FBUtilities.timestampMicros(), slotTags.timestamp + 1);
+            decision.toMutation(current, incoming, timestamp, tag, shard).apply();
+
+            if (indexed)
+                slots.put(key, new Slots(timestamp, decision.tags, decision.committed));
+            if (decision.freed > 0)
+                metrics.treasFreedSlots.inc(decision.freed);
+        }
+        finally
+        {
+            if (lock != null)
+                lock.unlock();
+            if (indexed)
+                release();
+        }
+    }
+
+    private static Lock lock(TableId id, ByteBuffer key) throws WriteTimeoutException
+    {
+        Lock lock = LOCKS.get(Objects.hashCode(id, key));
+        try
+        {
+            if (lock.tryLock(DatabaseDescriptor.getWriteRpcTimeout(), TimeUnit.MILLISECONDS))
+                return lock;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        throw new WriteTimeoutException(WriteType.SIMPLE, ConsistencyLevel.TREAS, 0, 1);
+    }
+
+    /**
+     * Frees the slots of the tags smaller than the largest committed tag, then chooses the slot of {@code tag} among
+     * the first {@code concurrency} slots: the first free slot if any, or else the slot of the smallest tag if
+     * {@code tag} is larger. Only the slot of the largest tag keeps its shard.
+     *
+     * The slots past {@code concurrency}, left by an ALTER lowering it, are freed, except for the slot holding the
+     * shard of the largest tag while no larger tag is written.
+     */
+    @VisibleForTesting
+    static Decision decide(Slots current, long tag, boolean committed, int concurrency)
+    {
+        long[] tags = current.tags;
+        long committedTag = committed ? Math.max(current.committed, tag) : current.committed;
+
+        int present = -1, previousMax = -1;
+        for (int i = 0; i < tags.length; i++)
+        {
+            if (tags[i] == EMPTY)
+                continue;
+            if (tags[i] == tag)
+                present = i;
+            if (previousMax < 0 || tags[i] > tags[previousMax])
+                previousMax = i;
+        }
+
+        long[] updated = Arrays.copyOf(tags, tags.length);
+        boolean[] freed = new boolean[tags.length];
+        int freedCount = 0;
+        for (int i = 0; i < updated.length; i++)
+        {
+            boolean keptShard = i == previousMax && tag <= tags[i];
+            if (updated[i] != EMPTY && (updated[i] < committedTag || (i >= concurrency && !keptShard)))
+            {
+                updated[i] = EMPTY;
+                freed[i] = true;
+                freedCount++;
+            }
+        }
+
+        // a tag this replica already has, or that is superseded, only matters if it tells us something is committed
+        if ((present >= 0 || tag < committedTag) && committedTag == current.committed && freedCount == 0)
+            return null;
+
+        int slot = -1;
+        if (present < 0 && tag >= committedTag)
+        {
+            int free = -1, min = -1;
+            for (int i = 0; i < concurrency; i++)
+            {
+                if (updated[i] == EMPTY)
+                {
+                    if (free < 0)
+                        free = i;
+                }
+                else if (min < 0 || updated[i] < updated[min])
+                {
+                    min = i;
+                }
+            }
+
+            if (free >= 0)
+                slot = free;
+            else if (tag > updated[min])
+                slot = min;
+            else
+                return null;
+
+            updated[slot] = tag;
+            // the new tag is written over whatever the slot held
+            freed[slot] = false;
+        }
+
+        boolean storeShard = slot >= 0 && (previousMax < 0 || tag > tags[previousMax]);
+        int clearShard = storeShard && previousMax >= 0 && previousMax != slot && !freed[previousMax] ? previousMax : -1;
+
+        int length = updated.length;
+        while (length > concurrency && updated[length - 1] == EMPTY)
+            length--;
+        return new Decision(Arrays.copyOf(updated, length), committedTag, slot, storeShard, clearShard, freed, freedCount);
+    }
+
+    private static Slots read(TableMetadata metadata, DecoratedKey key, int concurrency)
+    {
+        SinglePartitionReadCommand localRead = SinglePartitionReadCommand.fullPartitionRead(metadata, FBUtilities.nowInSeconds(), key);
+        try (ReadExecutionController executionController = localRead.executionController();
+             UnfilteredPartitionIterator iterator = localRead.executeLocally(executionController);
+             PartitionIterator partitions = UnfilteredPartitionIterators.filter(iterator, localRead.nowInSec()))
+        {
+            Slots found = null;
+            while (partitions.hasNext())
+            {
+                try (RowIterator partition = partitions.next())
+                {
+                    found = toSlots(partition, concurrency);
+                }
+            }
+            return found == null ? Slots.empty(concurrency) : found;
+        }
+    }
+
+    private void rebuild()
+    {
+        TableMetadata metadata = this.metadata.get();
+        if (!metadata.params.erasureCoding.isEnabled() || !reference())
+            return;
+
+        long start = System.nanoTime();
+        int concurrency = metadata.params.erasureCoding.concurrency();
+        long partitions = 0;
+        PartitionRangeReadCommand command = PartitionRangeReadCommand.allDataRead(metadata, FBUtilities.nowInSeconds());
+        try (ReadExecutionController executionController = command.executionController();
+             UnfilteredPartitionIterator iterator = command.executeLocally(executionController);
+             PartitionIterator filtered = UnfilteredPartitionIterators.filter(iterator, command.nowInSec()))
+        {
+            while (filtered.hasNext())
+            {
+                try (RowIterator partition = filtered.next())
+                {
+                    // writes that raced with the scan are more recent than what it saw
+                    if (slots.putIfAbsent(partition.partitionKey().getKey(), toSlots(partition, concurrency)))
+                        partitions++;
+                }
+            }
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Could not rebuild the TREAS tag index of {}, writes will read their slots", metadata, e);
+            return;
+        }
+        finally
+        {
+            release();
+        }
+        logger.info("Rebuilt the TREAS tag index of {} with {} partitions in {} ms",
+                    metadata, partitions, (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * @return the slots of {@code partition}, including the slots past {@code concurrency} that still hold a tag
+     */
+    private static Slots toSlots(RowIterator partition, int concurrency)
+    {
+        long[] tags = new long[concurrency];
+        Arrays.fill(tags, EMPTY);
+        long timestamp = Long.MIN_VALUE;
+        while (partition.hasNext())
+        {
+            for (Cell cell : partition.next().cells())
+            {
+                timestamp = Math.max(timestamp, cell.timestamp());
+                String name = cell.column().name.toString();
+                if (!name.startsWith(TreasConfig.TAG_PREFIX))
+                    continue;
+                int slot = Integer.parseInt(name.substring(TreasConfig.TAG_PREFIX.length())) - 1;
+                if (slot < 0)
+                    continue;
+                if (slot >= tags.length)
+                {
+                    int length = tags.length;
+                    tags = Arrays.copyOf(tags, slot + 1);
+                    Arrays.fill(tags, length, tags.length, EMPTY);
+                }
+                tags[slot] = TreasUtil.getTag(cell.value());
+            }
+        }
+        // what was committed is not stored, the next committed write-back of the key frees its superseded slots
+        return new Slots(timestamp, tags, EMPTY);
+    }
+
+    /**
+     * @return whether the index could be referenced, that is it was not released yet
+     */
+    private boolean reference()
+    {
+        int refCount;
+        do
+        {
+            refCount = references.get();
+            if (refCount == 0)
+                return false;
+        } while (!references.compareAndSet(refCount, refCount + 1));
+        return true;
+    }
+
+    private void release()
+    {
+        if (references.decrementAndGet() == 0)
+            close();
+    }
+
+    private void close()
+    {
+        try
+        {
+            slots.close();
+        }
+        catch (Exception e)
+        {
+            logger.warn("Could not release the TREAS tag index of {}", metadata.get(), e);
+        }
+    }
+
+    /**
+     * The slot chosen for a write, if any, the slots it frees and the cells it has to write.
+     */
+    @VisibleForTesting
+    static final class Decision
+    {
+        final long[] tags;
+        final long committed;
+        final int slot;
+        final boolean storeShard;
+        final int clearShard;
+        final boolean[] freedSlots;
+        final int freed;
+
+        Decision(long[] tags, long committed, int slot, boolean storeShard, int clearShard, boolean[] freedSlots, int freed)
+        {
+            this.tags = tags;
+            this.committed = committed;
+            this.slot = slot;
+            this.storeShard = storeShard;
+            this.clearShard = clearShard;
+            this.freedSlots = freedSlots;
+            this.freed = freed;
+        }
+
+        Mutation toMutation(TableMetadata metadata, Mutation incoming, long timestamp, long tag, ByteBuffer shard)
+        {
+            Mutation.SimpleBuilder builder = Mutation.simpleBuilder(incoming.getKeyspaceName(), incoming.key());
+            Row.SimpleBuilder row = builder.update(metadata)
+                                           .timestamp(timestamp)
+                                           .row()
+                                           .add("field0", "");
+            if (slot >= 0)
+                row.add(TreasConfig.TAG_PREFIX + (slot + 1), tag);
+            if (storeShard)
+                row.add(TreasConfig.VAL_PREFIX + (slot + 1), shard);
+            if (clearShard >= 0)
+                row.add(TreasConfig.VAL_PREFIX + (clearShard + 1), null);
+            for (int i = 0; i < freedSlots.length; i++)
+            {
+                if (!freedSlots[i])
+                    continue;
+                row.add(TreasConfig.TAG_PREFIX + (i + 1), null);
+                row.add(TreasConfig.VAL_PREFIX + (i + 1), null);
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * The tags of the slots of a partition (or {@link #EMPTY}), the largest tag known to be committed (or
+     * {@link #EMPTY}) and the timestamp of its last write.
+     */
+    @VisibleForTesting
+    static final class Slots
+    {
+        static final CacheSerializer<Slots> serializer = new CacheSerializer<Slots>()
+        {
+            public void serialize(Slots slots, ByteBuffer buf)
+            {
+                buf.putLong(slots.timestamp);
+                buf.putLong(slots.committed);
+                buf.putInt(slots.tags.length);
+                for (long tag : slots.tags)
+                    buf.putLong(tag);
+            }
+
+            public Slots deserialize(ByteBuffer buf)
+            {
+                long timestamp = buf.getLong();
+                long committed = buf.getLong();
+                long[] tags = new long[buf.getInt()];
+                for (int i = 0; i < tags.length; i++)
+                    tags[i] = buf.getLong();
+                return new Slots(timestamp, tags, committed);
+            }
+
+            public int serializedSize(Slots slots)
+            {
+                return 8 + 8 + 4 + 8 * slots.tags.length;
+            }
+        };
+
+        final long timestamp;
+        final long[] tags;
+        final long committed;
+
+        Slots(long timestamp, long[] tags, long committed)
+        {
+            this.timestamp = timestamp;
+            this.tags = tags;
+            this.committed = committed;
+        }
+
+        static Slots empty(int concurrency)
+        {
+            long[] tags = new long[concurrency];
+            Arrays.fill(tags, EMPTY);
+            return new Slots(Long.MIN_VALUE, tags, EMPTY);
+        }
+    }
+
+    private static final class KeySerializer implements CacheSerializer<ByteBuffer>
+    {
+        static final KeySerializer instance = new KeySerializer();
+
+        public void serialize(ByteBuffer key, ByteBuffer buf)
+        {
+            buf.putInt(key.remaining());
+            buf.put(key.duplicate());
+        }
+
+        public ByteBuffer deserialize(ByteBuffer buf)
+        {
+            byte[] key = new byte[buf.getInt()];
+            buf.get(key);
+            return ByteBuffer.wrap(key);
+        }
+
+        public int serializedSize(ByteBuffer key)
+        {
+            return 4 + key.remaining();
+        }
+    }
+}
@@ -19,35 +19,57 @@
 package org.apache.cassandra.Treas;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.locator.InetAddressAndPort;
+import org.apache.cassandra.schema.ErasureCodingParams;
+import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.service.StorageProxy;
+import org.apache.cassandra.utils.ByteBufferUtil;
 
 public class TreasUtil
 {
     private static final Logger logger = LoggerFactory.getLogger(TreasUtil.class);
-    public synchronized static Long getLong(ByteBuffer bb) {
-//        int pos = -1;
-//        Long time = null;
-//        try {
-//
-//        } catch (Exception e) {
-//
-//            throw e;
-//        }
-        int pos = bb.position();
-        Long time = bb.getLong();
-        bb.position(pos);
-        return time;
+
+    /**
+     * @return the tag held by a tag cell value, read at its absolute position: the buffer is left untouched, so the
+     * same cell value can be read concurrently by any number of threads
+     */
+    public static long getTag(ByteBuffer value)
+    {
+        return ByteBufferUtil.toLong(value);
+    }
+
+    /**
+     * Returns the replicas storing the shards of a partition of an erasure coded table: shard i is stored by the i-th
+     * natural endpoint of the partition token, so every node derives the same placement from the ring alone.
+     */
+    public static List<InetAddressAndPort> shardOwners(TableMetadata metadata, Token token)
+    {
+        ErasureCodingParams params = metadata.params.erasureCoding;
+        List<InetAddressAndPort> endpoints = Keyspace.open(metadata.keyspace).getReplicationStrategy().getNaturalEndpoints(token);
+        if (endpoints.size() != params.totalShards())
+            throw new IllegalStateException(String.format("Table %s is erasure coded into %d shards but has %d replicas",
+                                                          metadata,
+                                                          params.totalShards(),
+                                                          endpoints.size()));
+        return endpoints;
     }
 
-//    public synchronized static void printTags(HashMap<Long,List<String>> map ,HashMap<Long, Integer> decodeCountMap) {
-//        for (Long tag: map.keySet()) {
-//            logger.debug(tag + " " + decodeCountMap.get(tag));
-//        }
-//    }
+    /**
+     * @return the index of the shard stored by {@code endpoint} among {@code owners}, as returned by
+     * {@link #shardOwners(TableMetadata, Token)}
+     */
+    public static int shardIndex(List<InetAddressAndPort> owners, InetAddressAndPort endpoint)
+    {
+        int index = owners.indexOf(endpoint);
+        if (index < 0)
+            throw new IllegalStateException(String.format("%s is not a replica of the partition (replicas are %s)", endpoint, owners));
+        return index;
+    }
 }
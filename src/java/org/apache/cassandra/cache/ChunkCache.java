@@ -30,6 +30,8 @@ import com.google.common.util.concurrent.MoreExecutors;
 
 import com.github.benmanes.caffeine.cache.*;
 import com.codahale.metrics.Timer;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.util.*;
@@ -46,9 +48,36 @@ public class ChunkCache
     private static boolean enabled = cacheSize > 0;
     public static final ChunkCache instance = enabled ? new ChunkCache() : null;
 
+    /**
+     * Whether the reads of the current thread only use the chunks already in the cache, see {@link #readCachedOnly}.
+     */
+    private static final FastThreadLocal<Boolean> cachedOnly = new FastThreadLocal<Boolean>()
+    {
+        protected Boolean initialValue()
+        {
+            return false;
+        }
+    };
+
     private final LoadingCache<Key, Buffer> cache;
     public final CacheMissMetrics metrics;
 
+    /**
+     * Aborts a read that runs {@link #readCachedOnly cached only} on a chunk that is not in the cache. It is thrown
+     * on every miss, so it is shared and has no stack trace.
+     */
+    public static final class NotCachedException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private static final NotCachedException instance = new NotCachedException();
+
+        private NotCachedException()
+        {
+            super("Chunk not in the cache", null, false, false);
+        }
+    }
+
     static class Key
     {
         final ChunkReader file;
@@ -148,9 +177,15 @@ public class ChunkCache
 
     @Override
     public Buffer load(Key key) throws Exception
+    {
+        return load(key, ReadIntent.POINT_READ);
+    }
+
+    private Buffer load(Key key, ReadIntent intent)
     {
         ChunkReader rebufferer = key.file;
         metrics.misses.mark();
+        metrics.forIntent(intent).misses.mark();
         try (Timer.Context ctx = metrics.missLatency.time())
         {
             ByteBuffer buffer = BufferPool.get(key.file.chunkSize(), key.file.preferredBufferType());
@@ -160,6 +195,23 @@ public class ChunkCache
         }
     }
 
+    /**
+     * Whether chunks read with the given intent are added to the cache. Those that are not are only served from the
+     * cache when already present, and are otherwise read into a buffer that goes back to the pool once released.
+     */
+    private static boolean admits(ReadIntent intent)
+    {
+        switch (intent)
+        {
+            case POINT_READ:
+                return true;
+            case RANGE_SCAN:
+                return DatabaseDescriptor.getFileCacheAdmitRangeScans();
+            default:
+                return false;
+        }
+    }
+
     @Override
     public void onRemoval(Key key, Buffer buffer, RemovalCause cause)
     {
@@ -205,11 +257,59 @@ public class ChunkCache
         metrics.reset();
     }
 
+    /**
+     * @return whether all the sstable chunks read go through the cache, that is whether {@link #readCachedOnly} can
+     * tell that a read does not need the disk
+     */
+    public static boolean canReadCachedOnly()
+    {
+        return enabled
+               && DatabaseDescriptor.getDiskAccessMode() == Config.DiskAccessMode.standard
+               && DatabaseDescriptor.getIndexAccessMode() == Config.DiskAccessMode.standard;
+    }
+
+    /**
+     * Runs the given read on the current thread, aborting it on the first chunk that is not in the cache, so that
+     * the caller can run it again where waiting for the disk is fine.
+     * Whatever the read did before it aborted, such as updating metrics, is not undone.
+     *
+     * @return whether the read ran to completion, false if it was aborted on a cache miss
+     */
+    public static boolean readCachedOnly(Runnable read)
+    {
+        assert !cachedOnly.get();
+        cachedOnly.set(true);
+        try
+        {
+            read.run();
+            return true;
+        }
+        catch (RuntimeException e)
+        {
+            if (!isNotCached(e))
+                throw e;
+            return false;
+        }
+        finally
+        {
+            cachedOnly.set(false);
+        }
+    }
+
+    /**
+     * @return whether the given exception, possibly wrapped, is the abort of a read on a cache miss
+     */
+    public static boolean isNotCached(Throwable t)
+    {
+        return Iterables.any(Throwables.getCausalChain(t), NotCachedException.class::isInstance);
+    }
+
     // TODO: Invalidate caches for obsoleted/MOVED_START tables?
 
     /**
      * Rebufferer providing cached chunks where data is obtained from the specified ChunkReader.
      * Thread-safe. One instance per SegmentedFile, created by ChunkCache.maybeWrap if the cache is enabled.
+     * The instance itself serves point reads; reads of other intents go through an {@link IntentRebufferer}.
      */
     class CachingRebufferer implements Rebufferer, RebuffererFactory
     {
@@ -226,15 +326,46 @@ public class ChunkCache
 
         @Override
         public Buffer rebuffer(long position)
+        {
+            return rebuffer(position, ReadIntent.POINT_READ);
+        }
+
+        Buffer rebuffer(long position, ReadIntent intent)
         {
             try
             {
                 metrics.requests.mark();
-                long pageAlignedPos = position & alignmentMask;
+                metrics.forIntent(intent).requests.mark();
+                Key key = new Key(source, position & alignmentMask);
                 Buffer buf;
-                do
-                    buf = cache.get(new Key(source, pageAlignedPos)).reference();
-                while (buf == null);
+                if (cachedOnly.get())
+                {
+                    buf = cache.getIfPresent(key);
+                    if (buf != null)
+                        buf = buf.reference();
+                    if (buf == null)
+                        throw NotCachedException.instance;
+                }
+                else if (intent == ReadIntent.POINT_READ)
+                {
+                    do
+                        buf = cache.get(key).reference();
+                    while (buf == null);
+                }
+                else if (admits(intent))
+                {
+                    do
+                        buf = cache.get(key, k -> load(k, intent)).reference();
+                    while (buf == null);
+                }
+                else
+                {
+                    buf = cache.getIfPresent(key);
+                    if (buf != null)
+                        buf = buf.reference();
+                    if (buf == null)
+                        buf = load(key, intent);
+                }
 
                 return buf;
             }
@@ -257,6 +388,16 @@ public class ChunkCache
             return this;
         }
 
+        @Override
+        public Rebufferer instantiateRebufferer(ReadIntent intent)
+        {
+            if (intent == ReadIntent.POINT_READ)
+                return this;
+            if (PrefetchingRebufferer.enabledFor(intent))
+                return new PrefetchingRebufferer(this, source.chunkSize(), true, position -> rebuffer(position, intent));
+            return new IntentRebufferer(intent);
+        }
+
         @Override
         public void close()
         {
@@ -292,6 +433,61 @@ public class ChunkCache
         {
             return "CachingRebufferer:" + source;
         }
+
+        /**
+         * View of a {@link CachingRebufferer} for reads of an intent other than point reads.
+         */
+        class IntentRebufferer implements Rebufferer
+        {
+            private final ReadIntent intent;
+
+            IntentRebufferer(ReadIntent intent)
+            {
+                this.intent = intent;
+            }
+
+            @Override
+            public Buffer rebuffer(long position)
+            {
+                return CachingRebufferer.this.rebuffer(position, intent);
+            }
+
+            @Override
+            public void close()
+            {
+                // Only the factory owns the source.
+            }
+
+            @Override
+            public void closeReader()
+            {
+                // Nothing to release.
+            }
+
+            @Override
+            public ChannelProxy channel()
+            {
+                return source.channel();
+            }
+
+            @Override
+            public long fileLength()
+            {
+                return source.fileLength();
+            }
+
+            @Override
+            public double getCrcCheckChance()
+            {
+                return source.getCrcCheckChance();
+            }
+
+            @Override
+            public String toString()
+            {
+                return "CachingRebufferer:" + intent + ':' + source;
+            }
+        }
     }
 
     @Override
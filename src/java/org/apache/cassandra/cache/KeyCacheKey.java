@@ -23,6 +23,7 @@ import java.util.Objects;
 
 import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.schema.TableId;
 import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.ObjectSizes;
@@ -47,6 +48,13 @@ public class KeyCacheKey extends CacheKey
         assert this.key != null;
     }
 
+    public KeyCacheKey(TableId tableId, String indexName, Descriptor desc, byte[] key)
+    {
+        super(tableId, indexName);
+        this.desc = desc;
+        this.key = key;
+    }
+
     public String toString()
     {
         return String.format("KeyCacheKey(%s, %s)", desc, ByteBufferUtil.bytesToHex(ByteBuffer.wrap(key)));
@@ -0,0 +1,602 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.util.Memory;
+import org.apache.cassandra.schema.TableId;
+import org.apache.cassandra.utils.MurmurHash;
+
+/**
+ * A key cache holding its entries off heap, in fixed-size slots of open-addressing tables, so that millions of them
+ * cost neither heap nor GC time.
+ * <p>
+ * A slot holds the hash of the key, the position of its partition, the id of its sstable and the key itself, so only
+ * the entries of partitions without a row index, and with keys of at most {@link #MAX_KEY_LENGTH} bytes, are cached:
+ * the others are ignored, and looked up in the partition or primary index on every read. Sstables are given small ids
+ * while they have entries, which are reused once they have none.
+ * <p>
+ * The cache is split into segments, each a table using linear probing, guarded by its own lock. A segment is never
+ * more than three quarters full: beyond that it evicts with the CLOCK algorithm, whose hand sweeps the slots, clearing
+ * the flag reads set on the entries it goes past, and evicts the first entry it finds without it.
+ */
+public class OffHeapKeyCache implements ICache<KeyCacheKey, RowIndexEntry<?>>
+{
+    static final int SLOT_SIZE = 64;
+
+    // the layout of a slot
+    private static final int HASH = 0;
+    private static final int POSITION = 8;
+    private static final int SSTABLE = 16;
+    private static final int LENGTH = 20;
+    private static final int FLAGS = 21;
+    private static final int KEY = 22;
+
+    public static final int MAX_KEY_LENGTH = SLOT_SIZE - KEY;
+
+    private static final byte OCCUPIED = 1;
+    private static final byte REFERENCED = 2;
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int MIN_SEGMENT_SLOTS = 4;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+    private final SSTables sstables = new SSTables();
+    private volatile long capacity;
+
+    public OffHeapKeyCache(long capacity)
+    {
+        this.capacity = capacity;
+        for (int i = 0; i < segments.length; i++)
+            segments[i] = new Segment(segmentSlots(capacity));
+    }
+
+    private int segmentSlots(long capacity)
+    {
+        long slots = Math.min(capacity / SLOT_SIZE / segments.length, 1 << 30);
+        return slots < MIN_SEGMENT_SLOTS ? 0 : Integer.highestOneBit((int) slots);
+    }
+
+    public long capacity()
+    {
+        return capacity;
+    }
+
+    public void setCapacity(long capacity)
+    {
+        this.capacity = capacity;
+        for (Segment segment : segments)
+            segment.resize(segmentSlots(capacity));
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size;
+        return size;
+    }
+
+    public long weightedSize()
+    {
+        return (long) size() * SLOT_SIZE;
+    }
+
+    private static long hash(SSTable sstable, byte[] key)
+    {
+        return MurmurHash.hash2_64(ByteBuffer.wrap(key), 0, key.length, sstable.id);
+    }
+
+    private Segment segment(long hash)
+    {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    private static boolean cacheable(KeyCacheKey key, RowIndexEntry<?> value)
+    {
+        return key.key.length <= MAX_KEY_LENGTH && !value.isIndexed();
+    }
+
+    public void put(KeyCacheKey key, RowIndexEntry<?> value)
+    {
+        put(key, value, false);
+    }
+
+    public boolean putIfAbsent(KeyCacheKey key, RowIndexEntry<?> value)
+    {
+        return put(key, value, true);
+    }
+
+    private boolean put(KeyCacheKey key, RowIndexEntry<?> value, boolean onlyIfAbsent)
+    {
+        if (!cacheable(key, value))
+            return false;
+
+        SSTable sstable = sstables.acquire(key);
+        long hash = hash(sstable, key.key);
+        int result = segment(hash).put(hash, sstable, key.key, value.position, onlyIfAbsent);
+        // the new entry did not take a slot of its own
+        if (result != Segment.ADDED)
+            sstables.release(sstable);
+        return result != Segment.PRESENT;
+    }
+
+    public boolean replace(KeyCacheKey key, RowIndexEntry<?> old, RowIndexEntry<?> value)
+    {
+        SSTable sstable = sstables.get(key.desc);
+        if (sstable == null || !cacheable(key, value))
+            return false;
+
+        long hash = hash(sstable, key.key);
+        return segment(hash).replace(hash, sstable, key.key, old.position, value.position);
+    }
+
+    public RowIndexEntry<?> get(KeyCacheKey key)
+    {
+        SSTable sstable = sstables.get(key.desc);
+        if (sstable == null || key.key.length > MAX_KEY_LENGTH)
+            return null;
+
+        long hash = hash(sstable, key.key);
+        long position = segment(hash).get(hash, sstable, key.key);
+        return position < 0 ? null : new RowIndexEntry<>(position);
+    }
+
+    public boolean containsKey(KeyCacheKey key)
+    {
+        return get(key) != null;
+    }
+
+    public void remove(KeyCacheKey key)
+    {
+        SSTable sstable = sstables.get(key.desc);
+        if (sstable == null || key.key.length > MAX_KEY_LENGTH)
+            return;
+
+        long hash = hash(sstable, key.key);
+        segment(hash).remove(hash, sstable, key.key);
+    }
+
+    public void clear()
+    {
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    public Iterator<KeyCacheKey> keyIterator()
+    {
+        return new KeyIterator();
+    }
+
+    /**
+     * @return the keys referenced since the CLOCK hand last went past them, then the others, up to the given number
+     */
+    public Iterator<KeyCacheKey> hotKeyIterator(int n)
+    {
+        List<KeyCacheKey> keys = new ArrayList<>();
+        for (Segment segment : segments)
+            segment.collect(keys, true, n);
+        for (Segment segment : segments)
+            segment.collect(keys, false, n);
+        return keys.iterator();
+    }
+
+    /**
+     * Iterates over the keys one segment at a time, copying those of a segment when it gets to it.
+     */
+    private class KeyIterator implements Iterator<KeyCacheKey>
+    {
+        private int segment;
+        private Iterator<KeyCacheKey> keys = Collections.emptyIterator();
+        private KeyCacheKey last;
+
+        public boolean hasNext()
+        {
+            while (!keys.hasNext() && segment < segments.length)
+            {
+                List<KeyCacheKey> batch = new ArrayList<>();
+                segments[segment++].collect(batch, null, Integer.MAX_VALUE);
+                keys = batch.iterator();
+            }
+            return keys.hasNext();
+        }
+
+        public KeyCacheKey next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return last = keys.next();
+        }
+
+        public void remove()
+        {
+            if (last == null)
+                throw new IllegalStateException();
+            OffHeapKeyCache.this.remove(last);
+            last = null;
+        }
+    }
+
+    private final class Segment
+    {
+        static final int ADDED = 0;
+        static final int REPLACED = 1;
+        static final int PRESENT = 2;
+
+        private Memory slots;
+        private int mask;
+        private int maxSize;
+        private volatile int size;
+        private int hand;
+
+        Segment(int slotCount)
+        {
+            allocate(slotCount);
+        }
+
+        private void allocate(int slotCount)
+        {
+            if (slotCount == 0)
+            {
+                slots = null;
+                mask = 0;
+                maxSize = 0;
+            }
+            else
+            {
+                slots = Memory.allocate((long) slotCount * SLOT_SIZE);
+                slots.setMemory(0, slots.size(), (byte) 0);
+                mask = slotCount - 1;
+                maxSize = (int) (slotCount * LOAD_FACTOR);
+            }
+            size = 0;
+            hand = 0;
+        }
+
+        private long offset(int slot)
+        {
+            return (long) slot * SLOT_SIZE;
+        }
+
+        private byte flags(int slot)
+        {
+            return slots.getByte(offset(slot) + FLAGS);
+        }
+
+        /**
+         * @return the slot of the given key, or -1 if it is absent
+         */
+        private int find(long hash, SSTable sstable, byte[] key)
+        {
+            if (slots == null)
+                return -1;
+
+            for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask)
+            {
+                long offset = offset(slot);
+                if (slots.getByte(offset + FLAGS) == 0)
+                    return -1;
+                if (slots.getLong(offset + HASH) == hash
+                    && slots.getInt(offset + SSTABLE) == sstable.id
+                    && matches(offset, key))
+                    return slot;
+            }
+        }
+
+        private boolean matches(long offset, byte[] key)
+        {
+            if (slots.getByte(offset + LENGTH) != key.length)
+                return false;
+            for (int i = 0; i < key.length; i++)
+            {
+                if (slots.getByte(offset + KEY + i) != key[i])
+                    return false;
+            }
+            return true;
+        }
+
+        synchronized long get(long hash, SSTable sstable, byte[] key)
+        {
+            int slot = find(hash, sstable, key);
+            // an id is only reused once no entry has it, so an entry found for an sstable without any is another's
+            if (slot < 0 || !sstable.isLive())
+                return -1;
+
+            long offset = offset(slot);
+            slots.setByte(offset + FLAGS, (byte) (OCCUPIED | REFERENCED));
+            return slots.getLong(offset + POSITION);
+        }
+
+        synchronized int put(long hash, SSTable sstable, byte[] key, long position, boolean onlyIfAbsent)
+        {
+            if (slots == null)
+                return PRESENT;
+
+            int slot = find(hash, sstable, key);
+            if (slot >= 0)
+            {
+                if (onlyIfAbsent)
+                    return PRESENT;
+                slots.setLong(offset(slot) + POSITION, position);
+                return REPLACED;
+            }
+
+            if (size >= maxSize)
+                evict();
+
+            slot = (int) hash & mask;
+            while (flags(slot) != 0)
+                slot = (slot + 1) & mask;
+
+            long offset = offset(slot);
+            slots.setLong(offset + HASH, hash);
+            slots.setLong(offset + POSITION, position);
+            slots.setInt(offset + SSTABLE, sstable.id);
+            slots.setByte(offset + LENGTH, (byte) key.length);
+            slots.setByte(offset + FLAGS, OCCUPIED);
+            slots.setBytes(offset + KEY, key, 0, key.length);
+            size++;
+            return ADDED;
+        }
+
+        synchronized boolean replace(long hash, SSTable sstable, byte[] key, long oldPosition, long position)
+        {
+            int slot = find(hash, sstable, key);
+            if (slot < 0 || !sstable.isLive() || slots.getLong(offset(slot) + POSITION) != oldPosition)
+                return false;
+
+            slots.setLong(offset(slot) + POSITION, position);
+            return true;
+        }
+
+        synchronized void remove(long hash, SSTable sstable, byte[] key)
+        {
+            int slot = find(hash, sstable, key);
+            if (slot >= 0 && sstable.isLive())
+                delete(slot);
+        }
+
+        /**
+         * Moves the CLOCK hand to the first entry not referenced since it last went past, and evicts it.
+         */
+        private void evict()
+        {
+            while (true)
+            {
+                byte flags = flags(hand);
+                if (flags == OCCUPIED)
+                {
+                    // the entries after it may move back into its slot, so the hand stays put
+                    delete(hand);
+                    return;
+                }
+                if (flags != 0)
+                    slots.setByte(offset(hand) + FLAGS, OCCUPIED);
+                hand = (hand + 1) & mask;
+            }
+        }
+
+        /**
+         * Empties the given slot, moving back the entries of its cluster that cannot be found past a free slot.
+         */
+        private void delete(int slot)
+        {
+            sstables.release(sstables.get(slots.getInt(offset(slot) + SSTABLE)));
+            size--;
+
+            int free = slot;
+            for (int next = (free + 1) & mask; flags(next) != 0; next = (next + 1) & mask)
+            {
+                int home = (int) slots.getLong(offset(next) + HASH) & mask;
+                // the entry can move back if the free slot is between its home and its slot
+                if (((next - home) & mask) >= ((next - free) & mask))
+                {
+                    slots.put(offset(free), slots, offset(next), SLOT_SIZE);
+                    free = next;
+                }
+            }
+            slots.setMemory(offset(free), SLOT_SIZE, (byte) 0);
+        }
+
+        synchronized void clear()
+        {
+            if (slots == null)
+                return;
+
+            for (int slot = 0; slot <= mask; slot++)
+            {
+                if (flags(slot) != 0)
+                    sstables.release(sstables.get(slots.getInt(offset(slot) + SSTABLE)));
+            }
+            slots.setMemory(0, slots.size(), (byte) 0);
+            size = 0;
+            hand = 0;
+        }
+
+        /**
+         * Reallocates the segment with the given number of slots, keeping as many entries as fit.
+         */
+        synchronized void resize(int slotCount)
+        {
+            Memory old = slots;
+            int oldMask = mask;
+            allocate(slotCount);
+            if (old == null)
+                return;
+
+            for (int slot = 0; slot <= oldMask; slot++)
+            {
+                long oldOffset = (long) slot * SLOT_SIZE;
+                if (old.getByte(oldOffset + FLAGS) == 0)
+                    continue;
+
+                if (size >= maxSize)
+                {
+                    sstables.release(sstables.get(old.getInt(oldOffset + SSTABLE)));
+                    continue;
+                }
+
+                int newSlot = (int) old.getLong(oldOffset + HASH) & mask;
+                while (flags(newSlot) != 0)
+                    newSlot = (newSlot + 1) & mask;
+                slots.put(offset(newSlot), old, oldOffset, SLOT_SIZE);
+                size++;
+            }
+            old.free();
+        }
+
+        /**
+         * Adds the keys of the segment to the given list, up to the given size.
+         *
+         * @param referenced whether to add only the keys referenced since the CLOCK hand last went past them, or only
+         *                   the others, or null to add all of them
+         */
+        synchronized void collect(List<KeyCacheKey> keys, Boolean referenced, int limit)
+        {
+            if (slots == null)
+                return;
+
+            for (int slot = 0; slot <= mask && keys.size() < limit; slot++)
+            {
+                byte flags = flags(slot);
+                if (flags == 0 || (referenced != null && referenced != ((flags & REFERENCED) != 0)))
+                    continue;
+
+                long offset = offset(slot);
+                SSTable sstable = sstables.get(slots.getInt(offset + SSTABLE));
+                byte[] key = new byte[slots.getByte(offset + LENGTH)];
+                slots.getBytes(offset + KEY, key, 0, key.length);
+                keys.add(new KeyCacheKey(sstable.tableId, sstable.indexName, sstable.descriptor, key));
+            }
+        }
+    }
+
+    /**
+     * An sstable with entries in the cache.
+     */
+    private static final class SSTable
+    {
+        final int id;
+        final Descriptor descriptor;
+        final TableId tableId;
+        final String indexName;
+        // the number of entries of the sstable, or -1 once it has none and its id can be reused
+        final AtomicInteger entries = new AtomicInteger();
+
+        SSTable(int id, KeyCacheKey key)
+        {
+            this.id = id;
+            this.descriptor = key.desc;
+            this.tableId = key.tableId;
+            this.indexName = key.indexName;
+        }
+
+        boolean isLive()
+        {
+            return entries.get() >= 0;
+        }
+
+        boolean tryAcquire()
+        {
+            while (true)
+            {
+                int current = entries.get();
+                if (current < 0)
+                    return false;
+                if (entries.compareAndSet(current, current + 1))
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * The ids of the sstables with entries in the cache.
+     */
+    private static final class SSTables
+    {
+        private final ConcurrentHashMap<Descriptor, SSTable> byDescriptor = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Integer, SSTable> byId = new ConcurrentHashMap<>();
+        private final ConcurrentLinkedQueue<Integer> freeIds = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger nextId = new AtomicInteger();
+
+        SSTable get(Descriptor descriptor)
+        {
+            return byDescriptor.get(descriptor);
+        }
+
+        SSTable get(int id)
+        {
+            return byId.get(id);
+        }
+
+        /**
+         * @return the sstable of the given key, counting one more entry for it
+         */
+        SSTable acquire(KeyCacheKey key)
+        {
+            while (true)
+            {
+                SSTable sstable = byDescriptor.get(key.desc);
+                if (sstable == null)
+                {
+                    Integer id = freeIds.poll();
+                    SSTable created = new SSTable(id == null ? nextId.getAndIncrement() : id, key);
+                    byId.put(created.id, created);
+                    sstable = byDescriptor.putIfAbsent(key.desc, created);
+                    if (sstable == null)
+                    {
+                        sstable = created;
+                    }
+                    else
+                    {
+                        byId.remove(created.id);
+                        freeIds.add(created.id);
+                    }
+                }
+                // an sstable whose last entry was just released is replaced with a new one
+                if (sstable.tryAcquire())
+                    return sstable;
+            }
+        }
+
+        /**
+         * Counts one less entry for the given sstable, giving up its id if it has none left.
+         */
+        void release(SSTable sstable)
+        {
+            if (sstable.entries.decrementAndGet() == 0 && sstable.entries.compareAndSet(0, -1))
+            {
+                byDescriptor.remove(sstable.descriptor, sstable);
+                byId.remove(sstable.id);
+                freeIds.add(sstable.id);
+            }
+        }
+    }
+}
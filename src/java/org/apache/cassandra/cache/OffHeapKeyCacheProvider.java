@@ -15,16 +15,15 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+package org.apache.cassandra.cache;
 
-package org.apache.cassandra.Treas;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.RowIndexEntry;
 
-public class FetchTagObject
+public class OffHeapKeyCacheProvider implements CacheProvider<KeyCacheKey, RowIndexEntry<?>>
 {
-    public String minTagColName = null;
-    public String maxFieldColName = null;
-    public Long maxCoordinatorTag = null;
-    public Long minCoodinatorTag = null;
-    public int hit = 1;
-    public Long maxTagAll = null;
-    public String minFieldColName;
+    public ICache<KeyCacheKey, RowIndexEntry<?>> create()
+    {
+        return new OffHeapKeyCache(DatabaseDescriptor.getKeyCacheSizeInMB() * 1024 * 1024);
+    }
 }
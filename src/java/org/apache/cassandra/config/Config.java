@@ -117,6 +117,7 @@ public class Config
     public Integer concurrent_replicates = null;
 
     public int memtable_flush_writers = 0;
+    public int memtable_shards = 0;
     public Integer memtable_heap_space_in_mb;
     public Integer memtable_offheap_space_in_mb;
     public Float memtable_cleanup_threshold = null;
@@ -166,6 +167,8 @@ public class Config
     /* if the size of columns or super-columns are more than this, indexing will kick in */
     public int column_index_size_in_kb = 64;
     public int column_index_cache_size_in_kb = 2;
+    /* keep the probes of each key in one cache line of the bloom filter, see SplitBlockBloomFilter */
+    public boolean split_block_bloom_filter = false;
     public volatile int batch_size_warn_threshold_in_kb = 5;
     public volatile int batch_size_fail_threshold_in_kb = 50;
     public Integer unlogged_batch_across_partitions_warn_threshold = 10;
@@ -204,6 +207,8 @@ public class Config
     public int commitlog_segment_size_in_mb = 32;
     public ParameterizedClass commitlog_compression;
     public int commitlog_max_compression_buffers_in_pool = 3;
+    public boolean commitlog_direct_io = false;
+    public int commitlog_recycled_segments = 2;
     public TransparentDataEncryptionOptions transparent_data_encryption_options = new TransparentDataEncryptionOptions();
 
     public Integer max_mutation_size_in_kb;
@@ -243,6 +248,8 @@ public class Config
     public Long key_cache_size_in_mb = null;
     public volatile int key_cache_save_period = 14400;
     public volatile int key_cache_keys_to_save = Integer.MAX_VALUE;
+    /* the key cache is held on heap unless this names a CacheProvider */
+    public String key_cache_class_name = null;
 
     public String row_cache_class_name = "org.apache.cassandra.cache.OHCProvider";
     public long row_cache_size_in_mb = 0;
@@ -253,6 +260,9 @@ public class Config
     public volatile int counter_cache_save_period = 7200;
     public volatile int counter_cache_keys_to_save = Integer.MAX_VALUE;
 
+    /* off-heap memory of the TREAS tag index of each erasure coded table, see TreasTagIndex */
+    public long treas_tag_index_size_in_mb = 16;
+
     private static boolean isClientMode = false;
 
     public Integer file_cache_size_in_mb;
@@ -268,6 +278,26 @@ public class Config
      */
     public Boolean file_cache_round_up;
 
+    /**
+     * Compaction and other maintenance reads never add chunks to the file cache, only use those already in it, so
+     * that they do not evict the chunks used by point reads. Partition range reads do the same unless this is set.
+     */
+    public boolean file_cache_admit_range_scans = false;
+
+    /**
+     * Number of chunks that sequential sstable reads by compaction and partition range scans keep in flight ahead
+     * of the reader. They are read, and decompressed, by a pool of sstable_read_ahead_threads threads.
+     * 0 disables read-ahead.
+     */
+    public int sstable_read_ahead_chunks = 4;
+    public int sstable_read_ahead_threads = 4;
+
+    /**
+     * Local single partition reads at consistency ONE or LOCAL_ONE run on the coordinating thread rather than the
+     * read stage when all the chunks they read are in the file cache, and go to the read stage on the first miss.
+     */
+    public volatile boolean inline_cached_local_reads = false;
+
     public boolean buffer_pool_use_heap_if_exhausted = true;
 
     public DiskOptimizationStrategy disk_optimization_strategy = DiskOptimizationStrategy.ssd;
@@ -317,6 +347,12 @@ public class Config
     public int otc_coalescing_window_us = otc_coalescing_window_us_default;
     public int otc_coalescing_enough_coalesced_messages = 8;
 
+    /**
+     * Size of the buffers that outbound messages are serialized into together until the connection is flushed, so
+     * that they are written with few large writes. Larger messages get a buffer of their own. 0 disables batching.
+     */
+    public int otc_message_batch_size_in_kb = 64;
+
     /**
      * Backlog expiration interval in milliseconds for the OutboundTcpConnection.
      */
@@ -429,7 +465,8 @@ public class Config
         unslabbed_heap_buffers,
         heap_buffers,
         offheap_buffers,
-        offheap_objects
+        offheap_objects,
+        offheap_trie
     }
 
     public enum DiskFailurePolicy
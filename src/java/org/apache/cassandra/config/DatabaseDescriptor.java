@@ -429,6 +429,11 @@ public class DatabaseDescriptor
         if (conf.file_cache_round_up == null)
             conf.file_cache_round_up = conf.disk_optimization_strategy == Config.DiskOptimizationStrategy.spinning;
 
+        if (conf.sstable_read_ahead_chunks < 0)
+            throw new ConfigurationException("sstable_read_ahead_chunks must not be negative, but was " + conf.sstable_read_ahead_chunks, false);
+        if (conf.sstable_read_ahead_threads <= 0)
+            throw new ConfigurationException("sstable_read_ahead_threads must be positive, but was " + conf.sstable_read_ahead_threads, false);
+
         if (conf.memtable_offheap_space_in_mb == null)
             conf.memtable_offheap_space_in_mb = (int) (Runtime.getRuntime().maxMemory() / (4 * 1048576));
         if (conf.memtable_offheap_space_in_mb < 0)
@@ -584,6 +589,12 @@ public class DatabaseDescriptor
         if (conf.memtable_flush_writers < 1)
             throw new ConfigurationException("memtable_flush_writers must be at least 1, but was " + conf.memtable_flush_writers, false);
 
+        if (conf.memtable_shards == 0)
+            conf.memtable_shards = conf.data_file_directories.length;
+
+        if (conf.memtable_shards < 1)
+            throw new ConfigurationException("memtable_shards must be at least 1, but was " + conf.memtable_shards, false);
+
         if (conf.memtable_cleanup_threshold == null)
         {
             conf.memtable_cleanup_threshold = (float) (1.0 / (1 + conf.memtable_flush_writers));
@@ -663,6 +674,9 @@ public class DatabaseDescriptor
                                              + conf.counter_cache_size_in_mb + "', supported values are <integer> >= 0.", false);
         }
 
+        if (conf.treas_tag_index_size_in_mb < 1)
+            throw new ConfigurationException("treas_tag_index_size_in_mb must be at least 1, but was " + conf.treas_tag_index_size_in_mb, false);
+
         // if set to empty/"auto" then use 5% of Heap size
         indexSummaryCapacityInMB = (conf.index_summary_capacity_in_mb == null)
                                    ? Math.max(1, (int) (Runtime.getRuntime().totalMemory() * 0.05 / 1024 / 1024))
@@ -692,6 +706,10 @@ public class DatabaseDescriptor
         else if (conf.commitlog_segment_size_in_mb * 1024 < 2 * conf.max_mutation_size_in_kb)
             throw new ConfigurationException("commitlog_segment_size_in_mb must be at least twice the size of max_mutation_size_in_kb / 1024", false);
 
+        if (conf.commitlog_recycled_segments < 0)
+            throw new ConfigurationException("commitlog_recycled_segments must not be negative, but was "
+                    + conf.commitlog_recycled_segments, false);
+
         // native transport encryption options
         if (conf.native_transport_port_ssl != null
             && conf.native_transport_port_ssl != conf.native_transport_port
@@ -751,6 +769,9 @@ public class DatabaseDescriptor
         if (conf.otc_coalescing_enough_coalesced_messages <= 0)
             throw new ConfigurationException("otc_coalescing_enough_coalesced_messages must be positive", false);
 
+        if (conf.otc_message_batch_size_in_kb < 0 || conf.otc_message_batch_size_in_kb >= 1024 * 1024)
+            throw new ConfigurationException("otc_message_batch_size_in_kb must be between 0 and 1GB", false);
+
         validateMaxConcurrentAutoUpgradeTasksConf(conf.max_concurrent_automatic_sstable_upgrades);
     }
 
@@ -1289,6 +1310,17 @@ public class DatabaseDescriptor
         conf.column_index_cache_size_in_kb = val;
     }
 
+    public static boolean getSplitBlockBloomFilter()
+    {
+        return conf.split_block_bloom_filter;
+    }
+
+    @VisibleForTesting
+    public static void setSplitBlockBloomFilter(boolean val)
+    {
+        conf.split_block_bloom_filter = val;
+    }
+
     public static int getBatchSizeWarnThreshold()
     {
         return conf.batch_size_warn_threshold_in_kb * 1024;
@@ -1528,6 +1560,11 @@ public class DatabaseDescriptor
             return conf.memtable_flush_writers;
     }
 
+    public static int getMemtableShards()
+    {
+        return conf.memtable_shards;
+    }
+
     public static int getConcurrentCompactors()
     {
         return conf.concurrent_compactors;
@@ -1642,6 +1679,25 @@ public class DatabaseDescriptor
         conf.commitlog_max_compression_buffers_in_pool = buffers;
     }
 
+    public static boolean getCommitLogDirectIO()
+    {
+        return conf.commitlog_direct_io;
+    }
+
+    @VisibleForTesting
+    public static void setCommitLogDirectIO(boolean directIO)
+    {
+        conf.commitlog_direct_io = directIO;
+    }
+
+    /**
+     * Maximum number of discarded segment files kept, zeroed, for reuse by direct I/O segments instead of being deleted.
+     */
+    public static int getCommitLogRecycledSegments()
+    {
+        return conf.commitlog_recycled_segments;
+    }
+
     public static int getMaxMutationSize()
     {
         return conf.max_mutation_size_in_kb * 1024;
@@ -2120,6 +2176,38 @@ public class DatabaseDescriptor
         return conf.file_cache_round_up;
     }
 
+    public static boolean getFileCacheAdmitRangeScans()
+    {
+        return conf.file_cache_admit_range_scans;
+    }
+
+    public static int getSSTableReadAheadChunks()
+    {
+        return conf.sstable_read_ahead_chunks;
+    }
+
+    @VisibleForTesting
+    public static void setSSTableReadAheadChunks(int chunks)
+    {
+        conf.sstable_read_ahead_chunks = chunks;
+    }
+
+    public static int getSSTableReadAheadThreads()
+    {
+        return conf.sstable_read_ahead_threads;
+    }
+
+    public static boolean getInlineCachedLocalReads()
+    {
+        return conf.inline_cached_local_reads;
+    }
+
+    @VisibleForTesting
+    public static void setInlineCachedLocalReads(boolean inline)
+    {
+        conf.inline_cached_local_reads = inline;
+    }
+
     public static boolean getBufferPoolUseHeapIfExhausted()
     {
         return conf.buffer_pool_use_heap_if_exhausted;
@@ -2189,6 +2277,11 @@ public class DatabaseDescriptor
         conf.key_cache_keys_to_save = keyCacheKeysToSave;
     }
 
+    public static String getKeyCacheClassName()
+    {
+        return conf.key_cache_class_name;
+    }
+
     public static String getRowCacheClassName()
     {
         return conf.row_cache_class_name;
@@ -2250,6 +2343,17 @@ public class DatabaseDescriptor
         conf.counter_cache_keys_to_save = counterCacheKeysToSave;
     }
 
+    public static long getTreasTagIndexSizeInMB()
+    {
+        return conf.treas_tag_index_size_in_mb;
+    }
+
+    @VisibleForTesting
+    public static void setTreasTagIndexSizeInMB(long treasTagIndexSizeInMB)
+    {
+        conf.treas_tag_index_size_in_mb = treasTagIndexSizeInMB;
+    }
+
     public static int getStreamingKeepAlivePeriod()
     {
         return conf.streaming_keep_alive_period_in_secs;
@@ -2361,6 +2465,17 @@ public class DatabaseDescriptor
         conf.otc_coalescing_enough_coalesced_messages = otc_coalescing_enough_coalesced_messages;
     }
 
+    public static int getOtcMessageBatchSize()
+    {
+        return conf.otc_message_batch_size_in_kb * 1024;
+    }
+
+    @VisibleForTesting
+    public static void setOtcMessageBatchSize(int sizeInKb)
+    {
+        conf.otc_message_batch_size_in_kb = sizeInKb;
+    }
+
     public static int getOtcBacklogExpirationInterval()
     {
         return conf.otc_backlog_expiration_interval_ms;
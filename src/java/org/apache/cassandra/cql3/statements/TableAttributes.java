@@ -107,6 +107,9 @@ public final class TableAttributes extends PropertyDefinitions
         if (hasOption(Option.DEFAULT_TIME_TO_LIVE))
             builder.defaultTimeToLive(getInt(Option.DEFAULT_TIME_TO_LIVE));
 
+        if (hasOption(Option.ERASURE_CODING))
+            builder.erasureCoding(ErasureCodingParams.fromMap(getMap(Option.ERASURE_CODING)));
+
         if (hasOption(Option.GC_GRACE_SECONDS))
             builder.gcGraceSeconds(getInt(Option.GC_GRACE_SECONDS));
 
@@ -116,6 +119,9 @@ public final class TableAttributes extends PropertyDefinitions
         if (hasOption(Option.MEMTABLE_FLUSH_PERIOD_IN_MS))
             builder.memtableFlushPeriodInMs(getInt(Option.MEMTABLE_FLUSH_PERIOD_IN_MS));
 
+        if (hasOption(Option.MEMTABLE_SHARDS))
+            builder.memtableShards(getInt(Option.MEMTABLE_SHARDS));
+
         if (hasOption(Option.MIN_INDEX_INTERVAL))
             builder.minIndexInterval(getInt(Option.MIN_INDEX_INTERVAL));
 
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.BooleanType;
+import org.apache.cassandra.db.marshal.ByteType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.LongType;
+import org.apache.cassandra.db.marshal.ReversedType;
+import org.apache.cassandra.db.marshal.ShortType;
+import org.apache.cassandra.db.marshal.TimestampType;
+
+/**
+ * The byte-comparable form of clustering prefixes, used to key tries: unsigned byte order of the encoded forms
+ * matches {@link ClusteringComparator} order, and no encoded prefix is a prefix of another.
+ * <p>
+ * Each component is encoded as a byte telling whether it is null, empty or has a value, followed by the value. Values
+ * of byte-order comparable types have every 0x00 escaped as 0x00 0xFF and end with 0x00 0x00; values of fixed-size
+ * signed integer types have their sign bit flipped. The bytes of the components of {@link ReversedType}s are
+ * inverted. A byte telling how the kind of the prefix sorts relative to clusterings with more components ends it.
+ * <p>
+ * Only clusterings whose types are all byte-order comparable or fixed-size integers are supported.
+ */
+public final class ByteComparableClustering
+{
+    private static final int NULL = 0x3E;
+    private static final int EMPTY = 0x3F;
+    private static final int VALUE = 0x40;
+    private static final int EMPTY_REVERSED = 0x41;
+
+    private static final int END_BEFORE_VALUES = 0x20;
+    private static final int END_STATIC = 0x30;
+    private static final int END_CLUSTERING = 0x38;
+    private static final int END_AFTER_VALUES = 0x60;
+
+    private ByteComparableClustering()
+    {
+    }
+
+    public static boolean supports(List<AbstractType<?>> types)
+    {
+        for (AbstractType<?> type : types)
+        {
+            if (type.isReversed())
+                type = ((ReversedType<?>) type).baseType;
+            if (!type.isByteOrderComparable && fixedSize(type) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the size of the values of the given fixed-size type, or -1 if it is not one
+     */
+    private static int fixedSize(AbstractType<?> type)
+    {
+        if (type == LongType.instance || type == TimestampType.instance)
+            return 8;
+        if (type == Int32Type.instance)
+            return 4;
+        if (type == ShortType.instance)
+            return 2;
+        if (type == ByteType.instance || type == BooleanType.instance)
+            return 1;
+        return -1;
+    }
+
+    /**
+     * @param types the clustering types, which must be {@link #supports supported}
+     * @return the encoded prefix, or null if one of its values does not have the size of its type
+     */
+    public static byte[] encode(List<AbstractType<?>> types, ClusteringPrefix prefix)
+    {
+        int size = 1;
+        for (int i = 0; i < prefix.size(); i++)
+        {
+            ByteBuffer value = prefix.get(i);
+            size++;
+            if (value == null || !value.hasRemaining())
+                continue;
+
+            int fixedSize = fixedSize(baseType(types.get(i)));
+            if (fixedSize < 0)
+                size += value.remaining() + zeros(value) + 2;
+            else if (value.remaining() == fixedSize)
+                size += fixedSize;
+            else
+                return null;
+        }
+
+        byte[] bytes = new byte[size];
+        int j = 0;
+        for (int i = 0; i < prefix.size(); i++)
+        {
+            ByteBuffer value = prefix.get(i);
+            AbstractType<?> type = types.get(i);
+            boolean reversed = type.isReversed();
+            if (value == null)
+            {
+                bytes[j++] = NULL;
+                continue;
+            }
+            if (!value.hasRemaining())
+            {
+                bytes[j++] = (byte) (reversed ? EMPTY_REVERSED : EMPTY);
+                continue;
+            }
+
+            bytes[j++] = VALUE;
+            int start = j;
+            AbstractType<?> baseType = baseType(type);
+            if (fixedSize(baseType) < 0)
+            {
+                for (int k = value.position(); k < value.limit(); k++)
+                {
+                    byte b = value.get(k);
+                    bytes[j++] = b;
+                    if (b == 0)
+                        bytes[j++] = (byte) 0xFF;
+                }
+                // the array is zero-filled, so the terminator is already in place
+                j += 2;
+            }
+            else if (baseType == BooleanType.instance)
+            {
+                bytes[j++] = (byte) (value.get(value.position()) == 0 ? 0 : 1);
+            }
+            else
+            {
+                for (int k = value.position(); k < value.limit(); k++)
+                    bytes[j++] = value.get(k);
+                bytes[start] ^= 0x80;
+            }
+
+            if (reversed)
+            {
+                for (int k = start; k < j; k++)
+                    bytes[k] = (byte) ~bytes[k];
+            }
+        }
+        bytes[j] = (byte) terminator(prefix.kind());
+        return bytes;
+    }
+
+    private static int terminator(ClusteringPrefix.Kind kind)
+    {
+        switch (kind)
+        {
+            case STATIC_CLUSTERING:
+                return END_STATIC;
+            case CLUSTERING:
+                return END_CLUSTERING;
+            default:
+                return kind.comparedToClustering < 0 ? END_BEFORE_VALUES : END_AFTER_VALUES;
+        }
+    }
+
+    private static AbstractType<?> baseType(AbstractType<?> type)
+    {
+        return type.isReversed() ? ((ReversedType<?>) type).baseType : type;
+    }
+
+    private static int zeros(ByteBuffer value)
+    {
+        int zeros = 0;
+        for (int i = value.position(); i < value.limit(); i++)
+        {
+            if (value.get(i) == 0)
+                zeros++;
+        }
+        return zeros;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Token;
+
+/**
+ * The byte-comparable form of partition positions, used to key tries: unsigned byte order of the encoded forms
+ * matches {@link PartitionPosition} order, and no encoded key is a prefix of another.
+ * <p>
+ * Only {@link Murmur3Partitioner} tokens are supported, as they have a fixed size.
+ */
+public final class ByteComparableKey
+{
+    public static final int TOKEN_BYTES = 8;
+
+    private ByteComparableKey()
+    {
+    }
+
+    public static boolean supports(IPartitioner partitioner)
+    {
+        return partitioner instanceof Murmur3Partitioner;
+    }
+
+    /**
+     * Encodes a key as the token with its sign bit flipped, then the key with every 0x00 escaped as 0x00 0xFF,
+     * then 0x00 0x00.
+     */
+    public static byte[] encode(DecoratedKey key)
+    {
+        ByteBuffer buffer = key.getKey();
+        int position = buffer.position();
+        int limit = buffer.limit();
+        int zeros = 0;
+        for (int i = position; i < limit; i++)
+        {
+            if (buffer.get(i) == 0)
+                zeros++;
+        }
+
+        byte[] bytes = new byte[TOKEN_BYTES + limit - position + zeros + 2];
+        writeToken(key.getToken(), bytes);
+        int j = TOKEN_BYTES;
+        for (int i = position; i < limit; i++)
+        {
+            byte b = buffer.get(i);
+            bytes[j++] = b;
+            if (b == 0)
+                bytes[j++] = (byte) 0xFF;
+        }
+        // the array is zero-filled, so the terminator is already in place
+        return bytes;
+    }
+
+    /**
+     * Encodes a key as above, and a {@link Token.KeyBound} as the bytes of its token alone, which all the keys of
+     * that token are prefixed by. Whether the bound sorts before or after them is left to the caller.
+     */
+    public static byte[] encode(PartitionPosition position)
+    {
+        if (position instanceof DecoratedKey)
+            return encode((DecoratedKey) position);
+
+        byte[] bytes = new byte[TOKEN_BYTES];
+        writeToken(position.getToken(), bytes);
+        return bytes;
+    }
+
+    private static void writeToken(Token token, byte[] bytes)
+    {
+        long value = (Long) token.getTokenValue() ^ Long.MIN_VALUE;
+        for (int i = TOKEN_BYTES - 1; i >= 0; i--)
+        {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
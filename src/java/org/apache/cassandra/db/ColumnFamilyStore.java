@@ -43,6 +43,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.clearspring.analytics.stream.Counter;
+import org.apache.cassandra.Treas.TreasTagIndex;
 import org.apache.cassandra.cache.*;
 import org.apache.cassandra.concurrent.*;
 import org.apache.cassandra.config.*;
@@ -90,7 +91,6 @@ import org.apache.cassandra.utils.*;
 import org.apache.cassandra.utils.TopKSampler.SamplerResult;
 import org.apache.cassandra.utils.concurrent.OpOrder;
 import org.apache.cassandra.utils.concurrent.Refs;
-import org.apache.cassandra.utils.memory.MemtableAllocator;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
@@ -103,8 +103,8 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
     /*
     We keep a pool of threads for each data directory, size of each pool is memtable_flush_writers.
     When flushing we start a Flush runnable in the flushExecutor. Flush calculates how to split the
-    memtable ranges over the existing data directories and creates a FlushRunnable for each of the directories.
-    The FlushRunnables are executed in the perDiskflushExecutors and the Flush will block until all FlushRunnables
+    memtable ranges over the existing data directories and creates a FlushRunnable for each memtable shard on each
+    of the directories. The FlushRunnables are executed in the perDiskflushExecutors of their directory and the Flush will block until all FlushRunnables
     are finished. By having flushExecutor size the same size as each of the perDiskflushExecutors we make sure we can
     have that many flushes going at the same time.
     */
@@ -546,6 +546,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         indexManager.dropAllIndexes();
 
         invalidateCaches();
+        TreasTagIndex.release(metadata.id);
     }
 
     /**
@@ -933,6 +934,14 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             data.addSSTables(newSSTables);
         }
 
+        // the TREAS tag index does not know the slots of the imported partitions
+        if (metadata().params.erasureCoding.isEnabled())
+        {
+            List<Bounds<Token>> boundsToInvalidate = new ArrayList<>(newSSTables.size());
+            newSSTables.forEach(sstable -> boundsToInvalidate.add(new Bounds<>(sstable.first.getToken(), sstable.last.getToken())));
+            TreasTagIndex.invalidate(metadata.id, Bounds.getNonOverlappingBounds(boundsToInvalidate));
+        }
+
         logger.info("Done loading load new SSTables for {}/{}", keyspace.getName(), name);
     }
 
@@ -1035,18 +1044,18 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         float onHeapRatio = 0, offHeapRatio = 0;
         long onHeapTotal = 0, offHeapTotal = 0;
         Memtable memtable = getTracker().getView().getCurrentMemtable();
-        onHeapRatio +=  memtable.getAllocator().onHeap().ownershipRatio();
-        offHeapRatio += memtable.getAllocator().offHeap().ownershipRatio();
-        onHeapTotal += memtable.getAllocator().onHeap().owns();
-        offHeapTotal += memtable.getAllocator().offHeap().owns();
+        onHeapRatio +=  memtable.getOnHeapOwnershipRatio();
+        offHeapRatio += memtable.getOffHeapOwnershipRatio();
+        onHeapTotal += memtable.getOnHeapOwns();
+        offHeapTotal += memtable.getOffHeapOwns();
 
         for (ColumnFamilyStore indexCfs : indexManager.getAllIndexColumnFamilyStores())
         {
-            MemtableAllocator allocator = indexCfs.getTracker().getView().getCurrentMemtable().getAllocator();
-            onHeapRatio += allocator.onHeap().ownershipRatio();
-            offHeapRatio += allocator.offHeap().ownershipRatio();
-            onHeapTotal += allocator.onHeap().owns();
-            offHeapTotal += allocator.offHeap().owns();
+            Memtable indexMemtable = indexCfs.getTracker().getView().getCurrentMemtable();
+            onHeapRatio += indexMemtable.getOnHeapOwnershipRatio();
+            offHeapRatio += indexMemtable.getOffHeapOwnershipRatio();
+            onHeapTotal += indexMemtable.getOnHeapOwns();
+            offHeapTotal += indexMemtable.getOffHeapOwns();
         }
 
         logger.debug("Enqueuing flush of {}: {}",
@@ -1274,7 +1283,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                     flushRunnables = memtable.flushRunnables(txn);
 
                     for (int i = 0; i < flushRunnables.size(); i++)
-                        futures.add(perDiskflushExecutors[i].submit(flushRunnables.get(i)));
+                        futures.add(perDiskflushExecutors[flushRunnables.get(i).diskIndex()].submit(flushRunnables.get(i)));
 
                     /**
                      * we can flush 2is as soon as the barrier completes, as they will be consistent with (or ahead of) the
@@ -1410,14 +1419,14 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 // find the total ownership ratio for the memtable and all SecondaryIndexes owned by this CF,
                 // both on- and off-heap, and select the largest of the two ratios to weight this CF
                 float onHeap = 0f, offHeap = 0f;
-                onHeap += current.getAllocator().onHeap().ownershipRatio();
-                offHeap += current.getAllocator().offHeap().ownershipRatio();
+                onHeap += current.getOnHeapOwnershipRatio();
+                offHeap += current.getOffHeapOwnershipRatio();
 
                 for (ColumnFamilyStore indexCfs : cfs.indexManager.getAllIndexColumnFamilyStores())
                 {
-                    MemtableAllocator allocator = indexCfs.getTracker().getView().getCurrentMemtable().getAllocator();
-                    onHeap += allocator.onHeap().ownershipRatio();
-                    offHeap += allocator.offHeap().ownershipRatio();
+                    Memtable indexMemtable = indexCfs.getTracker().getView().getCurrentMemtable();
+                    onHeap += indexMemtable.getOnHeapOwnershipRatio();
+                    offHeap += indexMemtable.getOffHeapOwnershipRatio();
                 }
 
                 float ratio = Math.max(onHeap, offHeap);
@@ -1437,8 +1446,8 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 float usedOffHeap = Memtable.MEMORY_POOL.offHeap.usedRatio();
                 float flushingOnHeap = Memtable.MEMORY_POOL.onHeap.reclaimingRatio();
                 float flushingOffHeap = Memtable.MEMORY_POOL.offHeap.reclaimingRatio();
-                float thisOnHeap = largest.getAllocator().onHeap().ownershipRatio();
-                float thisOffHeap = largest.getAllocator().offHeap().ownershipRatio();
+                float thisOnHeap = largest.getOnHeapOwnershipRatio();
+                float thisOffHeap = largest.getOffHeapOwnershipRatio();
                 logger.debug("Flushing largest {} to free up room. Used total: {}, live: {}, flushing: {}, this: {}",
                             largest.cfs, ratio(usedOnHeap, usedOffHeap), ratio(liveOnHeap, liveOffHeap),
                             ratio(flushingOnHeap, flushingOffHeap), ratio(thisOnHeap, thisOffHeap));
@@ -2150,6 +2159,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         CacheService.instance.invalidateRowCacheForCf(metadata());
         if (metadata().isCounter())
             CacheService.instance.invalidateCounterCacheForCf(metadata());
+        TreasTagIndex.invalidate(metadata.id);
     }
 
     public int invalidateRowCache(Collection<Bounds<Token>> boundsToInvalidate)
@@ -2285,13 +2295,32 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             {
                 public Void call()
                 {
+                    Memtable previous = cfs.data.getView().getCurrentMemtable();
                     cfs.data.reset(new Memtable(new AtomicReference<>(CommitLogPosition.NONE), cfs));
+                    discardUnsafe(cfs, previous);
                     return null;
                 }
             }, true, false);
         }
     }
 
+    /**
+     * Frees the memory of a memtable that was dropped rather than flushed, including the off-heap index of its
+     * partitions, once the writes and reads that may still use it are done.
+     */
+    private static void discardUnsafe(ColumnFamilyStore cfs, Memtable memtable)
+    {
+        OpOrder.Barrier writeBarrier = Keyspace.writeOrder.newBarrier();
+        writeBarrier.issue();
+        memtable.setDiscarding(writeBarrier, new AtomicReference<>(CommitLogPosition.NONE));
+        writeBarrier.await();
+
+        OpOrder.Barrier readBarrier = cfs.readOrdering.newBarrier();
+        readBarrier.issue();
+        readBarrier.await();
+        memtable.setDiscarded();
+    }
+
     /**
      * Truncate deletes the entire column family's data with no expensive tombstone creation
      */
@@ -28,6 +28,7 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.rows.*;
 import org.apache.cassandra.io.ISerializer;
 import org.apache.cassandra.io.sstable.IndexInfo;
+import org.apache.cassandra.io.sstable.RowIndexTrie;
 import org.apache.cassandra.io.sstable.format.SSTableFlushObserver;
 import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.util.DataOutputBuffer;
@@ -71,6 +72,10 @@ public class ColumnIndex
 
     private final Collection<SSTableFlushObserver> observers;
 
+    private final boolean hasRowIndexTrie;
+    // used, once the row-index-entry reaches config column_index_cache_size_in_kb, if the clustering types support it
+    private final RowIndexTrie.Builder rowIndexTrie;
+
     public ColumnIndex(SerializationHeader header,
                         SequentialWriter writer,
                         Version version,
@@ -82,6 +87,10 @@ public class ColumnIndex
         this.version = version.correspondingMessagingVersion();
         this.observers = observers;
         this.idxSerializer = indexInfoSerializer;
+        this.hasRowIndexTrie = version.hasRowIndexTrie();
+        this.rowIndexTrie = hasRowIndexTrie && ByteComparableClustering.supports(header.clusteringTypes())
+                            ? new RowIndexTrie.Builder(header.clusteringTypes())
+                            : null;
     }
 
     public void reset()
@@ -98,7 +107,11 @@ public class ColumnIndex
         this.lastClustering = null;
         this.openMarker = null;
         if (this.buffer != null)
+        {
             this.reusableBuffer = this.buffer;
+            if (rowIndexTrie != null)
+                rowIndexTrie.reset();
+        }
         this.buffer = null;
     }
 
@@ -203,6 +216,8 @@ public class ColumnIndex
                 for (IndexInfo indexSample : indexSamples)
                 {
                     idxSerializer.serialize(indexSample, buffer);
+                    if (rowIndexTrie != null)
+                        rowIndexTrie.add(indexSample);
                 }
             }
             else
@@ -214,6 +229,8 @@ public class ColumnIndex
         if (buffer != null)
         {
             idxSerializer.serialize(cIndexInfo, buffer);
+            if (rowIndexTrie != null)
+                rowIndexTrie.add(cIndexInfo);
         }
 
         firstClustering = null;
@@ -280,8 +297,15 @@ public class ColumnIndex
         // we have to write the offsts to these here. The offsets have already been are collected
         // in indexOffsets[]. buffer is != null, if it exceeds Config.column_index_cache_size_in_kb.
         // In the other case, when buffer==null, the offsets are serialized in RowIndexEntry.IndexedEntry.serialize().
+        // The same goes for the row index trie, which precedes the offsets and is only built in the former case.
         if (buffer != null)
+        {
+            if (rowIndexTrie != null)
+                rowIndexTrie.write(buffer);
+            else if (hasRowIndexTrie)
+                RowIndexTrie.writeNone(buffer);
             RowIndexEntry.Serializer.serializeOffsets(buffer, indexOffsets, columnIndexCount);
+        }
 
         // we should always have at least one computed index block, but we only write it out if there is more than that.
         assert columnIndexCount > 0 && headerLength >= 0;
@@ -291,6 +315,6 @@ public class ColumnIndex
     {
         return buffer != null
                ? buffer.buffer().limit()
-               : indexSamplesSerializedSize + columnIndexCount * TypeSizes.sizeof(0);
+               : indexSamplesSerializedSize + columnIndexCount * TypeSizes.sizeof(0) + (hasRowIndexTrie ? TypeSizes.sizeof(0) : 0);
     }
 }
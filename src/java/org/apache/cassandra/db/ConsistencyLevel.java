@@ -26,7 +26,6 @@ import com.google.common.collect.Iterables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.Treas.TreasConfig;
 import org.apache.cassandra.locator.InetAddressAndPort;
 import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.config.DatabaseDescriptor;
@@ -101,6 +100,12 @@ public enum ConsistencyLevel
         return ((keyspace.getReplicationStrategy().getReplicationFactor()+k) / 2) + 1;
     }
 
+    private int treasQuorumFor(Keyspace keyspace)
+    {
+        int quorum = keyspace.getErasureCodingQuorum();
+        return quorum > 0 ? quorum : quorumFor(keyspace);
+    }
+
     private int localQuorumFor(Keyspace keyspace, String dc)
     {
         return (keyspace.getReplicationStrategy() instanceof NetworkTopologyStrategy)
@@ -117,7 +122,7 @@ public enum ConsistencyLevel
             case CASFIVE:
                 return casFor(keyspace,5);
             case TREAS:
-                return TreasConfig.QUORUM;
+                return treasQuorumFor(keyspace);
             case ONE:
             case LOCAL_ONE:
                 return 1;
@@ -275,9 +280,8 @@ public enum ConsistencyLevel
                 break;
             case TREAS:
                 int currentLive = countLocalEndpoints(liveEndpoints);
-                //logger.debug( "CurrentLive: " + currentLive + " , Needed: " + TreasConfig.QUORUM);
-                if (currentLive < TreasConfig.QUORUM) {
-                    throw new UnavailableException(this, TreasConfig.QUORUM, currentLive);
+                if (currentLive < blockFor) {
+                    throw new UnavailableException(this, blockFor, currentLive);
                 }
                 break;
             case LOCAL_QUORUM:
@@ -24,6 +24,8 @@ import java.util.List;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.service.StorageService;
@@ -32,6 +34,8 @@ public class DiskBoundaries
 {
     public final List<Directories.DataDirectory> directories;
     public final ImmutableList<PartitionPosition> positions;
+    // the sorted ranges this node owns for the table, or null if it owns none
+    public final ImmutableList<Range<Token>> localRanges;
     final long ringVersion;
     final int directoriesVersion;
     private volatile boolean isInvalid = false;
@@ -43,9 +47,15 @@ public class DiskBoundaries
 
     @VisibleForTesting
     public DiskBoundaries(Directories.DataDirectory[] directories, List<PartitionPosition> positions, long ringVersion, int diskVersion)
+    {
+        this(directories, positions, null, ringVersion, diskVersion);
+    }
+
+    public DiskBoundaries(Directories.DataDirectory[] directories, List<PartitionPosition> positions, List<Range<Token>> localRanges, long ringVersion, int diskVersion)
     {
         this.directories = directories == null ? null : ImmutableList.copyOf(directories);
         this.positions = positions == null ? null : ImmutableList.copyOf(positions);
+        this.localRanges = localRanges == null ? null : ImmutableList.copyOf(localRanges);
         this.ringVersion = ringVersion;
         this.directoriesVersion = diskVersion;
     }
@@ -109,7 +109,7 @@ public class DiskBoundaryManager
         List<Range<Token>> sortedLocalRanges = Range.sort(localRanges);
 
         List<PartitionPosition> positions = getDiskBoundaries(sortedLocalRanges, cfs.getPartitioner(), dirs);
-        return new DiskBoundaries(dirs, positions, ringVersion, directoriesVersion);
+        return new DiskBoundaries(dirs, positions, sortedLocalRanges, ringVersion, directoriesVersion);
     }
 
     /**
@@ -91,6 +91,7 @@ public class Keyspace
     public final ViewManager viewManager;
     private final KeyspaceWriteHandler writeHandler;
     private volatile ReplicationParams replicationParams;
+    private volatile int erasureCodingQuorum;
     private final KeyspaceRepairManager repairManager;
 
     public static final Function<String,Keyspace> keyspaceTransformer = new Function<String, Keyspace>()
@@ -192,6 +193,7 @@ public class Keyspace
     {
         this.metadata = metadata;
         createReplicationStrategy(metadata);
+        erasureCodingQuorum = erasureCodingQuorum(metadata);
     }
 
     public KeyspaceMetadata getMetadata()
@@ -330,6 +332,7 @@ public class Keyspace
         if (metadata.isVirtual())
             throw new IllegalStateException("Cannot initialize Keyspace with virtual metadata " + keyspaceName);
         createReplicationStrategy(metadata);
+        erasureCodingQuorum = erasureCodingQuorum(metadata);
 
         this.metric = new KeyspaceMetrics(this);
         this.viewManager = new ViewManager(this);
@@ -348,6 +351,7 @@ public class Keyspace
     {
         this.metadata = metadata;
         createReplicationStrategy(metadata);
+        erasureCodingQuorum = erasureCodingQuorum(metadata);
         this.metric = new KeyspaceMetrics(this);
         this.viewManager = new ViewManager(this);
         this.repairManager = new CassandraKeyspaceRepairManager(this);
@@ -380,6 +384,29 @@ public class Keyspace
         replicationParams = ksm.params.replication;
     }
 
+    /**
+     * The quorum of the erasure coded tables of the keyspace; when several tables use different geometries the largest
+     * one is used so that it holds for all of them. 0 if none of them is erasure coded.
+     */
+    private static int erasureCodingQuorum(KeyspaceMetadata ksm)
+    {
+        int quorum = 0;
+        for (TableMetadata table : ksm.tables)
+        {
+            if (table.params.erasureCoding.isEnabled())
+                quorum = Math.max(quorum, table.params.erasureCoding.quorum());
+        }
+        return quorum;
+    }
+
+    /**
+     * @return the quorum of the erasure coded tables of the keyspace, as of its current metadata, or 0 if it has none
+     */
+    public int getErasureCodingQuorum()
+    {
+        return erasureCodingQuorum;
+    }
+
     // best invoked on the compaction mananger.
     public void dropCf(TableId tableId)
     {
@@ -25,12 +25,14 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.schema.ColumnMetadata;
 import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.schema.SchemaConstants;
 import org.apache.cassandra.db.commitlog.CommitLog;
@@ -39,6 +41,9 @@ import org.apache.cassandra.db.commitlog.IntervalSet;
 import org.apache.cassandra.db.filter.ClusteringIndexFilter;
 import org.apache.cassandra.db.filter.ColumnFilter;
 import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.db.memtable.PartitionMap;
+import org.apache.cassandra.db.memtable.SkipListPartitionMap;
+import org.apache.cassandra.db.memtable.TriePartitionMap;
 import org.apache.cassandra.db.partitions.*;
 import org.apache.cassandra.db.rows.EncodingStats;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
@@ -83,17 +88,18 @@ public class Memtable implements Comparable<Memtable>
                 }
                 return new SlabPool(heapLimit, offHeapLimit, DatabaseDescriptor.getMemtableCleanupThreshold(), new ColumnFamilyStore.FlushLargestColumnFamily());
             case offheap_objects:
+            case offheap_trie:
                 return new NativePool(heapLimit, offHeapLimit, DatabaseDescriptor.getMemtableCleanupThreshold(), new ColumnFamilyStore.FlushLargestColumnFamily());
             default:
                 throw new AssertionError();
         }
     }
 
-    private static final int ROW_OVERHEAD_HEAP_SIZE = estimateRowOverhead(Integer.parseInt(System.getProperty("cassandra.memtable_row_overhead_computation_step", "100000")));
-
-    private final MemtableAllocator allocator;
-    private final AtomicLong liveDataSize = new AtomicLong(0);
-    private final AtomicLong currentOperations = new AtomicLong(0);
+    private static final int ROW_OVERHEAD_COMPUTATION_STEP = Integer.parseInt(System.getProperty("cassandra.memtable_row_overhead_computation_step", "100000"));
+    private static final int ROW_OVERHEAD_HEAP_SIZE = estimateRowOverhead(ROW_OVERHEAD_COMPUTATION_STEP, false);
+    private static final int TRIE_ROW_OVERHEAD_HEAP_SIZE = DatabaseDescriptor.getMemtableAllocationType() == Config.MemtableAllocationType.offheap_trie
+                                                           ? estimateRowOverhead(ROW_OVERHEAD_COMPUTATION_STEP, true)
+                                                           : ROW_OVERHEAD_HEAP_SIZE;
 
     // the write barrier for directing writes to this memtable during a switch
     private volatile OpOrder.Barrier writeBarrier;
@@ -119,10 +125,9 @@ public class Memtable implements Comparable<Memtable>
         }
     }
 
-    // We index the memtable by PartitionPosition only for the purpose of being able
-    // to select key range using Token.KeyBound. However put() ensures that we
-    // actually only store DecoratedKey.
-    private final ConcurrentNavigableMap<PartitionPosition, AtomicBTreePartition> partitions = new ConcurrentSkipListMap<>();
+    // the exclusive upper bound of each shard, in token order; the last one is the partitioner's maximum
+    private final List<PartitionPosition> shardBoundaries;
+    private final Shard[] shards;
     public final ColumnFamilyStore cfs;
     private final long creationNano = System.nanoTime();
 
@@ -134,18 +139,17 @@ public class Memtable implements Comparable<Memtable>
     // memtable was created with the new or old comparator.
     public final ClusteringComparator initialComparator;
 
-    private final ColumnsCollector columnsCollector;
-    private final StatsCollector statsCollector = new StatsCollector();
-
     // only to be used by init(), to setup the very first memtable for the cfs
     public Memtable(AtomicReference<CommitLogPosition> commitLogLowerBound, ColumnFamilyStore cfs)
     {
         this.cfs = cfs;
         this.commitLogLowerBound = commitLogLowerBound;
-        this.allocator = MEMORY_POOL.newAllocator();
+        this.shardBoundaries = shardBoundaries(cfs);
+        this.shards = new Shard[shardBoundaries.size()];
+        for (int i = 0; i < shards.length; i++)
+            shards[i] = new Shard(PartitionMap.create(cfs.getPartitioner()), MEMORY_POOL.newAllocator(), cfs.metadata().regularAndStaticColumns());
         this.initialComparator = cfs.metadata().comparator;
         this.cfs.scheduleFlush();
-        this.columnsCollector = new ColumnsCollector(cfs.metadata().regularAndStaticColumns());
     }
 
     // ONLY to be used for testing, to create a mock Memtable
@@ -154,23 +158,132 @@ public class Memtable implements Comparable<Memtable>
     {
         this.initialComparator = metadata.comparator;
         this.cfs = null;
-        this.allocator = null;
-        this.columnsCollector = new ColumnsCollector(metadata.regularAndStaticColumns());
+        this.shardBoundaries = Collections.singletonList(metadata.partitioner.getMaximumToken().maxKeyBound());
+        this.shards = new Shard[]{ new Shard(new SkipListPartitionMap(), null, metadata.regularAndStaticColumns()) };
     }
 
-    public MemtableAllocator getAllocator()
+    /**
+     * Splits the ranges owned by this node into memtable_shards parts of equal ownership, refined by the disk
+     * boundaries so that no shard spans two data directories.
+     */
+    private static List<PartitionPosition> shardBoundaries(ColumnFamilyStore cfs)
     {
-        return allocator;
+        IPartitioner partitioner = cfs.getPartitioner();
+        List<PartitionPosition> whole = Collections.singletonList(partitioner.getMaximumToken().maxKeyBound());
+        int shardCount = cfs.metadata().params.memtableShards > 0
+                       ? cfs.metadata().params.memtableShards
+                       : DatabaseDescriptor.getMemtableShards();
+        if (shardCount <= 1 || !partitioner.splitter().isPresent())
+            return whole;
+
+        DiskBoundaries diskBoundaries = cfs.getDiskBoundaries();
+        List<PartitionPosition> diskPositions = diskBoundaries.positions == null ? whole : diskBoundaries.positions;
+        if (diskBoundaries.localRanges == null || shardCount <= diskPositions.size())
+            return diskPositions;
+
+        List<Token> split = partitioner.splitter().get().splitOwnedRanges(shardCount, diskBoundaries.localRanges, false);
+        SortedSet<PartitionPosition> boundaries = new TreeSet<>(diskPositions);
+        for (int i = 0; i < split.size() - 1; i++)
+            boundaries.add(split.get(i).maxKeyBound());
+        return new ArrayList<>(boundaries);
+    }
+
+    private int shardIndex(PartitionPosition key)
+    {
+        int low = 0;
+        int high = shards.length - 1;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (key.compareTo(shardBoundaries.get(mid)) < 0)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        return low;
+    }
+
+    public int shardCount()
+    {
+        return shards.length;
     }
 
     public long getLiveDataSize()
     {
-        return liveDataSize.get();
+        long size = 0;
+        for (Shard shard : shards)
+            size += shard.liveDataSize.get();
+        return size;
     }
 
     public long getOperations()
     {
-        return currentOperations.get();
+        long operations = 0;
+        for (Shard shard : shards)
+            operations += shard.currentOperations.get();
+        return operations;
+    }
+
+    public long getOnHeapOwns()
+    {
+        long owns = 0;
+        for (Shard shard : shards)
+            owns += shard.allocator.onHeap().owns();
+        return owns;
+    }
+
+    public long getOffHeapOwns()
+    {
+        long owns = 0;
+        for (Shard shard : shards)
+            owns += shard.allocator.offHeap().owns();
+        return owns;
+    }
+
+    public float getOnHeapOwnershipRatio()
+    {
+        float ratio = 0;
+        for (Shard shard : shards)
+            ratio += shard.allocator.onHeap().ownershipRatio();
+        return ratio;
+    }
+
+    public float getOffHeapOwnershipRatio()
+    {
+        float ratio = 0;
+        for (Shard shard : shards)
+            ratio += shard.allocator.offHeap().ownershipRatio();
+        return ratio;
+    }
+
+    /**
+     * Charges memory held on behalf of the memtable by an index to the first shard's allocator.
+     */
+    public void allocateExtraOnHeap(long size, OpOrder.Group opGroup)
+    {
+        shards[0].allocator.onHeap().allocate(size, opGroup);
+    }
+
+    /**
+     * @return the live data size of each shard, in token order
+     */
+    public long[] getShardLiveDataSizes()
+    {
+        long[] sizes = new long[shards.length];
+        for (int i = 0; i < shards.length; i++)
+            sizes[i] = shards[i].liveDataSize.get();
+        return sizes;
+    }
+
+    /**
+     * @return the on-heap and off-heap memory owned by each shard, in token order
+     */
+    public long[] getShardMemoryOwns()
+    {
+        long[] owns = new long[shards.length];
+        for (int i = 0; i < shards.length; i++)
+            owns[i] = shards[i].allocator.onHeap().owns() + shards[i].allocator.offHeap().owns();
+        return owns;
     }
 
     @VisibleForTesting
@@ -179,12 +292,17 @@ public class Memtable implements Comparable<Memtable>
         assert this.writeBarrier == null;
         this.commitLogUpperBound = commitLogUpperBound;
         this.writeBarrier = writeBarrier;
-        allocator.setDiscarding();
+        for (Shard shard : shards)
+            shard.allocator.setDiscarding();
     }
 
     void setDiscarded()
     {
-        allocator.setDiscarded();
+        for (Shard shard : shards)
+        {
+            shard.partitions.release();
+            shard.allocator.setDiscarded();
+        }
     }
 
     // decide if this memtable should take the write, or if it should go to the next memtable
@@ -229,12 +347,18 @@ public class Memtable implements Comparable<Memtable>
 
     public boolean isLive()
     {
-        return allocator.isLive();
+        // all shards go through the allocator life cycle together
+        return shards[0].allocator.isLive();
     }
 
     public boolean isClean()
     {
-        return partitions.isEmpty();
+        for (Shard shard : shards)
+        {
+            if (!shard.partitions.isEmpty())
+                return false;
+        }
+        return true;
     }
 
     public boolean mayContainDataBefore(CommitLogPosition position)
@@ -259,6 +383,9 @@ public class Memtable implements Comparable<Memtable>
      */
     long put(PartitionUpdate update, UpdateTransaction indexer, OpOrder.Group opGroup)
     {
+        Shard shard = shards[shardIndex(update.partitionKey())];
+        MemtableAllocator allocator = shard.allocator;
+        PartitionMap partitions = shard.partitions;
         AtomicBTreePartition previous = partitions.get(update.partitionKey());
 
         long initialSize = 0;
@@ -273,24 +400,37 @@ public class Memtable implements Comparable<Memtable>
                 previous = empty;
                 // allocate the row overhead after the fact; this saves over allocating and having to free after, but
                 // means we can overshoot our declared limit.
-                int overhead = (int) (cloneKey.getToken().getHeapSize() + ROW_OVERHEAD_HEAP_SIZE);
+                int rowOverhead = partitions instanceof TriePartitionMap ? TRIE_ROW_OVERHEAD_HEAP_SIZE : ROW_OVERHEAD_HEAP_SIZE;
+                int overhead = (int) (cloneKey.getToken().getHeapSize() + rowOverhead);
                 allocator.onHeap().allocate(overhead, opGroup);
+                allocateIndexGrowth(shard, opGroup);
                 initialSize = 8;
             }
         }
 
         long[] pair = previous.addAllWithSizeDelta(update, opGroup, indexer);
         minTimestamp = Math.min(minTimestamp, previous.stats().minTimestamp);
-        liveDataSize.addAndGet(initialSize + pair[0]);
-        columnsCollector.update(update.columns());
-        statsCollector.update(update.stats());
-        currentOperations.addAndGet(update.operationCount());
+        shard.liveDataSize.addAndGet(initialSize + pair[0]);
+        shard.columnsCollector.update(update.columns());
+        shard.statsCollector.update(update.stats());
+        shard.currentOperations.addAndGet(update.operationCount());
         return pair[1];
     }
 
+    private static void allocateIndexGrowth(Shard shard, OpOrder.Group opGroup)
+    {
+        long indexSize = shard.partitions.offHeapSize();
+        long accounted = shard.accountedIndexSize.getAndAccumulate(indexSize, Math::max);
+        if (indexSize > accounted)
+            shard.allocator.offHeap().allocate(indexSize - accounted, opGroup);
+    }
+
     public int partitionCount()
     {
-        return partitions.size();
+        int count = 0;
+        for (Shard shard : shards)
+            count += shard.partitions.size();
+        return count;
     }
 
     public List<FlushRunnable> flushRunnables(LifecycleTransaction txn)
@@ -298,23 +438,38 @@ public class Memtable implements Comparable<Memtable>
         return createFlushRunnables(txn);
     }
 
+    /**
+     * Creates a flush runnable for each non-empty intersection of a shard with a disk's range. Shards are aligned
+     * with the disk boundaries when the memtable is created, so normally each shard gets exactly one.
+     */
     private List<FlushRunnable> createFlushRunnables(LifecycleTransaction txn)
     {
         DiskBoundaries diskBoundaries = cfs.getDiskBoundaries();
         List<PartitionPosition> boundaries = diskBoundaries.positions;
         List<Directories.DataDirectory> locations = diskBoundaries.directories;
-        if (boundaries == null)
-            return Collections.singletonList(new FlushRunnable(txn));
 
-        List<FlushRunnable> runnables = new ArrayList<>(boundaries.size());
-        PartitionPosition rangeStart = cfs.getPartitioner().getMinimumToken().minKeyBound();
+        List<FlushRunnable> runnables = new ArrayList<>(shards.length);
         try
         {
-            for (int i = 0; i < boundaries.size(); i++)
+            for (int i = 0; i < shards.length; i++)
             {
-                PartitionPosition t = boundaries.get(i);
-                runnables.add(new FlushRunnable(rangeStart, t, locations.get(i), txn));
-                rangeStart = t;
+                PartitionPosition shardStart = i == 0 ? null : shardBoundaries.get(i - 1);
+                PartitionPosition shardEnd = i == shards.length - 1 ? null : shardBoundaries.get(i);
+                if (boundaries == null)
+                {
+                    addFlushRunnable(runnables, shards[i], shardStart, shardEnd, null, 0, txn);
+                    continue;
+                }
+
+                for (int disk = 0; disk < boundaries.size(); disk++)
+                {
+                    PartitionPosition diskStart = disk == 0 ? null : boundaries.get(disk - 1);
+                    PartitionPosition diskEnd = disk == boundaries.size() - 1 ? null : boundaries.get(disk);
+                    PartitionPosition from = shardStart == null || (diskStart != null && diskStart.compareTo(shardStart) > 0) ? diskStart : shardStart;
+                    PartitionPosition to = shardEnd == null || (diskEnd != null && diskEnd.compareTo(shardEnd) < 0) ? diskEnd : shardEnd;
+                    if (from == null || to == null || from.compareTo(to) < 0)
+                        addFlushRunnable(runnables, shards[i], from, to, locations.get(disk), disk, txn);
+                }
             }
             return runnables;
         }
@@ -324,6 +479,19 @@ public class Memtable implements Comparable<Memtable>
         }
     }
 
+    private void addFlushRunnable(List<FlushRunnable> runnables,
+                                  Shard shard,
+                                  PartitionPosition from,
+                                  PartitionPosition to,
+                                  Directories.DataDirectory flushLocation,
+                                  int diskIndex,
+                                  LifecycleTransaction txn)
+    {
+        Iterable<AtomicBTreePartition> toFlush = shard.partitions.subMap(from, true, to, false);
+        if (toFlush.iterator().hasNext())
+            runnables.add(new FlushRunnable(shard, toFlush, flushLocation, diskIndex, from, to, txn));
+    }
+
     public Throwable abortRunnables(List<FlushRunnable> runnables, Throwable t)
     {
         if (runnables != null)
@@ -335,8 +503,8 @@ public class Memtable implements Comparable<Memtable>
     public String toString()
     {
         return String.format("Memtable-%s@%s(%s serialized bytes, %s ops, %.0f%%/%.0f%% of on/off-heap limit)",
-                             cfs.name, hashCode(), FBUtilities.prettyPrintMemory(liveDataSize.get()), currentOperations,
-                             100 * allocator.onHeap().ownershipRatio(), 100 * allocator.offHeap().ownershipRatio());
+                             cfs.name, hashCode(), FBUtilities.prettyPrintMemory(getLiveDataSize()), getOperations(),
+                             100 * getOnHeapOwnershipRatio(), 100 * getOffHeapOwnershipRatio());
     }
 
     public MemtableUnfilteredPartitionIterator makePartitionIterator(final ColumnFilter columnFilter, final DataRange dataRange)
@@ -349,39 +517,39 @@ public class Memtable implements Comparable<Memtable>
         boolean isBound = keyRange instanceof Bounds;
         boolean includeStart = isBound || keyRange instanceof IncludingExcludingBounds;
         boolean includeStop = isBound || keyRange instanceof Range;
-        Map<PartitionPosition, AtomicBTreePartition> subMap;
-        if (startIsMin)
-            subMap = stopIsMin ? partitions : partitions.headMap(keyRange.right, includeStop);
-        else
-            subMap = stopIsMin
-                   ? partitions.tailMap(keyRange.left, includeStart)
-                   : partitions.subMap(keyRange.left, includeStart, keyRange.right, includeStop);
+        PartitionPosition from = startIsMin ? null : keyRange.left;
+        PartitionPosition to = stopIsMin ? null : keyRange.right;
+        int last = to == null ? shards.length - 1 : shardIndex(to);
+        List<Iterable<AtomicBTreePartition>> shardRanges = new ArrayList<>();
+        for (int i = from == null ? 0 : shardIndex(from); i <= last; i++)
+            shardRanges.add(shards[i].partitions.subMap(from, includeStart, to, includeStop));
+        Iterable<AtomicBTreePartition> subMap = Iterables.concat(shardRanges);
 
         int minLocalDeletionTime = Integer.MAX_VALUE;
 
         // avoid iterating over the memtable if we purge all tombstones
         if (cfs.getCompactionStrategyManager().onlyPurgeRepairedTombstones())
-            minLocalDeletionTime = findMinLocalDeletionTime(subMap.entrySet().iterator());
+            minLocalDeletionTime = findMinLocalDeletionTime(subMap.iterator());
 
-        final Iterator<Map.Entry<PartitionPosition, AtomicBTreePartition>> iter = subMap.entrySet().iterator();
+        final Iterator<AtomicBTreePartition> iter = subMap.iterator();
 
         return new MemtableUnfilteredPartitionIterator(cfs, iter, minLocalDeletionTime, columnFilter, dataRange);
     }
 
-    private int findMinLocalDeletionTime(Iterator<Map.Entry<PartitionPosition, AtomicBTreePartition>> iterator)
+    private int findMinLocalDeletionTime(Iterator<AtomicBTreePartition> iterator)
     {
         int minLocalDeletionTime = Integer.MAX_VALUE;
         while (iterator.hasNext())
         {
-            Map.Entry<PartitionPosition, AtomicBTreePartition> entry = iterator.next();
-            minLocalDeletionTime = Math.min(minLocalDeletionTime, entry.getValue().stats().minLocalDeletionTime);
+            AtomicBTreePartition partition = iterator.next();
+            minLocalDeletionTime = Math.min(minLocalDeletionTime, partition.stats().minLocalDeletionTime);
         }
         return minLocalDeletionTime;
     }
 
     public Partition getPartition(DecoratedKey key)
     {
-        return partitions.get(key);
+        return shards[shardIndex(key)].partitions.get(key);
     }
 
     public long getMinTimestamp()
@@ -395,13 +563,16 @@ public class Memtable implements Comparable<Memtable>
     @VisibleForTesting
     public void makeUnflushable()
     {
-        liveDataSize.addAndGet(1L * 1024 * 1024 * 1024 * 1024 * 1024);
+        shards[0].liveDataSize.addAndGet(1L * 1024 * 1024 * 1024 * 1024 * 1024);
     }
 
     class FlushRunnable implements Callable<SSTableMultiWriter>
     {
         private final long estimatedSize;
-        private final ConcurrentNavigableMap<PartitionPosition, AtomicBTreePartition> toFlush;
+        private final Shard shard;
+        private final Iterable<AtomicBTreePartition> toFlush;
+        private final int partitionCount;
+        private final int diskIndex;
 
         private final boolean isBatchLogTable;
         private final SSTableMultiWriter writer;
@@ -410,39 +581,38 @@ public class Memtable implements Comparable<Memtable>
         private final PartitionPosition from;
         private final PartitionPosition to;
 
-        FlushRunnable(PartitionPosition from, PartitionPosition to, Directories.DataDirectory flushLocation, LifecycleTransaction txn)
-        {
-            this(partitions.subMap(from, to), flushLocation, from, to, txn);
-        }
-
-        FlushRunnable(LifecycleTransaction txn)
-        {
-            this(partitions, null, null, null, txn);
-        }
-
-        FlushRunnable(ConcurrentNavigableMap<PartitionPosition, AtomicBTreePartition> toFlush, Directories.DataDirectory flushLocation, PartitionPosition from, PartitionPosition to, LifecycleTransaction txn)
+        FlushRunnable(Shard shard,
+                      Iterable<AtomicBTreePartition> toFlush,
+                      Directories.DataDirectory flushLocation,
+                      int diskIndex,
+                      PartitionPosition from,
+                      PartitionPosition to,
+                      LifecycleTransaction txn)
         {
+            this.shard = shard;
             this.toFlush = toFlush;
+            this.diskIndex = diskIndex;
             this.from = from;
             this.to = to;
             long keySize = 0;
-            for (PartitionPosition key : toFlush.keySet())
+            int partitionCount = 0;
+            for (AtomicBTreePartition partition : toFlush)
             {
-                //  make sure we don't write non-sensical keys
-                assert key instanceof DecoratedKey;
-                keySize += ((DecoratedKey) key).getKey().remaining();
+                keySize += partition.partitionKey().getKey().remaining();
+                partitionCount++;
             }
+            this.partitionCount = partitionCount;
             estimatedSize = (long) ((keySize // index entries
                                     + keySize // keys in data file
-                                    + liveDataSize.get()) // data
+                                    + shard.liveDataSize.get()) // data
                                     * 1.2); // bloom filter and row index overhead
 
             this.isBatchLogTable = cfs.name.equals(SystemKeyspace.BATCHES) && cfs.keyspace.getName().equals(SchemaConstants.SYSTEM_KEYSPACE_NAME);
 
             if (flushLocation == null)
-                writer = createFlushWriter(txn, cfs.newSSTableDescriptor(getDirectories().getWriteableLocationAsFile(estimatedSize)), columnsCollector.get(), statsCollector.get());
+                writer = createFlushWriter(txn, cfs.newSSTableDescriptor(getDirectories().getWriteableLocationAsFile(estimatedSize)), shard.columnsCollector.get(), shard.statsCollector.get());
             else
-                writer = createFlushWriter(txn, cfs.newSSTableDescriptor(getDirectories().getLocationForDisk(flushLocation)), columnsCollector.get(), statsCollector.get());
+                writer = createFlushWriter(txn, cfs.newSSTableDescriptor(getDirectories().getLocationForDisk(flushLocation)), shard.columnsCollector.get(), shard.statsCollector.get());
 
         }
 
@@ -451,6 +621,14 @@ public class Memtable implements Comparable<Memtable>
             return cfs.getDirectories();
         }
 
+        /**
+         * @return the index of the data directory this runnable writes to, or 0 if it is not bound to one
+         */
+        int diskIndex()
+        {
+            return diskIndex;
+        }
+
         private void writeSortedContents()
         {
             logger.debug("Writing {}, flushed range = ({}, {}]", Memtable.this.toString(), from, to);
@@ -459,7 +637,7 @@ public class Memtable implements Comparable<Memtable>
             int heavilyContendedRowCount = 0;
             // (we can't clear out the map as-we-go to free up memory,
             //  since the memtable is being used for queries in the "pending flush" category)
-            for (AtomicBTreePartition partition : toFlush.values())
+            for (AtomicBTreePartition partition : toFlush)
             {
                 // Each batchlog partition is a separate entry in the log. And for an entry, we only do 2
                 // operations: 1) we insert the entry and 2) we delete it. Further, BL data is strictly local,
@@ -490,7 +668,7 @@ public class Memtable implements Comparable<Memtable>
             cfs.metric.bytesFlushed.inc(bytesFlushed);
 
             if (heavilyContendedRowCount > 0)
-                logger.trace("High update contention in {}/{} partitions of {} ", heavilyContendedRowCount, toFlush.size(), Memtable.this);
+                logger.trace("High update contention in {}/{} partitions of {} ", heavilyContendedRowCount, partitionCount, Memtable.this);
         }
 
         public SSTableMultiWriter createFlushWriter(LifecycleTransaction txn,
@@ -502,7 +680,7 @@ public class Memtable implements Comparable<Memtable>
                     .commitLogIntervals(new IntervalSet<>(commitLogLowerBound.get(), commitLogUpperBound.get()));
 
             return cfs.createSSTableMultiWriter(descriptor,
-                                                toFlush.size(),
+                                                partitionCount,
                                                 ActiveRepairService.UNREPAIRED_SSTABLE,
                                                 ActiveRepairService.NO_PENDING_REPAIR,
                                                 sstableMetadataCollector,
@@ -517,18 +695,30 @@ public class Memtable implements Comparable<Memtable>
         }
     }
 
-    private static int estimateRowOverhead(final int count)
+    private static int estimateRowOverhead(final int count, boolean trie)
     {
         // calculate row overhead
         try (final OpOrder.Group group = new OpOrder().start())
         {
             int rowOverhead;
             MemtableAllocator allocator = MEMORY_POOL.newAllocator();
-            ConcurrentNavigableMap<PartitionPosition, Object> partitions = new ConcurrentSkipListMap<>();
-            final Object val = new Object();
-            for (int i = 0 ; i < count ; i++)
-                partitions.put(allocator.clone(new BufferDecoratedKey(new LongToken(i), ByteBufferUtil.EMPTY_BYTE_BUFFER), group), val);
-            double avgSize = ObjectSizes.measureDeep(partitions) / (double) count;
+            double avgSize;
+            if (trie)
+            {
+                // the trie itself is off-heap; on heap, only the key and its slot in the partition array remain
+                Object[] partitions = new Object[count];
+                for (int i = 0 ; i < count ; i++)
+                    partitions[i] = allocator.clone(new BufferDecoratedKey(new LongToken(i), ByteBufferUtil.EMPTY_BYTE_BUFFER), group);
+                avgSize = ObjectSizes.measureDeep(partitions) / (double) count;
+            }
+            else
+            {
+                ConcurrentNavigableMap<PartitionPosition, Object> partitions = new ConcurrentSkipListMap<>();
+                final Object val = new Object();
+                for (int i = 0 ; i < count ; i++)
+                    partitions.put(allocator.clone(new BufferDecoratedKey(new LongToken(i), ByteBufferUtil.EMPTY_BYTE_BUFFER), group), val);
+                avgSize = ObjectSizes.measureDeep(partitions) / (double) count;
+            }
             rowOverhead = (int) ((avgSize - Math.floor(avgSize)) < 0.05 ? Math.floor(avgSize) : Math.ceil(avgSize));
             rowOverhead -= ObjectSizes.measureDeep(new LongToken(0));
             rowOverhead += AtomicBTreePartition.EMPTY_SIZE;
@@ -541,12 +731,12 @@ public class Memtable implements Comparable<Memtable>
     public static class MemtableUnfilteredPartitionIterator extends AbstractUnfilteredPartitionIterator
     {
         private final ColumnFamilyStore cfs;
-        private final Iterator<Map.Entry<PartitionPosition, AtomicBTreePartition>> iter;
+        private final Iterator<AtomicBTreePartition> iter;
         private final int minLocalDeletionTime;
         private final ColumnFilter columnFilter;
         private final DataRange dataRange;
 
-        public MemtableUnfilteredPartitionIterator(ColumnFamilyStore cfs, Iterator<Map.Entry<PartitionPosition, AtomicBTreePartition>> iter, int minLocalDeletionTime, ColumnFilter columnFilter, DataRange dataRange)
+        public MemtableUnfilteredPartitionIterator(ColumnFamilyStore cfs, Iterator<AtomicBTreePartition> iter, int minLocalDeletionTime, ColumnFilter columnFilter, DataRange dataRange)
         {
             this.cfs = cfs;
             this.iter = iter;
@@ -572,13 +762,34 @@ public class Memtable implements Comparable<Memtable>
 
         public UnfilteredRowIterator next()
         {
-            Map.Entry<PartitionPosition, AtomicBTreePartition> entry = iter.next();
-            // Actual stored key should be true DecoratedKey
-            assert entry.getKey() instanceof DecoratedKey;
-            DecoratedKey key = (DecoratedKey)entry.getKey();
+            AtomicBTreePartition partition = iter.next();
+            DecoratedKey key = partition.partitionKey();
             ClusteringIndexFilter filter = dataRange.clusteringIndexFilter(key);
 
-            return filter.getUnfilteredRowIterator(columnFilter, entry.getValue());
+            return filter.getUnfilteredRowIterator(columnFilter, partition);
+        }
+    }
+
+    /**
+     * The partitions of a token range of the memtable, with their own allocator so that writes to different
+     * shards don't contend on the same region or counters.
+     */
+    private static final class Shard
+    {
+        private final PartitionMap partitions;
+        private final MemtableAllocator allocator;
+        private final AtomicLong liveDataSize = new AtomicLong(0);
+        private final AtomicLong currentOperations = new AtomicLong(0);
+        // the part of the partition index's native memory already charged to the allocator
+        private final AtomicLong accountedIndexSize = new AtomicLong(0);
+        private final ColumnsCollector columnsCollector;
+        private final StatsCollector statsCollector = new StatsCollector();
+
+        Shard(PartitionMap partitions, MemtableAllocator allocator, RegularAndStaticColumns columns)
+        {
+            this.partitions = partitions;
+            this.allocator = allocator;
+            this.columnsCollector = new ColumnsCollector(columns);
         }
     }
 
@@ -18,15 +18,14 @@
 package org.apache.cassandra.db;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.Treas.TreasConfig;
 import org.apache.cassandra.Treas.TreasTag;
-import org.apache.cassandra.Treas.TreasUtil;
-import org.apache.cassandra.cql3.ColumnIdentifier;
+import org.apache.cassandra.Treas.TreasTagIndex;
 import org.apache.cassandra.db.partitions.PartitionIterator;
 import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
 import org.apache.cassandra.db.partitions.UnfilteredPartitionIterators;
@@ -37,7 +36,8 @@ import org.apache.cassandra.exceptions.WriteTimeoutException;
 import org.apache.cassandra.locator.InetAddressAndPort;
 import org.apache.cassandra.net.*;
 import org.apache.cassandra.schema.ColumnMetadata;
-import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.service.ABDColomns;
+import org.apache.cassandra.service.ABDTag;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
@@ -76,163 +76,36 @@ public class MutationVerbHandler implements IVerbHandler<Mutation>
             replyTo = from;
         }
 
-        int hit = 1;
-        boolean exist = false;
-        String minTagColumn = "";
-        String maxTagColumn ="";
-        Long localMinTag = null;
-        Long localMaxTag = null;
-
-        Long mutationTag = null;
-        String mutationValue = "";
-
-        // Read from the Mutation
-        Row data = message.payload.getPartitionUpdates().iterator().next().getRow(Clustering.EMPTY);
-        for (Cell c : data.cells())
+        // Only erasure coded tables keep tag/shard slots, everything else is applied as is
+        if (!message.payload.getPartitionUpdates().iterator().next().metadata().params.erasureCoding.isEnabled())
         {
-            if (c.column().name.toString().equals("tag1")) {
-                mutationTag = TreasUtil.getLong(c.value());
-            } else if (c.column().name.toString().equals("field1")) {
-                mutationValue = ByteBufferUtil.string(c.value());
-            }
-        }
-
-        // Read the value from the mutation
-        // The tag sent from coordinator is always in tag1 and value is always in field 1
-
-
-        // Read thew smallest Tag from the column and get where the value column is
-        SinglePartitionReadCommand localRead =
-        SinglePartitionReadCommand.fullPartitionRead(
-        message.payload.getPartitionUpdates().iterator().next().metadata(),
-        FBUtilities.nowInSeconds(),
-        message.payload.key()
-        );
-
-
-        // Read from local
-        try (ReadExecutionController executionController = localRead.executionController();
-             UnfilteredPartitionIterator iterator = localRead.executeLocally(executionController))
-        {
-            // first we have to transform it into a PartitionIterator
-            PartitionIterator pi = UnfilteredPartitionIterators.filter(iterator, localRead.nowInSec());
-            while(pi.hasNext())
+            try
             {
-                RowIterator ri = pi.next();
-                while(ri.hasNext())
-                {
-                    Row r = ri.next();
-
-                    for (Cell cell : r.cells()) {
-                        String colName = cell.column().name.toString();
-
-                        if (colName.startsWith("tag")) {
-                            Long currentTag = TreasUtil.getLong(cell.value());
-                            hit++;
-                            if (currentTag.equals(mutationTag)) {
-                                exist = true;
-                                break;
-                            }
-                            if (localMaxTag == null && localMinTag == null) {
-                                localMaxTag = currentTag;
-                                maxTagColumn = colName;
-                                localMinTag = currentTag;
-                                minTagColumn = colName;
-                            }
-                            else {
-                                if (currentTag.compareTo(localMaxTag) > 0) {
-                                    localMaxTag = currentTag;
-                                    maxTagColumn = colName;
-                                }
-                                else if (localMinTag.compareTo(currentTag) > 0) {
-                                    localMinTag = currentTag;
-                                    minTagColumn = colName;
-                                }
-
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        // The Tag Already exists, no need to write into the disk;
-        if (exist) {
-            reply(id, replyTo);
-            return;
-        }
-
-
-        Mutation mutation = message.payload;
-        Mutation.SimpleBuilder mutationBuilder = Mutation.simpleBuilder(mutation.getKeyspaceName(), mutation.key());
-        TableMetadata tableMetadata = mutation.getPartitionUpdates().iterator().next().metadata();
-        long timeStamp = FBUtilities.timestampMicros();
-
-        // Meaning one of the column is missing so we can directly put that tag into that column
-        if (hit <= TreasConfig.num_concurrecy) {
-            // if hit == 1:
-            // No data yet, directly commit the
-            if (hit == 1) {
                 message.payload.applyFuture().thenAccept(o -> reply(id, replyTo)).exceptionally(wto -> {
                     failed();
                     return null;
                 });
-                return;
-            } else {
-                // If larger, we need to
-                // First add to the hit spot (Both Tag and Value)
-                // Remove value
-                if (mutationTag.compareTo(localMaxTag) > 0) {
-                    mutationBuilder.update(tableMetadata)
-                                   .timestamp(timeStamp)
-                                   .row()
-                                   .add("field0","")
-                                   .add("tag" + hit, mutationTag)
-                                   .add("field" + hit, mutationValue)
-                                   .add("field" + maxTagColumn.substring(3),null);
-                }
-                // If not larger
-                // Just need to add to the hit spot (only Tag)
-                else {
-                    mutationBuilder.update(tableMetadata)
-                                   .timestamp(timeStamp)
-                                   .row()
-                                   .add("field0","")
-                                   .add("tag" + hit, mutationTag);
-                }
             }
-        }
-
-        else {
-            if (mutationTag.compareTo(localMaxTag) > 0) {
-                mutationBuilder.update(tableMetadata)
-                               .timestamp(timeStamp)
-                               .row()
-                               .add("field" + maxTagColumn.substring(3),null)
-                               .add("field" + minTagColumn.substring(3), mutationValue)
-                               .add("field0","")
-                               .add(minTagColumn,mutationTag);
-            }
-
-            else if (mutationTag.compareTo(localMinTag) > 0){
-                mutationBuilder.update(tableMetadata)
-                               .timestamp(timeStamp)
-                               .row()
-                               .add("field0","")
-                               .add(minTagColumn, mutationTag);
-            } else {
-                reply(id, replyTo);
-                return;
+            catch (WriteTimeoutException wto)
+            {
+                failed();
             }
+            return;
         }
 
-        //logger.debug("Replica finish writing" + (System.nanoTime() - startTime));
-
-        Mutation commitMutation = mutationBuilder.build();
-        commitMutation.applyFuture().thenAccept(o -> reply(id, replyTo)).exceptionally(wto -> {
+        // The slots holding the tags of the key are looked up in the tag index, reading the partition only on a miss.
+        // Read write-backs of committed tags are flagged, so that the slots of the tags they supersede are freed.
+        boolean committed = message.parameters.containsKey(ParameterType.TREAS_COMMITTED);
+        try
+        {
+            TreasTagIndex.forTable(message.payload.getPartitionUpdates().iterator().next().metadata())
+                         .apply(message.payload, committed);
+            reply(id, replyTo);
+        }
+        catch (WriteTimeoutException wto)
+        {
             failed();
-            return null;
-        });
+        }
     }
 
     public void doVerbABD(MessageIn<Mutation> message, int id)  throws IOException
@@ -263,8 +136,8 @@ public class MutationVerbHandler implements IVerbHandler<Mutation>
             message.payload.key()
             );
 
-            int z_value_local = -1;
-            String writer_id_local = "";
+            // tags are compared as serialized, a key never written having none
+            ByteBuffer localTag = null;
 
             // execute the read request locally to obtain the tag of the key
             // and extract tag information from the local read
@@ -276,42 +149,27 @@ public class MutationVerbHandler implements IVerbHandler<Mutation>
                 while(pi.hasNext())
                 {
                     RowIterator ri = pi.next();
+                    ColumnMetadata colMeta = ri.metadata().getColumn(ByteBufferUtil.bytes(ABDColomns.TAG));
                     while(ri.hasNext())
                     {
-                        Row r = ri.next();
-
-                        ColumnMetadata colMeta = ri.metadata().getColumn(ByteBufferUtil.bytes("z_value"));
-                        Cell c = r.getCell(colMeta);
-                        z_value_local = ByteBufferUtil.toInt(c.value());
-
-                        colMeta = ri.metadata().getColumn(ByteBufferUtil.bytes("writer_id"));
-
-                        c = r.getCell(colMeta);
-                        writer_id_local = ByteBufferUtil.string(c.value());
+                        Cell c = ri.next().getCell(colMeta);
+                        if (c != null)
+                            localTag = c.value();
                     }
                 }
             }
 
             // extract the tag information from the mutation
-            int z_value_request = 0;
-            String writer_id_request = "";
+            ByteBuffer requestTag = null;
             Row data = message.payload.getPartitionUpdates().iterator().next().getRow(Clustering.EMPTY);
             for (Cell c : data.cells())
             {
-                if(c.column().name.equals(new ColumnIdentifier("z_value", true)))
-                {
-                    z_value_request = ByteBufferUtil.toInt(c.value());
-                }
-                else if(c.column().name.equals(new ColumnIdentifier("writer_id", true)))
-                {
-                    writer_id_request = ByteBufferUtil.string(c.value());
-                }
+                if (c.column().name.toString().equals(ABDColomns.TAG))
+                    requestTag = c.value();
             }
 
-            //System.out.printf("local z:%d %s request z:%d %s\n", z_value_local, writer_id_local, z_value_request, writer_id_request);
-
             // comparing the tag and the one in mutation, act accordingly
-            if (z_value_request > z_value_local || (z_value_request == z_value_local && writer_id_request.compareTo(writer_id_local) > 0))
+            if (requestTag != null && (localTag == null || ABDTag.compare(requestTag, localTag) > 0))
             {
                 message.payload.applyFuture().thenAccept(o -> reply(id, replyTo)).exceptionally(wto -> {
                     failed();
@@ -26,6 +26,7 @@ import org.apache.cassandra.cache.IMeasurableMemory;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.ISerializer;
 import org.apache.cassandra.io.sstable.IndexInfo;
+import org.apache.cassandra.io.sstable.RowIndexTrie;
 import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataOutputBuffer;
@@ -51,6 +52,8 @@ import static org.apache.cassandra.metrics.CassandraMetricsRegistry.Metrics;
  * (long) DeletionTime.markedForDeletionAt
  *  (int) number of IndexInfo objects (32 bit int, vint encoded)
  *    (*) serialized IndexInfo objects, see below
+ *    (*) serialized RowIndexTrie, since version "nc", if the IndexInfo objects are not cached on heap
+ *  (int) offset of the root of the RowIndexTrie or -1 if none, since version "nc"
  *    (*) offsets of serialized IndexInfo objects, since version "ma" (3.0)
  *        Each IndexInfo object's offset is relative to the first IndexInfo object.
  * }
@@ -96,7 +99,9 @@ import static org.apache.cassandra.metrics.CassandraMetricsRegistry.Metrics;
  *     Index entries with a total serialized size of index samples up to
  *     {@code column_index_cache_size_in_kb} will be held in an array.
  *     Index entries exceeding that value will always be accessed from
- *     disk.
+ *     disk. Since version "nc", such entries also have a {@link RowIndexTrie}
+ *     of the clusterings bounding their index samples, which is searched in
+ *     place to find the sample a slice starts at.
  * </p>
  * <p>
  *     This results in these classes:
@@ -189,12 +194,13 @@ public class RowIndexEntry<T> implements IMeasurableMemory
      * @param indexSamples      list with IndexInfo offsets (if total serialized size is less than {@link org.apache.cassandra.config.Config#column_index_cache_size_in_kb}
      * @param offsets           offsets of IndexInfo offsets
      * @param idxInfoSerializer the {@link IndexInfo} serializer
+     * @param version           the version of the sstable
      */
     public static RowIndexEntry<IndexInfo> create(long dataFilePosition, long indexFilePosition,
                                        DeletionTime deletionTime, long headerLength, int columnIndexCount,
                                        int indexedPartSize,
                                        List<IndexInfo> indexSamples, int[] offsets,
-                                       ISerializer<IndexInfo> idxInfoSerializer)
+                                       ISerializer<IndexInfo> idxInfoSerializer, Version version)
     {
         // If the "partition building code" in BigTableWriter.append() via ColumnIndex returns a list
         // of IndexInfo objects, which is the case if the serialized size is less than
@@ -203,14 +209,14 @@ public class RowIndexEntry<T> implements IMeasurableMemory
         if (indexSamples != null && indexSamples.size() > 1)
             return new IndexedEntry(dataFilePosition, deletionTime, headerLength,
                                     indexSamples.toArray(new IndexInfo[indexSamples.size()]), offsets,
-                                    indexedPartSize, idxInfoSerializer);
+                                    indexedPartSize, idxInfoSerializer, version.hasRowIndexTrie());
         // Here we have to decide whether we have serialized IndexInfo objects that exceeds
         // Config.column_index_cache_size_in_kb (not exceeding case covered above).
         // Such a "big" indexed-entry is represented as a shallow one.
         if (columnIndexCount > 1)
             return new ShallowIndexedEntry(dataFilePosition, indexFilePosition,
                                            deletionTime, headerLength, columnIndexCount,
-                                           indexedPartSize, idxInfoSerializer);
+                                           indexedPartSize, idxInfoSerializer, version.hasRowIndexTrie());
         // Last case is that there are no index samples.
         return new RowIndexEntry<>(dataFilePosition);
     }
@@ -269,7 +275,7 @@ public class RowIndexEntry<T> implements IMeasurableMemory
                 case CACHE_INDEXED:
                     return new IndexedEntry(position, in, idxInfoSerializer, version);
                 case CACHE_INDEXED_SHALLOW:
-                    return new ShallowIndexedEntry(position, in, idxInfoSerializer);
+                    return new ShallowIndexedEntry(position, in, idxInfoSerializer, version.hasRowIndexTrie());
                 default:
                     throw new AssertionError();
             }
@@ -322,7 +328,7 @@ public class RowIndexEntry<T> implements IMeasurableMemory
                     return new ShallowIndexedEntry(position,
                                                    indexFilePosition,
                                                    deletionTime, headerLength, columnsIndexCount,
-                                                   indexedPartSize, idxInfoSerializer);
+                                                   indexedPartSize, idxInfoSerializer, version.hasRowIndexTrie());
                 }
             }
         }
@@ -394,7 +400,7 @@ public class RowIndexEntry<T> implements IMeasurableMemory
 
         static
         {
-            BASE_SIZE = ObjectSizes.measure(new IndexedEntry(0, DeletionTime.LIVE, 0, null, null, 0, null));
+            BASE_SIZE = ObjectSizes.measure(new IndexedEntry(0, DeletionTime.LIVE, 0, null, null, 0, null, false));
         }
 
         private final DeletionTime deletionTime;
@@ -405,10 +411,12 @@ public class RowIndexEntry<T> implements IMeasurableMemory
         private final int indexedPartSize;
         @Unmetered
         private final ISerializer<IndexInfo> idxInfoSerializer;
+        private final boolean hasRowIndexTrie;
 
         private IndexedEntry(long dataFilePosition, DeletionTime deletionTime, long headerLength,
                              IndexInfo[] columnsIndex, int[] offsets,
-                             int indexedPartSize, ISerializer<IndexInfo> idxInfoSerializer)
+                             int indexedPartSize, ISerializer<IndexInfo> idxInfoSerializer,
+                             boolean hasRowIndexTrie)
         {
             super(dataFilePosition);
 
@@ -419,6 +427,7 @@ public class RowIndexEntry<T> implements IMeasurableMemory
             this.offsets = offsets;
             this.indexedPartSize = indexedPartSize;
             this.idxInfoSerializer = idxInfoSerializer;
+            this.hasRowIndexTrie = hasRowIndexTrie;
         }
 
         private IndexedEntry(long dataFilePosition, DataInputPlus in,
@@ -432,9 +441,16 @@ public class RowIndexEntry<T> implements IMeasurableMemory
             this.deletionTime = deletionTime;
             int columnsIndexCount = columnIndexCount;
 
+            TrackedDataInputPlus trackedIn = new TrackedDataInputPlus(in);
+
             this.columnsIndex = new IndexInfo[columnsIndexCount];
             for (int i = 0; i < columnsIndexCount; i++)
-                this.columnsIndex[i] = idxInfoSerializer.deserialize(in);
+                this.columnsIndex[i] = idxInfoSerializer.deserialize(trackedIn);
+
+            // skip the row index trie, if the entry was written with one, and the position of its root
+            this.hasRowIndexTrie = version.hasRowIndexTrie();
+            if (hasRowIndexTrie)
+                in.skipBytesFully(indexedPartSize - (int) trackedIn.getBytesRead() - columnsIndexCount * TypeSizes.sizeof(0));
 
             this.offsets = new int[this.columnsIndex.length];
             for (int i = 0; i < offsets.length; i++)
@@ -467,6 +483,7 @@ public class RowIndexEntry<T> implements IMeasurableMemory
             this.indexedPartSize = (int) trackedIn.getBytesRead();
 
             this.idxInfoSerializer = idxInfoSerializer;
+            this.hasRowIndexTrie = version.hasRowIndexTrie();
         }
 
         @Override
@@ -535,6 +552,9 @@ public class RowIndexEntry<T> implements IMeasurableMemory
             out.writeUnsignedVInt(columnsIndex.length);
             for (IndexInfo info : columnsIndex)
                 idxInfoSerializer.serialize(info, out);
+            // row index tries are only written for entries too large to be cached on heap
+            if (hasRowIndexTrie)
+                RowIndexTrie.writeNone(out);
             for (int offset : offsets)
                 out.writeInt(offset);
         }
@@ -573,7 +593,7 @@ public class RowIndexEntry<T> implements IMeasurableMemory
 
         static
         {
-            BASE_SIZE = ObjectSizes.measure(new ShallowIndexedEntry(0, 0, DeletionTime.LIVE, 0, 10, 0, null));
+            BASE_SIZE = ObjectSizes.measure(new ShallowIndexedEntry(0, 0, DeletionTime.LIVE, 0, 10, 0, null, false));
         }
 
         private final long indexFilePosition;
@@ -587,14 +607,16 @@ public class RowIndexEntry<T> implements IMeasurableMemory
         @Unmetered
         private final ISerializer<IndexInfo> idxInfoSerializer;
         private final int fieldsSerializedSize;
+        private final boolean hasRowIndexTrie;
 
         /**
-         * See {@link #create(long, long, DeletionTime, long, int, int, List, int[], ISerializer)} for a description
-         * of the parameters.
+         * See {@link #create(long, long, DeletionTime, long, int, int, List, int[], ISerializer, Version)} for a
+         * description of the parameters.
          */
         private ShallowIndexedEntry(long dataFilePosition, long indexFilePosition,
                                     DeletionTime deletionTime, long headerLength, int columnIndexCount,
-                                    int indexedPartSize, ISerializer<IndexInfo> idxInfoSerializer)
+                                    int indexedPartSize, ISerializer<IndexInfo> idxInfoSerializer,
+                                    boolean hasRowIndexTrie)
         {
             super(dataFilePosition);
 
@@ -610,12 +632,14 @@ public class RowIndexEntry<T> implements IMeasurableMemory
 
             this.fieldsSerializedSize = serializedSize(deletionTime, headerLength, columnIndexCount);
             this.offsetsOffset = indexedPartSize + fieldsSerializedSize - columnsIndexCount * TypeSizes.sizeof(0);
+            this.hasRowIndexTrie = hasRowIndexTrie;
         }
 
         /**
          * Constructor for key-cache deserialization
          */
-        private ShallowIndexedEntry(long dataFilePosition, DataInputPlus in, IndexInfo.Serializer idxInfoSerializer) throws IOException
+        private ShallowIndexedEntry(long dataFilePosition, DataInputPlus in, IndexInfo.Serializer idxInfoSerializer,
+                                    boolean hasRowIndexTrie) throws IOException
         {
             super(dataFilePosition);
 
@@ -631,6 +655,7 @@ public class RowIndexEntry<T> implements IMeasurableMemory
 
             this.fieldsSerializedSize = serializedSize(deletionTime, headerLength, columnsIndexCount);
             this.offsetsOffset = indexedPartSize + fieldsSerializedSize - columnsIndexCount * TypeSizes.sizeof(0);
+            this.hasRowIndexTrie = hasRowIndexTrie;
         }
 
         @Override
@@ -655,7 +680,7 @@ public class RowIndexEntry<T> implements IMeasurableMemory
                                             VIntCoding.computeUnsignedVIntSize(indexedPartSize + fieldsSerializedSize) +
                                             fieldsSerializedSize,
                                             offsetsOffset - fieldsSerializedSize,
-                                            indexFile.createReader(), idxInfoSerializer);
+                                            indexFile.createReader(), idxInfoSerializer, hasRowIndexTrie);
         }
 
         @Override
@@ -719,12 +744,32 @@ public class RowIndexEntry<T> implements IMeasurableMemory
     private static final class ShallowInfoRetriever extends FileIndexInfoRetriever
     {
         private final int offsetsOffset;
+        private final boolean hasRowIndexTrie;
+        private boolean rowIndexTrieRead;
+        private RowIndexTrie.Reader rowIndexTrie;
 
         private ShallowInfoRetriever(long indexInfoFilePosition, int offsetsOffset,
-                                     FileDataInput indexReader, ISerializer<IndexInfo> idxInfoSerializer)
+                                     FileDataInput indexReader, ISerializer<IndexInfo> idxInfoSerializer,
+                                     boolean hasRowIndexTrie)
         {
             super(indexInfoFilePosition, indexReader, idxInfoSerializer);
             this.offsetsOffset = offsetsOffset;
+            this.hasRowIndexTrie = hasRowIndexTrie;
+        }
+
+        @Override
+        public RowIndexTrie.Reader rowIndexTrie() throws IOException
+        {
+            if (!hasRowIndexTrie || rowIndexTrieRead)
+                return rowIndexTrie;
+
+            rowIndexTrieRead = true;
+            // the position of the root precedes the "offsets to IndexInfo" table
+            indexReader.seek(indexInfoFilePosition + offsetsOffset - TypeSizes.sizeof(0));
+            int root = indexReader.readInt();
+            if (root != RowIndexTrie.NONE)
+                rowIndexTrie = new RowIndexTrie.Reader(indexReader, indexInfoFilePosition + root);
+            return rowIndexTrie;
         }
 
         IndexInfo fetchIndex(int index) throws IOException
@@ -752,6 +797,15 @@ public class RowIndexEntry<T> implements IMeasurableMemory
     {
         IndexInfo columnsIndex(int index) throws IOException;
 
+        /**
+         * @return a reader of the {@link RowIndexTrie} of the entry, sharing the retriever's input, or null if the
+         * entry has none
+         */
+        default RowIndexTrie.Reader rowIndexTrie() throws IOException
+        {
+            return null;
+        }
+
         void close() throws IOException;
     }
 
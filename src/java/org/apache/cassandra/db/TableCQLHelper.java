@@ -315,6 +315,10 @@ public class TableCQLHelper
         builder.append("\n\tAND compaction = ").append(toCQL(tableParams.compaction.asMap()));
         builder.append("\n\tAND compression = ").append(toCQL(tableParams.compression.asMap()));
         builder.append("\n\tAND cdc = ").append(tableParams.cdc);
+        if (tableParams.memtableShards > 0)
+            builder.append("\n\tAND memtable_shards = ").append(tableParams.memtableShards);
+        if (tableParams.erasureCoding.isEnabled())
+            builder.append("\n\tAND erasure_coding = ").append(toCQL(tableParams.erasureCoding.asMap()));
 
         builder.append("\n\tAND extensions = { ");
         for (Map.Entry<String, ByteBuffer> entry : tableParams.extensions.entrySet())
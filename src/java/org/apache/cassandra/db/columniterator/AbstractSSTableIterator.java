@@ -27,6 +27,7 @@ import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.filter.ColumnFilter;
 import org.apache.cassandra.db.rows.*;
 import org.apache.cassandra.io.sstable.IndexInfo;
+import org.apache.cassandra.io.sstable.RowIndexTrie;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.util.FileDataInput;
@@ -540,6 +541,20 @@ public abstract class AbstractSSTableIterator implements UnfilteredRowIterator
 
         public int indexFor(ClusteringPrefix name, int lastIndex) throws IOException
         {
+            RowIndexTrie.Reader rowIndexTrie = indexInfoRetriever.rowIndexTrie();
+            byte[] key = rowIndexTrie == null ? null : ByteComparableClustering.encode(comparator.subtypes(), name);
+            if (key != null)
+            {
+                // the same blocks as the binary search below finds, without deserializing any IndexInfo
+                if (reversed)
+                {
+                    int index = rowIndexTrie.floor(key);
+                    return index < 0 ? -1 : Math.min(index, lastIndex);
+                }
+                int index = rowIndexTrie.ceiling(key);
+                return Math.max(index < 0 ? indexEntry.columnsIndexCount() : index, lastIndex);
+            }
+
             IndexInfo target = new IndexInfo(name, name, 0, 0, null);
             /*
             Take the example from the unit test, and say your index looks like this:
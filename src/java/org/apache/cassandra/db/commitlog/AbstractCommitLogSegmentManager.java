@@ -202,6 +202,17 @@ public abstract class AbstractCommitLogSegmentManager
      */
     abstract void discard(CommitLogSegment segment, boolean delete);
 
+    /**
+     * Hands a discarded segment file over to a new segment, if one is available. The file keeps its recycled name
+     * until the new segment has overwritten it and renames it.
+     *
+     * @return the recycled file, or null if there is none
+     */
+    File takeRecycledFile()
+    {
+        return null;
+    }
+
     /**
      * Advances the allocatingFrom pointer to the next prepared segment, but only if it is currently the segment provided.
      *
@@ -210,6 +221,11 @@ public abstract class AbstractCommitLogSegmentManager
     @DontInline
     void advanceAllocatingFrom(CommitLogSegment old)
     {
+        // when a segment fills up, every writer fails to allocate from it at about the same time; all but the first
+        // find it already replaced, and need not queue up on the lock to notice
+        if (old != null && allocatingFrom != old)
+            return;
+
         while (true)
         {
             synchronized (this)
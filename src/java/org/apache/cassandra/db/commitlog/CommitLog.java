@@ -49,6 +49,7 @@ import org.apache.cassandra.security.EncryptionContext;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.JVMStabilityInspector;
+import org.apache.cassandra.utils.NativeLibrary;
 
 import static org.apache.cassandra.db.commitlog.CommitLogSegment.Allocation;
 import static org.apache.cassandra.db.commitlog.CommitLogSegment.CommitLogSegmentFileComparator;
@@ -510,11 +511,19 @@ public class CommitLog implements CommitLogMBean
          */
         private EncryptionContext encryptionContext;
 
+        /**
+         * Whether plain segments are written with direct I/O.
+         */
+        private final boolean directIO;
+
         public Configuration(ParameterizedClass compressorClass, EncryptionContext encryptionContext)
         {
             this.compressorClass = compressorClass;
             this.compressor = compressorClass != null ? CompressionParams.createCompressor(compressorClass) : null;
             this.encryptionContext = encryptionContext;
+            this.directIO = DatabaseDescriptor.getCommitLogDirectIO()
+                            && NativeLibrary.osType == NativeLibrary.OSType.LINUX
+                            && NativeLibrary.isAvailable();
         }
 
         /**
@@ -535,6 +544,15 @@ public class CommitLog implements CommitLogMBean
             return encryptionContext.isEnabled();
         }
 
+        /**
+         * Checks if the segments must be written with direct I/O. Only applies to plain segments, on Linux.
+         * @return <code>true</code> if the segments must be written with direct I/O, <code>false</code> otherwise.
+         */
+        public boolean useDirectIO()
+        {
+            return directIO && !useCompression() && !useEncryption();
+        }
+
         /**
          * Returns the compressor used to compress the segments.
          * @return the compressor used to compress the segments
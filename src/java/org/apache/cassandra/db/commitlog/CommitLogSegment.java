@@ -27,6 +27,7 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.CRC32;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -89,7 +90,17 @@ public abstract class CommitLogSegment
     // The OpOrder used to order appends wrt sync
     private final OpOrder appendOrder = new OpOrder();
 
-    private final AtomicInteger allocatePosition = new AtomicInteger();
+    // The next position to allocate from. It is advanced with a single getAndAdd() per allocation, so that concurrent
+    // writers never retry; allocations that don't fit fail but still advance it past the end, hence a long.
+    private final AtomicLong allocatePosition = new AtomicLong();
+
+    // The lowest position at which an allocation failed or the unused tail was discarded: once the appendOrder
+    // barrier has passed, everything before it has been allocated and written, and nothing after it ever will be.
+    private final AtomicLong endOfData = new AtomicLong(Long.MAX_VALUE);
+
+    // Set once discardUnusedTail() has stopped allocations; failed allocations alone don't stop the segment
+    // allocating until it is replaced.
+    private volatile boolean tailDiscarded;
 
     // Everything before this offset has been synced and written.  The SYNC_MARKER_SIZE bytes after
     // each sync are reserved, and point forwards to the next such offset.  The final
@@ -104,7 +115,7 @@ public abstract class CommitLogSegment
     private volatile int lastMarkerOffset;
 
     // The end position of the buffer. Initially set to its capacity and updated to point to the last written position
-    // as the segment is being closed.
+    // (endOfData) as the segment is being closed.
     // No need to be volatile as writes are protected by appendOrder barrier.
     private int endOfBuffer;
 
@@ -120,6 +131,8 @@ public abstract class CommitLogSegment
     public final long id;
 
     final File logFile;
+    // the discarded segment file the channel was opened on, until it is renamed to logFile
+    File recycledFile;
     final FileChannel channel;
     final int fd;
 
@@ -135,7 +148,8 @@ public abstract class CommitLogSegment
         Configuration config = commitLog.configuration;
         CommitLogSegment segment = config.useEncryption() ? new EncryptedSegment(commitLog, manager)
                                                           : config.useCompression() ? new CompressedSegment(commitLog, manager)
-                                                                                    : new MemoryMappedSegment(commitLog, manager);
+                                                                                    : config.useDirectIO() ? new DirectIOSegment(commitLog, manager)
+                                                                                                           : new MemoryMappedSegment(commitLog, manager);
         segment.writeLogHeader();
         return segment;
     }
@@ -169,10 +183,11 @@ public abstract class CommitLogSegment
                                              commitLog.configuration.getCompressorClass(),
                                              commitLog.configuration.getEncryptionContext());
         logFile = new File(manager.storageDirectory, descriptor.fileName());
+        recycledFile = recyclesFiles() ? manager.takeRecycledFile() : null;
 
         try
         {
-            channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.CREATE);
+            channel = FileChannel.open((recycledFile != null ? recycledFile : logFile).toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.CREATE);
             fd = NativeLibrary.getfd(channel);
         }
         catch (IOException e)
@@ -206,6 +221,14 @@ public abstract class CommitLogSegment
 
     abstract ByteBuffer createBuffer(CommitLog commitLog);
 
+    /**
+     * @return whether this segment can take over the file of a discarded segment, which it will overwrite in full
+     */
+    boolean recyclesFiles()
+    {
+        return false;
+    }
+
     /**
      * Allocate space in this buffer for the provided mutation, and return the allocated Allocation object.
      * Returns null if there is not enough space in this segment, and a new segment is needed.
@@ -251,49 +274,33 @@ public abstract class CommitLogSegment
     // allocate bytes in the segment, or return -1 if not enough space
     private int allocate(int size)
     {
-        while (true)
+        long prev = allocatePosition.getAndAdd(size);
+        if (prev + size >= endOfBuffer)
         {
-            int prev = allocatePosition.get();
-            int next = prev + size;
-            if (next >= endOfBuffer)
-                return -1;
-            if (allocatePosition.compareAndSet(prev, next))
-            {
-                assert buffer != null;
-                return prev;
-            }
+            // positions only grow, so every later allocation fails too; this one marks the end of the data unless
+            // an earlier one did
+            endOfData.accumulateAndGet(prev, Math::min);
+            return -1;
         }
+        assert buffer != null;
+        return (int) prev;
     }
 
     // ensures no more of this segment is writeable, by allocating any unused section at the end and marking it discarded
     void discardUnusedTail()
     {
         // We guard this with the OpOrdering instead of synchronised due to potential dead-lock with ACLSM.advanceAllocatingFrom()
-        // Ensures endOfBuffer update is reflected in the buffer end position picked up by sync().
+        // Ensures the endOfData update is reflected in the buffer end position picked up by sync().
         // This actually isn't strictly necessary, as currently all calls to discardUnusedTail are executed either by the thread
         // running sync or within a mutation already protected by this OpOrdering, but to prevent future potential mistakes,
         // we duplicate the protection here so that the contract between discardUnusedTail() and sync() is more explicit.
         try (OpOrder.Group group = appendOrder.start())
         {
-            while (true)
-            {
-                int prev = allocatePosition.get();
-
-                int next = endOfBuffer + 1;
-                if (prev >= next)
-                {
-                    // Already stopped allocating, might also be closed.
-                    assert buffer == null || prev == buffer.capacity() + 1;
-                    return;
-                }
-                if (allocatePosition.compareAndSet(prev, next))
-                {
-                    // Stopped allocating now. Can only succeed once, no further allocation or discardUnusedTail can succeed.
-                    endOfBuffer = prev;
-                    assert buffer != null && next == buffer.capacity() + 1;
-                    return;
-                }
-            }
+            // Jump past the end so that no further allocation can succeed. Any allocation that got a lower position
+            // has either succeeded or failed and recorded it in endOfData, which sync() reads after waiting for it.
+            long prev = allocatePosition.getAndAdd(endOfBuffer + 1);
+            endOfData.accumulateAndGet(prev, Math::min);
+            tailDiscarded = true;
         }
     }
 
@@ -318,12 +325,14 @@ public abstract class CommitLogSegment
         assert lastMarkerOffset >= lastSyncedOffset : String.format("commit log segment positions are incorrect: last marked = %d, last synced = %d",
                                                                     lastMarkerOffset, lastSyncedOffset);
         // check we have more work to do
-        final boolean needToMarkData = allocatePosition.get() > lastMarkerOffset + SYNC_MARKER_SIZE;
+        // allocatePosition keeps growing with failed allocations once the segment is full, so it is capped just past
+        // the end; after the close, that is endOfData + 1, which never leaves anything to mark
+        final boolean needToMarkData = Math.min(allocatePosition.get(), endOfBuffer + 1L) > lastMarkerOffset + SYNC_MARKER_SIZE;
         final boolean hasDataToFlush = lastSyncedOffset != lastMarkerOffset;
         if (!(needToMarkData || hasDataToFlush))
             return;
         // Note: Even if the very first allocation of this sync section failed, we still want to enter this
-        // to ensure the segment is closed. As allocatePosition is set to 1 beyond the capacity of the buffer,
+        // to ensure the segment is closed. As allocatePosition is then at least 1 beyond the capacity of the buffer,
         // this will always be entered when a mutation allocation has been attempted after the marker allocation
         // succeeded in the previous sync.
         assert buffer != null;  // Only close once.
@@ -347,8 +356,10 @@ public abstract class CommitLogSegment
                 // The endOfBuffer position may be incorrect at this point (to be written by another stalled thread).
                 nextMarker = buffer.capacity();
             }
-            // Wait for mutations to complete as well as endOfBuffer to have been written.
+            // Wait for mutations to complete as well as endOfData to have been recorded.
             waitForModifications();
+            if (close)
+                endOfBuffer = (int) endOfData.get();
             sectionEnd = close ? endOfBuffer : nextMarker;
 
             // Possibly perform compression or encryption and update the chained markers
@@ -427,7 +438,7 @@ public abstract class CommitLogSegment
 
     public boolean isStillAllocating()
     {
-        return allocatePosition.get() < endOfBuffer;
+        return headerWritten && !tailDiscarded;
     }
 
     /**
@@ -447,7 +458,7 @@ public abstract class CommitLogSegment
      */
     public CommitLogPosition getCurrentCommitLogPosition()
     {
-        return new CommitLogPosition(id, allocatePosition.get());
+        return new CommitLogPosition(id, (int) Math.min(allocatePosition.get(), endOfBuffer + 1L));
     }
 
     /**
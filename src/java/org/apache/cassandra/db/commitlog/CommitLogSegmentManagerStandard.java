@@ -19,25 +19,82 @@
 package org.apache.cassandra.db.commitlog;
 
 import java.io.File;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.Mutation;
 import org.apache.cassandra.io.util.FileUtils;
 
 public class CommitLogSegmentManagerStandard extends AbstractCommitLogSegmentManager
 {
+    // never matches CommitLogDescriptor's file name pattern, so recycled files are not replayed
+    static final String RECYCLED_FILE_PREFIX = "RecycledCommitLog-";
+    private static final String RECYCLED_FILE_EXTENSION = ".log";
+
+    // discarded segment files waiting to be reused by a new segment
+    private final Queue<File> recycledFiles = new ConcurrentLinkedQueue<>();
+
     public CommitLogSegmentManagerStandard(final CommitLog commitLog, String storageDirectory)
     {
         super(commitLog, storageDirectory);
     }
 
+    @Override
+    void start()
+    {
+        // pick up the files recycled before a restart, as long as we still write segments that can reuse them
+        File[] files = new File(storageDirectory).listFiles((dir, name) -> name.startsWith(RECYCLED_FILE_PREFIX));
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                if (commitLog.configuration.useDirectIO() && recycledFiles.size() < DatabaseDescriptor.getCommitLogRecycledSegments())
+                {
+                    recycledFiles.add(file);
+                    addSize(file.length());
+                }
+                else
+                    FileUtils.deleteWithConfirm(file);
+            }
+        }
+        super.start();
+    }
+
     public void discard(CommitLogSegment segment, boolean delete)
     {
         segment.close();
+        // a recycled file stays on disk, and in the on-disk size, until a new segment takes it over
+        if (delete && segment.recyclesFiles() && recycle(segment))
+            return;
         if (delete)
             FileUtils.deleteWithConfirm(segment.logFile);
         addSize(-segment.onDiskSize());
     }
 
+    /**
+     * Keeps the file of a discarded segment for reuse, unless enough are kept already.
+     *
+     * @return true if the file was recycled, false if it should be deleted
+     */
+    private boolean recycle(CommitLogSegment segment)
+    {
+        if (recycledFiles.size() >= DatabaseDescriptor.getCommitLogRecycledSegments())
+            return false;
+
+        File recycled = new File(storageDirectory, RECYCLED_FILE_PREFIX + segment.id + RECYCLED_FILE_EXTENSION);
+        if (!segment.logFile.renameTo(recycled))
+            return false;
+        recycledFiles.add(recycled);
+        return true;
+    }
+
+    @Override
+    File takeRecycledFile()
+    {
+        return recycledFiles.poll();
+    }
+
     /**
      * Reserve space in the current segment for the provided mutation or, if there isn't space available,
      * create a new segment. allocate() is blocking until allocation succeeds as it waits on a signal in advanceAllocatingFrom
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.NativeLibrary;
+import org.apache.cassandra.utils.NoSpamLogger;
+import org.apache.cassandra.utils.SyncUtil;
+import org.apache.cassandra.utils.memory.MemoryUtil;
+
+/**
+ * An uncompressed segment written with O_DIRECT from an aligned in-memory image of the whole segment, bypassing the
+ * page cache.
+ * <p>
+ * The segment file is zeroed to its full size before the segment is handed out, by the segment manager thread, so
+ * that syncs never change the file's size or block allocation and only need {@code fdatasync}. Discarded files are
+ * kept by {@link CommitLogSegmentManagerStandard} and reused by the next segments instead of being deleted.
+ */
+public class DirectIOSegment extends CommitLogSegment
+{
+    private static final Logger logger = LoggerFactory.getLogger(DirectIOSegment.class);
+
+    // O_DIRECT transfers must be aligned to the logical block size of the device; this covers all common devices
+    static final int BLOCK_SIZE = 4096;
+
+    private static final int ZEROES_SIZE = 1 << 20;
+    private static final ByteBuffer ZEROES = allocateAligned(ZEROES_SIZE)[1];
+
+    // the direct buffer backing the aligned segment image; assigned by createBuffer(), which runs in the super
+    // constructor, so it must not have an initializer
+    private ByteBuffer allocation;
+
+    /**
+     * Constructs a new segment file.
+     *
+     * @param commitLog the commit log it will be used with.
+     */
+    DirectIOSegment(CommitLog commitLog, AbstractCommitLogSegmentManager manager)
+    {
+        super(commitLog, manager);
+    }
+
+    @Override
+    boolean recyclesFiles()
+    {
+        return true;
+    }
+
+    ByteBuffer createBuffer(CommitLog commitLog)
+    {
+        int segmentSize = DatabaseDescriptor.getCommitLogSegmentSize();
+        if (!NativeLibrary.tryEnableDirectIO(fd))
+            NoSpamLogger.log(logger, NoSpamLogger.Level.WARN, 1, TimeUnit.MINUTES,
+                             "Could not enable direct I/O on {}, commit log segments are written through the page cache", logFile);
+
+        try
+        {
+            // a recycled file is already counted in the on-disk size
+            manager.addSize(segmentSize - channel.size());
+
+            // zero the whole file, overwriting any data left by the segment it is recycled from, and make its size
+            // durable once so that the syncs after each write don't have to
+            for (long position = 0; position < segmentSize; position += ZEROES_SIZE)
+            {
+                ByteBuffer zeroes = ZEROES.duplicate();
+                zeroes.limit((int) Math.min(ZEROES_SIZE, segmentSize - position));
+                writeFully(zeroes, position);
+            }
+            if (channel.size() > segmentSize)
+                channel.truncate(segmentSize);
+            SyncUtil.force(channel, true);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, logFile);
+        }
+
+        ByteBuffer[] buffers = allocateAligned(segmentSize);
+        allocation = buffers[0];
+        return buffers[1];
+    }
+
+    @Override
+    void writeLogHeader()
+    {
+        super.writeLogHeader();
+        // write the header out straight away, as the first sync may be a long way off
+        writeBlocks(0, buffer.position());
+        if (recycledFile != null)
+            claimRecycledFile();
+    }
+
+    /**
+     * Renames the recycled file to the name of this segment, once it has been zeroed and the new header is durable.
+     * A crash before the rename leaves a recycled file, which is not replayed, instead of a file with the name of
+     * this segment and the header of the old one, which would fail replay.
+     */
+    private void claimRecycledFile()
+    {
+        try
+        {
+            SyncUtil.force(channel, false);
+            Files.move(recycledFile.toPath(), logFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, logFile);
+        }
+        SyncUtil.trySyncDir(logFile.getParentFile());
+        recycledFile = null;
+    }
+
+    @Override
+    void write(int startMarker, int nextMarker)
+    {
+        // if there's room in the discard section to write an empty header,
+        // zero out the next sync marker so replayer can cleanly exit
+        if (nextMarker <= buffer.capacity() - SYNC_MARKER_SIZE)
+        {
+            buffer.putInt(nextMarker, 0);
+            buffer.putInt(nextMarker + 4, 0);
+        }
+
+        // write previous sync marker to point to next sync marker
+        // we don't chain the crcs here to ensure this method is idempotent if it fails
+        writeSyncMarker(id, buffer, startMarker, startMarker, nextMarker);
+    }
+
+    @Override
+    protected void flush(int startMarker, int nextMarker)
+    {
+        // include the zeroed marker following the section, and rewrite the partial blocks at either end whole
+        writeBlocks(startMarker, Math.min(buffer.capacity(), nextMarker + SYNC_MARKER_SIZE));
+        try
+        {
+            SyncUtil.force(channel, false);
+        }
+        catch (Exception e)
+        {
+            throw new FSWriteError(e, getPath());
+        }
+    }
+
+    private void writeBlocks(int start, int end)
+    {
+        int alignedStart = start & -BLOCK_SIZE;
+        int alignedEnd = Math.min(buffer.capacity(), (end + BLOCK_SIZE - 1) & -BLOCK_SIZE);
+        ByteBuffer toWrite = buffer.duplicate();
+        toWrite.limit(alignedEnd).position(alignedStart);
+        try
+        {
+            writeFully(toWrite, alignedStart);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, getPath());
+        }
+    }
+
+    private void writeFully(ByteBuffer toWrite, long position) throws IOException
+    {
+        long filePosition = position;
+        while (toWrite.hasRemaining())
+            filePosition += channel.write(toWrite, filePosition);
+    }
+
+    @Override
+    public long onDiskSize()
+    {
+        return DatabaseDescriptor.getCommitLogSegmentSize();
+    }
+
+    @Override
+    protected void internalClose()
+    {
+        super.internalClose();
+        FileUtils.clean(allocation);
+        allocation = null;
+    }
+
+    /**
+     * @return a direct buffer and a slice of it of the requested capacity, aligned to {@link #BLOCK_SIZE}
+     */
+    private static ByteBuffer[] allocateAligned(int capacity)
+    {
+        ByteBuffer allocation = ByteBuffer.allocateDirect(capacity + BLOCK_SIZE);
+        int offset = (int) (-MemoryUtil.getAddress(allocation) & (BLOCK_SIZE - 1));
+        ByteBuffer aligned = allocation.duplicate();
+        aligned.position(offset).limit(offset + capacity);
+        return new ByteBuffer[]{ allocation, aligned.slice() };
+    }
+}
@@ -33,6 +33,7 @@ import org.apache.cassandra.db.partitions.Partition;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.ReadIntent;
 import org.apache.cassandra.schema.CompactionParams.TombstoneOption;
 
 import org.slf4j.Logger;
@@ -368,6 +369,6 @@ public class CompactionController implements AutoCloseable
 
     private FileDataInput openDataFile(SSTableReader reader)
     {
-        return limiter != null ? reader.openDataReader(limiter) : reader.openDataReader();
+        return limiter != null ? reader.openDataReader(limiter) : reader.openDataReader(ReadIntent.COMPACTION);
     }
 }
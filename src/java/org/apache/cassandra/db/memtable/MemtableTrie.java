@@ -0,0 +1,588 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.memtable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.utils.memory.MemoryUtil;
+
+/**
+ * An off-heap trie mapping byte-comparable keys to non-negative ints, kept in key order.
+ * <p>
+ * Keys must be prefix-free (no key is a prefix of another), so values only ever hang off leaves and a leaf
+ * is stored directly in its parent's child slot as {@code ~value}. Inner nodes live in 32-byte cells carved
+ * out of {@link #BLOCK_SIZE} blocks of native memory, and are one of:
+ * <ul>
+ *     <li>sparse: up to {@link #SPARSE_CAPACITY} children in insertion order, with their transition bytes and a count;</li>
+ *     <li>full: 256 child slots indexed by transition byte, spanning 32 consecutive cells;</li>
+ *     <li>chain: up to {@link #CHAIN_CAPACITY} transition bytes leading to a single child.</li>
+ * </ul>
+ * A node pointer is its cell number shifted left by two bits, tagged with the node type.
+ * <p>
+ * Only one thread may write at a time, but any number may read without locking. The writer builds every new
+ * node completely before publishing it with a single volatile store into a child slot, a sparse node's count
+ * or the root, so a reader either sees the node whole or not at all. Nodes replaced by the writer (a sparse node
+ * grown into a full one, a chain split in two) are simply abandoned; their cells are reclaimed with the rest of
+ * the trie by {@link #release()}, which must only be called once no reader can be in flight.
+ */
+public class MemtableTrie
+{
+    public static final int NOT_FOUND = -1;
+
+    static final int BLOCK_SIZE = 1 << 16;
+    private static final int CELL_SHIFT = 5;
+    private static final int CELL_SIZE = 1 << CELL_SHIFT;
+    private static final int CELLS_PER_BLOCK_SHIFT = 16 - CELL_SHIFT;
+    private static final int CELLS_PER_BLOCK_MASK = (1 << CELLS_PER_BLOCK_SHIFT) - 1;
+    private static final int MAX_CELLS = 1 << 29;
+
+    private static final int NONE = 0;
+    private static final int TYPE_BITS = 2;
+    private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+    private static final int SPARSE = 1;
+    private static final int FULL = 2;
+    private static final int CHAIN = 3;
+
+    // sparse node: child slots at 0..19, transition bytes at 20..24, child count at 28
+    static final int SPARSE_CAPACITY = 5;
+    private static final int SPARSE_BYTES = SPARSE_CAPACITY * 4;
+    private static final int SPARSE_COUNT = 28;
+
+    // full node: one child slot per transition byte
+    private static final int FULL_CELLS = 256 * 4 / CELL_SIZE;
+
+    // chain node: transition bytes at 0..26, their count at 27, child slot at 28
+    static final int CHAIN_CAPACITY = 27;
+    private static final int CHAIN_LENGTH = 27;
+    private static final int CHAIN_CHILD = 28;
+
+    private volatile int root = NONE;
+    private volatile long[] blocks = new long[0];
+    private volatile long memoryUsed;
+
+    // the next free cell; only touched by the writer
+    private int nextCell;
+    // set by insert() when the key is already present; only touched by the writer
+    private int existing;
+
+    /**
+     * @return the value stored under {@code key}, or {@link #NOT_FOUND}
+     */
+    public int get(byte[] key)
+    {
+        int node = root;
+        int depth = 0;
+        while (true)
+        {
+            if (node == NONE)
+                return NOT_FOUND;
+            if (node < 0)
+                return depth == key.length ? ~node : NOT_FOUND;
+            if (depth == key.length)
+                return NOT_FOUND;
+
+            long address = address(node);
+            switch (node & TYPE_MASK)
+            {
+                case SPARSE:
+                    node = sparseChild(address, key[depth] & 0xFF);
+                    depth++;
+                    break;
+                case FULL:
+                    node = MemoryUtil.getIntVolatile(address + 4 * (key[depth] & 0xFF));
+                    depth++;
+                    break;
+                default:
+                    int length = MemoryUtil.getByte(address + CHAIN_LENGTH);
+                    for (int i = 0; i < length; i++)
+                    {
+                        if (depth + i == key.length || MemoryUtil.getByte(address + i) != key[depth + i])
+                            return NOT_FOUND;
+                    }
+                    depth += length;
+                    node = MemoryUtil.getIntVolatile(address + CHAIN_CHILD);
+            }
+        }
+    }
+
+    /**
+     * Stores {@code value} under {@code key} unless the key is already present. Callers must make sure
+     * only one thread writes at a time.
+     *
+     * @return the value already stored under {@code key}, or {@link #NOT_FOUND} if {@code value} was added
+     */
+    public int putIfAbsent(byte[] key, int value)
+    {
+        assert value >= 0;
+        existing = NOT_FOUND;
+        int current = root;
+        int updated = insert(current, key, 0, value);
+        if (updated != current)
+            root = updated;
+        return existing;
+    }
+
+    /**
+     * @return the native memory held by this trie, in bytes
+     */
+    public long memoryUsed()
+    {
+        return memoryUsed;
+    }
+
+    /**
+     * Frees the native memory of this trie. No reader may use it, or any cursor opened on it, afterwards.
+     */
+    public void release()
+    {
+        long[] allocated = blocks;
+        root = NONE;
+        blocks = new long[0];
+        memoryUsed = 0;
+        for (long block : allocated)
+            MemoryUtil.free(block);
+    }
+
+    /**
+     * Opens a cursor over the values whose keys fall between {@code lower} and {@code upper}, in key order.
+     * A null bound leaves that side open.
+     */
+    public Cursor cursor(Bound lower, Bound upper)
+    {
+        return new Cursor(lower, upper);
+    }
+
+    private int insert(int node, byte[] key, int depth, int value)
+    {
+        if (node == NONE)
+            return newBranch(key, depth, value);
+        if (node < 0)
+        {
+            // keys are prefix-free, so a leaf is only ever reached once the whole key has been consumed
+            assert depth == key.length;
+            existing = ~node;
+            return node;
+        }
+        switch (node & TYPE_MASK)
+        {
+            case SPARSE:
+                return insertSparse(node, key, depth, value);
+            case FULL:
+                return insertFull(node, key, depth, value);
+            default:
+                return insertChain(node, key, depth, value);
+        }
+    }
+
+    private int insertSparse(int node, byte[] key, int depth, int value)
+    {
+        long address = address(node);
+        int count = MemoryUtil.getInt(address + SPARSE_COUNT);
+        byte transition = key[depth];
+        for (int i = 0; i < count; i++)
+        {
+            if (MemoryUtil.getByte(address + SPARSE_BYTES + i) == transition)
+            {
+                updateSlot(address + 4 * i, key, depth + 1, value);
+                return node;
+            }
+        }
+
+        int child = newBranch(key, depth + 1, value);
+        if (count < SPARSE_CAPACITY)
+        {
+            MemoryUtil.setInt(address + 4 * count, child);
+            MemoryUtil.setByte(address + SPARSE_BYTES + count, transition);
+            MemoryUtil.setIntVolatile(address + SPARSE_COUNT, count + 1);
+            return node;
+        }
+
+        int full = allocate(FULL_CELLS, FULL);
+        long fullAddress = address(full);
+        for (int i = 0; i < count; i++)
+            MemoryUtil.setInt(fullAddress + 4 * (MemoryUtil.getByte(address + SPARSE_BYTES + i) & 0xFF), MemoryUtil.getInt(address + 4 * i));
+        MemoryUtil.setInt(fullAddress + 4 * (transition & 0xFF), child);
+        return full;
+    }
+
+    private int insertFull(int node, byte[] key, int depth, int value)
+    {
+        updateSlot(address(node) + 4 * (key[depth] & 0xFF), key, depth + 1, value);
+        return node;
+    }
+
+    private int insertChain(int node, byte[] key, int depth, int value)
+    {
+        long address = address(node);
+        int length = MemoryUtil.getByte(address + CHAIN_LENGTH);
+        int common = 0;
+        while (common < length && depth + common < key.length && MemoryUtil.getByte(address + common) == key[depth + common])
+            common++;
+
+        if (common == length)
+        {
+            updateSlot(address + CHAIN_CHILD, key, depth + length, value);
+            return node;
+        }
+
+        // keys are prefix-free, so the key diverges from the chain before running out; split the chain around
+        // the first differing byte, keeping the bytes before it as a chain leading to a new sparse node
+        assert depth + common < key.length;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = MemoryUtil.getByte(address + i);
+        int child = MemoryUtil.getInt(address + CHAIN_CHILD);
+        int tail = common + 1 < length ? newChain(bytes, common + 1, length, child) : child;
+
+        int branch = allocate(1, SPARSE);
+        long branchAddress = address(branch);
+        MemoryUtil.setInt(branchAddress, tail);
+        MemoryUtil.setByte(branchAddress + SPARSE_BYTES, bytes[common]);
+        MemoryUtil.setInt(branchAddress + 4, newBranch(key, depth + common + 1, value));
+        MemoryUtil.setByte(branchAddress + SPARSE_BYTES + 1, key[depth + common]);
+        MemoryUtil.setInt(branchAddress + SPARSE_COUNT, 2);
+        return common > 0 ? newChain(bytes, 0, common, branch) : branch;
+    }
+
+    private void updateSlot(long slot, byte[] key, int depth, int value)
+    {
+        int child = MemoryUtil.getInt(slot);
+        int updated = child == NONE ? newBranch(key, depth, value) : insert(child, key, depth, value);
+        if (updated != child)
+            MemoryUtil.setIntVolatile(slot, updated);
+    }
+
+    /**
+     * Builds the chains holding {@code key} from {@code depth} onwards, back to front, and returns the first.
+     */
+    private int newBranch(byte[] key, int depth, int value)
+    {
+        int node = ~value;
+        for (int end = key.length; end > depth; )
+        {
+            int start = Math.max(depth, end - CHAIN_CAPACITY);
+            node = newChain(key, start, end, node);
+            end = start;
+        }
+        return node;
+    }
+
+    private int newChain(byte[] bytes, int from, int to, int child)
+    {
+        int node = allocate(1, CHAIN);
+        long address = address(node);
+        for (int i = from; i < to; i++)
+            MemoryUtil.setByte(address + i - from, bytes[i]);
+        MemoryUtil.setByte(address + CHAIN_LENGTH, (byte) (to - from));
+        MemoryUtil.setInt(address + CHAIN_CHILD, child);
+        return node;
+    }
+
+    private int allocate(int cells, int type)
+    {
+        int cell = nextCell;
+        // a node never straddles two blocks
+        if ((cell & CELLS_PER_BLOCK_MASK) + cells > CELLS_PER_BLOCK_MASK + 1)
+            cell = (cell | CELLS_PER_BLOCK_MASK) + 1;
+        if (cell + cells > MAX_CELLS)
+            throw new IllegalStateException("Memtable trie is full; lower memtable_offheap_space_in_mb");
+
+        int block = cell >>> CELLS_PER_BLOCK_SHIFT;
+        long[] current = blocks;
+        if (block == current.length)
+        {
+            long address = MemoryUtil.allocate(BLOCK_SIZE);
+            MemoryUtil.setByte(address, BLOCK_SIZE, (byte) 0);
+            long[] grown = Arrays.copyOf(current, block + 1);
+            grown[block] = address;
+            blocks = grown;
+            memoryUsed = (long) grown.length * BLOCK_SIZE;
+        }
+        nextCell = cell + cells;
+        return (cell << TYPE_BITS) | type;
+    }
+
+    private long address(int node)
+    {
+        int cell = node >>> TYPE_BITS;
+        return blocks[cell >>> CELLS_PER_BLOCK_SHIFT] + ((long) (cell & CELLS_PER_BLOCK_MASK) << CELL_SHIFT);
+    }
+
+    private static int sparseChild(long address, int transition)
+    {
+        int count = MemoryUtil.getIntVolatile(address + SPARSE_COUNT);
+        for (int i = 0; i < count; i++)
+        {
+            if ((MemoryUtil.getByte(address + SPARSE_BYTES + i) & 0xFF) == transition)
+                return MemoryUtil.getIntVolatile(address + 4 * i);
+        }
+        return NONE;
+    }
+
+    /**
+     * One end of a key range. Keys starting with {@code bytes} (including {@code bytes} itself) are inside the
+     * range if {@code includesPrefixed}; other keys are inside or out according to how they compare to {@code bytes}.
+     */
+    public static final class Bound
+    {
+        final byte[] bytes;
+        final boolean includesPrefixed;
+
+        public Bound(byte[] bytes, boolean includesPrefixed)
+        {
+            this.bytes = bytes;
+            this.includesPrefixed = includesPrefixed;
+        }
+    }
+
+    /**
+     * Walks the trie depth first, pruning the subtrees that fall outside its bounds. Keys are never materialized:
+     * while the path walked so far matches a bound byte for byte the bound stays "tight" and is checked on each
+     * transition, and it is dropped as soon as the path diverges from it.
+     */
+    public final class Cursor
+    {
+        private static final int LOWER = 1;
+        private static final int UPPER = 2;
+        // the subtree sorts before the lower bound and is skipped
+        private static final int BELOW = -1;
+        // the subtree, and everything after it, sorts after the upper bound
+        private static final int ABOVE = -2;
+
+        private final Bound lower;
+        private final Bound upper;
+        private final List<Frame> frames = new ArrayList<>();
+        private int stackSize;
+
+        // the next node to visit, the length of the path leading to it and which bounds that path still matches
+        private int node;
+        private int depth;
+        private int flags;
+
+        private Cursor(Bound lower, Bound upper)
+        {
+            this.lower = lower;
+            this.upper = upper;
+            this.node = root;
+            this.flags = (lower != null ? LOWER : 0) | (upper != null ? UPPER : 0);
+        }
+
+        /**
+         * @return the next value in key order, or {@link #NOT_FOUND} once the range is exhausted
+         */
+        public int advance()
+        {
+            while (true)
+            {
+                if (node == NONE && !nextChild())
+                    return NOT_FOUND;
+
+                int state = arrive(flags, depth);
+                if (state == ABOVE)
+                    return finish();
+                if (state == BELOW)
+                {
+                    node = NONE;
+                    continue;
+                }
+
+                if (node < 0)
+                {
+                    int value = ~node;
+                    node = NONE;
+                    // the path is a proper prefix of the lower bound, so sorts before it
+                    if ((state & LOWER) != 0)
+                        continue;
+                    return value;
+                }
+
+                long address = address(node);
+                if ((node & TYPE_MASK) != CHAIN)
+                {
+                    push(address, (node & TYPE_MASK) == FULL, state);
+                    node = NONE;
+                    continue;
+                }
+
+                int length = MemoryUtil.getByte(address + CHAIN_LENGTH);
+                for (int i = 0; i < length && state >= 0; i++)
+                {
+                    if (i > 0)
+                        state = arrive(state, depth);
+                    if (state >= 0)
+                        state = transition(state, depth++, MemoryUtil.getByte(address + i) & 0xFF);
+                }
+                if (state == ABOVE)
+                    return finish();
+                node = state == BELOW ? NONE : MemoryUtil.getIntVolatile(address + CHAIN_CHILD);
+                flags = state;
+            }
+        }
+
+        private int finish()
+        {
+            node = NONE;
+            stackSize = 0;
+            return NOT_FOUND;
+        }
+
+        private int arrive(int state, int pathLength)
+        {
+            if ((state & LOWER) != 0 && pathLength == lower.bytes.length)
+            {
+                if (!lower.includesPrefixed)
+                    return BELOW;
+                state &= ~LOWER;
+            }
+            if ((state & UPPER) != 0 && pathLength == upper.bytes.length)
+            {
+                if (!upper.includesPrefixed)
+                    return ABOVE;
+                state &= ~UPPER;
+            }
+            return state;
+        }
+
+        private int transition(int state, int pathLength, int transition)
+        {
+            if ((state & LOWER) != 0)
+            {
+                int bound = lower.bytes[pathLength] & 0xFF;
+                if (transition < bound)
+                    return BELOW;
+                if (transition > bound)
+                    state &= ~LOWER;
+            }
+            if ((state & UPPER) != 0)
+            {
+                int bound = upper.bytes[pathLength] & 0xFF;
+                if (transition > bound)
+                    return ABOVE;
+                if (transition < bound)
+                    state &= ~UPPER;
+            }
+            return state;
+        }
+
+        private void push(long address, boolean full, int state)
+        {
+            if (stackSize == frames.size())
+                frames.add(new Frame());
+            frames.get(stackSize++).reset(address, full, depth, state);
+        }
+
+        /**
+         * Moves to the next child, in transition order, of the innermost node still being walked.
+         */
+        private boolean nextChild()
+        {
+            while (stackSize > 0)
+            {
+                Frame frame = frames.get(stackSize - 1);
+                while (frame.next())
+                {
+                    int state = transition(frame.flags, frame.depth, frame.transition);
+                    if (state == ABOVE)
+                    {
+                        finish();
+                        return false;
+                    }
+                    if (state != BELOW)
+                    {
+                        node = frame.child;
+                        depth = frame.depth + 1;
+                        flags = state;
+                        return true;
+                    }
+                }
+                stackSize--;
+            }
+            return false;
+        }
+    }
+
+    private static final class Frame
+    {
+        private long address;
+        private boolean full;
+        private int depth;
+        private int flags;
+        private int index;
+
+        // a sparse node's children, sorted by transition byte when the node is entered
+        private int count;
+        private final int[] transitions = new int[SPARSE_CAPACITY];
+        private final int[] children = new int[SPARSE_CAPACITY];
+
+        private int transition;
+        private int child;
+
+        void reset(long address, boolean full, int depth, int flags)
+        {
+            this.address = address;
+            this.full = full;
+            this.depth = depth;
+            this.flags = flags;
+            this.index = 0;
+            if (full)
+                return;
+
+            count = MemoryUtil.getIntVolatile(address + SPARSE_COUNT);
+            for (int i = 0; i < count; i++)
+            {
+                int transition = MemoryUtil.getByte(address + SPARSE_BYTES + i) & 0xFF;
+                int child = MemoryUtil.getIntVolatile(address + 4 * i);
+                int j = i;
+                for (; j > 0 && transitions[j - 1] > transition; j--)
+                {
+                    transitions[j] = transitions[j - 1];
+                    children[j] = children[j - 1];
+                }
+                transitions[j] = transition;
+                children[j] = child;
+            }
+        }
+
+        boolean next()
+        {
+            if (!full)
+            {
+                if (index == count)
+                    return false;
+                transition = transitions[index];
+                child = children[index++];
+                return true;
+            }
+
+            while (index < 256)
+            {
+                int slot = MemoryUtil.getIntVolatile(address + 4 * index);
+                if (slot != NONE)
+                {
+                    transition = index++;
+                    child = slot;
+                    return true;
+                }
+                index++;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.memtable;
+
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.db.partitions.AtomicBTreePartition;
+import org.apache.cassandra.dht.IPartitioner;
+
+/**
+ * The index of a memtable's partitions, in token order.
+ * <p>
+ * Reads may run concurrently with writes and with each other; iteration is weakly consistent, as for
+ * {@link java.util.concurrent.ConcurrentSkipListMap}.
+ */
+public interface PartitionMap
+{
+    AtomicBTreePartition get(DecoratedKey key);
+
+    /**
+     * @return the partition already stored under {@code key}, or null if {@code partition} was added
+     */
+    AtomicBTreePartition putIfAbsent(DecoratedKey key, AtomicBTreePartition partition);
+
+    boolean isEmpty();
+
+    int size();
+
+    /**
+     * @return the partitions between {@code from} and {@code to}, in token order; a null bound leaves that side open
+     */
+    Iterable<AtomicBTreePartition> subMap(PartitionPosition from, boolean fromInclusive, PartitionPosition to, boolean toInclusive);
+
+    /**
+     * @return the native memory held by the index itself, in bytes
+     */
+    long offHeapSize();
+
+    /**
+     * Frees the index's native memory, once no read can be in flight.
+     */
+    void release();
+
+    static PartitionMap create(IPartitioner partitioner)
+    {
+        if (DatabaseDescriptor.getMemtableAllocationType() == Config.MemtableAllocationType.offheap_trie
+            && TriePartitionMap.supports(partitioner))
+            return new TriePartitionMap();
+        return new SkipListPartitionMap();
+    }
+}
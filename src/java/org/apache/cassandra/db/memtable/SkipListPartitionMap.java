@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.memtable;
+
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.db.partitions.AtomicBTreePartition;
+
+/**
+ * Indexes partitions on heap, in a {@link ConcurrentSkipListMap}.
+ */
+public class SkipListPartitionMap implements PartitionMap
+{
+    // We index the memtable by PartitionPosition only for the purpose of being able
+    // to select key range using Token.KeyBound. However Memtable.put() ensures that we
+    // actually only store DecoratedKey.
+    private final ConcurrentNavigableMap<PartitionPosition, AtomicBTreePartition> partitions = new ConcurrentSkipListMap<>();
+
+    public AtomicBTreePartition get(DecoratedKey key)
+    {
+        return partitions.get(key);
+    }
+
+    public AtomicBTreePartition putIfAbsent(DecoratedKey key, AtomicBTreePartition partition)
+    {
+        return partitions.putIfAbsent(key, partition);
+    }
+
+    public boolean isEmpty()
+    {
+        return partitions.isEmpty();
+    }
+
+    public int size()
+    {
+        return partitions.size();
+    }
+
+    public Iterable<AtomicBTreePartition> subMap(PartitionPosition from, boolean fromInclusive, PartitionPosition to, boolean toInclusive)
+    {
+        ConcurrentNavigableMap<PartitionPosition, AtomicBTreePartition> subMap;
+        if (from == null)
+            subMap = to == null ? partitions : partitions.headMap(to, toInclusive);
+        else
+            subMap = to == null
+                   ? partitions.tailMap(from, fromInclusive)
+                   : partitions.subMap(from, fromInclusive, to, toInclusive);
+        return subMap.values();
+    }
+
+    public long offHeapSize()
+    {
+        return 0;
+    }
+
+    public void release()
+    {
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.memtable;
+
+import java.util.Arrays;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
+
+import org.apache.cassandra.db.ByteComparableKey;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.db.partitions.AtomicBTreePartition;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Token;
+
+/**
+ * Indexes partitions in off-heap {@link MemtableTrie}s, keyed by the byte-comparable form of their
+ * {@link DecoratedKey} (see {@link ByteComparableKey}), which only exists for {@link Murmur3Partitioner} tokens.
+ * <p>
+ * As a trie only takes one writer at a time, the keys are split by the top bits of their token into
+ * {@link #STRIPES} stripes, each a trie of its own whose writers are serialized on the stripe, so that writes to
+ * different stripes proceed in parallel. Each trie maps its keys to the slots of an on-heap array holding the
+ * partitions. Readers never lock.
+ */
+public class TriePartitionMap implements PartitionMap
+{
+    private static final int STRIPE_BITS = 3;
+    @VisibleForTesting
+    static final int STRIPES = 1 << STRIPE_BITS;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public TriePartitionMap()
+    {
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe();
+    }
+
+    public static boolean supports(IPartitioner partitioner)
+    {
+        return ByteComparableKey.supports(partitioner);
+    }
+
+    /**
+     * @return the stripe of an encoded key or bound, from the top bits of its token, so that the stripes are in
+     * key order
+     */
+    private static int stripeOf(byte[] bytes)
+    {
+        return (bytes[0] & 0xFF) >>> (8 - STRIPE_BITS);
+    }
+
+    public AtomicBTreePartition get(DecoratedKey key)
+    {
+        byte[] bytes = ByteComparableKey.encode(key);
+        return stripes[stripeOf(bytes)].get(bytes);
+    }
+
+    public AtomicBTreePartition putIfAbsent(DecoratedKey key, AtomicBTreePartition partition)
+    {
+        byte[] bytes = ByteComparableKey.encode(key);
+        return stripes[stripeOf(bytes)].putIfAbsent(bytes, partition);
+    }
+
+    public boolean isEmpty()
+    {
+        for (Stripe stripe : stripes)
+        {
+            if (stripe.size > 0)
+                return false;
+        }
+        return true;
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Stripe stripe : stripes)
+            size += stripe.size;
+        return size;
+    }
+
+    public Iterable<AtomicBTreePartition> subMap(PartitionPosition from, boolean fromInclusive, PartitionPosition to, boolean toInclusive)
+    {
+        MemtableTrie.Bound lower = from == null ? null : bound(from, fromInclusive, true);
+        MemtableTrie.Bound upper = to == null ? null : bound(to, toInclusive, false);
+        int first = lower == null ? 0 : stripeOf(lower.bytes);
+        int last = upper == null ? STRIPES - 1 : stripeOf(upper.bytes);
+        return () -> new AbstractIterator<AtomicBTreePartition>()
+        {
+            private int current = first;
+            private MemtableTrie.Cursor cursor = first <= last ? cursor(first) : null;
+
+            private MemtableTrie.Cursor cursor(int stripe)
+            {
+                // only the first and last stripes are cut by the bounds, the ones between are entirely covered
+                return stripes[stripe].trie.cursor(stripe == first ? lower : null, stripe == last ? upper : null);
+            }
+
+            protected AtomicBTreePartition computeNext()
+            {
+                while (cursor != null)
+                {
+                    int slot = cursor.advance();
+                    if (slot != MemtableTrie.NOT_FOUND)
+                        return stripes[current].partitions[slot];
+
+                    cursor = ++current <= last ? cursor(current) : null;
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    public long offHeapSize()
+    {
+        long size = 0;
+        for (Stripe stripe : stripes)
+            size += stripe.trie.memoryUsed();
+        return size;
+    }
+
+    public void release()
+    {
+        for (Stripe stripe : stripes)
+            stripe.trie.release();
+    }
+
+    /**
+     * A {@link Token.KeyBound} sorts before (minimum bound) or after all the keys of its token, so it covers
+     * the keys prefixed by the token bytes exactly when it is a lower minimum bound or an upper maximum bound.
+     */
+    @VisibleForTesting
+    static MemtableTrie.Bound bound(PartitionPosition position, boolean inclusive, boolean isLower)
+    {
+        if (position instanceof DecoratedKey)
+            return new MemtableTrie.Bound(ByteComparableKey.encode((DecoratedKey) position), inclusive);
+
+        boolean isMinimumBound = ((Token.KeyBound) position).isMinimumBound;
+        return new MemtableTrie.Bound(ByteComparableKey.encode(position), isMinimumBound == isLower);
+    }
+
+    private static final class Stripe
+    {
+        private final MemtableTrie trie = new MemtableTrie();
+        // written by the single writer before the trie publishes the slot, so a reader that found a slot sees it filled
+        private volatile AtomicBTreePartition[] partitions = new AtomicBTreePartition[16];
+        private volatile int size;
+
+        AtomicBTreePartition get(byte[] bytes)
+        {
+            int slot = trie.get(bytes);
+            return slot == MemtableTrie.NOT_FOUND ? null : partitions[slot];
+        }
+
+        synchronized AtomicBTreePartition putIfAbsent(byte[] bytes, AtomicBTreePartition partition)
+        {
+            int slot = size;
+            AtomicBTreePartition[] current = partitions;
+            if (slot == current.length)
+            {
+                current = Arrays.copyOf(current, slot * 2);
+                partitions = current;
+            }
+            current[slot] = partition;
+
+            int existing = trie.putIfAbsent(bytes, slot);
+            if (existing != MemtableTrie.NOT_FOUND)
+            {
+                current[slot] = null;
+                return partitions[existing];
+            }
+            size = slot + 1;
+            return null;
+        }
+    }
+}
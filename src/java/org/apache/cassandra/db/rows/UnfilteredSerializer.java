@@ -18,6 +18,7 @@
 package org.apache.cassandra.db.rows;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import com.google.common.collect.Collections2;
@@ -527,11 +528,11 @@ public class UnfilteredSerializer
 
             for (Cell c : r.cells()) {
                 if (c.column.name.toString().equals("field0")) {
-                    String value = doubleTreasTag.getReadResult();
+                    ByteBuffer value = doubleTreasTag.getReadResult();
                     if (value == null) {
                         c.setValue(ByteBufferUtil.bytes("failure"));
                     } else {
-                        c.setValue(ByteBufferUtil.bytes(value));
+                        c.setValue(value.duplicate());
                     }
                     break;
                 }
@@ -29,6 +29,7 @@ import com.google.common.collect.Iterables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.Treas.TreasTagIndex;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.Keyspace;
 import org.apache.cassandra.db.Mutation;
@@ -232,6 +233,18 @@ public class CassandraStreamReceiver implements StreamReceiver
                     }
                 }
             }
+
+            //invalidate the TREAS tag index, which does not know the slots of the streamed partitions
+            if (cfs.metadata().params.erasureCoding.isEnabled())
+            {
+                List<Bounds<Token>> boundsToInvalidate = new ArrayList<>(readers.size());
+                readers.forEach(sstable -> boundsToInvalidate.add(new Bounds<Token>(sstable.first.getToken(), sstable.last.getToken())));
+                int invalidatedKeys = TreasTagIndex.invalidate(cfs.metadata.id, Bounds.getNonOverlappingBounds(boundsToInvalidate));
+                if (invalidatedKeys > 0)
+                    logger.debug("[Stream #{}] Invalidated {} TREAS tag index entries on table {}.{} after stream " +
+                                 "receive task completed.", session.planId(), invalidatedKeys,
+                                 cfs.keyspace.getName(), cfs.getTableName());
+            }
         }
     }
 
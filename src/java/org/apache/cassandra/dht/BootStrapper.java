@@ -81,6 +81,8 @@ public class BootStrapper extends ProgressEventNotifierSupport
                                                    DatabaseDescriptor.getStreamingConnectionsPerHost());
         streamer.addSourceFilter(new RangeStreamer.FailureDetectorSourceFilter(FailureDetector.instance));
         streamer.addSourceFilter(new RangeStreamer.ExcludeLocalNodeFilter());
+        // the shards of erasure coded tables are regenerated once the node has joined the ring, see StorageService
+        streamer.skipErasureCodedTables();
 
         for (String keyspaceName : Schema.instance.getNonLocalStrategyKeyspaces())
         {
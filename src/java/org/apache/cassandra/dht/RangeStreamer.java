@@ -33,6 +33,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.Keyspace;
 import org.apache.cassandra.gms.EndpointState;
 import org.apache.cassandra.gms.Gossiper;
@@ -68,6 +69,7 @@ public class RangeStreamer
     private final boolean useStrictConsistency;
     private final IEndpointSnitch snitch;
     private final StreamStateStore stateStore;
+    private boolean skipErasureCodedTables;
 
     /**
      * A filter applied to sources to stream from when constructing a fetch map.
@@ -172,6 +174,16 @@ public class RangeStreamer
         sourceFilters.add(filter);
     }
 
+    /**
+     * Leaves the erasure coded tables out of the streamed tables: every replica holds a different shard of their
+     * values, so the SSTables of another replica are of no use to this node. Their shards are regenerated with
+     * {@link org.apache.cassandra.Treas.TreasShardRebuilder} instead.
+     */
+    public void skipErasureCodedTables()
+    {
+        skipErasureCodedTables = true;
+    }
+
     /**
      * Add ranges to be streamed for given keyspace.
      *
@@ -439,9 +451,29 @@ public class RangeStreamer
             if (logger.isTraceEnabled())
                 logger.trace("{}ing from {} ranges {}", description, source, StringUtils.join(ranges, ", "));
             /* Send messages to respective folks to stream data over to me */
-            streamPlan.requestRanges(source, keyspace, ranges);
+            if (skipErasureCodedTables)
+            {
+                String[] tables = replicatedTables(keyspace);
+                if (tables.length > 0)
+                    streamPlan.requestRanges(source, keyspace, ranges, tables);
+            }
+            else
+            {
+                streamPlan.requestRanges(source, keyspace, ranges);
+            }
         }
 
         return streamPlan.execute();
     }
+
+    private static String[] replicatedTables(String keyspace)
+    {
+        List<String> tables = new ArrayList<>();
+        for (ColumnFamilyStore cfs : Keyspace.open(keyspace).getColumnFamilyStores())
+        {
+            if (!cfs.metadata().params.erasureCoding.isEnabled())
+                tables.add(cfs.name);
+        }
+        return tables.toArray(new String[0]);
+    }
 }
@@ -230,6 +230,11 @@ public class VersionedValue implements Comparable<VersionedValue>
             return new VersionedValue(VersionedValue.HIBERNATE + VersionedValue.DELIMITER + value);
         }
 
+        public VersionedValue hlcNodeId(int nodeId)
+        {
+            return new VersionedValue(String.valueOf(nodeId));
+        }
+
         public VersionedValue rpcReady(boolean value)
         {
             return new VersionedValue(String.valueOf(value));
@@ -28,12 +28,15 @@ import javax.annotation.Nullable;
 
 import com.google.common.primitives.Ints;
 
+import org.apache.cassandra.Treas.TreasTagIndex;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.exceptions.WriteTimeoutException;
 import org.apache.cassandra.io.IVersionedSerializer;
 import org.apache.cassandra.io.util.DataInputBuffer;
 import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataOutputPlus;
 import org.apache.cassandra.schema.TableId;
+import org.apache.cassandra.schema.TableMetadata;
 import org.apache.cassandra.utils.vint.VIntCoding;
 
 import static org.apache.cassandra.db.TypeSizes.sizeof;
@@ -103,7 +106,23 @@ public final class Hint
                     filtered = filtered.without(id);
 
             if (!filtered.isEmpty())
-                return filtered.applyFuture();
+            {
+                TableMetadata metadata = filtered.getPartitionUpdates().iterator().next().metadata();
+                if (!metadata.params.erasureCoding.isEnabled())
+                    return filtered.applyFuture();
+
+                // the hint carries the shard of this replica, which takes a slot like any other TREAS write
+                try
+                {
+                    TreasTagIndex.forTable(metadata).apply(filtered);
+                }
+                catch (WriteTimeoutException e)
+                {
+                    CompletableFuture<?> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    return failed;
+                }
+            }
         }
 
         return CompletableFuture.completedFuture(null);
@@ -121,6 +140,14 @@ public final class Hint
         }
     }
 
+    /**
+     * @return whether the hinted mutation is a TREAS write, holding the shard of the value its target stores
+     */
+    boolean isErasureCoded()
+    {
+        return mutation.getPartitionUpdates().iterator().next().metadata().params.erasureCoding.isEnabled();
+    }
+
     /**
      * @return the overall ttl of the hint - the minimum of all mutation's tables' gc gs now and at the time of creation
      */
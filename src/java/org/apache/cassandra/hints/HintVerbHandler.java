@@ -82,6 +82,12 @@ public final class HintVerbHandler implements IVerbHandler<HintMessage>
             HintsService.instance.write(hostId, hint);
             reply(id, message.from);
         }
+        else if (!StorageProxy.instance.appliesLocally(hint.mutation) && hint.isErasureCoded())
+        {
+            // the hint carries the shard of this node, which no other replica of the key should store
+            logger.debug("Dropping a hint for {} of which this node is no longer a replica", hint.mutation.key());
+            reply(id, message.from);
+        }
         else if (!StorageProxy.instance.appliesLocally(hint.mutation))
         {
             // the topology has changed, and we are no longer a replica of the mutation - since we don't know which node(s)
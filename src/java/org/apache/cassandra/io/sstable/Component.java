@@ -52,6 +52,8 @@ public class Component
         CRC("CRC.db"),
         // holds SSTable Index Summary (sampling of Index component)
         SUMMARY("Summary.db"),
+        // byte-comparable trie of the partition keys, pointing into the index and data files
+        PARTITION_INDEX("Partitions.db"),
         // table of contents, stores the list of all components for the sstable
         TOC("TOC.txt"),
         // built-in secondary index (may be multiple per sstable)
@@ -85,6 +87,7 @@ public class Component
     public final static Component DIGEST = new Component(Type.DIGEST);
     public final static Component CRC = new Component(Type.CRC);
     public final static Component SUMMARY = new Component(Type.SUMMARY);
+    public final static Component PARTITION_INDEX = new Component(Type.PARTITION_INDEX);
     public final static Component TOC = new Component(Type.TOC);
 
     public final Type type;
@@ -135,6 +138,7 @@ public class Component
             case DIGEST:           return Component.DIGEST;
             case CRC:              return Component.CRC;
             case SUMMARY:          return Component.SUMMARY;
+            case PARTITION_INDEX:  return Component.PARTITION_INDEX;
             case TOC:              return Component.TOC;
             case SECONDARY_INDEX:  return new Component(Type.SECONDARY_INDEX, name);
             case CUSTOM:           return new Component(Type.CUSTOM, name);
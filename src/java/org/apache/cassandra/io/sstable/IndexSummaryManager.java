@@ -210,7 +210,10 @@ public class IndexSummaryManager implements IndexSummaryManagerMBean
                 {
                     View view = cfStore.getTracker().getView();
                     allSSTables = ImmutableSet.copyOf(view.select(SSTableSet.CANONICAL));
-                    nonCompacting = ImmutableSet.copyOf(view.getUncompacting(allSSTables));
+                    // lookups don't use the summaries of sstables with a partition index, which are kept at the
+                    // maximum index interval: count them as if they were compacting, so they are never resampled
+                    nonCompacting = ImmutableSet.copyOf(Iterables.filter(view.getUncompacting(allSSTables),
+                                                                         sstable -> !sstable.hasPartitionIndex()));
                 }
                 while (null == (txn = cfStore.getTracker().tryModify(nonCompacting, OperationType.UNKNOWN)));
 
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.cassandra.db.ByteComparableKey;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.util.FileHandle;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.utils.concurrent.Ref;
+import org.apache.cassandra.utils.concurrent.SharedCloseable;
+
+/**
+ * An on-disk trie of the partition keys of an sstable (the Partitions.db component), written by
+ * {@link PartitionIndexBuilder}. It maps the shortest prefix of each key's {@link ByteComparableKey} form that no
+ * other key shares to the position of the key's primary index entry and, for partitions without a row index, to the
+ * position of the partition in the data file. It replaces the index summary and the scan of the primary index for
+ * lookups, but as it only stores prefixes, what it finds has to be checked against the actual key.
+ * <p>
+ * The payload of a leaf is the index position shifted left, with a low bit set if the data position follows, then the
+ * data position. See {@link TrieReader} for the node formats. The file ends with the position of the root, or -1 if
+ * it is empty.
+ */
+public class PartitionIndex implements SharedCloseable
+{
+    /** Branches that fit in a page are written within one; readers should read the file by the page */
+    public static final int PAGE_SIZE = 4096;
+
+    private final FileHandle fh;
+    private final long root;
+
+    public PartitionIndex(FileHandle fh, long root)
+    {
+        this.fh = fh;
+        this.root = root;
+    }
+
+    public static PartitionIndex load(FileHandle fh) throws IOException
+    {
+        try (RandomAccessReader reader = fh.createReader())
+        {
+            reader.seek(reader.length() - 8);
+            return new PartitionIndex(fh, reader.readLong());
+        }
+    }
+
+    public static boolean supports(IPartitioner partitioner)
+    {
+        return ByteComparableKey.supports(partitioner);
+    }
+
+    public Reader openReader()
+    {
+        return new Reader(fh.createReader());
+    }
+
+    public PartitionIndex sharedCopy()
+    {
+        return new PartitionIndex(fh.sharedCopy(), root);
+    }
+
+    public void close()
+    {
+        fh.close();
+    }
+
+    public Throwable close(Throwable accumulate)
+    {
+        return fh.close(accumulate);
+    }
+
+    public void addTo(Ref.IdentityCollection identities)
+    {
+        fh.addTo(identities);
+    }
+
+    public String path()
+    {
+        return fh.path();
+    }
+
+    /**
+     * What the index holds for a key.
+     */
+    public static class Entry
+    {
+        /** The position of the key's entry in the primary index */
+        public final long indexPosition;
+        /** The position of the partition in the data file, or -1 if it has a row index */
+        public final long dataPosition;
+
+        public Entry(long indexPosition, long dataPosition)
+        {
+            this.indexPosition = indexPosition;
+            this.dataPosition = dataPosition;
+        }
+
+        public boolean isIndexed()
+        {
+            return dataPosition < 0;
+        }
+    }
+
+    /**
+     * Looks keys up in the index. Not thread-safe.
+     */
+    public class Reader extends TrieReader implements Closeable
+    {
+        private final RandomAccessReader reader;
+
+        private Reader(RandomAccessReader reader)
+        {
+            super(reader);
+            this.reader = reader;
+        }
+
+        /**
+         * @return the entry of the only key that may be equal to the given one, or null if none can
+         */
+        public Entry exactCandidate(DecoratedKey key) throws IOException
+        {
+            if (root < 0)
+                return null;
+
+            byte[] bytes = ByteComparableKey.encode(key);
+            long node = root;
+            for (int depth = 0; ; depth++)
+            {
+                readNode(node);
+                if (type == LEAF)
+                    return readPayload();
+                if (depth == bytes.length)
+                    return null;
+                int index = search(bytes[depth] & 0xFF);
+                if (index < 0)
+                    return null;
+                node = child(index);
+            }
+        }
+
+        /**
+         * Finds the entry of the last key whose prefix does not sort after the given position. That key may be
+         * greater than the position itself, but all the keys before it are smaller and all the keys after it are
+         * greater, so a scan of the primary index for the position can start at it.
+         *
+         * @return the entry, or null if all keys are greater than the position
+         */
+        public Entry floor(PartitionPosition key) throws IOException
+        {
+            if (root < 0)
+                return null;
+
+            byte[] bytes = ByteComparableKey.encode(key);
+            // a maximum bound sorts after all the keys of its token, which are the keys prefixed by its encoding
+            boolean afterPrefixed = key instanceof Token.KeyBound && !((Token.KeyBound) key).isMinimumBound;
+            // the last branch seen that is entirely before the key
+            long before = -1;
+            long node = root;
+            for (int depth = 0; ; depth++)
+            {
+                readNode(node);
+                if (type == LEAF)
+                    return readPayload();
+                if (depth == bytes.length)
+                {
+                    if (afterPrefixed)
+                        before = node;
+                    break;
+                }
+
+                int transition = bytes[depth] & 0xFF;
+                int index = search(transition);
+                int lesser = index >= 0 ? previous(index) : previous(-index - 1);
+                if (lesser >= 0)
+                    before = child(lesser);
+                if (index < 0)
+                    break;
+                node = child(index);
+            }
+            if (before < 0)
+                return null;
+            readLastLeaf(before);
+            return readPayload();
+        }
+
+        private Entry readPayload() throws IOException
+        {
+            seekToPayload();
+            long payload = in.readUnsignedVInt();
+            long dataPosition = (payload & 1) != 0 ? in.readUnsignedVInt() : -1;
+            return new Entry(payload >>> 1, dataPosition);
+        }
+
+        public void close()
+        {
+            reader.close();
+        }
+    }
+}
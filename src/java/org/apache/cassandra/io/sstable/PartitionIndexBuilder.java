@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.IOException;
+
+import org.apache.cassandra.db.ByteComparableKey;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.io.util.SequentialWriter;
+
+/**
+ * Writes a {@link PartitionIndex} for keys given in order. Each key is stored as the shortest prefix of its
+ * {@link ByteComparableKey} form that no other key shares, which is known once the next key is seen.
+ * <p>
+ * The nodes are written by a page-aligned {@link TrieBuilder}, so that lookups read a page or two.
+ */
+public class PartitionIndexBuilder
+{
+    private final SequentialWriter writer;
+    private final TrieBuilder trie;
+
+    // the last key, which is added when the next one tells how much of it is needed
+    private byte[] pending;
+    private long pendingIndexPosition;
+    private long pendingDataPosition;
+    private int pendingCommonPrefix;
+
+    public PartitionIndexBuilder(SequentialWriter writer)
+    {
+        this.writer = writer;
+        this.trie = new TrieBuilder(writer, true);
+    }
+
+    /**
+     * @param key the key, which must be greater than the last one added
+     * @param indexPosition the position of the key's entry in the primary index
+     * @param dataPosition the position of the partition in the data file, or -1 if the primary index entry must be
+     * read to find it, i.e. if the partition has a row index
+     */
+    public void addEntry(DecoratedKey key, long indexPosition, long dataPosition) throws IOException
+    {
+        byte[] bytes = ByteComparableKey.encode(key);
+        int commonPrefix = 0;
+        if (pending != null)
+        {
+            commonPrefix = TrieBuilder.commonPrefix(pending, pending.length, bytes, bytes.length);
+            add(pending, Math.max(pendingCommonPrefix, commonPrefix) + 1, pendingIndexPosition, pendingDataPosition);
+        }
+        pending = bytes;
+        pendingIndexPosition = indexPosition;
+        pendingDataPosition = dataPosition;
+        pendingCommonPrefix = commonPrefix;
+    }
+
+    /**
+     * Writes the remaining nodes and the position of the root, which ends the file.
+     *
+     * @return the position of the root, or -1 if no key was added
+     */
+    public long complete() throws IOException
+    {
+        if (pending != null)
+        {
+            add(pending, pendingCommonPrefix + 1, pendingIndexPosition, pendingDataPosition);
+            pending = null;
+        }
+
+        long root = trie.complete();
+        writer.writeLong(root);
+        return root;
+    }
+
+    private void add(byte[] bytes, int length, long indexPosition, long dataPosition) throws IOException
+    {
+        if (dataPosition >= 0)
+            trie.add(bytes, length, indexPosition << 1 | 1, dataPosition);
+        else
+            trie.add(bytes, length, indexPosition << 1);
+    }
+}
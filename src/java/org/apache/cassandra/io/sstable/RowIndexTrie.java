@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.cassandra.db.ByteComparableClustering;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * A trie of the first and last clusterings of the blocks of a row index, in their {@link ByteComparableClustering}
+ * form, with the index of their block as payload. It is written after the {@link IndexInfo}s of the primary index
+ * entries too large to be cached on heap, and lets readers find the block a slice starts in by reading a few nodes of
+ * the index file in place, rather than by binary-searching deserialized {@link IndexInfo}s.
+ * <p>
+ * As the first and last clusterings of all the blocks are in order, the first key not before a bound belongs to the
+ * first block whose last clustering is not before it, and the last key not after a bound belongs to the last block
+ * whose first clustering is not after it, which are the blocks forward and reversed slices start at.
+ * <p>
+ * The nodes are followed by an int holding the position of the root relative to the first {@link IndexInfo}, or
+ * {@link #NONE} if there is no trie, which is the case for the clustering types {@link ByteComparableClustering} does
+ * not support.
+ */
+public final class RowIndexTrie
+{
+    public static final int NONE = -1;
+
+    private RowIndexTrie()
+    {
+    }
+
+    public static void writeNone(DataOutputPlus out) throws IOException
+    {
+        out.writeInt(NONE);
+    }
+
+    /**
+     * Builds the trie of one partition at a time, in memory.
+     */
+    public static final class Builder
+    {
+        private final List<AbstractType<?>> clusteringTypes;
+        private final DataOutputBuffer nodes = new DataOutputBuffer();
+        private TrieBuilder trie;
+        private byte[] lastKey;
+        private int blocks;
+        private boolean failed;
+
+        /**
+         * @param clusteringTypes the clustering types, which must be supported by {@link ByteComparableClustering}
+         */
+        public Builder(List<AbstractType<?>> clusteringTypes)
+        {
+            assert ByteComparableClustering.supports(clusteringTypes);
+            this.clusteringTypes = clusteringTypes;
+            reset();
+        }
+
+        public void reset()
+        {
+            nodes.clear();
+            trie = new TrieBuilder(nodes, false);
+            lastKey = null;
+            blocks = 0;
+            failed = false;
+        }
+
+        /**
+         * Adds the next block of the partition.
+         */
+        public void add(IndexInfo block) throws IOException
+        {
+            int index = blocks++;
+            if (failed)
+                return;
+
+            add(ByteComparableClustering.encode(clusteringTypes, block.firstName), index);
+            add(ByteComparableClustering.encode(clusteringTypes, block.lastName), index);
+        }
+
+        private void add(byte[] key, int index) throws IOException
+        {
+            if (failed)
+                return;
+
+            if (key == null)
+            {
+                failed = true;
+                return;
+            }
+            if (lastKey != null)
+            {
+                int cmp = FBUtilities.compareUnsigned(key, lastKey);
+                // the first and last clusterings of a block with a single row are the same
+                if (cmp == 0)
+                    return;
+                // a value that does not sort as its type does would corrupt the trie, so there is none then
+                if (cmp < 0 || TrieBuilder.commonPrefix(lastKey, lastKey.length, key, key.length) == lastKey.length)
+                {
+                    failed = true;
+                    return;
+                }
+            }
+
+            trie.add(key, key.length, index);
+            lastKey = key;
+        }
+
+        /**
+         * Writes the trie of the blocks added since the last reset, then the position of its root relative to the
+         * start of the given output, which must hold the {@link IndexInfo}s of the partition.
+         */
+        public void write(DataOutputBuffer out) throws IOException
+        {
+            long root = failed ? NONE : trie.complete();
+            if (root < 0)
+            {
+                writeNone(out);
+                return;
+            }
+
+            int start = out.getLength();
+            out.write(nodes.getData(), 0, nodes.getLength());
+            out.writeInt(start + (int) root);
+        }
+    }
+
+    /**
+     * Searches a trie in place. Not thread-safe.
+     */
+    public static final class Reader extends TrieReader
+    {
+        private final long root;
+
+        /**
+         * @param in the input to read the trie from, which is left open
+         * @param root the position of the root of the trie in the input
+         */
+        public Reader(FileDataInput in, long root)
+        {
+            super(in);
+            this.root = root;
+        }
+
+        /**
+         * @param key the {@link ByteComparableClustering} form of a bound
+         * @return the index of the block of the first key not before the given one, or -1 if there is none
+         */
+        public int ceiling(byte[] key) throws IOException
+        {
+            // the first branch seen that is entirely after the key
+            long after = -1;
+            long node = root;
+            for (int depth = 0; ; depth++)
+            {
+                readNode(node);
+                if (type == LEAF)
+                {
+                    // the leaf's key is the searched one, or a prefix of it that sorts before it
+                    if (depth == key.length)
+                        return readPayload();
+                    break;
+                }
+                if (depth == key.length)
+                {
+                    // all the keys of the branch extend the searched one
+                    after = node;
+                    break;
+                }
+
+                int index = search(key[depth] & 0xFF);
+                int greater = next(index >= 0 ? index : -index - 2);
+                if (greater < count)
+                    after = child(greater);
+                if (index < 0)
+                    break;
+                node = child(index);
+            }
+            if (after < 0)
+                return -1;
+            readFirstLeaf(after);
+            return readPayload();
+        }
+
+        /**
+         * @param key the {@link ByteComparableClustering} form of a bound
+         * @return the index of the block of the last key not after the given one, or -1 if there is none
+         */
+        public int floor(byte[] key) throws IOException
+        {
+            // the last branch seen that is entirely before the key
+            long before = -1;
+            long node = root;
+            for (int depth = 0; ; depth++)
+            {
+                readNode(node);
+                // the leaf's key is the searched one, or a prefix of it that sorts before it
+                if (type == LEAF)
+                    return readPayload();
+                // all the keys of the branch extend the searched one, and sort after it
+                if (depth == key.length)
+                    break;
+
+                int index = search(key[depth] & 0xFF);
+                int lesser = previous(index >= 0 ? index : -index - 1);
+                if (lesser >= 0)
+                    before = child(lesser);
+                if (index < 0)
+                    break;
+                node = child(index);
+            }
+            if (before < 0)
+                return -1;
+            readLastLeaf(before);
+            return readPayload();
+        }
+
+        private int readPayload() throws IOException
+        {
+            seekToPayload();
+            return (int) in.readUnsignedVInt();
+        }
+    }
+}
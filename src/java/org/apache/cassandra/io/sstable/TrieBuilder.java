@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.utils.vint.VIntCoding;
+
+/**
+ * Writes a trie of byte keys given in order, none of which may be a prefix of another, each with a payload of
+ * unsigned vints. See {@link TrieReader} for the node formats.
+ * <p>
+ * Nodes are written children first, as they are completed, and point to their children by their distance. To keep
+ * lookups to a page read or two, the builder holds completed branches in memory until they are larger than a page,
+ * and then writes each of their children in one piece. If asked to align pages, it starts a new page for any branch
+ * that does not fit in what is left of the current one; this only makes sense if the output positions are file
+ * positions.
+ */
+class TrieBuilder
+{
+    private final DataOutputPlus out;
+    private final boolean alignPages;
+
+    // the nodes on the path to the last key added, by depth
+    private final List<Node> path = new ArrayList<>();
+    private byte[] lastKey;
+    private int lastKeyLength;
+
+    /**
+     * @param out where to write the nodes, which must support {@link DataOutputPlus#position()}
+     * @param alignPages whether to pad the output so branches that fit in a page do not cross a page boundary
+     */
+    TrieBuilder(DataOutputPlus out, boolean alignPages)
+    {
+        assert out.hasPosition();
+        this.out = out;
+        this.alignPages = alignPages;
+    }
+
+    /**
+     * @param bytes the key, which must be greater than the last one added and not a prefix of it
+     * @param length the number of bytes of the key to use
+     */
+    void add(byte[] bytes, int length, long... payload) throws IOException
+    {
+        if (path.isEmpty())
+            path.add(new Node());
+
+        // keys are neither equal to nor prefixes of one another, so they diverge before the end of either
+        int common = lastKey == null ? 0 : commonPrefix(lastKey, lastKeyLength, bytes, length);
+        while (path.size() - 1 > common)
+            completeNode(path.remove(path.size() - 1));
+
+        for (int depth = common; depth < length; depth++)
+        {
+            Node child = new Node();
+            path.get(depth).addChild(bytes[depth], child);
+            path.add(child);
+        }
+        path.get(length).setPayload(payload);
+        lastKey = bytes;
+        lastKeyLength = length;
+    }
+
+    /**
+     * Writes the remaining nodes, ending with the root.
+     *
+     * @return the position of the root, or -1 if no key was added
+     */
+    long complete() throws IOException
+    {
+        if (path.isEmpty())
+            return -1;
+
+        while (path.size() > 1)
+            completeNode(path.remove(path.size() - 1));
+        Node node = path.remove(0);
+        writeBranch(node);
+        lastKey = null;
+        return node.position;
+    }
+
+    static int commonPrefix(byte[] left, int leftLength, byte[] right, int rightLength)
+    {
+        int length = Math.min(leftLength, rightLength);
+        for (int i = 0; i < length; i++)
+        {
+            if (left[i] != right[i])
+                return i;
+        }
+        return length;
+    }
+
+    /**
+     * Called once all of the node's children are complete: writes them out if the node's branch no longer fits
+     * in a page.
+     */
+    private void completeNode(Node node) throws IOException
+    {
+        if (node.count == 0)
+            return;
+
+        long start = out.position();
+        if (layout(node, start) - start <= PartitionIndex.PAGE_SIZE)
+            return;
+
+        for (int i = 0; i < node.count; i++)
+        {
+            Node child = node.children[i];
+            if (child != null)
+            {
+                writeBranch(child);
+                node.setWritten(i);
+            }
+        }
+    }
+
+    /**
+     * Writes the unwritten part of the given branch, starting a new page if aligning pages and it fits in one but
+     * not in the remainder of the current one.
+     */
+    private void writeBranch(Node node) throws IOException
+    {
+        long start = out.position();
+        long size = layout(node, start) - start;
+        long remaining = PartitionIndex.PAGE_SIZE - (start & (PartitionIndex.PAGE_SIZE - 1));
+        if (alignPages && size <= PartitionIndex.PAGE_SIZE && size > remaining)
+        {
+            for (long i = 0; i < remaining; i++)
+                out.writeByte(0);
+        }
+        write(node);
+    }
+
+    /**
+     * Computes where the nodes of the unwritten part of a branch would go if written from the given position.
+     *
+     * @return the position following the branch
+     */
+    private static long layout(Node node, long position)
+    {
+        for (int i = 0; i < node.count; i++)
+        {
+            if (node.children[i] != null)
+                position = layout(node.children[i], position);
+        }
+        node.position = position;
+        return position + node.serializedSize(position);
+    }
+
+    private void write(Node node) throws IOException
+    {
+        for (int i = 0; i < node.count; i++)
+        {
+            if (node.children[i] != null)
+            {
+                write(node.children[i]);
+                node.setWritten(i);
+            }
+        }
+        node.position = out.position();
+        node.serialize(out);
+    }
+
+    private static class Node
+    {
+        private byte[] transitions;
+        // the child nodes, until written, and then their positions
+        private Node[] children;
+        private long[] childPositions;
+        private int count;
+
+        private long[] payload;
+
+        // the position of the node once written, or during a layout, where it would be
+        private long position = -1;
+
+        void addChild(byte transition, Node child)
+        {
+            if (children == null)
+            {
+                transitions = new byte[4];
+                children = new Node[4];
+                childPositions = new long[4];
+            }
+            else if (count == children.length)
+            {
+                transitions = Arrays.copyOf(transitions, count * 2);
+                children = Arrays.copyOf(children, count * 2);
+                childPositions = Arrays.copyOf(childPositions, count * 2);
+            }
+            transitions[count] = transition;
+            children[count] = child;
+            count++;
+        }
+
+        void setPayload(long[] payload)
+        {
+            assert count == 0;
+            this.payload = payload;
+        }
+
+        void setWritten(int child)
+        {
+            childPositions[child] = children[child].position;
+            children[child] = null;
+        }
+
+        private long childPosition(int child)
+        {
+            return children[child] != null ? children[child].position : childPositions[child];
+        }
+
+        private int pointerSize(long position)
+        {
+            long maxDistance = 0;
+            for (int i = 0; i < count; i++)
+                maxDistance = Math.max(maxDistance, position - childPosition(i));
+            assert maxDistance > 0;
+            return (64 - Long.numberOfLeadingZeros(maxDistance) + 7) / 8;
+        }
+
+        private int range()
+        {
+            return (transitions[count - 1] & 0xFF) - (transitions[0] & 0xFF) + 1;
+        }
+
+        private int type(int pointerSize)
+        {
+            if (count == 0)
+                return TrieReader.LEAF;
+            if (count == 1)
+                return TrieReader.SINGLE;
+            return range() * pointerSize + 2 < count * (pointerSize + 1) + 1 ? TrieReader.DENSE : TrieReader.SPARSE;
+        }
+
+        int serializedSize(long position)
+        {
+            if (count == 0)
+            {
+                assert payload != null;
+                int size = 1;
+                for (long value : payload)
+                    size += VIntCoding.computeUnsignedVIntSize(value);
+                return size;
+            }
+
+            int pointerSize = pointerSize(position);
+            switch (type(pointerSize))
+            {
+                case TrieReader.SINGLE:
+                    return 2 + pointerSize;
+                case TrieReader.SPARSE:
+                    return 2 + count * (pointerSize + 1);
+                default:
+                    return 3 + range() * pointerSize;
+            }
+        }
+
+        void serialize(DataOutputPlus out) throws IOException
+        {
+            if (count == 0)
+            {
+                out.writeByte(TrieReader.LEAF << 4);
+                for (long value : payload)
+                    out.writeUnsignedVInt(value);
+                return;
+            }
+
+            int pointerSize = pointerSize(position);
+            int type = type(pointerSize);
+            out.writeByte(type << 4 | (pointerSize - 1));
+            switch (type)
+            {
+                case TrieReader.SINGLE:
+                    out.writeByte(transitions[0]);
+                    writePointer(out, position - childPositions[0], pointerSize);
+                    break;
+                case TrieReader.SPARSE:
+                    out.writeByte(count - 1);
+                    out.write(transitions, 0, count);
+                    for (int i = 0; i < count; i++)
+                        writePointer(out, position - childPositions[i], pointerSize);
+                    break;
+                default:
+                    int first = transitions[0] & 0xFF;
+                    out.writeByte(first);
+                    out.writeByte(transitions[count - 1]);
+                    for (int i = 0, transition = first; i < count; transition++)
+                    {
+                        if ((transitions[i] & 0xFF) == transition)
+                            writePointer(out, position - childPositions[i++], pointerSize);
+                        else
+                            writePointer(out, 0, pointerSize);
+                    }
+            }
+        }
+
+        private static void writePointer(DataOutputPlus out, long distance, int size) throws IOException
+        {
+            for (int shift = (size - 1) * 8; shift >= 0; shift -= 8)
+                out.writeByte((int) (distance >>> shift));
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.IOException;
+
+import org.apache.cassandra.io.util.FileDataInput;
+
+/**
+ * Walks the nodes of an on-disk trie written by {@link TrieBuilder}, reading them in place.
+ * <p>
+ * Nodes start with a byte holding their type in its high bits and, if they have children, the size of the pointers
+ * to them less one in the low bits. Pointers are the distance back from the node to the child, so a trie can be
+ * copied anywhere in a file.
+ * <ul>
+ *   <li>{@code LEAF}: the payload, as unsigned vints whose number and meaning are up to the user of the trie.</li>
+ *   <li>{@code SINGLE}: the transition byte, then the pointer.</li>
+ *   <li>{@code SPARSE}: the number of children less one, the transition bytes, then the pointers.</li>
+ *   <li>{@code DENSE}: the first and last transition bytes, then a pointer for each byte in between, 0 if none.</li>
+ * </ul>
+ */
+abstract class TrieReader
+{
+    static final int LEAF = 0;
+    static final int SINGLE = 1;
+    static final int SPARSE = 2;
+    static final int DENSE = 3;
+
+    final FileDataInput in;
+
+    // the node last read
+    long position;
+    int type;
+    int pointerSize;
+    int count;
+    int first;
+
+    TrieReader(FileDataInput in)
+    {
+        this.in = in;
+    }
+
+    void readNode(long node) throws IOException
+    {
+        in.seek(node);
+        int header = in.readUnsignedByte();
+        position = node;
+        type = header >> 4;
+        pointerSize = (header & 0x7) + 1;
+        switch (type)
+        {
+            case SINGLE:
+                count = 1;
+                first = in.readUnsignedByte();
+                break;
+            case SPARSE:
+                count = in.readUnsignedByte() + 1;
+                break;
+            case DENSE:
+                first = in.readUnsignedByte();
+                count = in.readUnsignedByte() - first + 1;
+                break;
+            default:
+                count = 0;
+        }
+    }
+
+    /**
+     * Positions the input at the payload of the leaf last read.
+     */
+    void seekToPayload() throws IOException
+    {
+        in.seek(position + 1);
+    }
+
+    /**
+     * Reads the first leaf of the given branch.
+     */
+    void readFirstLeaf(long node) throws IOException
+    {
+        while (true)
+        {
+            readNode(node);
+            if (type == LEAF)
+                return;
+            node = child(next(-1));
+        }
+    }
+
+    /**
+     * Reads the last leaf of the given branch.
+     */
+    void readLastLeaf(long node) throws IOException
+    {
+        while (true)
+        {
+            readNode(node);
+            if (type == LEAF)
+                return;
+            node = child(previous(count));
+        }
+    }
+
+    /**
+     * @return the index of the child for the given transition in the node last read, or if there is none,
+     * {@code -(insertion point) - 1}, as for a binary search
+     */
+    int search(int transition) throws IOException
+    {
+        switch (type)
+        {
+            case SINGLE:
+                return transition == first ? 0 : transition < first ? -1 : -2;
+            case SPARSE:
+                in.seek(position + 2);
+                for (int i = 0; i < count; i++)
+                {
+                    int current = in.readUnsignedByte();
+                    if (current >= transition)
+                        return current == transition ? i : -i - 1;
+                }
+                return -count - 1;
+            default:
+                int index = transition - first;
+                if (index < 0)
+                    return -1;
+                if (index >= count)
+                    return -count - 1;
+                return pointer(index) != 0 ? index : -index - 1;
+        }
+    }
+
+    /**
+     * @return the index of the last child before the given index, or -1 if none
+     */
+    int previous(int index) throws IOException
+    {
+        if (type != DENSE)
+            return index - 1;
+        // the first and last transitions of a dense node always have children
+        for (int i = index - 1; i >= 0; i--)
+        {
+            if (pointer(i) != 0)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first child after the given index, or {@code count} if none
+     */
+    int next(int index) throws IOException
+    {
+        if (type != DENSE)
+            return index + 1;
+        for (int i = index + 1; i < count; i++)
+        {
+            if (pointer(i) != 0)
+                return i;
+        }
+        return count;
+    }
+
+    long child(int index) throws IOException
+    {
+        return position - pointer(index);
+    }
+
+    private long pointer(int index) throws IOException
+    {
+        long start;
+        switch (type)
+        {
+            case SINGLE:
+                start = position + 2;
+                break;
+            case SPARSE:
+                start = position + 2 + count;
+                break;
+            default:
+                start = position + 3;
+        }
+        in.seek(start + (long) index * pointerSize);
+        long pointer = 0;
+        for (int i = 0; i < pointerSize; i++)
+            pointer = pointer << 8 | in.readUnsignedByte();
+        return pointer;
+    }
+}
@@ -206,6 +206,8 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
     protected FileHandle ifile;
     protected FileHandle dfile;
     protected IndexSummary indexSummary;
+    // the trie of the partition keys, if the sstable has one and is complete: lookups then use it instead of the summary
+    protected PartitionIndex partitionIndex;
     protected IFilter bf;
 
     protected final RowIndexEntry.IndexSerializer rowIndexEntrySerializer;
@@ -613,6 +615,26 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                                       StatsMetadata sstableMetadata,
                                       OpenReason openReason,
                                       SerializationHeader header)
+    {
+        return internalOpen(desc, components, metadata, ifile, dfile, isummary, null, bf, maxDataAge, sstableMetadata, openReason, header);
+    }
+
+    /**
+     * Open a RowIndexedReader which already has its state initialized (by SSTableWriter), including its partition
+     * index, which may be null.
+     */
+    public static SSTableReader internalOpen(Descriptor desc,
+                                      Set<Component> components,
+                                      TableMetadataRef metadata,
+                                      FileHandle ifile,
+                                      FileHandle dfile,
+                                      IndexSummary isummary,
+                                      PartitionIndex partitionIndex,
+                                      IFilter bf,
+                                      long maxDataAge,
+                                      StatsMetadata sstableMetadata,
+                                      OpenReason openReason,
+                                      SerializationHeader header)
     {
         assert desc != null && ifile != null && dfile != null && isummary != null && bf != null && sstableMetadata != null;
 
@@ -622,6 +644,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         reader.ifile = ifile;
         reader.dfile = dfile;
         reader.indexSummary = isummary;
+        reader.partitionIndex = partitionIndex;
         reader.setup(true);
 
         return reader;
@@ -702,6 +725,14 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
             setCrcCheckChance(cfs.getCrcCheckChance());
     }
 
+    /**
+     * @return whether lookups use a partition index rather than the index summary
+     */
+    public boolean hasPartitionIndex()
+    {
+        return partitionIndex != null;
+    }
+
     public boolean isKeyCacheSetup()
     {
         return keyCache != null;
@@ -771,17 +802,26 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                                                      .mmapped(DatabaseDescriptor.getDiskAccessMode() == Config.DiskAccessMode.mmap)
                                                      .withChunkCache(ChunkCache.instance))
         {
+            if (components.contains(Component.PARTITION_INDEX) && components.contains(Component.PRIMARY_INDEX))
+                partitionIndex = loadPartitionIndex();
+
+            // lookups don't use the summary of sstables with a partition index, so build it as sparse as allowed
+            int samplingLevel = partitionIndex == null
+                                ? Downsampling.BASE_SAMPLING_LEVEL
+                                : IndexSummaryBuilder.minSamplingLevel(metadata().params.minIndexInterval, metadata().params.maxIndexInterval);
             boolean summaryLoaded = loadSummary();
             boolean buildSummary = !summaryLoaded || recreateBloomFilter;
             if (buildSummary)
-                buildSummary(recreateBloomFilter, summaryLoaded, Downsampling.BASE_SAMPLING_LEVEL);
+                buildSummary(recreateBloomFilter, summaryLoaded, samplingLevel);
 
             int dataBufferSize = optimizationStrategy.bufferSize(sstableMetadata.estimatedPartitionSize.percentile(DatabaseDescriptor.getDiskOptimizationEstimatePercentile()));
 
             if (components.contains(Component.PRIMARY_INDEX))
             {
                 long indexFileLength = new File(descriptor.filenameFor(Component.PRIMARY_INDEX)).length();
-                int indexBufferSize = optimizationStrategy.bufferSize(indexFileLength / indexSummary.size());
+                // the partition index finds the entry itself, the summary only the start of a scan of several
+                long indexReads = partitionIndex != null ? Math.max(1, indexSummary.getEstimatedKeyCount()) : indexSummary.size();
+                int indexBufferSize = optimizationStrategy.bufferSize(indexFileLength / indexReads);
                 ifile = ibuilder.bufferSize(indexBufferSize).complete();
             }
 
@@ -815,10 +855,37 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                 indexSummary = null;
             }
 
+            if (partitionIndex != null)
+            {
+                partitionIndex.close();
+                partitionIndex = null;
+            }
+
             throw t;
         }
     }
 
+    @SuppressWarnings("resource")
+    private PartitionIndex loadPartitionIndex() throws IOException
+    {
+        try (FileHandle.Builder builder = new FileHandle.Builder(descriptor.filenameFor(Component.PARTITION_INDEX))
+                                          .mmapped(DatabaseDescriptor.getIndexAccessMode() == Config.DiskAccessMode.mmap)
+                                          .withChunkCache(ChunkCache.instance)
+                                          .bufferSize(PartitionIndex.PAGE_SIZE))
+        {
+            FileHandle handle = builder.complete();
+            try
+            {
+                return PartitionIndex.load(handle);
+            }
+            catch (Throwable t)
+            {
+                handle.close();
+                throw t;
+            }
+        }
+    }
+
     /**
      * Build index summary(and optionally bloom filter) by reading through Index.db file.
      *
@@ -841,7 +908,9 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                     : estimateRowsFromIndex(primaryIndex); // statistics is supposed to be optional
 
             if (recreateBloomFilter)
-                bf = FilterFactory.getFilter(estimatedKeys, metadata().params.bloomFilterFpChance);
+                bf = FilterFactory.getFilter(estimatedKeys,
+                                             metadata().params.bloomFilterFpChance,
+                                             descriptor.version.hasSplitBlockBloomFilter() && DatabaseDescriptor.getSplitBlockBloomFilter());
 
             try (IndexSummaryBuilder summaryBuilder = summaryLoaded ? null : new IndexSummaryBuilder(estimatedKeys, metadata().params.minIndexInterval, samplingLevel))
             {
@@ -969,7 +1038,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         File filterFile = new File(descriptor.filenameFor(Component.FILTER));
         try (DataOutputStreamPlus stream = new BufferedDataOutputStreamPlus(new FileOutputStream(filterFile)))
         {
-            BloomFilterSerializer.serialize((BloomFilter) filter, stream);
+            BloomFilterSerializer.serialize(filter, stream);
             stream.flush();
         }
         catch (IOException e)
@@ -1067,6 +1136,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                                                  ifile != null ? ifile.sharedCopy() : null,
                                                  dfile.sharedCopy(),
                                                  newSummary,
+                                                 partitionIndex != null ? partitionIndex.sharedCopy() : null,
                                                  bf.sharedCopy(),
                                                  maxDataAge,
                                                  sstableMetadata,
@@ -1252,13 +1322,28 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
 
     /**
      * Gets the position in the index file to start scanning to find the given key (at most indexInterval keys away,
-     * modulo downsampling of the index summary). Always returns a {@code value >= 0}
+     * modulo downsampling of the index summary, or at most one key away with a partition index). Always returns a
+     * {@code value >= 0}
      */
     public long getIndexScanPosition(PartitionPosition key)
     {
         if (openReason == OpenReason.MOVED_START && key.compareTo(first) < 0)
             key = first;
 
+        if (partitionIndex != null)
+        {
+            try (PartitionIndex.Reader reader = partitionIndex.openReader())
+            {
+                PartitionIndex.Entry entry = reader.floor(key);
+                return entry == null ? 0 : entry.indexPosition;
+            }
+            catch (IOException e)
+            {
+                markSuspect();
+                throw new CorruptSSTableException(e, partitionIndex.path());
+            }
+        }
+
         return getIndexScanPositionFromBinarySearchResult(indexSummary.binarySearch(key), indexSummary);
     }
 
@@ -2018,18 +2103,28 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
     public RandomAccessReader openDataReader(RateLimiter limiter)
     {
         assert limiter != null;
-        return dfile.createReader(limiter);
+        return dfile.createReader(limiter, ReadIntent.COMPACTION);
     }
 
     public RandomAccessReader openDataReader()
     {
-        return dfile.createReader();
+        return openDataReader(ReadIntent.POINT_READ);
+    }
+
+    public RandomAccessReader openDataReader(ReadIntent intent)
+    {
+        return dfile.createReader(intent);
     }
 
     public RandomAccessReader openIndexReader()
+    {
+        return openIndexReader(ReadIntent.POINT_READ);
+    }
+
+    public RandomAccessReader openIndexReader(ReadIntent intent)
     {
         if (ifile != null)
-            return ifile.createReader();
+            return ifile.createReader(intent);
         return null;
     }
 
@@ -2125,6 +2220,8 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         ifile.addTo(identities);
         bf.addTo(identities);
         indexSummary.addTo(identities);
+        if (partitionIndex != null)
+            partitionIndex.addTo(identities);
 
     }
 
@@ -2146,6 +2243,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
 
         private FileHandle dfile;
         private FileHandle ifile;
+        private PartitionIndex partitionIndex;
         private Runnable runOnClose;
         private boolean isReplaced = false;
 
@@ -2163,6 +2261,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
             this.summary = reader.indexSummary;
             this.dfile = reader.dfile;
             this.ifile = reader.ifile;
+            this.partitionIndex = reader.partitionIndex;
             // get a new reference to the shared descriptor-type tidy
             this.globalRef = GlobalTidy.get(reader);
             this.global = globalRef.get();
@@ -2218,6 +2317,8 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                         dfile.close();
                     if (ifile != null)
                         ifile.close();
+                    if (partitionIndex != null)
+                        partitionIndex.close();
                     globalRef.release();
 
                     if (logger.isTraceEnabled())
@@ -64,6 +64,23 @@ public abstract class Version
      */
     public abstract boolean hasOldBfFormat();
 
+    /**
+     * @return True if the sstable may have a trie partition index (Partitions.db) that replaces the index summary
+     * for lookups
+     */
+    public abstract boolean hasPartitionIndex();
+
+    /**
+     * @return True if the indexed entries of the primary index end their {@link org.apache.cassandra.io.sstable.IndexInfo}s
+     * with the position of a {@link org.apache.cassandra.io.sstable.RowIndexTrie}, if any
+     */
+    public abstract boolean hasRowIndexTrie();
+
+    /**
+     * @return True if the filter component can hold a {@link org.apache.cassandra.utils.SplitBlockBloomFilter}
+     */
+    public abstract boolean hasSplitBlockBloomFilter();
+
     public String getVersion()
     {
         return version;
@@ -112,7 +112,7 @@ public class BigFormat implements SSTableFormat
     // we always incremented the major version.
     static class BigVersion extends Version
     {
-        public static final String current_version = "na";
+        public static final String current_version = "nd";
         public static final String earliest_supported_version = "ma";
 
         // ma (3.0.0): swap bf hash order
@@ -121,6 +121,9 @@ public class BigFormat implements SSTableFormat
         // mc (3.0.8, 3.9): commit log intervals included
 
         // na (4.0.0): uncompressed chunks, pending repair session, checksummed sstable metadata file, new Bloomfilter format
+        // nb (4.0.0): trie-based partition index
+        // nc (4.0.0): trie-based row index for partitions whose row index is not cached on heap
+        // nd (4.0.0): split-block bloom filters
         //
         // NOTE: when adding a new version, please add that to LegacySSTableTest, too.
 
@@ -136,6 +139,9 @@ public class BigFormat implements SSTableFormat
          * have no 'static' bits caused by using the same upper bits for both bloom filter and token distribution.
          */
         private final boolean hasOldBfFormat;
+        private final boolean hasPartitionIndex;
+        private final boolean hasRowIndexTrie;
+        private final boolean hasSplitBlockBloomFilter;
 
         BigVersion(String version)
         {
@@ -150,6 +156,9 @@ public class BigFormat implements SSTableFormat
             hasPendingRepair = version.compareTo("na") >= 0;
             hasMetadataChecksum = version.compareTo("na") >= 0;
             hasOldBfFormat = version.compareTo("na") < 0;
+            hasPartitionIndex = version.compareTo("nb") >= 0;
+            hasRowIndexTrie = version.compareTo("nc") >= 0;
+            hasSplitBlockBloomFilter = version.compareTo("nd") >= 0;
         }
 
         @Override
@@ -209,5 +218,23 @@ public class BigFormat implements SSTableFormat
         {
             return hasOldBfFormat;
         }
+
+        @Override
+        public boolean hasPartitionIndex()
+        {
+            return hasPartitionIndex;
+        }
+
+        @Override
+        public boolean hasRowIndexTrie()
+        {
+            return hasRowIndexTrie;
+        }
+
+        @Override
+        public boolean hasSplitBlockBloomFilter()
+        {
+            return hasSplitBlockBloomFilter;
+        }
     }
 }
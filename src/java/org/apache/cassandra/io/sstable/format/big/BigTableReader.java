@@ -193,15 +193,60 @@ public class BigTableReader extends SSTableReader
             return null;
         }
 
-        int binarySearchResult = indexSummary.binarySearch(key);
-        long sampledPosition = getIndexScanPositionFromBinarySearchResult(binarySearchResult, indexSummary);
-        int sampledIndex = getIndexSummaryIndexFromBinarySearchResult(binarySearchResult);
-
-        int effectiveInterval = indexSummary.getEffectiveIndexIntervalAfterIndex(sampledIndex);
-
         if (ifile == null)
             return null;
 
+        long sampledPosition;
+        int effectiveInterval;
+        if (partitionIndex != null)
+        {
+            PartitionIndex.Entry entry;
+            try (PartitionIndex.Reader reader = partitionIndex.openReader())
+            {
+                entry = op == Operator.EQ ? reader.exactCandidate((DecoratedKey) key) : reader.floor(key);
+            }
+            catch (IOException e)
+            {
+                markSuspect();
+                throw new CorruptSSTableException(e, partitionIndex.path());
+            }
+
+            if (op == Operator.EQ)
+            {
+                if (entry == null)
+                    return notFound(op, updateCacheAndStats, listener);
+
+                // without a row index, the index entry has nothing more than the data position, so only the key
+                // needs checking, which the data file starts with
+                if (!entry.isIndexed())
+                {
+                    String path = null;
+                    try (FileDataInput in = dfile.createReader(entry.dataPosition))
+                    {
+                        path = in.getPath();
+                        if (!ByteBufferUtil.readWithShortLength(in).equals(((DecoratedKey) key).getKey()))
+                            return notFound(op, updateCacheAndStats, listener);
+                        return found(key, new RowIndexEntry<>(entry.dataPosition), true, op, updateCacheAndStats, listener);
+                    }
+                    catch (IOException e)
+                    {
+                        markSuspect();
+                        throw new CorruptSSTableException(e, path);
+                    }
+                }
+            }
+            // the index entry found is the key's, if any, or else the one before the first greater key
+            sampledPosition = entry == null ? 0 : entry.indexPosition;
+            effectiveInterval = 1;
+        }
+        else
+        {
+            int binarySearchResult = indexSummary.binarySearch(key);
+            sampledPosition = getIndexScanPositionFromBinarySearchResult(binarySearchResult, indexSummary);
+            int sampledIndex = getIndexSummaryIndexFromBinarySearchResult(binarySearchResult);
+            effectiveInterval = indexSummary.getEffectiveIndexIntervalAfterIndex(sampledIndex);
+        }
+
         // scan the on-disk index, starting at the nearest sampled position.
         // The check against IndexInterval is to be exit the loop in the EQ case when the key looked for is not present
         // (bloom filter false positive). But note that for non-EQ cases, we might need to check the first key of the
@@ -246,30 +291,7 @@ public class BigTableReader extends SSTableReader
                 {
                     // read data position from index entry
                     RowIndexEntry indexEntry = rowIndexEntrySerializer.deserialize(in, in.getFilePointer());
-                    if (exactMatch && updateCacheAndStats)
-                    {
-                        assert key instanceof DecoratedKey; // key can be == to the index key only if it's a true row key
-                        DecoratedKey decoratedKey = (DecoratedKey)key;
-
-                        if (logger.isTraceEnabled())
-                        {
-                            // expensive sanity check!  see CASSANDRA-4687
-                            try (FileDataInput fdi = dfile.createReader(indexEntry.position))
-                            {
-                                DecoratedKey keyInDisk = decorateKey(ByteBufferUtil.readWithShortLength(fdi));
-                                if (!keyInDisk.equals(key))
-                                    throw new AssertionError(String.format("%s != %s in %s", keyInDisk, key, fdi.getPath()));
-                            }
-                        }
-
-                        // store exact match for the key
-                        cacheKey(decoratedKey, indexEntry);
-                    }
-                    if (op == Operator.EQ && updateCacheAndStats)
-                        bloomFilterTracker.addTruePositive();
-                    listener.onSSTableSelected(this, indexEntry, SelectionReason.INDEX_ENTRY_FOUND);
-                    Tracing.trace("Partition index with {} entries found for sstable {}", indexEntry.columnsIndexCount(), descriptor.generation);
-                    return indexEntry;
+                    return found(key, indexEntry, exactMatch, op, updateCacheAndStats, listener);
                 }
 
                 RowIndexEntry.Serializer.skip(in, descriptor.version);
@@ -281,6 +303,44 @@ public class BigTableReader extends SSTableReader
             throw new CorruptSSTableException(e, path);
         }
 
+        return notFound(op, updateCacheAndStats, listener);
+    }
+
+    private RowIndexEntry found(PartitionPosition key,
+                                RowIndexEntry indexEntry,
+                                boolean exactMatch,
+                                Operator op,
+                                boolean updateCacheAndStats,
+                                SSTableReadsListener listener) throws IOException
+    {
+        if (exactMatch && updateCacheAndStats)
+        {
+            assert key instanceof DecoratedKey; // key can be == to the index key only if it's a true row key
+            DecoratedKey decoratedKey = (DecoratedKey)key;
+
+            if (logger.isTraceEnabled())
+            {
+                // expensive sanity check!  see CASSANDRA-4687
+                try (FileDataInput fdi = dfile.createReader(indexEntry.position))
+                {
+                    DecoratedKey keyInDisk = decorateKey(ByteBufferUtil.readWithShortLength(fdi));
+                    if (!keyInDisk.equals(key))
+                        throw new AssertionError(String.format("%s != %s in %s", keyInDisk, key, fdi.getPath()));
+                }
+            }
+
+            // store exact match for the key
+            cacheKey(decoratedKey, indexEntry);
+        }
+        if (op == Operator.EQ && updateCacheAndStats)
+            bloomFilterTracker.addTruePositive();
+        listener.onSSTableSelected(this, indexEntry, SelectionReason.INDEX_ENTRY_FOUND);
+        Tracing.trace("Partition index with {} entries found for sstable {}", indexEntry.columnsIndexCount(), descriptor.generation);
+        return indexEntry;
+    }
+
+    private RowIndexEntry notFound(Operator op, boolean updateCacheAndStats, SSTableReadsListener listener)
+    {
         if (op == SSTableReader.Operator.EQ && updateCacheAndStats)
             bloomFilterTracker.addFalsePositive();
         listener.onSSTableSkipped(this, SkippingReason.INDEX_ENTRY_NOT_FOUND);
@@ -41,6 +41,7 @@ import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableReadsListener;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.io.util.ReadIntent;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
 import static org.apache.cassandra.dht.AbstractBounds.isEmpty;
@@ -77,7 +78,7 @@ public class BigTableScanner implements ISSTableScanner
                                              DataRange dataRange,
                                              SSTableReadsListener listener)
     {
-        return new BigTableScanner(sstable, columns, dataRange, makeBounds(sstable, dataRange).iterator(), listener);
+        return new BigTableScanner(sstable, columns, dataRange, makeBounds(sstable, dataRange).iterator(), listener, ReadIntent.RANGE_SCAN);
     }
 
     public static ISSTableScanner getScanner(SSTableReader sstable, Collection<Range<Token>> tokenRanges)
@@ -92,19 +93,20 @@ public class BigTableScanner implements ISSTableScanner
 
     public static ISSTableScanner getScanner(SSTableReader sstable, Iterator<AbstractBounds<PartitionPosition>> rangeIterator)
     {
-        return new BigTableScanner(sstable, ColumnFilter.all(sstable.metadata()), null, rangeIterator, SSTableReadsListener.NOOP_LISTENER);
+        return new BigTableScanner(sstable, ColumnFilter.all(sstable.metadata()), null, rangeIterator, SSTableReadsListener.NOOP_LISTENER, ReadIntent.COMPACTION);
     }
 
     private BigTableScanner(SSTableReader sstable,
                             ColumnFilter columns,
                             DataRange dataRange,
                             Iterator<AbstractBounds<PartitionPosition>> rangeIterator,
-                            SSTableReadsListener listener)
+                            SSTableReadsListener listener,
+                            ReadIntent intent)
     {
         assert sstable != null;
 
-        this.dfile = sstable.openDataReader();
-        this.ifile = sstable.openIndexReader();
+        this.dfile = sstable.openDataReader(intent);
+        this.ifile = sstable.openIndexReader(intent);
         this.sstable = sstable;
         this.columns = columns;
         this.dataRange = dataRange;
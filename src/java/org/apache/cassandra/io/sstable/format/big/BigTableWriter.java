@@ -180,7 +180,8 @@ public class BigTableWriter extends SSTableWriter
                                                        columnIndexWriter.indexInfoSerializedSize(),
                                                        columnIndexWriter.indexSamples(),
                                                        columnIndexWriter.offsets(),
-                                                       getRowIndexEntrySerializer().indexInfoSerializer());
+                                                       getRowIndexEntrySerializer().indexInfoSerializer(),
+                                                       descriptor.version);
 
             long endPosition = dataFile.position();
             long rowSize = endPosition - startPosition;
@@ -326,7 +327,12 @@ public class BigTableWriter extends SSTableWriter
         IndexSummary indexSummary = iwriter.summary.build(metadata().partitioner);
         long indexFileLength = new File(descriptor.filenameFor(Component.PRIMARY_INDEX)).length();
         int dataBufferSize = optimizationStrategy.bufferSize(stats.estimatedPartitionSize.percentile(DatabaseDescriptor.getDiskOptimizationEstimatePercentile()));
-        int indexBufferSize = optimizationStrategy.bufferSize(indexFileLength / indexSummary.size());
+        // the partition index is only complete once prepared, and finds index entries itself rather than where to scan for them
+        PartitionIndex partitionIndex = openReason == SSTableReader.OpenReason.EARLY ? null : iwriter.openPartitionIndex();
+        long indexReads = partitionIndex != null ? Math.max(1, indexSummary.getEstimatedKeyCount()) : indexSummary.size();
+        int indexBufferSize = optimizationStrategy.bufferSize(indexFileLength / indexReads);
+        if (partitionIndex != null)
+            indexSummary = iwriter.downsample(indexSummary);
         FileHandle ifile = iwriter.builder.bufferSize(indexBufferSize).complete();
         if (compression)
             dbuilder.withCompressionMetadata(((CompressedSequentialWriter) dataFile).open(0));
@@ -338,6 +344,7 @@ public class BigTableWriter extends SSTableWriter
                                                            ifile,
                                                            dfile,
                                                            indexSummary,
+                                                           partitionIndex,
                                                            iwriter.bf.sharedCopy(),
                                                            maxDataAge,
                                                            stats,
@@ -431,6 +438,11 @@ public class BigTableWriter extends SSTableWriter
         public final FileHandle.Builder builder;
         public final IndexSummaryBuilder summary;
         public final IFilter bf;
+        // the trie of the keys, if the sstable has one, which lookups use instead of the summary once it is complete
+        private final SequentialWriter partitionIndexFile;
+        private final PartitionIndexBuilder partitionIndexWriter;
+        private final FileHandle.Builder partitionIndexHandle;
+        private long partitionIndexRoot = -1;
         private DataPosition mark;
 
         IndexWriter(long keyCount)
@@ -439,7 +451,24 @@ public class BigTableWriter extends SSTableWriter
             builder = new FileHandle.Builder(descriptor.filenameFor(Component.PRIMARY_INDEX)).mmapped(DatabaseDescriptor.getIndexAccessMode() == Config.DiskAccessMode.mmap);
             chunkCache.ifPresent(builder::withChunkCache);
             summary = new IndexSummaryBuilder(keyCount, metadata().params.minIndexInterval, Downsampling.BASE_SAMPLING_LEVEL);
-            bf = FilterFactory.getFilter(keyCount, metadata().params.bloomFilterFpChance);
+            bf = FilterFactory.getFilter(keyCount,
+                                        metadata().params.bloomFilterFpChance,
+                                        descriptor.version.hasSplitBlockBloomFilter() && DatabaseDescriptor.getSplitBlockBloomFilter());
+            if (components.contains(Component.PARTITION_INDEX))
+            {
+                partitionIndexFile = new SequentialWriter(new File(descriptor.filenameFor(Component.PARTITION_INDEX)), writerOption);
+                partitionIndexWriter = new PartitionIndexBuilder(partitionIndexFile);
+                partitionIndexHandle = new FileHandle.Builder(descriptor.filenameFor(Component.PARTITION_INDEX))
+                                        .mmapped(DatabaseDescriptor.getIndexAccessMode() == Config.DiskAccessMode.mmap)
+                                        .bufferSize(PartitionIndex.PAGE_SIZE);
+                chunkCache.ifPresent(partitionIndexHandle::withChunkCache);
+            }
+            else
+            {
+                partitionIndexFile = null;
+                partitionIndexWriter = null;
+                partitionIndexHandle = null;
+            }
             // register listeners to be alerted when the data files are flushed
             indexFile.setPostFlushListener(() -> summary.markIndexSynced(indexFile.getLastFlushOffset()));
             dataFile.setPostFlushListener(() -> summary.markDataSynced(dataFile.getLastFlushOffset()));
@@ -470,6 +499,48 @@ public class BigTableWriter extends SSTableWriter
                 logger.trace("wrote index entry: {} at {}", indexEntry, indexStart);
 
             summary.maybeAddEntry(key, indexStart, indexEnd, dataEnd);
+
+            if (partitionIndexWriter != null)
+            {
+                try
+                {
+                    // partitions without a row index can be found without reading their index entry
+                    partitionIndexWriter.addEntry(key, indexStart, indexEntry.isIndexed() ? -1 : indexEntry.position);
+                }
+                catch (IOException e)
+                {
+                    throw new FSWriteError(e, partitionIndexFile.getPath());
+                }
+            }
+        }
+
+        /**
+         * Opens the partition index, which must have been prepared, or returns null if the sstable has none.
+         */
+        PartitionIndex openPartitionIndex()
+        {
+            if (partitionIndexWriter == null)
+                return null;
+            assert partitionIndexRoot >= 0;
+            return new PartitionIndex(partitionIndexHandle.complete(), partitionIndexRoot);
+        }
+
+        /**
+         * Lookups don't use the summary of sstables with a partition index, so the final sstable keeps one as
+         * sparse as allowed, for key sampling and estimates only. The early opened sstables don't have a partition
+         * index, so the summary is built at full size until then.
+         */
+        IndexSummary downsample(IndexSummary indexSummary)
+        {
+            int minIndexInterval = metadata().params.minIndexInterval;
+            int samplingLevel = IndexSummaryBuilder.minSamplingLevel(minIndexInterval, metadata().params.maxIndexInterval);
+            if (samplingLevel >= indexSummary.getSamplingLevel())
+                return indexSummary;
+
+            try (IndexSummary full = indexSummary)
+            {
+                return IndexSummaryBuilder.downsample(full, samplingLevel, minIndexInterval, getPartitioner());
+            }
         }
 
         /**
@@ -484,7 +555,7 @@ public class BigTableWriter extends SSTableWriter
                      DataOutputStreamPlus stream = new BufferedDataOutputStreamPlus(fos))
                 {
                     // bloom filter
-                    BloomFilterSerializer.serialize((BloomFilter) bf, stream);
+                    BloomFilterSerializer.serialize(bf, stream);
                     stream.flush();
                     SyncUtil.sync(fos);
                 }
@@ -517,22 +588,44 @@ public class BigTableWriter extends SSTableWriter
             indexFile.prepareToCommit();
             FileUtils.truncate(indexFile.getPath(), position);
 
+            if (partitionIndexWriter != null)
+            {
+                try
+                {
+                    partitionIndexRoot = partitionIndexWriter.complete();
+                }
+                catch (IOException e)
+                {
+                    throw new FSWriteError(e, partitionIndexFile.getPath());
+                }
+                partitionIndexFile.prepareToCommit();
+            }
+
             // save summary
             summary.prepareToCommit();
-            try (IndexSummary indexSummary = summary.build(getPartitioner()))
+            IndexSummary indexSummary = summary.build(getPartitioner());
+            if (partitionIndexWriter != null)
+                indexSummary = downsample(indexSummary);
+            try (IndexSummary toSave = indexSummary)
             {
-                SSTableReader.saveSummary(descriptor, first, last, indexSummary);
+                SSTableReader.saveSummary(descriptor, first, last, toSave);
             }
         }
 
         protected Throwable doCommit(Throwable accumulate)
         {
-            return indexFile.commit(accumulate);
+            accumulate = indexFile.commit(accumulate);
+            if (partitionIndexFile != null)
+                accumulate = partitionIndexFile.commit(accumulate);
+            return accumulate;
         }
 
         protected Throwable doAbort(Throwable accumulate)
         {
-            return indexFile.abort(accumulate);
+            accumulate = indexFile.abort(accumulate);
+            if (partitionIndexFile != null)
+                accumulate = partitionIndexFile.abort(accumulate);
+            return accumulate;
         }
 
         @Override
@@ -541,6 +634,8 @@ public class BigTableWriter extends SSTableWriter
             accumulate = summary.close(accumulate);
             accumulate = bf.close(accumulate);
             accumulate = builder.close(accumulate);
+            if (partitionIndexHandle != null)
+                accumulate = partitionIndexHandle.close(accumulate);
             return accumulate;
         }
     }
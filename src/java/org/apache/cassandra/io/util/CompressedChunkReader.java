@@ -83,6 +83,12 @@ public abstract class CompressedChunkReader extends AbstractReaderFileProxy impl
         return new BufferManagingRebufferer.Aligned(this);
     }
 
+    @Override
+    public Rebufferer instantiateRebufferer(ReadIntent intent)
+    {
+        return PrefetchingRebufferer.enabledFor(intent) ? PrefetchingRebufferer.of(this, true) : instantiateRebufferer();
+    }
+
     public static class Standard extends CompressedChunkReader
     {
         // we read the raw compressed bytes into this buffer, then uncompressed them into the provided one.
@@ -129,7 +129,19 @@ public class FileHandle extends SharedCloseableImpl
      */
     public RandomAccessReader createReader()
     {
-        return createReader(null);
+        return createReader(ReadIntent.POINT_READ);
+    }
+
+    /**
+     * Create {@link RandomAccessReader} with configured method of reading content of the file, for reads of the
+     * given intent.
+     *
+     * @param intent the reason for reading, which decides whether the chunks read are cached
+     * @return RandomAccessReader for the file
+     */
+    public RandomAccessReader createReader(ReadIntent intent)
+    {
+        return createReader(null, intent);
     }
 
     /**
@@ -141,7 +153,20 @@ public class FileHandle extends SharedCloseableImpl
      */
     public RandomAccessReader createReader(RateLimiter limiter)
     {
-        return new RandomAccessReader(instantiateRebufferer(limiter));
+        return createReader(limiter, ReadIntent.POINT_READ);
+    }
+
+    /**
+     * Create {@link RandomAccessReader} with configured method of reading content of the file, for reads of the
+     * given intent. Reading from file will be rate limited by given {@link RateLimiter}.
+     *
+     * @param limiter RateLimiter to use for rate limiting read, or null
+     * @param intent the reason for reading, which decides whether the chunks read are cached
+     * @return RandomAccessReader for the file
+     */
+    public RandomAccessReader createReader(RateLimiter limiter, ReadIntent intent)
+    {
+        return new RandomAccessReader(instantiateRebufferer(limiter, intent));
     }
 
     public FileDataInput createReader(long position)
@@ -167,9 +192,9 @@ public class FileHandle extends SharedCloseableImpl
         NativeLibrary.trySkipCache(channel.getFileDescriptor(), 0, position, path());
     }
 
-    private Rebufferer instantiateRebufferer(RateLimiter limiter)
+    private Rebufferer instantiateRebufferer(RateLimiter limiter, ReadIntent intent)
     {
-        Rebufferer rebufferer = rebuffererFactory.instantiateRebufferer();
+        Rebufferer rebufferer = rebuffererFactory.instantiateRebufferer(intent);
 
         if (limiter != null)
             rebufferer = new LimitingRebufferer(rebufferer, limiter, DiskOptimizationStrategy.MAX_BUFFER_SIZE);
@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.apache.cassandra.concurrent.JMXEnabledThreadPoolExecutor;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.utils.memory.BufferPool;
+
+/**
+ * Rebufferer that, once it sees a reader move from one chunk to the next, keeps the following chunks in flight on a
+ * shared thread pool, so that sequential readers such as compactions and scans do not wait for the disk at every
+ * chunk boundary. Compressed chunks are decompressed by the pool threads too.
+ *
+ * Instances are reader-specific and thus do not need to be thread-safe, but the function they read chunks with is
+ * called from the pool threads, so it must be, and each buffer it returns must be released independently.
+ * {@link #closeReader()} waits for the reads in progress, so that the source can be released once it returns.
+ */
+public class PrefetchingRebufferer implements Rebufferer
+{
+    // started on first use, so that readers that never read ahead don't start it
+    private static class Executor
+    {
+        static final JMXEnabledThreadPoolExecutor instance =
+            new JMXEnabledThreadPoolExecutor(DatabaseDescriptor.getSSTableReadAheadThreads(),
+                                             1,
+                                             TimeUnit.MINUTES,
+                                             new LinkedBlockingQueue<>(),
+                                             new NamedThreadFactory("SSTableReadAhead"),
+                                             "internal");
+
+        static
+        {
+            instance.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    private final ReaderFileProxy file;
+    private final LongFunction<? extends BufferHolder> reader;
+    private final int chunkSize;
+    private final boolean aligned;
+    private final int depth;
+
+    private final ArrayDeque<Chunk> inFlight;
+    // the position of the chunk following the one last returned, which a sequential reader will ask for next
+    private long nextChunk = -1;
+    // the position of the chunk following the last one scheduled
+    private long nextToSchedule;
+
+    /**
+     * @param file the file read, which provides the channel and length
+     * @param chunkSize the size of the chunks returned by {@code reader}, which must be a power of two if aligned
+     * @param aligned whether chunks start at multiples of {@code chunkSize}, as opposed to where the reader asks
+     * @param reader reads the chunk at a position into a buffer of its own; must be thread-safe
+     */
+    public PrefetchingRebufferer(ReaderFileProxy file, int chunkSize, boolean aligned, LongFunction<? extends BufferHolder> reader)
+    {
+        assert !aligned || Integer.bitCount(chunkSize) == 1 : String.format("%d must be a power of two", chunkSize);
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.aligned = aligned;
+        this.reader = reader;
+        this.depth = DatabaseDescriptor.getSSTableReadAheadChunks();
+        this.inFlight = new ArrayDeque<>(depth);
+    }
+
+    /**
+     * Creates a prefetching rebufferer reading chunks from the given chunk reader into buffers from the pool.
+     */
+    public static PrefetchingRebufferer of(ChunkReader source, boolean aligned)
+    {
+        return new PrefetchingRebufferer(source, source.chunkSize(), aligned, position -> readChunk(source, position));
+    }
+
+    /**
+     * Whether readers of the given intent should read ahead. Point reads don't, as they rarely read more than a
+     * chunk or two.
+     */
+    public static boolean enabledFor(ReadIntent intent)
+    {
+        return intent != ReadIntent.POINT_READ && DatabaseDescriptor.getSSTableReadAheadChunks() > 0;
+    }
+
+    static BufferHolder readChunk(ChunkReader source, long position)
+    {
+        ByteBuffer buffer = BufferPool.get(source.chunkSize(), source.preferredBufferType()).order(ByteOrder.BIG_ENDIAN);
+        try
+        {
+            source.readChunk(position, buffer);
+        }
+        catch (Throwable t)
+        {
+            BufferPool.put(buffer);
+            throw t;
+        }
+        return new PooledBuffer(buffer, position);
+    }
+
+    @Override
+    public BufferHolder rebuffer(long position)
+    {
+        long chunkPosition = aligned ? position & -chunkSize : position;
+        BufferHolder holder = take(chunkPosition);
+        if (holder == null)
+        {
+            holder = reader.apply(chunkPosition);
+            if (chunkPosition != nextChunk)
+            {
+                // not a sequential read (yet), don't read ahead
+                nextChunk = chunkPosition + chunkSize;
+                return holder;
+            }
+            nextToSchedule = chunkPosition + chunkSize;
+        }
+
+        nextChunk = chunkPosition + chunkSize;
+        long length = file.fileLength();
+        while (inFlight.size() < depth && nextToSchedule < length)
+        {
+            Chunk chunk = new Chunk(nextToSchedule);
+            inFlight.add(chunk);
+            Executor.instance.execute(chunk);
+            nextToSchedule += chunkSize;
+        }
+        return holder;
+    }
+
+    /**
+     * Takes the chunk at the given position if it was read ahead, and discards those the reader skipped over.
+     *
+     * @return the chunk's buffer, or null if it was not read ahead
+     */
+    private BufferHolder take(long chunkPosition)
+    {
+        while (!inFlight.isEmpty())
+        {
+            Chunk chunk = inFlight.peek();
+            if (chunk.position > chunkPosition)
+            {
+                // the reader went back
+                discardAll(false);
+                return null;
+            }
+
+            inFlight.poll();
+            if (chunk.position == chunkPosition)
+                return chunk.get();
+            chunk.discard(false);
+        }
+        return null;
+    }
+
+    /**
+     * @param await whether to wait for the reads of the discarded chunks that are in progress to complete
+     */
+    private void discardAll(boolean await)
+    {
+        while (!inFlight.isEmpty())
+            inFlight.poll().discard(await);
+    }
+
+    @Override
+    public void closeReader()
+    {
+        // the source may be released once the reader is closed, so no read of it can be left running
+        discardAll(true);
+        nextChunk = -1;
+    }
+
+    @Override
+    public void close()
+    {
+        // The source is owned by the factory, see FileHandle.
+    }
+
+    @Override
+    public ChannelProxy channel()
+    {
+        return file.channel();
+    }
+
+    @Override
+    public long fileLength()
+    {
+        return file.fileLength();
+    }
+
+    @Override
+    public double getCrcCheckChance()
+    {
+        return file.getCrcCheckChance();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PrefetchingRebufferer:" + file;
+    }
+
+    /**
+     * A chunk read ahead. A FutureTask can't be used for this, as cancelling it while the read is running would lose
+     * the buffer the read returns: instead, a read that completes after its chunk was discarded releases its buffer.
+     */
+    private class Chunk implements Runnable
+    {
+        private static final int PENDING = 0;
+        private static final int RUNNING = 1;
+        private static final int DISCARDED = 2;
+
+        final long position;
+        final CompletableFuture<BufferHolder> result = new CompletableFuture<>();
+        // whether the read was started, so that a chunk discarded before it is never read
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        Chunk(long position)
+        {
+            this.position = position;
+        }
+
+        @Override
+        public void run()
+        {
+            if (!state.compareAndSet(PENDING, RUNNING))
+                return;
+
+            try
+            {
+                BufferHolder holder = reader.apply(position);
+                if (!result.complete(holder))
+                    holder.release();
+            }
+            catch (Throwable t)
+            {
+                result.completeExceptionally(t);
+            }
+            finally
+            {
+                finished.countDown();
+            }
+        }
+
+        BufferHolder get()
+        {
+            try
+            {
+                return Uninterruptibles.getUninterruptibly(result);
+            }
+            catch (ExecutionException e)
+            {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+
+        /**
+         * @param await whether to wait for the read to complete if it is in progress
+         */
+        void discard(boolean await)
+        {
+            if (state.compareAndSet(PENDING, DISCARDED))
+                return;
+
+            // if the read has not completed yet, it will release the buffer itself
+            if (!result.cancel(false) && !result.isCompletedExceptionally())
+                result.join().release();
+            if (await)
+                Uninterruptibles.awaitUninterruptibly(finished);
+        }
+    }
+
+    private static class PooledBuffer implements BufferHolder
+    {
+        private final ByteBuffer buffer;
+        private final long offset;
+
+        PooledBuffer(ByteBuffer buffer, long offset)
+        {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        @Override
+        public ByteBuffer buffer()
+        {
+            return buffer;
+        }
+
+        @Override
+        public long offset()
+        {
+            return offset;
+        }
+
+        @Override
+        public void release()
+        {
+            BufferPool.put(buffer);
+        }
+    }
+}
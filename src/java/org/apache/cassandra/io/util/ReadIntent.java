@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+/**
+ * Why a file is being read. Caching rebufferers use this to keep reads that are unlikely to be repeated, such as
+ * compaction and scans, from evicting the chunks used by point reads.
+ */
+public enum ReadIntent
+{
+    /** Single partition reads, and any read that does not say otherwise. */
+    POINT_READ("PointRead"),
+    /** Partition range reads issued by queries. */
+    RANGE_SCAN("RangeScan"),
+    /** Full or ranged scans done by compaction, repair validation, streaming and the other maintenance tasks. */
+    COMPACTION("Compaction");
+
+    /** The prefix of the metrics kept for this intent */
+    public final String metricName;
+
+    ReadIntent(String metricName)
+    {
+        this.metricName = metricName;
+    }
+}
@@ -29,4 +29,13 @@ package org.apache.cassandra.io.util;
 public interface RebuffererFactory extends ReaderFileProxy
 {
     Rebufferer instantiateRebufferer();
+
+    /**
+     * Instantiates a rebufferer for reads of the given intent, which chunk readers and caching factories use to
+     * decide whether to read ahead and whether to cache.
+     */
+    default Rebufferer instantiateRebufferer(ReadIntent intent)
+    {
+        return instantiateRebufferer();
+    }
 }
@@ -60,6 +60,12 @@ class SimpleChunkReader extends AbstractReaderFileProxy implements ChunkReader
         return new BufferManagingRebufferer.Unaligned(this);
     }
 
+    @Override
+    public Rebufferer instantiateRebufferer(ReadIntent intent)
+    {
+        return PrefetchingRebufferer.enabledFor(intent) ? PrefetchingRebufferer.of(this, false) : instantiateRebufferer();
+    }
+
     @Override
     public String toString()
     {
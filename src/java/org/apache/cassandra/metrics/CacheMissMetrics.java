@@ -22,6 +22,7 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.RatioGauge;
 import com.codahale.metrics.Timer;
 import org.apache.cassandra.cache.CacheSize;
+import org.apache.cassandra.io.util.ReadIntent;
 
 import static org.apache.cassandra.metrics.CassandraMetricsRegistry.Metrics;
 
@@ -50,6 +51,8 @@ public class CacheMissMetrics
     public final Gauge<Long> size;
     /** Total number of cache entries */
     public final Gauge<Integer> entries;
+    /** Requests, misses and hit rate of each {@link ReadIntent} */
+    private final IntentMetrics[] intentMetrics;
 
     /**
      * Create metrics for given cache.
@@ -104,11 +107,57 @@ public class CacheMissMetrics
         });
         size = Metrics.register(factory.createMetricName("Size"), (Gauge<Long>) cache::weightedSize);
         entries = Metrics.register(factory.createMetricName("Entries"), (Gauge<Integer>) cache::size);
+
+        intentMetrics = new IntentMetrics[ReadIntent.values().length];
+        for (ReadIntent intent : ReadIntent.values())
+            intentMetrics[intent.ordinal()] = new IntentMetrics(factory, intent);
+    }
+
+    public IntentMetrics forIntent(ReadIntent intent)
+    {
+        return intentMetrics[intent.ordinal()];
     }
 
     public void reset()
     {
         requests.mark(-requests.getCount());
         misses.mark(-misses.getCount());
+        for (IntentMetrics metrics : intentMetrics)
+            metrics.reset();
+    }
+
+    /**
+     * Metrics of the requests made for a single {@link ReadIntent}, named after it, e.g. {@code CompactionHitRate}.
+     */
+    public static class IntentMetrics
+    {
+        /** Total number of cache misses for this intent */
+        public final Meter misses;
+        /** Total number of cache requests for this intent */
+        public final Meter requests;
+        /** all time cache hit rate for this intent */
+        public final Gauge<Double> hitRate;
+
+        private IntentMetrics(MetricNameFactory factory, ReadIntent intent)
+        {
+            misses = Metrics.meter(factory.createMetricName(intent.metricName + "Misses"));
+            requests = Metrics.meter(factory.createMetricName(intent.metricName + "Requests"));
+            hitRate = Metrics.register(factory.createMetricName(intent.metricName + "HitRate"), new RatioGauge()
+            {
+                @Override
+                public Ratio getRatio()
+                {
+                    long req = requests.getCount();
+                    long mis = misses.getCount();
+                    return Ratio.of(req - mis, req);
+                }
+            });
+        }
+
+        private void reset()
+        {
+            requests.mark(-requests.getCount());
+            misses.mark(-misses.getCount());
+        }
     }
 }
@@ -18,6 +18,7 @@
 package org.apache.cassandra.metrics;
 
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import org.apache.cassandra.net.async.OutboundMessagingPool;
 
@@ -34,6 +35,15 @@ public class ConnectionMetrics
 
     /** Total number of timeouts happened on this node */
     public static final Meter totalTimeouts = Metrics.meter(DefaultNameFactory.createMetricName(TYPE_NAME, "TotalTimeouts", null));
+    /** Total number of bytes of the internode messages serialized by this node, before compression */
+    public static final Meter totalBytesSent = Metrics.meter(DefaultNameFactory.createMetricName(TYPE_NAME, "TotalBytesSent", null));
+    /**
+     * Bytes handed to the socket per flush of an internode connection. Each flush is one gathering write of the
+     * buffers pending on the connection, unless the socket buffer fills up, so this is close to the bytes per syscall.
+     */
+    public static final Histogram bytesPerFlush = Metrics.histogram(DefaultNameFactory.createMetricName(TYPE_NAME, "BytesPerFlush", null), false);
+    /** Messages sent per flush of an internode connection */
+    public static final Histogram messagesPerFlush = Metrics.histogram(DefaultNameFactory.createMetricName(TYPE_NAME, "MessagesPerFlush", null), false);
 
     public final String address;
     /** Pending tasks for large message TCP Connections */
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+
+import static org.apache.cassandra.metrics.CassandraMetricsRegistry.Metrics;
+
+/**
+ * Metrics of the local reads run on the coordinating thread, see
+ * {@link org.apache.cassandra.service.StorageProxy.LocalReadRunnable#runInline()}.
+ */
+public class InlineReadMetrics
+{
+    private static final MetricNameFactory factory = new DefaultNameFactory("InlineRead");
+
+    /** Local reads tried on the coordinating thread */
+    public static final Meter attempts = Metrics.meter(factory.createMetricName("Attempts"));
+    /** Local reads that ran to completion on the coordinating thread, the others went to the read stage */
+    public static final Meter hits = Metrics.meter(factory.createMetricName("Hits"));
+    /** Ratio of the local reads that ran to completion on the coordinating thread */
+    public static final Gauge<Double> hitRate = Metrics.register(factory.createMetricName("HitRate"), new RatioGauge()
+    {
+        @Override
+        public Ratio getRatio()
+        {
+            return Ratio.of(hits.getCount(), attempts.getCount());
+        }
+    });
+    /** Time the coordinating thread spent on local reads, including those aborted on a cache miss */
+    public static final Timer blockingTime = Metrics.timer(factory.createMetricName("BlockingTime"));
+
+    public static void update(boolean hit, long nanos)
+    {
+        attempts.mark();
+        if (hit)
+            hits.mark();
+        blockingTime.update(nanos, TimeUnit.NANOSECONDS);
+    }
+}
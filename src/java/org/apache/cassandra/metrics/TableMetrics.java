@@ -59,6 +59,12 @@ public class TableMetrics
     public final Gauge<Long> memtableOffHeapSize;
     /** Total amount of live data stored in the memtable, excluding any data structure overhead */
     public final Gauge<Long> memtableLiveDataSize;
+    /** Number of token range shards the memtable is split into. */
+    public final Gauge<Integer> memtableShardCount;
+    /** Amount of live data stored in each shard of the memtable, in token order. */
+    public final Gauge<long[]> memtableShardLiveDataSize;
+    /** Amount of on-heap and off-heap memory owned by each shard of the memtable, in token order. */
+    public final Gauge<long[]> memtableShardMemorySize;
     /** Total amount of data stored in the memtables (2i and pending flush memtables included) that resides on-heap. */
     public final Gauge<Long> allMemtablesOnHeapSize;
     /** Total amount of data stored in the memtables (2i and pending flush memtables included) that resides off-heap. */
@@ -199,6 +205,25 @@ public class TableMetrics
     private static final MetricNameFactory globalFactory = new AllTableMetricNameFactory("Table");
     private static final MetricNameFactory globalAliasFactory = new AllTableMetricNameFactory("ColumnFamily");
 
+    /** Number of TREAS replica writes whose slot tags were found in the tag index */
+    public final Counter treasTagIndexHits;
+    /** Number of TREAS replica writes whose slot tags were not in the tag index, and were read from the partition */
+    public final Counter treasTagIndexMisses;
+    /** Hit rate of the TREAS tag index */
+    public final Gauge<Double> treasTagIndexHitRate;
+    /** Number of TREAS read write-backs sent without holding up the read */
+    public final Counter treasBackgroundWriteBacks;
+    /** Number of TREAS read write-backs sent without holding up the read that reached their quorum */
+    public final Counter treasBackgroundWriteBacksAcked;
+    /** Number of TREAS slots freed because a larger tag was committed */
+    public final Counter treasFreedSlots;
+    /** Number of replica responses a TREAS read had collected when it returned */
+    public final Histogram treasReadResponses;
+    /** Number of shards of the returned value among the responses of a TREAS read */
+    public final Histogram treasReadShards;
+    /** Latency of the TREAS read write-backs that held up the read */
+    public final Timer treasWriteBackLatency;
+
     public final Counter speculativeRetries;
     public final Counter speculativeFailedRetries;
     public final Counter speculativeInsufficientReplicas;
@@ -359,14 +384,14 @@ public class TableMetrics
         {
             public Long getValue()
             {
-                return cfs.getTracker().getView().getCurrentMemtable().getAllocator().onHeap().owns();
+                return cfs.getTracker().getView().getCurrentMemtable().getOnHeapOwns();
             }
         });
         memtableOffHeapSize = createTableGauge("MemtableOffHeapSize", new Gauge<Long>()
         {
             public Long getValue()
             {
-                return cfs.getTracker().getView().getCurrentMemtable().getAllocator().offHeap().owns();
+                return cfs.getTracker().getView().getCurrentMemtable().getOffHeapOwns();
             }
         });
         memtableLiveDataSize = createTableGauge("MemtableLiveDataSize", new Gauge<Long>()
@@ -376,13 +401,38 @@ public class TableMetrics
                 return cfs.getTracker().getView().getCurrentMemtable().getLiveDataSize();
             }
         });
+        memtableShardCount = createTableGauge("MemtableShardCount", new Gauge<Integer>()
+        {
+            public Integer getValue()
+            {
+                return cfs.getTracker().getView().getCurrentMemtable().shardCount();
+            }
+        });
+        memtableShardLiveDataSize = Metrics.register(factory.createMetricName("MemtableShardLiveDataSize"),
+                                                     aliasFactory.createMetricName("MemtableShardLiveDataSize"),
+                                                     new Gauge<long[]>()
+                                                     {
+                                                         public long[] getValue()
+                                                         {
+                                                             return cfs.getTracker().getView().getCurrentMemtable().getShardLiveDataSizes();
+                                                         }
+                                                     });
+        memtableShardMemorySize = Metrics.register(factory.createMetricName("MemtableShardMemorySize"),
+                                                   aliasFactory.createMetricName("MemtableShardMemorySize"),
+                                                   new Gauge<long[]>()
+                                                   {
+                                                       public long[] getValue()
+                                                       {
+                                                           return cfs.getTracker().getView().getCurrentMemtable().getShardMemoryOwns();
+                                                       }
+                                                   });
         allMemtablesOnHeapSize = createTableGauge("AllMemtablesHeapSize", new Gauge<Long>()
         {
             public Long getValue()
             {
                 long size = 0;
                 for (ColumnFamilyStore cfs2 : cfs.concatWithIndexes())
-                    size += cfs2.getTracker().getView().getCurrentMemtable().getAllocator().onHeap().owns();
+                    size += cfs2.getTracker().getView().getCurrentMemtable().getOnHeapOwns();
                 return size;
             }
         });
@@ -392,7 +442,7 @@ public class TableMetrics
             {
                 long size = 0;
                 for (ColumnFamilyStore cfs2 : cfs.concatWithIndexes())
-                    size += cfs2.getTracker().getView().getCurrentMemtable().getAllocator().offHeap().owns();
+                    size += cfs2.getTracker().getView().getCurrentMemtable().getOffHeapOwns();
                 return size;
             }
         });
@@ -861,6 +911,36 @@ public class TableMetrics
             return 0.0;
         });
 
+        treasTagIndexHits = createTableCounter("TreasTagIndexHits");
+        treasTagIndexMisses = createTableCounter("TreasTagIndexMisses");
+        treasTagIndexHitRate = createTableGauge("TreasTagIndexHitRate", new RatioGauge()
+        {
+            protected Ratio getRatio()
+            {
+                long hits = treasTagIndexHits.getCount();
+                return Ratio.of(hits, hits + treasTagIndexMisses.getCount());
+            }
+        }, new RatioGauge()
+        {
+            protected Ratio getRatio()
+            {
+                long hits = 0L;
+                long requests = 0L;
+                for (Metric counter : allTableMetrics.get("TreasTagIndexHits"))
+                    hits += ((Counter) counter).getCount();
+                requests += hits;
+                for (Metric counter : allTableMetrics.get("TreasTagIndexMisses"))
+                    requests += ((Counter) counter).getCount();
+                return Ratio.of(hits, requests);
+            }
+        });
+        treasBackgroundWriteBacks = createTableCounter("TreasBackgroundWriteBacks");
+        treasBackgroundWriteBacksAcked = createTableCounter("TreasBackgroundWriteBacksAcked");
+        treasFreedSlots = createTableCounter("TreasFreedSlots");
+        treasReadResponses = Metrics.histogram(factory.createMetricName("TreasReadResponses"), false);
+        treasReadShards = Metrics.histogram(factory.createMetricName("TreasReadShards"), false);
+        treasWriteBackLatency = Metrics.timer(factory.createMetricName("TreasWriteBackLatency"));
+
         readRepairRequests = Metrics.meter(factory.createMetricName("ReadRepairRequests"));
         shortReadProtectionRequests = Metrics.meter(factory.createMetricName("ShortReadProtectionRequests"));
     }
@@ -889,6 +969,8 @@ public class TableMetrics
         readLatency.release();
         writeLatency.release();
         rangeLatency.release();
+        Metrics.remove(factory.createMetricName("MemtableShardLiveDataSize"), aliasFactory.createMetricName("MemtableShardLiveDataSize"));
+        Metrics.remove(factory.createMetricName("MemtableShardMemorySize"), aliasFactory.createMetricName("MemtableShardMemorySize"));
         Metrics.remove(factory.createMetricName("EstimatedPartitionSizeHistogram"), aliasFactory.createMetricName("EstimatedRowSizeHistogram"));
         Metrics.remove(factory.createMetricName("EstimatedPartitionCount"), aliasFactory.createMetricName("EstimatedRowCount"));
         Metrics.remove(factory.createMetricName("EstimatedColumnCountHistogram"), aliasFactory.createMetricName("EstimatedColumnCountHistogram"));
@@ -897,6 +979,9 @@ public class TableMetrics
         Metrics.remove(factory.createMetricName("CoordinatorScanLatency"), aliasFactory.createMetricName("CoordinatorScanLatency"));
         Metrics.remove(factory.createMetricName("CoordinatorWriteLatency"), aliasFactory.createMetricName("CoordinatorWriteLatency"));
         Metrics.remove(factory.createMetricName("WaitingOnFreeMemtableSpace"), aliasFactory.createMetricName("WaitingOnFreeMemtableSpace"));
+        Metrics.remove(factory.createMetricName("TreasReadResponses"), aliasFactory.createMetricName("TreasReadResponses"));
+        Metrics.remove(factory.createMetricName("TreasReadShards"), aliasFactory.createMetricName("TreasReadShards"));
+        Metrics.remove(factory.createMetricName("TreasWriteBackLatency"), aliasFactory.createMetricName("TreasWriteBackLatency"));
     }
 
 
@@ -294,15 +294,19 @@ abstract class ChannelWriter
      * Invoked after a message has been processed in the pipeline. Should only be used for essential bookkeeping operations.
      * <p>
      * Note: this method is invoked on the netty event loop.
+     *
+     * @return whether the channel should be flushed now
      */
-    abstract void onMessageProcessed(ChannelHandlerContext ctx);
+    abstract boolean onMessageProcessed(ChannelHandlerContext ctx);
 
     /**
      * Invoked when pipeline receives a flush request.
      * <p>
      * Note: this method is invoked on the netty event loop.
+     *
+     * @return whether the channel should be flushed now
      */
-    abstract void onTriggeredFlush(ChannelHandlerContext ctx);
+    abstract boolean onTriggeredFlush(ChannelHandlerContext ctx);
 
     /**
      * Handles the non-coalescing flush case.
@@ -326,15 +330,15 @@ abstract class ChannelWriter
             return channel.writeAndFlush(message);
         }
 
-        void onMessageProcessed(ChannelHandlerContext ctx)
+        boolean onMessageProcessed(ChannelHandlerContext ctx)
         {
-            if (pendingMessageCount.decrementAndGet() == 0)
-                ctx.flush();
+            return pendingMessageCount.decrementAndGet() == 0;
         }
 
-        void onTriggeredFlush(ChannelHandlerContext ctx)
+        boolean onTriggeredFlush(ChannelHandlerContext ctx)
         {
             // Don't actually flush on "normal" flush calls to the channel.
+            return false;
         }
     }
 
@@ -404,15 +408,16 @@ abstract class ChannelWriter
             return future;
         }
 
-        void onMessageProcessed(ChannelHandlerContext ctx)
+        boolean onMessageProcessed(ChannelHandlerContext ctx)
         {
             pendingMessageCount.decrementAndGet();
+            return false;
         }
 
-        void onTriggeredFlush(ChannelHandlerContext ctx)
+        boolean onTriggeredFlush(ChannelHandlerContext ctx)
         {
             // When coalescing, obey the flush calls normally
-            ctx.flush();
+            return true;
         }
     }
 }
@@ -20,6 +20,9 @@ package org.apache.cassandra.net.async;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
@@ -34,11 +37,14 @@ import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOutboundBuffer;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.ChannelPromiseNotifier;
 import io.netty.handler.codec.UnsupportedMessageTypeException;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.metrics.ConnectionMetrics;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.net.ParameterType;
 import org.apache.cassandra.tracing.TraceState;
@@ -55,6 +61,10 @@ import static org.apache.cassandra.config.Config.PROPERTY_PREFIX;
  * On top of transforming a {@link QueuedMessage} into bytes, this handler also feeds back progress to the linked
  * {@link ChannelWriter} so that the latter can take decision on when data should be flushed (with and without coalescing).
  * See the javadoc on {@link ChannelWriter} for more details about the callbacks as well as message timeouts.
+ * <p>
+ * Messages are serialized one after the other into a batch buffer, which is only written to the channel when it is
+ * full or when the channel is flushed, so that many small messages make a few large buffers, and few large writes to
+ * the socket, rather than one buffer each. The messages larger than a batch get a buffer of their own.
  *<p>
  * Note: this class derives from {@link ChannelDuplexHandler} so we can intercept calls to
  * {@link #userEventTriggered(ChannelHandlerContext, Object)} and {@link #channelWritabilityChanged(ChannelHandlerContext)}.
@@ -94,18 +104,45 @@ class MessageOutHandler extends ChannelDuplexHandler
 
     private final Supplier<QueuedMessage> backlogSupplier;
 
+    /**
+     * The size of the buffers messages are batched into, 0 if each message gets its own buffer.
+     */
+    private final int batchSize;
+
+    /**
+     * The buffer the messages are serialized into until it is written to the channel, null if there is none.
+     */
+    private ByteBuf batch;
+
+    /**
+     * The promises of the messages in {@link #batch}, which are notified once it is written.
+     */
+    private final List<ChannelPromise> batchPromises = new ArrayList<>();
+
+    /**
+     * The number of messages written to the channel since the last flush.
+     */
+    private int unflushedMessages;
+
     MessageOutHandler(OutboundConnectionIdentifier connectionId, int targetMessagingVersion, ChannelWriter channelWriter, Supplier<QueuedMessage> backlogSupplier)
     {
         this (connectionId, targetMessagingVersion, channelWriter, backlogSupplier, AUTO_FLUSH_THRESHOLD);
     }
 
     MessageOutHandler(OutboundConnectionIdentifier connectionId, int targetMessagingVersion, ChannelWriter channelWriter, Supplier<QueuedMessage> backlogSupplier, int flushThreshold)
+    {
+        this (connectionId, targetMessagingVersion, channelWriter, backlogSupplier, flushThreshold, DatabaseDescriptor.getOtcMessageBatchSize());
+    }
+
+    @VisibleForTesting
+    MessageOutHandler(OutboundConnectionIdentifier connectionId, int targetMessagingVersion, ChannelWriter channelWriter, Supplier<QueuedMessage> backlogSupplier, int flushThreshold, int batchSize)
     {
         this.connectionId = connectionId;
         this.targetMessagingVersion = targetMessagingVersion;
         this.channelWriter = channelWriter;
         this.flushSizeThreshold = flushThreshold;
         this.backlogSupplier = backlogSupplier;
+        this.batchSize = batchSize;
     }
 
     @Override
@@ -121,6 +158,7 @@ class MessageOutHandler extends ChannelDuplexHandler
         }
 
         ByteBuf out = null;
+        boolean flush = false;
         try
         {
             if (!isMessageValid(o, promise))
@@ -138,16 +176,44 @@ class MessageOutHandler extends ChannelDuplexHandler
                 return;
             }
 
-            out = ctx.alloc().ioBuffer((int)currentFrameSize);
-
+            int messageSize = (int) currentFrameSize;
+            int bytesSent;
             captureTracingInfo(msg);
-            serializeMessage(msg, out);
-            ctx.write(out, promise);
+            if (messageSize > batchSize)
+            {
+                // keep the messages in order, writing those batched so far first
+                writeBatch(ctx);
+                out = ctx.alloc().ioBuffer(messageSize);
+                bytesSent = serializeMessage(msg, out, messageSize);
+                ctx.write(out, promise);
+            }
+            else
+            {
+                if (batch != null && batch.writableBytes() < messageSize)
+                    writeBatch(ctx);
+                if (batch == null)
+                    batch = ctx.alloc().ioBuffer(batchSize);
+
+                int start = batch.writerIndex();
+                try
+                {
+                    bytesSent = serializeMessage(msg, batch, messageSize);
+                }
+                catch (Exception e)
+                {
+                    // leave out the part of the message serialized, the batch remains valid for the others
+                    batch.writerIndex(start);
+                    throw e;
+                }
+                batchPromises.add(promise);
+            }
+            ConnectionMetrics.totalBytesSent.mark(bytesSent);
+            unflushedMessages++;
 
             // check to see if we should flush based on buffered size
             ChannelOutboundBuffer outboundBuffer = ctx.channel().unsafe().outboundBuffer();
-            if (outboundBuffer != null && outboundBuffer.totalPendingWriteBytes() >= flushSizeThreshold)
-                ctx.flush();
+            if (outboundBuffer != null && outboundBuffer.totalPendingWriteBytes() + batchedBytes() >= flushSizeThreshold)
+                flush = true;
         }
         catch(Exception e)
         {
@@ -159,8 +225,50 @@ class MessageOutHandler extends ChannelDuplexHandler
         finally
         {
             // Make sure we signal the outChanel even in case of errors.
-            channelWriter.onMessageProcessed(ctx);
+            if (channelWriter.onMessageProcessed(ctx) || flush)
+                flushBatch(ctx);
+        }
+    }
+
+    private int batchedBytes()
+    {
+        return batch == null ? 0 : batch.readableBytes();
+    }
+
+    /**
+     * Writes the current batch, if any, to the channel, notifying the promises of its messages once it is written.
+     */
+    private void writeBatch(ChannelHandlerContext ctx)
+    {
+        if (batch == null)
+            return;
+
+        ChannelPromise[] promises = batchPromises.toArray(new ChannelPromise[0]);
+        ByteBuf out = batch;
+        batch = null;
+        batchPromises.clear();
+
+        // a batch whose only messages failed to serialize is empty
+        if (promises.length == 0)
+            out.release();
+        else
+            ctx.write(out).addListener(new ChannelPromiseNotifier(promises));
+    }
+
+    /**
+     * Writes the current batch, if any, and flushes the channel, recording how much the flush sends.
+     */
+    private void flushBatch(ChannelHandlerContext ctx)
+    {
+        writeBatch(ctx);
+        ChannelOutboundBuffer outboundBuffer = ctx.channel().unsafe().outboundBuffer();
+        if (outboundBuffer != null && outboundBuffer.totalPendingWriteBytes() > 0)
+        {
+            ConnectionMetrics.bytesPerFlush.update(outboundBuffer.totalPendingWriteBytes());
+            ConnectionMetrics.messagesPerFlush.update(unflushedMessages);
         }
+        unflushedMessages = 0;
+        ctx.flush();
     }
 
     /**
@@ -225,8 +333,14 @@ class MessageOutHandler extends ChannelDuplexHandler
         }
     }
 
-    private void serializeMessage(QueuedMessage msg, ByteBuf out) throws IOException
+    /**
+     * Serializes the message at the end of the given buffer.
+     *
+     * @return the number of bytes written
+     */
+    private int serializeMessage(QueuedMessage msg, ByteBuf out, int messageSize) throws IOException
     {
+        int start = out.writerIndex();
         out.writeInt(MessagingService.PROTOCOL_MAGIC);
         out.writeInt(msg.id);
 
@@ -238,17 +352,19 @@ class MessageOutHandler extends ChannelDuplexHandler
         msg.message.serialize(outStream, targetMessagingVersion);
 
         // next few lines are for debugging ... massively helpful!!
-        // if we allocated too much buffer for this message, we'll log here.
-        // if we allocated to little buffer space, we would have hit an exception when trying to write more bytes to it
-        if (out.isWritable())
+        // if the reported size of this message is off, we'll log here.
+        int size = out.writerIndex() - start;
+        if (size != messageSize)
             errorLogger.error("{} reported message size {}, actual message size {}, msg {}",
-                         connectionId, out.capacity(), out.writerIndex(), msg.message);
+                         connectionId, messageSize, size, msg.message);
+        return size;
     }
 
     @Override
     public void flush(ChannelHandlerContext ctx)
     {
-        channelWriter.onTriggeredFlush(ctx);
+        if (channelWriter.onTriggeredFlush(ctx))
+            flushBatch(ctx);
     }
 
 
@@ -295,7 +411,7 @@ class MessageOutHandler extends ChannelDuplexHandler
         if (evt instanceof IdleStateEvent && ((IdleStateEvent)evt).state() == IdleState.WRITER_IDLE)
         {
             ChannelOutboundBuffer cob = ctx.channel().unsafe().outboundBuffer();
-            if (cob != null && cob.totalPendingWriteBytes() > 0)
+            if (cob != null && cob.totalPendingWriteBytes() + batchedBytes() > 0)
             {
                 ctx.channel().attr(ChannelWriter.PURGE_MESSAGES_CHANNEL_ATTR)
                    .compareAndSet(Boolean.FALSE, Boolean.TRUE);
@@ -318,7 +434,22 @@ class MessageOutHandler extends ChannelDuplexHandler
     @Override
     public void close(ChannelHandlerContext ctx, ChannelPromise promise)
     {
-        ctx.flush();
+        flushBatch(ctx);
         ctx.close(promise);
     }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx)
+    {
+        // the channel is gone, so is any batch that could not be written to it
+        if (batch != null)
+        {
+            batch.release();
+            batch = null;
+            ClosedChannelException cause = new ClosedChannelException();
+            for (ChannelPromise promise : batchPromises)
+                promise.tryFailure(cause);
+            batchPromises.clear();
+        }
+    }
 }
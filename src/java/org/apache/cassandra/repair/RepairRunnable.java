@@ -44,6 +44,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.Timer;
+import org.apache.cassandra.Treas.TreasShardRebuilder;
 import org.apache.cassandra.concurrent.JMXConfigurableThreadPoolExecutor;
 import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.config.DatabaseDescriptor;
@@ -193,9 +194,18 @@ public class RepairRunnable extends WrappedRunnable implements ProgressEventNoti
 
         String[] columnFamilies = options.getColumnFamilies().toArray(new String[options.getColumnFamilies().size()]);
         Iterable<ColumnFamilyStore> validColumnFamilies;
+        // every replica of an erasure coded table holds a different shard, so their merkle trees never match: their
+        // local shards are regenerated from the other replicas instead of being repaired
+        List<ColumnFamilyStore> erasureCodedTables = new ArrayList<>();
         try
         {
             validColumnFamilies = storageService.getValidColumnFamilies(false, false, keyspace, columnFamilies);
+            for (ColumnFamilyStore cfs : validColumnFamilies)
+            {
+                if (cfs.metadata().params.erasureCoding.isEnabled())
+                    erasureCodedTables.add(cfs);
+            }
+            validColumnFamilies = Iterables.filter(validColumnFamilies, cfs -> !cfs.metadata().params.erasureCoding.isEnabled());
             progress.incrementAndGet();
         }
         catch (IllegalArgumentException | IOException e)
@@ -262,6 +272,10 @@ public class RepairRunnable extends WrappedRunnable implements ProgressEventNoti
             return;
         }
 
+        if (!erasureCodedTables.isEmpty()
+            && !rebuildErasureCodedTables(erasureCodedTables, Iterables.isEmpty(validColumnFamilies), progress.get(), traceState))
+            return;
+
         // Validate columnfamilies
         List<ColumnFamilyStore> columnFamilyStores = new ArrayList<>();
         try
@@ -324,6 +338,53 @@ public class RepairRunnable extends WrappedRunnable implements ProgressEventNoti
         }
     }
 
+    /**
+     * Regenerates the local shards of the repaired ranges of {@code tables} with {@link TreasShardRebuilder}, which
+     * preview repairs only report. When no other table is repaired, this also completes the repair command.
+     *
+     * @return whether the other tables are left to repair
+     */
+    private boolean rebuildErasureCodedTables(List<ColumnFamilyStore> tables, boolean onlyErasureCoded, int progressCount, TraceState traceState)
+    {
+        String message;
+        if (options.isPreview())
+        {
+            message = String.format("Skipping erasure coded tables %s, their shards can't be compared between replicas", tables);
+        }
+        else
+        {
+            try
+            {
+                for (ColumnFamilyStore cfs : tables)
+                    TreasShardRebuilder.rebuild(cfs, options.getRanges());
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("Repair failed:", e);
+                fireErrorAndComplete(progressCount, totalProgress, e.getMessage());
+                return false;
+            }
+            message = String.format("Regenerated the shards of erasure coded tables %s", tables);
+        }
+        logger.info(message);
+        if (!onlyErasureCoded)
+            return true;
+
+        fireProgressEvent(new ProgressEvent(ProgressEventType.SUCCESS, progressCount, totalProgress, message));
+        String completionMessage = String.format("Repair command #%d finished", cmd);
+        fireProgressEvent(new ProgressEvent(ProgressEventType.COMPLETE, progressCount, totalProgress, completionMessage));
+        if (options.isTraced() && traceState != null)
+        {
+            for (ProgressListener listener : listeners)
+                traceState.removeProgressListener(listener);
+            Tracing.traceRepair(completionMessage);
+            Tracing.instance.stopSession();
+        }
+        ActiveRepairService.instance.recordRepairStatus(cmd, ActiveRepairService.ParentRepairStatus.COMPLETED,
+                                                        ImmutableList.of(message, completionMessage));
+        return false;
+    }
+
     private void normalRepair(UUID parentSession,
                               long startTime,
                               TraceState traceState,
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.schema;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+
+import org.apache.cassandra.exceptions.ConfigurationException;
+
+import static java.lang.String.format;
+
+/**
+ * Erasure coding (TREAS) settings of a table.
+ *
+ * A value is split into {@code data_shards} shards plus {@code parity_shards} parity shards, shard i being stored on
+ * the i-th natural endpoint of the partition, so the keyspace replication factor must be data_shards + parity_shards.
+ * Each replica keeps up to {@code concurrency} (tag, shard) slots per key, and a tag is considered committed once it
+ * has been seen by {@code intersect} replicas (defaults to data_shards).
+ */
+// CQL: {'data_shards' : k, 'parity_shards' : m, 'concurrency' : c, 'intersect' : i}
+public final class ErasureCodingParams
+{
+    public enum Option
+    {
+        DATA_SHARDS,
+        PARITY_SHARDS,
+        CONCURRENCY,
+        INTERSECT;
+
+        @Override
+        public String toString()
+        {
+            return name().toLowerCase();
+        }
+    }
+
+    public static final int DEFAULT_CONCURRENCY = 3;
+
+    public static final ErasureCodingParams NONE = new ErasureCodingParams(0, 0, 0, 0);
+
+    private final int dataShards;
+    private final int parityShards;
+    private final int concurrency;
+    private final int intersect;
+
+    private ErasureCodingParams(int dataShards, int parityShards, int concurrency, int intersect)
+    {
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+        this.concurrency = concurrency;
+        this.intersect = intersect;
+    }
+
+    public static ErasureCodingParams create(int dataShards, int parityShards, int concurrency)
+    {
+        return new ErasureCodingParams(dataShards, parityShards, concurrency, dataShards);
+    }
+
+    public static ErasureCodingParams create(int dataShards, int parityShards, int concurrency, int intersect)
+    {
+        return new ErasureCodingParams(dataShards, parityShards, concurrency, intersect);
+    }
+
+    public boolean isEnabled()
+    {
+        return dataShards > 0;
+    }
+
+    public int dataShards()
+    {
+        return dataShards;
+    }
+
+    public int parityShards()
+    {
+        return parityShards;
+    }
+
+    public int totalShards()
+    {
+        return dataShards + parityShards;
+    }
+
+    public int concurrency()
+    {
+        return concurrency;
+    }
+
+    public int intersect()
+    {
+        return intersect;
+    }
+
+    /**
+     * @return the number of replicas each TREAS read and write waits for, so that any two quorums share
+     * at least {@link #intersect()} replicas
+     */
+    public int quorum()
+    {
+        return (totalShards() + intersect + 1) / 2;
+    }
+
+    /**
+     * @return whether the shards of a value are the same with these params and the given ones, so that what either
+     * wrote can be decoded with the other
+     */
+    public boolean hasSameGeometry(ErasureCodingParams other)
+    {
+        return dataShards == other.dataShards && parityShards == other.parityShards;
+    }
+
+    public void validate()
+    {
+        if (equals(NONE))
+            return;
+
+        if (dataShards < 1)
+            fail("%s must be at least 1 (got %d)", Option.DATA_SHARDS, dataShards);
+
+        if (parityShards < 0)
+            fail("%s must be greater than or equal to 0 (got %d)", Option.PARITY_SHARDS, parityShards);
+
+        if (totalShards() > 256)
+            fail("%s + %s must be at most 256 (got %d)", Option.DATA_SHARDS, Option.PARITY_SHARDS, totalShards());
+
+        if (concurrency < 1)
+            fail("%s must be at least 1 (got %d)", Option.CONCURRENCY, concurrency);
+
+        if (intersect < dataShards || intersect > totalShards())
+            fail("%s must be between %s (%d) and the total number of shards (%d) (got %d)",
+                 Option.INTERSECT, Option.DATA_SHARDS, dataShards, totalShards(), intersect);
+    }
+
+    /**
+     * Checks that the table, whose keyspace has the given replication factor, has a replica per shard, as shard i
+     * is stored by its i-th replica.
+     */
+    public void validateReplicationFactor(String table, int replicationFactor)
+    {
+        if (isEnabled() && totalShards() != replicationFactor)
+            fail("Table %s is erasure coded into %s + %s = %d shards, so its keyspace replication factor must be %d (got %d)",
+                 table, Option.DATA_SHARDS, Option.PARITY_SHARDS, totalShards(), totalShards(), replicationFactor);
+    }
+
+    private static void fail(String format, Object... args)
+    {
+        throw new ConfigurationException(format(format, args));
+    }
+
+    public static ErasureCodingParams fromMap(Map<String, String> map)
+    {
+        if (map == null || map.isEmpty())
+            return NONE;
+
+        Map<String, String> copy = new HashMap<>(map);
+
+        String dataShards = copy.remove(Option.DATA_SHARDS.toString());
+        if (dataShards == null)
+            fail("Missing sub-option '%s' for the erasure_coding option", Option.DATA_SHARDS);
+
+        String parityShards = copy.remove(Option.PARITY_SHARDS.toString());
+        if (parityShards == null)
+            fail("Missing sub-option '%s' for the erasure_coding option", Option.PARITY_SHARDS);
+
+        String concurrency = copy.remove(Option.CONCURRENCY.toString());
+        String intersect = copy.remove(Option.INTERSECT.toString());
+
+        if (!copy.isEmpty())
+        {
+            fail("Invalid erasure_coding sub-options %s: only '%s', '%s', '%s' and '%s' are allowed",
+                 copy.keySet(),
+                 Option.DATA_SHARDS,
+                 Option.PARITY_SHARDS,
+                 Option.CONCURRENCY,
+                 Option.INTERSECT);
+        }
+
+        int k = parseInt(Option.DATA_SHARDS, dataShards);
+        return new ErasureCodingParams(k,
+                                       parseInt(Option.PARITY_SHARDS, parityShards),
+                                       concurrency == null ? DEFAULT_CONCURRENCY : parseInt(Option.CONCURRENCY, concurrency),
+                                       intersect == null ? k : parseInt(Option.INTERSECT, intersect));
+    }
+
+    private static int parseInt(Option option, String value)
+    {
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ConfigurationException(format("Invalid value '%s' for erasure_coding sub-option '%s': must be an integer",
+                                                    value,
+                                                    option));
+        }
+    }
+
+    public Map<String, String> asMap()
+    {
+        if (!isEnabled())
+            return ImmutableMap.of();
+
+        return ImmutableMap.of(Option.DATA_SHARDS.toString(), Integer.toString(dataShards),
+                               Option.PARITY_SHARDS.toString(), Integer.toString(parityShards),
+                               Option.CONCURRENCY.toString(), Integer.toString(concurrency),
+                               Option.INTERSECT.toString(), Integer.toString(intersect));
+    }
+
+    @Override
+    public String toString()
+    {
+        return asMap().toString();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+
+        if (!(o instanceof ErasureCodingParams))
+            return false;
+
+        ErasureCodingParams e = (ErasureCodingParams) o;
+
+        return dataShards == e.dataShards
+            && parityShards == e.parityShards
+            && concurrency == e.concurrency
+            && intersect == e.intersect;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hashCode(dataShards, parityShards, concurrency, intersect);
+    }
+}
@@ -235,6 +235,9 @@ public class MigrationManager
         else if (throwOnDuplicate && ksm.getTableOrViewNullable(cfm.name) != null)
             throw new AlreadyExistsException(cfm.keyspace, cfm.name);
 
+        if (cfm.params.erasureCoding.isEnabled())
+            cfm.params.erasureCoding.validateReplicationFactor(cfm.toString(), ksm.params.replication.replicationFactor(ksm.name));
+
         logger.info("Create new table: {}", cfm);
         announce(SchemaKeyspace.makeCreateTableMutation(ksm, cfm, timestamp), announceLocally);
     }
@@ -286,6 +289,12 @@ public class MigrationManager
         if (oldKsm == null)
             throw new ConfigurationException(String.format("Cannot update non existing keyspace '%s'.", ksm.name));
 
+        for (TableMetadata table : oldKsm.tables)
+        {
+            if (table.params.erasureCoding.isEnabled())
+                table.params.erasureCoding.validateReplicationFactor(table.toString(), ksm.params.replication.replicationFactor(ksm.name));
+        }
+
         logger.info("Update Keyspace '{}' From {} To {}", ksm.name, oldKsm, ksm);
         announce(SchemaKeyspace.makeCreateKeyspaceMutation(ksm.name, ksm.params, FBUtilities.timestampMicros()), announceLocally);
     }
@@ -310,6 +319,8 @@ public class MigrationManager
         KeyspaceMetadata ksm = Schema.instance.getKeyspaceMetadata(current.keyspace);
 
         current.validateCompatibility(updated);
+        if (updated.params.erasureCoding.isEnabled())
+            updated.params.erasureCoding.validateReplicationFactor(updated.toString(), ksm.params.replication.replicationFactor(ksm.name));
 
         long timestamp = FBUtilities.timestampMicros();
 
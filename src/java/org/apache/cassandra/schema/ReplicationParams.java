@@ -74,6 +74,17 @@ public final class ReplicationParams
         AbstractReplicationStrategy.validateReplicationStrategy(name, klass, tmd, eps, options);
     }
 
+    /**
+     * @return the replication factor, across all datacenters, of the keyspace of the given name replicated with these
+     * params
+     */
+    public int replicationFactor(String name)
+    {
+        TokenMetadata tmd = StorageService.instance.getTokenMetadata();
+        IEndpointSnitch eps = DatabaseDescriptor.getEndpointSnitch();
+        return AbstractReplicationStrategy.createReplicationStrategy(name, klass, tmd, eps, options).getReplicationFactor();
+    }
+
     public static ReplicationParams fromMap(Map<String, String> map)
     {
         Map<String, String> options = new HashMap<>(map);
@@ -103,6 +103,13 @@ public final class SchemaKeyspace
      */
     private static final Set<String> TABLES_WITH_CDC_ADDED = ImmutableSet.of(TABLES, VIEWS);
 
+    /**
+     * The columns we added to the tables above that are only written for the tables that set them. Like cdc, they are
+     * skipped by {@link #makeUpdateForSchema} when none of the rows sent has a value for them, so that nodes that do
+     * not know them can still take the schema of the other tables.
+     */
+    private static final Set<String> COLUMNS_ADDED_IF_SET = ImmutableSet.of("erasure_coding", "memtable_shards");
+
     private static final TableMetadata Keyspaces =
         parse(KEYSPACES,
               "keyspace definitions",
@@ -132,10 +139,12 @@ public final class SchemaKeyspace
               + "id uuid,"
               + "max_index_interval int,"
               + "memtable_flush_period_in_ms int,"
+              + "memtable_shards int,"
               + "min_index_interval int,"
               + "read_repair_chance double," // no longer used, left for drivers' sake
               + "speculative_retry text,"
               + "cdc boolean,"
+              + "erasure_coding frozen<map<text, text>>,"
               + "PRIMARY KEY ((keyspace_name), table_name))");
 
     private static final TableMetadata Columns =
@@ -197,10 +206,12 @@ public final class SchemaKeyspace
               + "include_all_columns boolean,"
               + "max_index_interval int,"
               + "memtable_flush_period_in_ms int,"
+              + "memtable_shards int,"
               + "min_index_interval int,"
               + "read_repair_chance double," // no longer used, left for drivers' sake
               + "speculative_retry text,"
               + "cdc boolean,"
+              + "erasure_coding frozen<map<text, text>>,"
               + "PRIMARY KEY ((keyspace_name), view_name))");
 
     private static final TableMetadata Indexes =
@@ -395,20 +406,43 @@ public final class SchemaKeyspace
     {
         // This method is used during schema migration tasks, and if cdc is disabled, we want to force excluding the
         // 'cdc' column from the TABLES/VIEWS schema table because it is problematic if received by older nodes (see #12236
-        // and #12697). Otherwise though, we just simply "buffer" the content of the partition into a PartitionUpdate.
-        if (DatabaseDescriptor.isCDCEnabled() || !TABLES_WITH_CDC_ADDED.contains(partition.metadata().name))
+        // and #12697). The columns of COLUMNS_ADDED_IF_SET are excluded the same way unless some table sets them.
+        // Otherwise though, we just simply "buffer" the content of the partition into a PartitionUpdate.
+        if (!TABLES_WITH_CDC_ADDED.contains(partition.metadata().name))
             return PartitionUpdate.fromIterator(partition, filter);
 
-        // We want to skip the 'cdc' column. A simple solution for that is based on the fact that
+        PartitionUpdate update = PartitionUpdate.fromIterator(partition, filter);
+
+        Set<String> skipped = new HashSet<>(COLUMNS_ADDED_IF_SET);
+        if (!DatabaseDescriptor.isCDCEnabled())
+            skipped.add("cdc");
+
+        for (Row row : update)
+        {
+            for (ColumnData data : row)
+            {
+                String name = data.column().name.toString();
+                if (COLUMNS_ADDED_IF_SET.contains(name))
+                    skipped.remove(name);
+            }
+        }
+
+        if (skipped.isEmpty())
+            return update;
+
+        // We want to skip those columns. A simple solution for that is based on the fact that
         // 'PartitionUpdate.fromIterator()' will ignore any columns that are marked as 'fetched' but not 'queried'.
-        ColumnFilter.Builder builder = ColumnFilter.allRegularColumnsBuilder(partition.metadata());
+        ColumnFilter.Builder builder = ColumnFilter.allRegularColumnsBuilder(update.metadata());
         for (ColumnMetadata column : filter.fetchedColumns())
         {
-            if (!column.name.toString().equals("cdc"))
+            if (!skipped.contains(column.name.toString()))
                 builder.add(column);
         }
 
-        return PartitionUpdate.fromIterator(partition, builder.build());
+        try (UnfilteredRowIterator iterator = update.unfilteredIterator())
+        {
+            return PartitionUpdate.fromIterator(iterator, builder.build());
+        }
     }
 
     private static boolean isSystemKeyspaceSchemaPartition(DecoratedKey partitionKey)
@@ -538,6 +572,14 @@ public final class SchemaKeyspace
                .add("compression", params.compression.asMap())
                .add("extensions", params.extensions);
 
+        // Likewise, only add the erasure coding options and the memtable shard count of the tables that set them, so
+        // that the schema of every other table can still be sent to nodes that predate those columns.
+        if (params.erasureCoding.isEnabled())
+            builder.add("erasure_coding", params.erasureCoding.asMap());
+
+        if (params.memtableShards > 0)
+            builder.add("memtable_shards", params.memtableShards);
+
         // Only add CDC-enabled flag to schema if it's enabled on the node. This is to work around RTE's post-8099 if a 3.8+
         // node sends table schema to a < 3.8 versioned node with an unknown column.
         if (DatabaseDescriptor.isCDCEnabled())
@@ -553,6 +595,10 @@ public final class SchemaKeyspace
 
         addTableToSchemaMutation(newTable, false, builder);
 
+        // memtable_shards is not written when unset, so going back to the default has to remove the old value
+        if (oldTable.params.memtableShards > 0 && newTable.params.memtableShards == 0)
+            builder.update(Tables).row(newTable.name).add("memtable_shards", null);
+
         MapDifference<ByteBuffer, ColumnMetadata> columnDiff = Maps.difference(oldTable.columns, newTable.columns);
 
         // columns that are no longer needed
@@ -1005,10 +1051,14 @@ public final class SchemaKeyspace
                           .gcGraceSeconds(row.getInt("gc_grace_seconds"))
                           .maxIndexInterval(row.getInt("max_index_interval"))
                           .memtableFlushPeriodInMs(row.getInt("memtable_flush_period_in_ms"))
+                          .memtableShards(row.has("memtable_shards") ? row.getInt("memtable_shards") : 0)
                           .minIndexInterval(row.getInt("min_index_interval"))
                           .crcCheckChance(row.getDouble("crc_check_chance"))
                           .speculativeRetry(SpeculativeRetryPolicy.fromString(row.getString("speculative_retry")))
                           .cdc(row.has("cdc") && row.getBoolean("cdc"))
+                          .erasureCoding(row.has("erasure_coding")
+                                         ? ErasureCodingParams.fromMap(row.getFrozenTextMap("erasure_coding"))
+                                         : ErasureCodingParams.NONE)
                           .build();
     }
 
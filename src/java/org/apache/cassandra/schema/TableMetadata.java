@@ -435,6 +435,10 @@ public final class TableMetadata
         if (!other.flags.equals(flags))
             except("Table type mismatch (found %s; expected %s)", other.flags, flags);
 
+        if (!other.params.erasureCoding.hasSameGeometry(params.erasureCoding))
+            except("The erasure coding %s and %s of a table cannot change once it is created, as its data is coded with them (found %s; expected %s)",
+                   ErasureCodingParams.Option.DATA_SHARDS, ErasureCodingParams.Option.PARITY_SHARDS, other.params.erasureCoding, params.erasureCoding);
+
         if (other.partitionKeyColumns.size() != partitionKeyColumns.size())
             except("Partition keys of different length (found %s; expected %s)", other.partitionKeyColumns.size(), partitionKeyColumns.size());
 
@@ -725,6 +729,12 @@ public final class TableMetadata
             return this;
         }
 
+        public Builder memtableShards(int val)
+        {
+            params.memtableShards(val);
+            return this;
+        }
+
         public Builder minIndexInterval(int val)
         {
             params.minIndexInterval(val);
@@ -749,6 +759,12 @@ public final class TableMetadata
             return this;
         }
 
+        public Builder erasureCoding(ErasureCodingParams val)
+        {
+            params.erasureCoding(val);
+            return this;
+        }
+
         public Builder flags(Set<Flag> val)
         {
             flags = val;
@@ -44,10 +44,12 @@ public final class TableParams
         COMPACTION,
         COMPRESSION,
         DEFAULT_TIME_TO_LIVE,
+        ERASURE_CODING,
         EXTENSIONS,
         GC_GRACE_SECONDS,
         MAX_INDEX_INTERVAL,
         MEMTABLE_FLUSH_PERIOD_IN_MS,
+        MEMTABLE_SHARDS,
         MIN_INDEX_INTERVAL,
         SPECULATIVE_RETRY,
         CRC_CHECK_CHANCE,
@@ -66,6 +68,7 @@ public final class TableParams
     public final int gcGraceSeconds;
     public final int defaultTimeToLive;
     public final int memtableFlushPeriodInMs;
+    public final int memtableShards;
     public final int minIndexInterval;
     public final int maxIndexInterval;
     public final SpeculativeRetryPolicy speculativeRetry;
@@ -74,6 +77,7 @@ public final class TableParams
     public final CompressionParams compression;
     public final ImmutableMap<String, ByteBuffer> extensions;
     public final boolean cdc;
+    public final ErasureCodingParams erasureCoding;
 
     private TableParams(Builder builder)
     {
@@ -85,6 +89,7 @@ public final class TableParams
         gcGraceSeconds = builder.gcGraceSeconds;
         defaultTimeToLive = builder.defaultTimeToLive;
         memtableFlushPeriodInMs = builder.memtableFlushPeriodInMs;
+        memtableShards = builder.memtableShards;
         minIndexInterval = builder.minIndexInterval;
         maxIndexInterval = builder.maxIndexInterval;
         speculativeRetry = builder.speculativeRetry;
@@ -93,6 +98,7 @@ public final class TableParams
         compression = builder.compression;
         extensions = builder.extensions;
         cdc = builder.cdc;
+        erasureCoding = builder.erasureCoding;
     }
 
     public static Builder builder()
@@ -112,10 +118,12 @@ public final class TableParams
                             .gcGraceSeconds(params.gcGraceSeconds)
                             .maxIndexInterval(params.maxIndexInterval)
                             .memtableFlushPeriodInMs(params.memtableFlushPeriodInMs)
+                            .memtableShards(params.memtableShards)
                             .minIndexInterval(params.minIndexInterval)
                             .speculativeRetry(params.speculativeRetry)
                             .extensions(params.extensions)
-                            .cdc(params.cdc);
+                            .cdc(params.cdc)
+                            .erasureCoding(params.erasureCoding);
     }
 
     public Builder unbuild()
@@ -127,6 +135,7 @@ public final class TableParams
     {
         compaction.validate();
         compression.validate();
+        erasureCoding.validate();
 
         double minBloomFilterFpChanceValue = BloomCalculations.minSupportedBloomFilterFpChance();
         if (bloomFilterFpChance <=  minBloomFilterFpChanceValue || bloomFilterFpChance > 1)
@@ -167,6 +176,9 @@ public final class TableParams
 
         if (memtableFlushPeriodInMs < 0)
             fail("%s must be greater than or equal to 0 (got %s)", Option.MEMTABLE_FLUSH_PERIOD_IN_MS, memtableFlushPeriodInMs);
+
+        if (memtableShards < 0)
+            fail("%s must be greater than or equal to 0 (got %s)", Option.MEMTABLE_SHARDS, memtableShards);
     }
 
     private static void fail(String format, Object... args)
@@ -191,6 +203,7 @@ public final class TableParams
             && gcGraceSeconds == p.gcGraceSeconds
             && defaultTimeToLive == p.defaultTimeToLive
             && memtableFlushPeriodInMs == p.memtableFlushPeriodInMs
+            && memtableShards == p.memtableShards
             && minIndexInterval == p.minIndexInterval
             && maxIndexInterval == p.maxIndexInterval
             && speculativeRetry.equals(p.speculativeRetry)
@@ -198,7 +211,8 @@ public final class TableParams
             && compaction.equals(p.compaction)
             && compression.equals(p.compression)
             && extensions.equals(p.extensions)
-            && cdc == p.cdc;
+            && cdc == p.cdc
+            && erasureCoding.equals(p.erasureCoding);
     }
 
     @Override
@@ -210,6 +224,7 @@ public final class TableParams
                                 gcGraceSeconds,
                                 defaultTimeToLive,
                                 memtableFlushPeriodInMs,
+                                memtableShards,
                                 minIndexInterval,
                                 maxIndexInterval,
                                 speculativeRetry,
@@ -217,7 +232,8 @@ public final class TableParams
                                 compaction,
                                 compression,
                                 extensions,
-                                cdc);
+                                cdc,
+                                erasureCoding);
     }
 
     @Override
@@ -230,6 +246,7 @@ public final class TableParams
                           .add(Option.GC_GRACE_SECONDS.toString(), gcGraceSeconds)
                           .add(Option.DEFAULT_TIME_TO_LIVE.toString(), defaultTimeToLive)
                           .add(Option.MEMTABLE_FLUSH_PERIOD_IN_MS.toString(), memtableFlushPeriodInMs)
+                          .add(Option.MEMTABLE_SHARDS.toString(), memtableShards)
                           .add(Option.MIN_INDEX_INTERVAL.toString(), minIndexInterval)
                           .add(Option.MAX_INDEX_INTERVAL.toString(), maxIndexInterval)
                           .add(Option.SPECULATIVE_RETRY.toString(), speculativeRetry)
@@ -238,6 +255,7 @@ public final class TableParams
                           .add(Option.COMPRESSION.toString(), compression)
                           .add(Option.EXTENSIONS.toString(), extensions)
                           .add(Option.CDC.toString(), cdc)
+                          .add(Option.ERASURE_CODING.toString(), erasureCoding)
                           .toString();
     }
 
@@ -249,6 +267,7 @@ public final class TableParams
         private int gcGraceSeconds = 864000; // 10 days
         private int defaultTimeToLive = 0;
         private int memtableFlushPeriodInMs = 0;
+        private int memtableShards = 0; // memtable_shards from cassandra.yaml
         private int minIndexInterval = 128;
         private int maxIndexInterval = 2048;
         private SpeculativeRetryPolicy speculativeRetry = PercentileSpeculativeRetryPolicy.NINETY_NINE_P;
@@ -257,6 +276,7 @@ public final class TableParams
         private CompressionParams compression = CompressionParams.DEFAULT;
         private ImmutableMap<String, ByteBuffer> extensions = ImmutableMap.of();
         private boolean cdc;
+        private ErasureCodingParams erasureCoding = ErasureCodingParams.NONE;
 
         public Builder()
         {
@@ -303,6 +323,12 @@ public final class TableParams
             return this;
         }
 
+        public Builder memtableShards(int val)
+        {
+            memtableShards = val;
+            return this;
+        }
+
         public Builder minIndexInterval(int val)
         {
             minIndexInterval = val;
@@ -345,6 +371,12 @@ public final class TableParams
             return this;
         }
 
+        public Builder erasureCoding(ErasureCodingParams val)
+        {
+            erasureCoding = val;
+            return this;
+        }
+
         public Builder extensions(Map<String, ByteBuffer> val)
         {
             extensions = ImmutableMap.copyOf(val);
@@ -1,108 +1,201 @@
 package org.apache.cassandra.service;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
-import java.io.Serializable;
-import org.apache.cassandra.utils.FBUtilities;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.cassandra.utils.HybridLogicalClock;
+
+/**
+ * Tag of an ABD value: a {@link HybridLogicalClock} tag, which already identifies its writer.
+ *
+ * Tags are stored as {@link #SERIALIZED_SIZE} bytes: the {@link #MAGIC} header followed by the big-endian clock tag,
+ * so that {@link #compare(ByteBuffer, ByteBuffer)} can order two cell values without deserializing them.
+ * Cells written before that format hold a Java serialized ABDTag, either an int counter plus a writer id or a clock
+ * tag; they are still read, the former ordering before any clock tag, and are rewritten in the binary format by the
+ * next write or read write-back of their key.
+ */
+public class ABDTag {
+    public static final int MAGIC = 0x41424401; // "ABD" and the format version
+    public static final int SERIALIZED_SIZE = 12;
+
+    private static final short JAVA_SERIALIZATION_MAGIC = (short) 0xACED;
+
+    private final long time;
+
+    /**
+     * The tag of a key that was never written, smaller than any tag generated by a clock.
+     */
+    public ABDTag(){
+        this(0);
+    }
+
+    public ABDTag(long time){
+        this.time = time;
+    }
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+    public long getTime(){
+        return time;
+    }
 
-public class ABDTag implements Serializable{
-    private int logicalTIme;
-    private String writerId ;
-    private static final Logger logger = LoggerFactory.getLogger(StorageProxy.class);
+    /**
+     * @return a tag generated by this node's clock, larger than this one
+     */
+    public ABDTag nextTag(){
+        return new ABDTag(HybridLogicalClock.instance().next(time));
+    }
 
-    public ABDTag(){
-        this.logicalTIme = 0;
-        this.writerId = FBUtilities.getBroadcastAddressAndPort().toString();
+    public static ByteBuffer serialize(ABDTag tag) {
+        ByteBuffer buf = ByteBuffer.allocate(SERIALIZED_SIZE);
+        buf.putInt(0, MAGIC);
+        buf.putLong(4, tag.time);
+        return buf;
     }
 
+    /**
+     * Reads a tag without modifying the position of {@code buf}.
+     */
+    public static ABDTag deserialize(ByteBuffer buf) {
+        return new ABDTag(time(buf));
+    }
 
-    public int getTime(){
-        return logicalTIme;
+    /**
+     * @return the clock tag held by a serialized tag, without modifying the position of {@code buf}
+     */
+    public static long time(ByteBuffer buf) {
+        if (isBinary(buf))
+            return buf.getLong(buf.position() + 4);
+        return LegacyTagReader.read(buf);
     }
 
-    public String getWriterId() {
-        return writerId;
+    /**
+     * Compares two serialized tags, without any allocation unless one of them is in the legacy format.
+     */
+    public static int compare(ByteBuffer left, ByteBuffer right) {
+        if (isBinary(left) && isBinary(right))
+            return Long.compare(left.getLong(left.position() + 4), right.getLong(right.position() + 4));
+        return Long.compare(time(left), time(right));
     }
 
-    public ABDTag nextTag(){
-        this.logicalTIme++;
-        return this;
+    private static boolean isBinary(ByteBuffer buf) {
+        return buf.remaining() == SERIALIZED_SIZE && buf.getInt(buf.position()) == MAGIC;
     }
 
-    public static ByteBuffer serialize(ABDTag tag) {
-        logger.info(tag.toString());
-        byte[] bytes = null;
-        ByteArrayOutputStream bos = null;
-        ObjectOutputStream oos = null;
-        try {
-            bos = new ByteArrayOutputStream();
-            oos = new ObjectOutputStream(bos);
-            oos.writeObject(tag);
-            oos.flush();
-            bytes = bos.toByteArray();
-        } catch (IOException e1){
-            logger.info("IOException");
+    public boolean isLarger(ABDTag other){
+        return time > other.time;
+    }
+
+    public String toString() {
+        return HybridLogicalClock.toString(time);
+    }
+
+    /**
+     * Reads the fields of a Java serialized ABDTag, which is a single object with no superclass and primitive or
+     * String fields, without going through ObjectInputStream (the serialized classes no longer exist).
+     */
+    private static final class LegacyTagReader {
+        private static final byte TC_NULL = 0x70;
+        private static final byte TC_REFERENCE = 0x71;
+        private static final byte TC_CLASSDESC = 0x72;
+        private static final byte TC_OBJECT = 0x73;
+        private static final byte TC_STRING = 0x74;
+        private static final byte TC_ENDBLOCKDATA = 0x78;
+
+        private final ByteBuffer buf;
+
+        private LegacyTagReader(ByteBuffer buf) {
+            this.buf = buf;
         }
 
-        try {
-            if (oos != null) {
-                oos.close();
-            }
-            if (bos != null) {
-                bos.close();
+        static long read(ByteBuffer buf) {
+            try {
+                return new LegacyTagReader(buf.duplicate()).read();
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid ABD tag of " + buf.remaining() + " bytes", e);
             }
-        } catch (IOException e1){
-            logger.info("IOException");
         }
 
-        return ByteBuffer.wrap(bytes);
-    }
+        private long read() {
+            if (buf.getShort() != JAVA_SERIALIZATION_MAGIC)
+                throw new IllegalArgumentException("Not a serialized ABD tag");
+            buf.getShort(); // stream version
+            expect(TC_OBJECT);
+            expect(TC_CLASSDESC);
+            readUTF();      // class name
+            buf.getLong();  // serialVersionUID
+            buf.get();      // flags
+
+            int fieldCount = buf.getShort();
+            char[] types = new char[fieldCount];
+            String[] names = new String[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                types[i] = (char) buf.get();
+                names[i] = readUTF();
+                if (types[i] == 'L' || types[i] == '[')
+                    readString(); // field class name
+            }
+            expect(TC_ENDBLOCKDATA);
+            expect(TC_NULL); // no serializable superclass
+
+            Long clockTime = null;
+            int counter = 0;
+            String writerId = "";
+            for (int i = 0; i < fieldCount; i++) {
+                switch (types[i]) {
+                    case 'J':
+                        long value = buf.getLong();
+                        if (names[i].equals("time"))
+                            clockTime = value;
+                        break;
+                    case 'I':
+                        int intValue = buf.getInt();
+                        if (names[i].equals("logicalTIme"))
+                            counter = intValue;
+                        break;
+                    case 'L':
+                        String stringValue = readString();
+                        if (names[i].equals("writerId") && stringValue != null)
+                            writerId = stringValue;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unexpected field type " + types[i]);
+                }
+            }
 
-    public static ABDTag deserialize(ByteBuffer buf) {
-        byte[] bytes = new byte[buf.capacity()];
-        buf.get(bytes, 0, bytes.length);
-
-        ABDTag res = null;
-        ByteArrayInputStream bis = null;
-        ObjectInputStream ois = null;
-        try {
-            bis = new ByteArrayInputStream(bytes);
-            ois = new ObjectInputStream(bis);
-            res = (ABDTag) ois.readObject();
-        } catch (ClassNotFoundException e){
-            logger.info("ClassNotFoundException");
-        } catch (IOException e1){
-            logger.info("IOException");
+            if (clockTime != null)
+                return clockTime;
+
+            // counter tags predate the clock: below any clock tag, ordered by counter then (arbitrarily) by writer
+            return ((long) (counter & Integer.MAX_VALUE) << HybridLogicalClock.NODE_ID_BITS)
+                   | (writerId.hashCode() & HybridLogicalClock.NODE_ID_MASK);
         }
 
-        try {
-            if (bis != null)
-                bis.close();
-            if (ois != null)
-                ois.close();
-        } catch (IOException e1){
-            logger.info("IOException");
+        private void expect(byte code) {
+            byte read = buf.get();
+            if (read != code)
+                throw new IllegalArgumentException(String.format("Expected 0x%x, got 0x%x", code, read));
         }
-        logger.info(res.toString());
-        return res;
-    }
 
-    public boolean isLarger(ABDTag other){
-        if(this.logicalTIme != other.getTime()){
-            return this.logicalTIme - other.getTime() > 0;
-        } else {
-            return this.writerId.compareTo(other.getWriterId()) > 0;
+        private String readString() {
+            byte code = buf.get();
+            switch (code) {
+                case TC_STRING:
+                    return readUTF();
+                case TC_REFERENCE:
+                    buf.getInt();
+                    return null;
+                case TC_NULL:
+                    return null;
+                default:
+                    throw new IllegalArgumentException(String.format("Unexpected string type 0x%x", code));
+            }
         }
-    }
 
-    public String toString() {
-        return logicalTIme + " " + writerId;
+        // the names and values of these tags are ASCII, for which modified UTF-8 is plain UTF-8
+        private String readUTF() {
+            int length = buf.getShort() & 0xFFFF;
+            byte[] bytes = new byte[length];
+            buf.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
     }
 }
@@ -116,7 +116,26 @@ public class CacheService implements CacheServiceMBean
         // as values are constant size we can use singleton weigher
         // where 48 = 40 bytes (average size of the key) + 8 bytes (size of value)
         ICache<KeyCacheKey, RowIndexEntry> kc;
-        kc = CaffeineCache.create(keyCacheInMemoryCapacity);
+        String cacheProviderClassName = DatabaseDescriptor.getKeyCacheClassName();
+        if (cacheProviderClassName == null)
+        {
+            kc = CaffeineCache.create(keyCacheInMemoryCapacity);
+        }
+        else
+        {
+            CacheProvider<KeyCacheKey, RowIndexEntry> cacheProvider;
+            try
+            {
+                Class<CacheProvider<KeyCacheKey, RowIndexEntry>> cacheProviderClass =
+                    (Class<CacheProvider<KeyCacheKey, RowIndexEntry>>) Class.forName(cacheProviderClassName);
+                cacheProvider = cacheProviderClass.newInstance();
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException("Cannot find configured key cache provider class " + cacheProviderClassName);
+            }
+            kc = cacheProvider.create();
+        }
         AutoSavingCache<KeyCacheKey, RowIndexEntry> keyCache = new AutoSavingCache<>(kc, CacheType.KEY_CACHE, new KeyCacheSerializer());
 
         int keyCacheKeysToSave = DatabaseDescriptor.getKeyCacheKeysToSave();
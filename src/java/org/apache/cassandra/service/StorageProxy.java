@@ -30,6 +30,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.cache.CacheLoader;
@@ -44,13 +45,14 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.Treas.DoubleTreasTag;
 import org.apache.cassandra.Treas.ErasureCode;
-import org.apache.cassandra.Treas.FetchTagObject;
 import org.apache.cassandra.Treas.TreasConfig;
 import org.apache.cassandra.Treas.TreasTag;
+import org.apache.cassandra.Treas.TreasTagIndex;
 import org.apache.cassandra.Treas.TreasUtil;
 import org.apache.cassandra.audit.AuditLogManager;
 import org.apache.cassandra.batchlog.Batch;
 import org.apache.cassandra.batchlog.BatchlogManager;
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.db.rows.Cell;
@@ -63,6 +65,7 @@ import org.apache.cassandra.service.reads.DigestResolver;
 import org.apache.cassandra.service.reads.ReadCallback;
 import org.apache.cassandra.service.reads.repair.ReadRepair;
 import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.schema.TableId;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.schema.Schema;
 import org.apache.cassandra.schema.SchemaConstants;
@@ -167,23 +170,12 @@ public class StorageProxy implements StorageProxyMBean
                               AbstractWriteResponseHandler<IMutation> responseHandler,
                               String localDataCenter,
                               ConsistencyLevel consistency_level,
-                              boolean flag)
+                              boolean committed)
             throws OverloadedException
             {
                 assert mutation instanceof Mutation;
                 //logger.debug("Sending for writeBack pls");
-                sendToHintedEndpointsWriteBack((Mutation) mutation, targets, responseHandler, localDataCenter, Stage.MUTATION,flag);
-            }
-
-            public void apply(IMutation mutation,
-                              Iterable<InetAddressAndPort> targets,
-                              AbstractWriteResponseHandler<IMutation> responseHandler,
-                              String localDataCenter,
-                              ConsistencyLevel consistencyLevel,
-                              FetchTagObject coordinatorInfo) throws OverloadedException
-            {
-//                logger.debug("Send to my replicas");
-                sendToHintedEndpointsTreas((Mutation) mutation, targets, responseHandler, localDataCenter, Stage.MUTATION, coordinatorInfo);
+                sendToHintedEndpointsWriteBack((Mutation) mutation, targets, responseHandler, localDataCenter, Stage.MUTATION, committed);
             }
         };
 
@@ -204,16 +196,6 @@ public class StorageProxy implements StorageProxyMBean
                 counterWriteTask(mutation, targets, responseHandler, localDataCenter).run();
             }
 
-            public void apply(IMutation mutation,
-                              Iterable<InetAddressAndPort> targets,
-                              AbstractWriteResponseHandler<IMutation> responseHandler,
-                              String localDataCenter,
-                              ConsistencyLevel consistencyLevel,
-                              FetchTagObject coordinatorInfo) throws OverloadedException
-            {
-
-            }
-
             public void apply(IMutation mutation,
                               Iterable<InetAddressAndPort> targets,
                               AbstractWriteResponseHandler<IMutation> responseHandler,
@@ -237,16 +219,6 @@ public class StorageProxy implements StorageProxyMBean
                             .execute(counterWriteTask(mutation, targets, responseHandler, localDataCenter));
             }
 
-            public void apply(IMutation mutation,
-                              Iterable<InetAddressAndPort> targets,
-                              AbstractWriteResponseHandler<IMutation> responseHandler,
-                              String localDataCenter,
-                              ConsistencyLevel consistencyLevel,
-                              FetchTagObject coordinatorInfo) throws OverloadedException
-            {
-
-            }
-
             public void apply(IMutation mutation,
                               Iterable<InetAddressAndPort> targets,
                               AbstractWriteResponseHandler<IMutation> responseHandler,
@@ -832,7 +804,7 @@ public class StorageProxy implements StorageProxyMBean
             TableMetadata tableMetadata = mutation.getPartitionUpdates().iterator().next().metadata();
             long timeStamp = FBUtilities.timestampMicros();
             boolean containsKey = maxZMap.containsKey(mutation.key().toString());
-            ABDTag nextTag =  containsKey ? maxZMap.get(mutation.key().toString()).nextTag() : new ABDTag();
+            ABDTag nextTag = (containsKey ? maxZMap.get(mutation.key().toString()) : new ABDTag()).nextTag();
 
             mutationBuilder.update(tableMetadata)
                     .timestamp(timeStamp)
@@ -1424,7 +1396,7 @@ public class StorageProxy implements StorageProxyMBean
                                                                        Runnable callback,
                                                                        WriteType writeType,
                                                                        long queryStartNanoTime,
-                                                                       boolean flag)
+                                                                       boolean committed)
     throws UnavailableException, OverloadedException
     {
         //logger.debug("Prepare to writeback 1");
@@ -1441,33 +1413,7 @@ public class StorageProxy implements StorageProxyMBean
         //logger.debug("Prepare to writeback 2");
         responseHandler.assureSufficientLiveNodes();
         //logger.debug("Prepare to writeback 3");
-        performer.apply(mutation, Iterables.concat(naturalEndpoints, pendingEndpoints), responseHandler, localDataCenter, consistency_level, flag);
-        return responseHandler;
-    }
-
-    public static AbstractWriteResponseHandler<IMutation> performWrite(IMutation mutation,
-                                                                       ConsistencyLevel consistency_level,
-                                                                       String localDataCenter,
-                                                                       WritePerformer performer,
-                                                                       Runnable callback,
-                                                                       WriteType writeType,
-                                                                       long queryStartNanoTime,
-                                                                       FetchTagObject coordinatorInfo)
-    throws UnavailableException, OverloadedException
-    {
-        String keyspaceName = mutation.getKeyspaceName();
-        AbstractReplicationStrategy rs = Keyspace.open(keyspaceName).getReplicationStrategy();
-
-        Token tk = mutation.key().getToken();
-        List<InetAddressAndPort> naturalEndpoints = StorageService.instance.getNaturalEndpoints(keyspaceName, tk);
-        Collection<InetAddressAndPort> pendingEndpoints = StorageService.instance.getTokenMetadata().pendingEndpointsFor(tk, keyspaceName);
-
-        AbstractWriteResponseHandler<IMutation> responseHandler = rs.getWriteResponseHandler(naturalEndpoints, pendingEndpoints, consistency_level, callback, writeType, queryStartNanoTime);
-
-        // exit early if we can't fulfill the CL at this time
-        responseHandler.assureSufficientLiveNodes();
-
-        performer.apply(mutation, Iterables.concat(naturalEndpoints, pendingEndpoints), responseHandler, localDataCenter, consistency_level,coordinatorInfo);
+        performer.apply(mutation, Iterables.concat(naturalEndpoints, pendingEndpoints), responseHandler, localDataCenter, consistency_level, committed);
         return responseHandler;
     }
 
@@ -1784,37 +1730,6 @@ public class StorageProxy implements StorageProxyMBean
         });
     }
 
-    private static void performLocally(Stage stage, Optional<IMutation> mutation, final Runnable runnable, final IAsyncCallbackWithFailure<?> handler, boolean exist)
-    {
-        if (exist) {
-            handler.response(null);
-            return;
-        }
-        StageManager.getStage(stage).maybeExecuteImmediately(new LocalMutationRunnable(mutation)
-        {
-            public void runMayThrow()
-            {
-                try
-                {
-                    runnable.run();
-                    handler.response(null);
-                }
-                catch (Exception ex)
-                {
-                    if (!(ex instanceof WriteTimeoutException))
-                        logger.error("Failed to apply mutation locally : ", ex);
-                    handler.onFailure(FBUtilities.getBroadcastAddressAndPort(), RequestFailureReason.UNKNOWN);
-                }
-            }
-
-            @Override
-            protected Verb verb()
-            {
-                return MessagingService.Verb.MUTATION;
-            }
-        });
-    }
-
     /**
      * Handle counter mutation on the coordinator host.
      *
@@ -2124,14 +2039,10 @@ public class StorageProxy implements StorageProxyMBean
     private static PartitionIterator fetchRows(List<SinglePartitionReadCommand> commands, ConsistencyLevel consistencyLevel, long queryStartNanoTime)
             throws UnavailableException, ReadFailureException, ReadTimeoutException
     {
-        // check if the target table has the z_value column,
-        // if it doesn't, it means this is not an ABD read operation,
-        // the original fetchRows will be used, this is a workaround
-        // to the initialization failure issue
+        // reads of erasure coded tables go through TREAS, everything else uses the original fetchRows
         SinglePartitionReadCommand incomingRead = commands.iterator().next();
-        ColumnMetadata tagMetadata = incomingRead.metadata().getColumn(ByteBufferUtil.bytes("tag1"));
         //logger.debug("Consistency_Level is" + consistencyLevel.toString());
-        boolean isTreasRead = (tagMetadata != null);
+        boolean isTreasRead = incomingRead.metadata().params.erasureCoding.isEnabled();
         if(isTreasRead)
         {
             //logger.debug("Inside TreasRead");
@@ -2231,6 +2142,7 @@ public class StorageProxy implements StorageProxyMBean
             {
                 Row r = ri.next();
 
+                // serializing the tag again writes it back in the binary format, whatever format it was read in
                 ABDTag z = ABDTag.deserialize(r.getCell(zValueMetadata).value());
 
                 int value = ByteBufferUtil.toInt(r.getCell(valueMetadata).value());
@@ -2334,6 +2246,33 @@ public class StorageProxy implements StorageProxyMBean
             this.handler = handler;
         }
 
+        /**
+         * Runs the read on the current thread if the memtables and the chunks in the chunk cache are all it needs.
+         * It is aborted on the first chunk that is not cached, and is then left to be run again on the read stage.
+         *
+         * A read that fails otherwise has already reported the failure to the handler, and is logged as the read stage
+         * would, rather than thrown at the thread coordinating the request.
+         *
+         * @return whether the read ran, false if it has to run on the read stage
+         */
+        public boolean runInline()
+        {
+            long start = System.nanoTime();
+            boolean ran;
+            try
+            {
+                ran = ChunkCache.readCachedOnly(this);
+            }
+            catch (Throwable t)
+            {
+                JVMStabilityInspector.inspectThrowable(t);
+                logger.warn("Uncaught exception on thread {}: {}", Thread.currentThread(), t.getMessage());
+                ran = true;
+            }
+            InlineReadMetrics.update(ran, System.nanoTime() - start);
+            return ran;
+        }
+
         protected void runMayThrow()
         {
             try
@@ -2366,6 +2305,11 @@ public class StorageProxy implements StorageProxyMBean
                     handler.onFailure(FBUtilities.getBroadcastAddressAndPort(), RequestFailureReason.READ_TOO_MANY_TOMBSTONES);
                     logger.error(t.getMessage());
                 }
+                else if (ChunkCache.isNotCached(t))
+                {
+                    // the read is run again on the read stage, which responds to the handler
+                    throw t;
+                }
                 else
                 {
                     handler.onFailure(FBUtilities.getBroadcastAddressAndPort(), RequestFailureReason.UNKNOWN);
@@ -3011,13 +2955,6 @@ public class StorageProxy implements StorageProxyMBean
                           String localDataCenter,
                           ConsistencyLevel consistencyLevel) throws OverloadedException;
 
-        public void apply(IMutation mutation,
-                          Iterable<InetAddressAndPort> targets,
-                          AbstractWriteResponseHandler<IMutation> responseHandler,
-                          String localDataCenter,
-                          ConsistencyLevel consistencyLevel,
-                          FetchTagObject coordinatorInfo) throws OverloadedException;
-
         public void apply(IMutation mutation,
                           Iterable<InetAddressAndPort> targets,
                           AbstractWriteResponseHandler<IMutation> responseHandler,
@@ -3412,9 +3349,6 @@ public class StorageProxy implements StorageProxyMBean
 
 
         List<AbstractWriteResponseHandler<IMutation>> responseHandlers = new ArrayList<>(mutations.size());
-//        IMutation printMutation = null;
-//        String printValue = null;
-//        String printKey = null;
 
         try
         {
@@ -3427,39 +3361,30 @@ public class StorageProxy implements StorageProxyMBean
                 else
                 {
                     WriteType wt = mutations.size() <= 1 ? WriteType.SIMPLE : WriteType.UNLOGGED_BATCH;
-                    if (mutation.getKeyspaceName().equals("ycsb")) {
+                    if (mutation.getPartitionUpdates().iterator().next().metadata().params.erasureCoding.isEnabled()) {
+                        if (HybridLogicalClock.instance().hasDuplicateNodeId())
+                            throw new InvalidRequestException(String.format("Another node has the same hybrid logical clock node id as this one, set -D%s to a distinct value on either to coordinate erasure coded writes",
+                                                                            HybridLogicalClock.NODE_ID_PROPERTY));
                         consistency_level = ConsistencyLevel.TREAS;
-                        //printMutation = mutation;
-                        //Include the physical timeStamp into TagOne;
-                        String mutationValue = "";
+                        ByteBuffer mutationValue = ByteBufferUtil.EMPTY_BYTE_BUFFER;
                         // Read from the Mutation
                         Row data = mutation.getPartitionUpdates().iterator().next().getRow(Clustering.EMPTY);
-                        try {
-                            for (Cell c : data.cells())
-                            {
-                                if (c.column().name.toString().equals("field0")) {
-                                    mutationValue = ByteBufferUtil.string(c.value());
-                                }
+                        for (Cell c : data.cells())
+                        {
+                            if (c.column().name.toString().equals("field0")) {
+                                mutationValue = c.value();
                             }
-                        } catch (Exception e) {
-                            e.printStackTrace();
                         }
 
+                        // The tag comes from the hybrid logical clock, so that tags of different coordinators compare
                         Mutation.SimpleBuilder mutationBuilder = Mutation.simpleBuilder(mutation.getKeyspaceName(), mutation.key());
                         TableMetadata tableMetadata = mutation.getPartitionUpdates().iterator().next().metadata();
                         mutationBuilder.update(tableMetadata)
-                                       .timestamp(queryStartNanoTime)
+                                       .timestamp(FBUtilities.timestampMicros())
                                        .row()
                                        .add("field0", mutationValue)
-                                       .add("tag" + 1, queryStartNanoTime);
+                                       .add(TreasConfig.TAG_ONE, HybridLogicalClock.instance().next());
                         mutation = mutationBuilder.build();
-
-//                        printValue = mutationValue;
-//                        try {
-//                            printKey = ByteBufferUtil.string(mutation.key().getKey());
-//                        } catch (Exception e) {
-//                            e.printStackTrace();
-//                        }
                     }
 
                     responseHandlers.add(performWrite(mutation, consistency_level, localDataCenter, standardWritePerformer, null, wt, queryStartNanoTime));
@@ -3518,54 +3443,9 @@ public class StorageProxy implements StorageProxyMBean
             writeMetrics.addNano(latency);
             writeMetricsMap.get(consistency_level).addNano(latency);
             updateCoordinatorWriteLatencyTableMetric(mutations, latency);
-            // Write our own log to the file
-//            if (printMutation != null && printMutation.getKeyspaceName().equals("ycsb")) {
-//                org.apache.cassandra.Treas.Logger.getLogger().writeMutateStats(latency, printKey, printValue);
-//            }
         }
     }
 
-    // Need a funcntion to only fetch maximun seen tag (Fetch Tag)
-    // get-tag
-    private static List<FetchTagObject> fetchTagTreas(List<SinglePartitionReadCommand> commands, ConsistencyLevel consistencyLevel, long queryStartNanoTime)
-    throws UnavailableException, ReadFailureException, ReadTimeoutException
-    {
-        //logger.debug("Old Configuration:" + consistencyLevel);
-        //long startTime = System.nanoTime();
-        ConsistencyLevel treasConsistencyLevel = ConsistencyLevel.TREAS;
-
-        int cmdCount = commands.size();
-
-        AbstractReadExecutor[] reads = new AbstractReadExecutor[cmdCount];
-
-        List<FetchTagObject> infoList = new ArrayList<>();
-
-        for (int i=0; i<cmdCount; i++)
-        {
-            reads[i] = AbstractReadExecutor.getReadExecutor(commands.get(i), treasConsistencyLevel, queryStartNanoTime);
-        }
-
-        for (int i=0; i<cmdCount; i++)
-        {
-            reads[i].executeAsyncTreas();
-        }
-
-
-        for (int i=0; i<cmdCount; i++)
-        {
-            // Better to be put here
-            // possibly can add a reference to awaitResponse
-            // This reference will store the information we want
-            // Or can do the main logic at the end
-            FetchTagObject fetchInfo = new FetchTagObject();
-            infoList.add(fetchInfo);
-            reads[i].awaitResponsesTreasTag(fetchInfo);
-        }
-        return infoList;
-    }
-
-
-
     //Another function to fetch the value and its maximun valid tag, which can help us to recover the data (Fetch Tag + Value)
     private static void fetchTagValueTreas(List<SinglePartitionReadCommand> commands, ConsistencyLevel consistencyLevel,
                                                            long queryStartNanoTime, List<DoubleTreasTag> doubleTreasTags)
@@ -3583,9 +3463,10 @@ public class StorageProxy implements StorageProxyMBean
                 reads[i] = AbstractReadExecutor.getReadExecutor(commands.get(i), consistencyLevel, queryStartNanoTime);
             }
 
+            // shards are collected and decoded as the responses of all the keys come in
             for (int i = 0; i < cmdCount; i++)
             {
-                reads[i].executeAsyncTreas();
+                reads[i].executeAsyncTreasValue();
             }
 
 
@@ -3627,23 +3508,20 @@ public class StorageProxy implements StorageProxyMBean
         List<DoubleTreasTag> doubleTreasTagList = new ArrayList<>();
         fetchTagValueTreas(tagValueReadList, consistencyLevel, System.nanoTime(), doubleTreasTagList);
 
-        String printValue = null;
-        String printKey = null;
+        // A value whose tag was already reported by intersect replicas is written back without holding up the read,
+        // any later read will find that tag anyway. Otherwise the read must not return before the write-back completes.
         List<IMutation> mutations = new ArrayList<>();
+        List<IMutation> backgroundMutations = new ArrayList<>();
         for (DoubleTreasTag doubleTreasTag : doubleTreasTagList) {
             Long decodeMaxTag = doubleTreasTag.getRecoverMaxTreasTag();
+            // writes this node coordinates from now on are ordered after what the read returned
+            if (doubleTreasTag.getQuorumMaxTreasTag() != null)
+                HybridLogicalClock.instance().update(doubleTreasTag.getQuorumMaxTreasTag());
             DecoratedKey key = doubleTreasTag.getKey();
             TableMetadata tableMetadata = doubleTreasTag.getTableMetadata();
             String keySpace = doubleTreasTag.getKeySpace();
-            String value = doubleTreasTag.getReadResult();
+            ByteBuffer value = doubleTreasTag.getReadResult();
 
-            try {
-                printKey = ByteBufferUtil.string(key.getKey());
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-
-            printValue = value;
             if (key != null && value != null  && doubleTreasTag.isNeedWriteBack()) {
                 //logger.debug("Write Back");
                 Mutation.SimpleBuilder mutationBuilder = Mutation.simpleBuilder(keySpace, key);
@@ -3654,11 +3532,15 @@ public class StorageProxy implements StorageProxyMBean
                                .add("tag1", decodeMaxTag)
                                .add("field0", value);
                 Mutation mutation = mutationBuilder.build();
-                mutations.add(mutation);
+                if (doubleTreasTag.isRecoverTagCommitted())
+                    backgroundMutations.add(mutation);
+                else
+                    mutations.add(mutation);
             }
         }
 
         // Do the writeBack
+        writebackTreasInBackground(backgroundMutations, consistencyLevel, System.nanoTime());
         writebackTreas(mutations, consistencyLevel, System.nanoTime());
 
         List<PartitionIterator> piList = new ArrayList<>();
@@ -3671,17 +3553,39 @@ public class StorageProxy implements StorageProxyMBean
             idx++;
         }
 
-        //Log our Read latnecy here
-//        long currentTime = System.nanoTime();
-//        long latency = currentTime - queryStartNanoTime;
-//        if (printKey != null && printValue != null) {
-//            org.apache.cassandra.Treas.Logger.getLogger().writeReadStats(latency, printKey, printValue);
-//        }
-
         return PartitionIterators.concat(piList);
     }
 
 
+    /**
+     * Sends the write-backs of values whose tag is already committed without waiting for them. Each one is counted in
+     * the TreasBackgroundWriteBacks metric of its table when sent, and in TreasBackgroundWriteBacksAcked once it has
+     * reached its quorum, the difference being the write-backs that are pending, timed out or failed.
+     */
+    private static void writebackTreasInBackground(List<IMutation> mutations, ConsistencyLevel consistency_level, long queryStartNanoTime)
+    {
+        final String localDataCenter = DatabaseDescriptor.getEndpointSnitch().getDatacenter(FBUtilities.getBroadcastAddressAndPort());
+        for (IMutation mutation : mutations)
+        {
+            TableMetrics metrics = Keyspace.open(mutation.getKeyspaceName())
+                                           .getColumnFamilyStore(mutation.getPartitionUpdates().iterator().next().metadata().id)
+                                           .metric;
+            try
+            {
+                performWrite(mutation, consistency_level, localDataCenter, standardWritePerformer,
+                             metrics.treasBackgroundWriteBacksAcked::inc, WriteType.SIMPLE, queryStartNanoTime, true);
+                metrics.treasBackgroundWriteBacks.inc();
+            }
+            catch (UnavailableException | OverloadedException e)
+            {
+                // the tag is committed already, the read doesn't depend on this write-back
+                writeMetrics.unavailables.mark();
+                writeMetricsMap.get(consistency_level).unavailables.mark();
+                Tracing.trace("Background write-back not sent: {}", e.getMessage());
+            }
+        }
+    }
+
     public static void writebackTreas(List<IMutation> mutations, ConsistencyLevel consistency_level, long queryStartNanoTime)
     throws UnavailableException, OverloadedException, WriteTimeoutException, WriteFailureException
     {
@@ -3713,7 +3617,7 @@ public class StorageProxy implements StorageProxyMBean
                 {
                     logger.debug("Prepare to Write back");
                     WriteType wt = mutations.size() <= 1 ? WriteType.SIMPLE : WriteType.UNLOGGED_BATCH;
-                    responseHandlers.add(performWrite(mutation, consistency_level, localDataCenter, standardWritePerformer, null, wt, queryStartNanoTime, true));
+                    responseHandlers.add(performWrite(mutation, consistency_level, localDataCenter, standardWritePerformer, null, wt, queryStartNanoTime, false));
                 }
             }
 
@@ -3769,10 +3673,107 @@ public class StorageProxy implements StorageProxyMBean
             writeMetrics.addNano(latency);
             writeMetricsMap.get(consistency_level).addNano(latency);
             updateCoordinatorWriteLatencyTableMetric(mutations, latency);
+            for (IMutation mutation : mutations)
+                for (TableId tableId : mutation.getTableIds())
+                    Keyspace.open(mutation.getKeyspaceName()).getColumnFamilyStore(tableId).metric.treasWriteBackLatency.update(latency, TimeUnit.NANOSECONDS);
         }
     }
 
 
+    /**
+     * The write of {@code shard} with {@code tag} a replica receives, in the {@code tag1}/{@code field1} columns.
+     */
+    private static Mutation treasReplicaMutation(Mutation mutation, Long tag, ByteBuffer shard)
+    {
+        Mutation.SimpleBuilder mutationBuilder = Mutation.simpleBuilder(mutation.getKeyspaceName(), mutation.key());
+        mutationBuilder.update(mutation.getPartitionUpdates().iterator().next().metadata())
+                       .timestamp(FBUtilities.timestampMicros())
+                       .row()
+                       .add(TreasConfig.TAG_ONE, tag)
+                       .add(TreasConfig.VAL_ONE, shard)
+                       .add("field0", "");
+        return mutationBuilder.build();
+    }
+
+    /**
+     * Hints each of {@code endpoints} with the write of its own shard of {@code mutation}, so that replaying the hint
+     * stores the same slot as the write it missed. Pending replicas, which have no shard of the key, are left to
+     * {@link org.apache.cassandra.Treas.TreasShardRebuilder}.
+     */
+    private static void submitTreasHints(Mutation mutation,
+                                         Long tag,
+                                         ByteBuffer[] shards,
+                                         List<InetAddressAndPort> shardOwners,
+                                         Collection<InetAddressAndPort> endpoints,
+                                         AbstractWriteResponseHandler<IMutation> responseHandler)
+    {
+        for (InetAddressAndPort endpoint : endpoints)
+        {
+            Mutation hinted = treasHintMutation(mutation, tag, shards, shardOwners, endpoint);
+            if (hinted != null)
+                submitHint(hinted, endpoint, responseHandler);
+        }
+    }
+
+    /**
+     * @return the write of the shard of {@code endpoint} to hint it with, or {@code null} if it stores no shard
+     */
+    @VisibleForTesting
+    public static Mutation treasHintMutation(Mutation mutation,
+                                             Long tag,
+                                             ByteBuffer[] shards,
+                                             List<InetAddressAndPort> shardOwners,
+                                             InetAddressAndPort endpoint)
+    {
+        int index = shardOwners.indexOf(endpoint);
+        return index < 0 ? null : treasReplicaMutation(mutation, tag, shards[index]);
+    }
+
+    /**
+     * @return the index of the shard {@code endpoint} stores, or -1 if it stores none. The write targets include the
+     * pending replicas of a range being moved, which own no shard of the key yet: no write is sent to them, as for a
+     * dead target, and they get their shards from {@link org.apache.cassandra.Treas.TreasShardRebuilder} once they
+     * own the range.
+     */
+    private static int treasShardIndex(List<InetAddressAndPort> shardOwners,
+                                       InetAddressAndPort endpoint,
+                                       AbstractWriteResponseHandler<IMutation> responseHandler)
+    {
+        int index = shardOwners.indexOf(endpoint);
+        if (index < 0)
+            responseHandler.expired();
+        return index;
+    }
+
+    /**
+     * Sends each of {@code replicas} the write of its own shard of {@code mutation}. Replicas of other DCs are written
+     * to directly rather than through a relay of their DC, which could only forward a single message to all of them.
+     *
+     * @param committed whether the tag is known to be committed, which the replicas are told with
+     * {@link ParameterType#TREAS_COMMITTED}
+     */
+    private static void sendTreasShards(Mutation mutation,
+                                        Long tag,
+                                        ByteBuffer[] shards,
+                                        List<InetAddressAndPort> shardOwners,
+                                        Collection<InetAddressAndPort> replicas,
+                                        AbstractWriteResponseHandler<IMutation> responseHandler,
+                                        boolean committed)
+    {
+        for (InetAddressAndPort destination : replicas)
+        {
+            int index = treasShardIndex(shardOwners, destination, responseHandler);
+            if (index < 0)
+                continue;
+
+            MessageOut<Mutation> message = treasReplicaMutation(mutation, tag, shards[index]).createMessage();
+            if (committed)
+                message = message.withParameter(ParameterType.TREAS_COMMITTED, MessagingService.ONE_BYTE);
+
+            MessagingService.instance().sendRR(message, destination, responseHandler, true);
+        }
+    }
+
     public static void sendToHintedEndpoints(final Mutation mutation,
                                              Iterable<InetAddressAndPort> targets,
                                              AbstractWriteResponseHandler<IMutation> responseHandler,
@@ -3780,7 +3781,7 @@ public class StorageProxy implements StorageProxyMBean
                                              Stage stage)
     throws OverloadedException
     {
-        if (!mutation.getKeyspaceName().equals("ycsb")) {
+        if (!mutation.getPartitionUpdates().iterator().next().metadata().params.erasureCoding.isEnabled()) {
             sendToHintedEndpointsOriginal(mutation,targets,responseHandler,localDataCenter,stage);
         }
         else {
@@ -3789,12 +3790,8 @@ public class StorageProxy implements StorageProxyMBean
 
             int targetsSize = Iterables.size(targets);
 
-            // this dc replicas:
-            Collection<InetAddressAndPort> localDc = null;
-            // extra-datacenter replicas, grouped by dc
-            Map<String, Collection<InetAddressAndPort>> dcGroups = null;
-            // only need to create a Message for non-local writes
-            MessageOut<Mutation> message = null;
+            // remote replicas, in any dc: each is sent its own shard, so writes are not relayed by another dc
+            Collection<InetAddressAndPort> replicas = null;
 
             boolean insertLocal = false;
             ArrayList<InetAddressAndPort> endpointsToHint = null;
@@ -3814,33 +3811,10 @@ public class StorageProxy implements StorageProxyMBean
                     else
                     {
                         // belongs on a different server
-                        if (message == null)
-                            message = mutation.createMessage();
-
-                        String dc = DatabaseDescriptor.getEndpointSnitch().getDatacenter(destination);
+                        if (replicas == null)
+                            replicas = new ArrayList<>(targetsSize);
 
-                        // direct writes to local DC or old Cassandra versions
-                        // (1.1 knows how to forward old-style String message IDs; updated to int in 2.0)
-                        if (localDataCenter.equals(dc))
-                        {
-                            if (localDc == null)
-                                localDc = new ArrayList<>(targetsSize);
-
-                            localDc.add(destination);
-                        }
-                        else
-                        {
-                            Collection<InetAddressAndPort> messages = (dcGroups != null) ? dcGroups.get(dc) : null;
-                            if (messages == null)
-                            {
-                                messages = new ArrayList<>(3); // most DCs will have <= 3 replicas
-                                if (dcGroups == null)
-                                    dcGroups = new HashMap<>();
-                                dcGroups.put(dc, messages);
-                            }
-
-                            messages.add(destination);
-                        }
+                        replicas.add(destination);
 
                         if (backPressureHosts == null)
                             backPressureHosts = new ArrayList<>(targetsSize);
@@ -3864,229 +3838,57 @@ public class StorageProxy implements StorageProxyMBean
 
             // Fetch the corresponding maxTag || value (string) from the incoming mutation
             Long mutationTag = null;
-            String mutateValue = "";
+            ByteBuffer mutateValue = ByteBufferUtil.EMPTY_BYTE_BUFFER;
 
             Row data = mutation.getPartitionUpdates().iterator().next().getRow(Clustering.EMPTY);
             for (Cell cell : data.cells()) {
                 if (cell.column().name.toString().equals("tag1")) {
-                    mutationTag = TreasUtil.getLong(cell.value());
+                    mutationTag = TreasUtil.getTag(cell.value());
                 } else if (cell.column().name.toString().equals("field0")) {
-                    try {
-                        mutateValue = ByteBufferUtil.string(cell.value());
-                    } catch (CharacterCodingException e) {
-                        e.printStackTrace();
-                    }
+                    mutateValue = cell.value();
                 }
             }
 
-            byte [][]encodeMatrix = new ErasureCode().encodeData(mutateValue);
-
-
-            //logger.debug("Finish EncodeData");
-            String coordinatorAdress = "";
-            if (TreasConfig.ADDRESSES[0].startsWith("local")) {
-                coordinatorAdress = FBUtilities.getJustLocalAddress().toString();
-            } else {
-                coordinatorAdress = FBUtilities.getJustLocalAddress().toString().substring(1);
-            }
+            TableMetadata erasureCodedTable = mutation.getPartitionUpdates().iterator().next().metadata();
+            ByteBuffer[] encodeMatrix = new ErasureCode(erasureCodedTable.params.erasureCoding).encode(mutateValue);
 
-            HashMap<String, Integer> addressMap = TreasConfig.getAddressMap();
-//            System.out.println("Address is" + coordinatorAdress);
-            int coordinator_index = addressMap.get(coordinatorAdress);
-            //logger.debug(encodeMatrix[coordinator_index].toString());
-            String value = TreasConfig.byteToString(encodeMatrix[coordinator_index]);
+            // Shard i belongs to the i-th natural endpoint of the key
+            List<InetAddressAndPort> shardOwners = TreasUtil.shardOwners(erasureCodedTable, mutation.key().getToken());
+            int localIndex = insertLocal ? treasShardIndex(shardOwners, FBUtilities.getBroadcastAddressAndPort(), responseHandler) : -1;
+            insertLocal = localIndex >= 0;
+            ByteBuffer value = insertLocal ? encodeMatrix[localIndex] : null;
 
             if (backPressureHosts != null)
                 MessagingService.instance().applyBackPressure(backPressureHosts, responseHandler.currentTimeout());
 
             if (endpointsToHint != null)
-                submitHint(mutation, endpointsToHint, responseHandler);
+                submitTreasHints(mutation, mutationTag, encodeMatrix, shardOwners, endpointsToHint, responseHandler);
 
-            // Send to MySelf
+            // Send to MySelf, the slot of the tag is chosen as on any other replica
             if (insertLocal)
             {
-                // Build my OWN Mutation
-                // Need to first fetch all the information locally
-                // replace the smallest tag
-
-                //Read Locally
-                SinglePartitionReadCommand localRead =
-                SinglePartitionReadCommand.fullPartitionRead(
-                mutation.getPartitionUpdates().iterator().next().metadata(),
-                FBUtilities.nowInSeconds(),
-                mutation.key()
-                );
-
-                String minTagColName = "";
-                Long minTreasTag = null;
-                String minFieldColName = "";
-
-                String maxTagColName = "";
-                Long maxTreasTag = null;
-                String oldMaxFieldName = "";
-
-
-                int hit = 1;
-                boolean exist = false;
-                try (ReadExecutionController executionController = localRead.executionController();
-                     UnfilteredPartitionIterator iterator = localRead.executeLocally(executionController))
-                {
-                    // first we have to transform it into a PartitionIterator
-                    PartitionIterator pi = UnfilteredPartitionIterators.filter(iterator, localRead.nowInSec());
-                    while(pi.hasNext())
-                    {
-                        RowIterator ri = pi.next();
-                        while(ri.hasNext())
-                        {
-                            Row r = ri.next();
-
-                            for (Cell cell : r.cells()) {
-
-                                String colName = cell.column().name.toString();
-
-                                if (colName.startsWith("tag")) {
-                                    hit++;
-                                    // If the tag already exists, ignore it.
-                                    if (TreasUtil.getLong(cell.value()).equals(mutationTag)) {
-                                        exist = true;
-                                        break;
-                                    } else {
-                                        // Fetch the tagValue
-                                        Long localTag = TreasUtil.getLong(cell.value());
-
-                                        if (minTreasTag == null) {
-                                            minTreasTag = localTag;
-                                            minTagColName = colName;
-                                            maxTagColName = colName;
-                                            maxTreasTag = localTag;
-                                        } else {
-                                            if (localTag.compareTo(maxTreasTag) > 0) {
-                                                maxTagColName = colName;
-                                                maxTreasTag = localTag;
-                                            } else if (minTreasTag.compareTo(localTag) > 0)
-                                            {
-                                                minTagColName = colName;
-                                                minTreasTag = localTag;
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-
-                if (!maxTagColName.isEmpty()) {
-                    oldMaxFieldName = "field" + maxTagColName.substring(3);
-                }
-                // Meaning the tag already exists,
-                // no need to write into the disk anymore
-                // or if the tag is smaller than what we have seen before.
-                if (exist || (minTreasTag != null && minTreasTag .compareTo(mutationTag) > 0)) {
-                    performLocally(stage, Optional.of(mutation),mutation::apply, responseHandler, true);
-                    //logger.debug("Tag Already exists, no need to write into the disk");
-                }
-                // If No data in the table
-                else if (hit <= TreasConfig.num_concurrecy) {
-                    minFieldColName = "field" + hit;
-                    minTagColName = "tag" + hit;
-                }
-                else {
-                    minFieldColName = "field" + minTagColName.substring(3);
-                }
-
-                if (!exist) {
-                    Mutation.SimpleBuilder mutationBuilder = Mutation.simpleBuilder(mutation.getKeyspaceName(), mutation.key());
-
-                    TableMetadata tableMetadata = mutation.getPartitionUpdates().iterator().next().metadata();
-                    long timeStamp = FBUtilities.timestampMicros();
-
-                    // Fetch the index from a Map
-                    // byte[] myData = erasureCode[index];
-                    if (hit == 1) {
-                        mutationBuilder.update(tableMetadata)
-                                       .timestamp(timeStamp)
-                                       .row()
-                                       .add(minTagColName, mutationTag)
-                                       .add(minFieldColName,value)
-                                       .add("field0","");
-                    }
-                    else if (mutationTag.compareTo(maxTreasTag) > 0) {
-                        mutationBuilder.update(tableMetadata)
-                                       .timestamp(timeStamp)
-                                       .row()
-                                       .add(minTagColName, mutationTag)
-                                       .add(minFieldColName,value)
-                                       .add("field0","")
-                                       .add(oldMaxFieldName, null);
-                    } else {
-                        mutationBuilder.update(tableMetadata)
-                                       .timestamp(timeStamp)
-                                       .row()
-                                       .add(minTagColName, mutationTag)
-                                       .add("field0","");
-                    }
-
-                    //logger.debug("Send to myself is: value: " + value);
-                    Mutation coordinatorMutation = mutationBuilder.build();
-                    performLocally(stage, Optional.of(mutation),coordinatorMutation::apply, responseHandler);
-                }
+                Mutation replicaMutation = treasReplicaMutation(mutation, mutationTag, value);
+                performLocally(stage, Optional.of(mutation), () -> TreasTagIndex.forTable(erasureCodedTable).apply(replicaMutation), responseHandler);
             }
 
 
             // Send to Replica
-            if (localDc != null)
-            {
-                for (InetAddressAndPort destination : localDc)
-                {
-                    // Build unique Mutation for all replicas
-
-                    String address = destination.getHostAddress(false);
-                    //logger.debug("Replica address is" + address);
-                    int replica_index = addressMap.get(address);
-
-                    //logger.debug(encodeMatrix[replica_index].toString());
-
-                    value = TreasConfig.byteToString(encodeMatrix[replica_index]);
-
-                    //logger.debug("Send to Current destination is: " + destination.toString() + "id :" + replica_index + "value: " + value);
-
-
-                    // Based on their IP address fetch the according byte array
-                    // Fetch the index from a Map
-                    // byte[] myData = erasureCode[index];
-                    Mutation.SimpleBuilder mutationBuilder = Mutation.simpleBuilder(mutation.getKeyspaceName(), mutation.key());
-                    TableMetadata tableMetadata = mutation.getPartitionUpdates().iterator().next().metadata();
-                    long timeStamp = FBUtilities.timestampMicros();
-                    mutationBuilder.update(tableMetadata)
-                                   .timestamp(timeStamp)
-                                   .row()
-                                   .add(TreasConfig.TAG_ONE, mutationTag)
-                                   .add(TreasConfig.VAL_ONE,value)
-                                   .add("field0","");
-
-                    Mutation uniqueMutation = mutationBuilder.build();
-                    MessageOut uniqueReplicaMessage = uniqueMutation.createMessage();
-
-                    MessagingService.instance().sendRR(uniqueReplicaMessage, destination, responseHandler, true);
-                }
-            }
-            if (dcGroups != null)
-            {
-                // for each datacenter, send the message to one node to relay the write to other replicas
-                for (Collection<InetAddressAndPort> dcTargets : dcGroups.values())
-                    sendMessagesToNonlocalDC(message, dcTargets, responseHandler);
-            }
+            if (replicas != null)
+                sendTreasShards(mutation, mutationTag, encodeMatrix, shardOwners, replicas, responseHandler, false);
         }
     }
+    /**
+     * Sends a TREAS read write-back. {@code committed} tells whether its tag is already committed, in which case the
+     * replicas free the slots of the smaller tags.
+     */
     public static void sendToHintedEndpointsWriteBack(final Mutation mutation,
                                              Iterable<InetAddressAndPort> targets,
                                              AbstractWriteResponseHandler<IMutation> responseHandler,
                                              String localDataCenter,
-                                             Stage stage, boolean flag)
+                                             Stage stage, boolean committed)
     throws OverloadedException
     {
-        if (!mutation.getKeyspaceName().equals("ycsb")) {
+        if (!mutation.getPartitionUpdates().iterator().next().metadata().params.erasureCoding.isEnabled()) {
             sendToHintedEndpointsOriginal(mutation,targets,responseHandler,localDataCenter,stage);
             //logger.debug("Not inside for writeBack");
         }
@@ -4095,12 +3897,8 @@ public class StorageProxy implements StorageProxyMBean
 
             int targetsSize = Iterables.size(targets);
 
-            // this dc replicas:
-            Collection<InetAddressAndPort> localDc = null;
-            // extra-datacenter replicas, grouped by dc
-            Map<String, Collection<InetAddressAndPort>> dcGroups = null;
-            // only need to create a Message for non-local writes
-            MessageOut<Mutation> message = null;
+            // remote replicas, in any dc: each is sent its own shard, so writes are not relayed by another dc
+            Collection<InetAddressAndPort> replicas = null;
 
             boolean insertLocal = false;
             ArrayList<InetAddressAndPort> endpointsToHint = null;
@@ -4120,33 +3918,10 @@ public class StorageProxy implements StorageProxyMBean
                     else
                     {
                         // belongs on a different server
-                        if (message == null)
-                            message = mutation.createMessage();
+                        if (replicas == null)
+                            replicas = new ArrayList<>(targetsSize);
 
-                        String dc = DatabaseDescriptor.getEndpointSnitch().getDatacenter(destination);
-
-                        // direct writes to local DC or old Cassandra versions
-                        // (1.1 knows how to forward old-style String message IDs; updated to int in 2.0)
-                        if (localDataCenter.equals(dc))
-                        {
-                            if (localDc == null)
-                                localDc = new ArrayList<>(targetsSize);
-
-                            localDc.add(destination);
-                        }
-                        else
-                        {
-                            Collection<InetAddressAndPort> messages = (dcGroups != null) ? dcGroups.get(dc) : null;
-                            if (messages == null)
-                            {
-                                messages = new ArrayList<>(3); // most DCs will have <= 3 replicas
-                                if (dcGroups == null)
-                                    dcGroups = new HashMap<>();
-                                dcGroups.put(dc, messages);
-                            }
-
-                            messages.add(destination);
-                        }
+                        replicas.add(destination);
 
                         if (backPressureHosts == null)
                             backPressureHosts = new ArrayList<>(targetsSize);
@@ -4170,438 +3945,45 @@ public class StorageProxy implements StorageProxyMBean
 
             // Fetch the corresponding maxTag || value (string) from the incoming mutation
             Long mutationTag = null;
-            String mutateValue = "";
+            ByteBuffer mutateValue = ByteBufferUtil.EMPTY_BYTE_BUFFER;
 
             Row data = mutation.getPartitionUpdates().iterator().next().getRow(Clustering.EMPTY);
             for (Cell cell : data.cells()) {
                 if (cell.column().name.toString().equals("tag1")) {
-                    mutationTag = TreasUtil.getLong(cell.value());
+                    mutationTag = TreasUtil.getTag(cell.value());
                 } else if (cell.column().name.toString().equals("field0")) {
-                    try {
-                        mutateValue = ByteBufferUtil.string(cell.value());
-                    } catch (CharacterCodingException e) {
-                        e.printStackTrace();
-                    }
+                    mutateValue = cell.value();
                 }
             }
 
             //logger.debug("Writeback: " + mutationTag + " " + mutateValue);
 
-            byte [][]encodeMatrix = new ErasureCode().encodeData(mutateValue);
+            TableMetadata erasureCodedTable = mutation.getPartitionUpdates().iterator().next().metadata();
+            ByteBuffer[] encodeMatrix = new ErasureCode(erasureCodedTable.params.erasureCoding).encode(mutateValue);
 
-
-            //logger.debug("Finish EncodeData");
-            String coordinatorAdress = "";
-            if (TreasConfig.ADDRESSES[0].startsWith("local")) {
-                coordinatorAdress = FBUtilities.getJustLocalAddress().toString();
-            } else {
-                coordinatorAdress = FBUtilities.getJustLocalAddress().toString().substring(1);
-            }
-
-            HashMap<String, Integer> addressMap = TreasConfig.getAddressMap();
-//            System.out.println("Address is" + coordinatorAdress);
-            int coordinator_index = addressMap.get(coordinatorAdress);
-            //logger.debug(encodeMatrix[coordinator_index].toString());
-            String value = TreasConfig.byteToString(encodeMatrix[coordinator_index]);
+            // Shard i belongs to the i-th natural endpoint of the key
+            List<InetAddressAndPort> shardOwners = TreasUtil.shardOwners(erasureCodedTable, mutation.key().getToken());
+            int localIndex = insertLocal ? treasShardIndex(shardOwners, FBUtilities.getBroadcastAddressAndPort(), responseHandler) : -1;
+            insertLocal = localIndex >= 0;
+            ByteBuffer value = insertLocal ? encodeMatrix[localIndex] : null;
 
             if (backPressureHosts != null)
                 MessagingService.instance().applyBackPressure(backPressureHosts, responseHandler.currentTimeout());
 
             if (endpointsToHint != null)
-                submitHint(mutation, endpointsToHint, responseHandler);
+                submitTreasHints(mutation, mutationTag, encodeMatrix, shardOwners, endpointsToHint, responseHandler);
 
-            // Send to MySelf
+            // Send to MySelf, the slot of the tag is chosen as on any other replica
             if (insertLocal)
             {
-                // Build my OWN Mutation
-                // Need to first fetch all the information locally
-                // replace the smallest tag
-
-                //Read Locally
-                SinglePartitionReadCommand localRead =
-                SinglePartitionReadCommand.fullPartitionRead(
-                mutation.getPartitionUpdates().iterator().next().metadata(),
-                FBUtilities.nowInSeconds(),
-                mutation.key()
-                );
-
-                String minTagColName = "";
-                Long minTreasTag = null;
-                String minFieldColName = "";
-
-                String maxTagColName = "";
-                Long maxTreasTag = null;
-                String oldMaxFieldName = "";
-
-
-                int hit = 1;
-                boolean exist = false;
-                try (ReadExecutionController executionController = localRead.executionController();
-                     UnfilteredPartitionIterator iterator = localRead.executeLocally(executionController))
-                {
-                    // first we have to transform it into a PartitionIterator
-                    PartitionIterator pi = UnfilteredPartitionIterators.filter(iterator, localRead.nowInSec());
-                    while(pi.hasNext())
-                    {
-                        RowIterator ri = pi.next();
-                        while(ri.hasNext())
-                        {
-                            Row r = ri.next();
-
-                            for (Cell cell : r.cells()) {
-
-                                String colName = cell.column().name.toString();
-
-                                if (colName.startsWith("tag")) {
-                                    hit++;
-                                    // If the tag already exists, ignore it.
-                                    if (TreasUtil.getLong(cell.value()).equals(mutationTag)) {
-                                        exist = true;
-                                        break;
-                                    } else {
-                                        // Fetch the tagValue
-                                        Long localTag = TreasUtil.getLong(cell.value());
-
-                                        if (minTreasTag == null) {
-                                            minTreasTag = localTag;
-                                            minTagColName = colName;
-                                            maxTagColName = colName;
-                                            maxTreasTag = localTag;
-                                        } else {
-                                            if (localTag.compareTo(maxTreasTag) > 0) {
-                                                maxTagColName = colName;
-                                                maxTreasTag = localTag;
-                                            } else if (minTreasTag.compareTo(localTag) > 0)
-                                            {
-                                                minTagColName = colName;
-                                                minTreasTag = localTag;
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-
-                if (!maxTagColName.isEmpty()) {
-                    oldMaxFieldName = "field" + maxTagColName.substring(3);
-                }
-                // Meaning the tag already exists,
-                // no need to write into the disk anymore
-                // or if the tag is smaller than what we have seen before.
-                if (exist || (minTreasTag != null && minTreasTag .compareTo(mutationTag) > 0)) {
-                    performLocally(stage, Optional.of(mutation),mutation::apply, responseHandler, true);
-                    //logger.debug("Tag Already exists, no need to write into the disk");
-                }
-                // If No data in the table
-                else if (hit <= TreasConfig.num_concurrecy) {
-                    minFieldColName = "field" + hit;
-                    minTagColName = "tag" + hit;
-                }
-                else {
-                    minFieldColName = "field" + minTagColName.substring(3);
-                }
-
-                if (!exist) {
-                    Mutation.SimpleBuilder mutationBuilder = Mutation.simpleBuilder(mutation.getKeyspaceName(), mutation.key());
-
-                    TableMetadata tableMetadata = mutation.getPartitionUpdates().iterator().next().metadata();
-                    long timeStamp = FBUtilities.timestampMicros();
-
-                    // Fetch the index from a Map
-                    // byte[] myData = erasureCode[index];
-                    if (hit == 1) {
-                        mutationBuilder.update(tableMetadata)
-                                       .timestamp(timeStamp)
-                                       .row()
-                                       .add(minTagColName, mutationTag)
-                                       .add(minFieldColName,value)
-                                       .add("field0","");
-                    }
-                    else if (mutationTag.compareTo(maxTreasTag) > 0) {
-                        mutationBuilder.update(tableMetadata)
-                                       .timestamp(timeStamp)
-                                       .row()
-                                       .add(minTagColName, mutationTag)
-                                       .add(minFieldColName,value)
-                                       .add("field0","")
-                                       .add(oldMaxFieldName, null);
-                    } else {
-                        mutationBuilder.update(tableMetadata)
-                                       .timestamp(timeStamp)
-                                       .row()
-                                       .add(minTagColName, mutationTag)
-                                       .add("field0","");
-                    }
-
-                    //logger.debug("Send to myself is: value: " + value);
-                    Mutation coordinatorMutation = mutationBuilder.build();
-                    performLocally(stage, Optional.of(mutation),coordinatorMutation::apply, responseHandler);
-                }
+                Mutation replicaMutation = treasReplicaMutation(mutation, mutationTag, value);
+                performLocally(stage, Optional.of(mutation), () -> TreasTagIndex.forTable(erasureCodedTable).apply(replicaMutation, committed), responseHandler);
             }
 
 
             // Send to Replica
-            if (localDc != null)
-            {
-                for (InetAddressAndPort destination : localDc)
-                {
-                    // Build unique Mutation for all replicas
-
-                    String address = destination.getHostAddress(false);
-                    //logger.debug("Replica address is" + address);
-                    int replica_index = addressMap.get(address);
-
-                    //logger.debug(encodeMatrix[replica_index].toString());
-
-                    value = TreasConfig.byteToString(encodeMatrix[replica_index]);
-
-                    //logger.debug("Send to Current destination is: " + destination.toString() + "id :" + replica_index + "value: " + value);
-
-
-                    // Based on their IP address fetch the according byte array
-                    // Fetch the index from a Map
-                    // byte[] myData = erasureCode[index];
-                    Mutation.SimpleBuilder mutationBuilder = Mutation.simpleBuilder(mutation.getKeyspaceName(), mutation.key());
-                    TableMetadata tableMetadata = mutation.getPartitionUpdates().iterator().next().metadata();
-                    long timeStamp = FBUtilities.timestampMicros();
-                    mutationBuilder.update(tableMetadata)
-                                   .timestamp(timeStamp)
-                                   .row()
-                                   .add(TreasConfig.TAG_ONE, mutationTag)
-                                   .add(TreasConfig.VAL_ONE,value)
-                                   .add("field0","");
-
-                    Mutation uniqueMutation = mutationBuilder.build();
-                    MessageOut uniqueReplicaMessage = uniqueMutation.createMessage();
-
-                    MessagingService.instance().sendRR(uniqueReplicaMessage, destination, responseHandler, true);
-                }
-            }
-            if (dcGroups != null)
-            {
-                // for each datacenter, send the message to one node to relay the write to other replicas
-                for (Collection<InetAddressAndPort> dcTargets : dcGroups.values())
-                    sendMessagesToNonlocalDC(message, dcTargets, responseHandler);
-            }
-        }
-    }
-    public static void sendToHintedEndpointsTreas(final Mutation mutation,
-                                                  Iterable<InetAddressAndPort> targets,
-                                                  AbstractWriteResponseHandler<IMutation> responseHandler,
-                                                  String localDataCenter,
-                                                  Stage stage, FetchTagObject coordinatorInfo)
-    throws OverloadedException
-    {
-        //logger.debug("Inside sendTohintedEndPoint");
-//            long sendStartTime = System.nanoTime();
-
-        int targetsSize = Iterables.size(targets);
-
-        // this dc replicas:
-        Collection<InetAddressAndPort> localDc = null;
-        // extra-datacenter replicas, grouped by dc
-        Map<String, Collection<InetAddressAndPort>> dcGroups = null;
-        // only need to create a Message for non-local writes
-        MessageOut<Mutation> message = null;
-
-        boolean insertLocal = false;
-        ArrayList<InetAddressAndPort> endpointsToHint = null;
-
-        List<InetAddressAndPort> backPressureHosts = null;
-
-        for (InetAddressAndPort destination : targets)
-        {
-            checkHintOverload(destination);
-
-            if (FailureDetector.instance.isAlive(destination))
-            {
-                if (canDoLocalRequest(destination))
-                {
-                    insertLocal = true;
-                }
-                else
-                {
-                    // belongs on a different server
-                    if (message == null)
-                        message = mutation.createMessage();
-
-                    String dc = DatabaseDescriptor.getEndpointSnitch().getDatacenter(destination);
-
-                    // direct writes to local DC or old Cassandra versions
-                    // (1.1 knows how to forward old-style String message IDs; updated to int in 2.0)
-                    if (localDataCenter.equals(dc))
-                    {
-                        if (localDc == null)
-                            localDc = new ArrayList<>(targetsSize);
-
-                        localDc.add(destination);
-                    }
-                    else
-                    {
-                        Collection<InetAddressAndPort> messages = (dcGroups != null) ? dcGroups.get(dc) : null;
-                        if (messages == null)
-                        {
-                            messages = new ArrayList<>(3); // most DCs will have <= 3 replicas
-                            if (dcGroups == null)
-                                dcGroups = new HashMap<>();
-                            dcGroups.put(dc, messages);
-                        }
-
-                        messages.add(destination);
-                    }
-
-                    if (backPressureHosts == null)
-                        backPressureHosts = new ArrayList<>(targetsSize);
-
-                    backPressureHosts.add(destination);
-                }
-            }
-            else
-            {
-                //Immediately mark the response as expired since the request will not be sent
-                responseHandler.expired();
-                if (shouldHint(destination))
-                {
-                    if (endpointsToHint == null)
-                        endpointsToHint = new ArrayList<>(targetsSize);
-
-                    endpointsToHint.add(destination);
-                }
-            }
-        }
-
-        // Fetch the corresponding maxTag || value (string) from the incoming mutation
-        Long mutationTag = null;
-        String mutateValue = "";
-
-        Row data = mutation.getPartitionUpdates().iterator().next().getRow(Clustering.EMPTY);
-        for (Cell cell : data.cells()) {
-            if (cell.column().name.toString().equals("tag1")) {
-                mutationTag = TreasUtil.getLong(cell.value());
-            } else if (cell.column().name.toString().equals("field0")) {
-                try {
-                    //long startTime = System.nanoTime();
-                    mutateValue = ByteBufferUtil.string(cell.value());
-                    //logger.debug("Mutate deserialize " + (System.nanoTime() - startTime));
-                } catch (CharacterCodingException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        //logger.debug("The value is " + mutateValue);
-
-//        long startTime = System.nanoTime();
-        byte [][]encodeMatrix = new ErasureCode().encodeData(mutateValue);
-        //logger.debug("Encode takes time" + (System.nanoTime() - startTime));
-
-        String coordinatorAdress = FBUtilities.getJustLocalAddress().toString().substring(1);
-
-        HashMap<String, Integer> addressMap = TreasConfig.getAddressMap();
-
-        int coordinator_index = addressMap.get(coordinatorAdress);
-
-        String value = TreasConfig.byteToString(encodeMatrix[coordinator_index]);
-
-
-        if (backPressureHosts != null)
-            MessagingService.instance().applyBackPressure(backPressureHosts, responseHandler.currentTimeout());
-
-        if (endpointsToHint != null)
-            submitHint(mutation, endpointsToHint, responseHandler);
-
-        // Send to MySelf
-        if (insertLocal)
-        {
-            // Build my OWN Mutation
-            // Need to first fetch all the information locally
-            // replace the smallest tag
-
-            int hit = coordinatorInfo.hit;
-            String minTagColName = coordinatorInfo.minTagColName;
-            Long minTreasTag = coordinatorInfo.minCoodinatorTag;
-            String minFieldColName = coordinatorInfo.minFieldColName;
-
-            Long maxTreasTag = coordinatorInfo.maxCoordinatorTag;
-            String oldMaxFieldName = coordinatorInfo.maxFieldColName;
-
-            // Meaning the tag already exists,
-            // no need to write into the disk anymore
-            // or if the tag is smaller than what we have seen before.
-            if (minTreasTag != null && minTreasTag.compareTo(mutationTag) > 0) {
-                performLocally(stage, Optional.of(mutation),mutation::apply, responseHandler, true);
-                //logger.debug("Tag Already exists, no need to write into the disk");
-            } else {
-                Mutation.SimpleBuilder mutationBuilder = Mutation.simpleBuilder(mutation.getKeyspaceName(), mutation.key());
-
-                TableMetadata tableMetadata = mutation.getPartitionUpdates().iterator().next().metadata();
-                long timeStamp = FBUtilities.timestampMicros();
-
-                // Fetch the index from a Map
-                // byte[] myData = erasureCode[index];
-                if (hit == 1) {
-                    mutationBuilder.update(tableMetadata)
-                                   .timestamp(timeStamp)
-                                   .row()
-                                   .add(minTagColName, mutationTag)
-                                   .add(minFieldColName,value)
-                                   .add("field0","");
-                }
-                else if (mutationTag.compareTo(maxTreasTag) > 0) {
-//                logger.debug("Always larger");
-                    mutationBuilder.update(tableMetadata)
-                                   .timestamp(timeStamp)
-                                   .row()
-                                   .add(minTagColName, mutationTag)
-                                   .add(minFieldColName,value)
-                                   .add("field0","")
-                                   .add(oldMaxFieldName, null);
-                } else {
-                    mutationBuilder.update(tableMetadata)
-                                   .timestamp(timeStamp)
-                                   .row()
-                                   .add(minTagColName, mutationTag)
-                                   .add("field0","");
-                }
-                Mutation coordinatorMutation = mutationBuilder.build();
-                performLocally(stage, Optional.of(mutation),coordinatorMutation::apply, responseHandler);
-            }
-        }
-
-        // Send to Replica
-        if (localDc != null)
-        {
-            for (InetAddressAndPort destination : localDc)
-            {
-
-                String address = destination.getHostAddress(false);
-
-                int replica_index = addressMap.get(address);
-                value = TreasConfig.byteToString(encodeMatrix[replica_index]);
-
-                Mutation.SimpleBuilder mutationBuilder = Mutation.simpleBuilder(mutation.getKeyspaceName(), mutation.key());
-                TableMetadata tableMetadata = mutation.getPartitionUpdates().iterator().next().metadata();
-                long timeStamp = FBUtilities.timestampMicros();
-                mutationBuilder.update(tableMetadata)
-                               .timestamp(timeStamp)
-                               .row()
-                               .add(TreasConfig.TAG_ONE, mutationTag)
-                               .add(TreasConfig.VAL_ONE,value)
-                               .add("field0","");
-
-                Mutation uniqueMutation = mutationBuilder.build();
-                MessageOut uniqueReplicaMessage = uniqueMutation.createMessage();
-
-                MessagingService.instance().sendRR(uniqueReplicaMessage, destination, responseHandler, true);
-            }
-        }
-        if (dcGroups != null)
-        {
-            // for each datacenter, send the message to one node to relay the write to other replicas
-            for (Collection<InetAddressAndPort> dcTargets : dcGroups.values())
-                sendMessagesToNonlocalDC(message, dcTargets, responseHandler);
+            if (replicas != null)
+                sendTreasShards(mutation, mutationTag, encodeMatrix, shardOwners, replicas, responseHandler, committed);
         }
     }
 
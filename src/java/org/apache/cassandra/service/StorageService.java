@@ -51,8 +51,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.Treas.ErasureCode;
-import org.apache.cassandra.Treas.TreasConfig;
+import org.apache.cassandra.Treas.TreasShardRebuilder;
 import org.apache.cassandra.audit.AuditLogManager;
 import org.apache.cassandra.audit.AuditLogOptions;
 import org.apache.cassandra.auth.AuthKeyspace;
@@ -711,10 +710,6 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
         }
 
         initialized = true;
-        logger.debug("Initiate our Erasure Coding");
-        logger.debug(System.getProperty("java.library.path"));
-        //ErasureCode.getReedSolomon();
-        TreasConfig.initiateAddressMap();
     }
 
     private void loadRingState()
@@ -835,6 +830,7 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
             appStates.put(ApplicationState.NATIVE_ADDRESS_AND_PORT, valueFactory.nativeaddressAndPort(FBUtilities.getBroadcastNativeAddressAndPort()));
             appStates.put(ApplicationState.RPC_ADDRESS, valueFactory.rpcaddress(FBUtilities.getJustBroadcastNativeAddress()));
             appStates.put(ApplicationState.RELEASE_VERSION, valueFactory.releaseVersion());
+            appStates.put(ApplicationState.HLC_NODE_ID, valueFactory.hlcNodeId(HybridLogicalClock.instance().nodeId()));
 
             // load the persisted ring state. This used to be done earlier in the init process,
             // but now we always perform a shadow round when preparing to join and we have to
@@ -1098,6 +1094,30 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
 
         assert tokenMetadata.sortedTokens().size() > 0;
         doAuthSetup();
+
+        if (didBootstrap)
+            rebuildErasureCodedShards();
+    }
+
+    /**
+     * Bootstrap doesn't stream the erasure coded tables, see {@link RangeStreamer#skipErasureCodedTables()}: the
+     * shards this node owns are only known once its tokens are normal, so they are regenerated from the other
+     * replicas now. A failure leaves the node in the ring, with the keyspace to be rebuilt by the operator.
+     */
+    private void rebuildErasureCodedShards()
+    {
+        for (String keyspaceName : Schema.instance.getNonLocalStrategyKeyspaces())
+        {
+            try
+            {
+                TreasShardRebuilder.rebuild(keyspaceName, getLocalRanges(keyspaceName));
+            }
+            catch (RuntimeException e)
+            {
+                logger.warn("Could not regenerate the erasure coded shards of keyspace {} after bootstrap, " +
+                            "run nodetool rebuild on it once the other replicas are up", keyspaceName, e);
+            }
+        }
     }
 
     private void doAuthSetup()
@@ -1217,15 +1237,22 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
             streamer.addSourceFilter(new RangeStreamer.FailureDetectorSourceFilter(FailureDetector.instance));
             if (sourceDc != null)
                 streamer.addSourceFilter(new RangeStreamer.SingleDatacenterFilter(DatabaseDescriptor.getEndpointSnitch(), sourceDc));
+            streamer.skipErasureCodedTables();
+            // the ranges whose erasure coded shards are regenerated once the other tables are streamed
+            Map<String, Collection<Range<Token>>> rebuiltRanges = new LinkedHashMap<>();
 
             if (keyspace == null)
             {
                 for (String keyspaceName : Schema.instance.getNonLocalStrategyKeyspaces())
+                {
                     streamer.addRanges(keyspaceName, getLocalRanges(keyspaceName));
+                    rebuiltRanges.put(keyspaceName, getLocalRanges(keyspaceName));
+                }
             }
             else if (tokens == null)
             {
                 streamer.addRanges(keyspace, getLocalRanges(keyspace));
+                rebuiltRanges.put(keyspace, getLocalRanges(keyspace));
             }
             else
             {
@@ -1289,11 +1316,15 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
                 }
 
                 streamer.addRanges(keyspace, ranges);
+                rebuiltRanges.put(keyspace, ranges);
             }
 
             StreamResultFuture resultFuture = streamer.fetchAsync();
             // wait for result
             resultFuture.get();
+
+            for (Map.Entry<String, Collection<Range<Token>>> entry : rebuiltRanges.entrySet())
+                TreasShardRebuilder.rebuild(entry.getKey(), entry.getValue());
         }
         catch (InterruptedException e)
         {
@@ -2149,6 +2180,9 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
                     case NET_VERSION:
                         updateNetVersion(endpoint, value);
                         break;
+                    case HLC_NODE_ID:
+                        HybridLogicalClock.instance().onPeerNodeId(endpoint, Integer.parseInt(value.value));
+                        break;
                 }
             }
         }
@@ -2915,6 +2949,7 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
     public void onRemove(InetAddressAndPort endpoint)
     {
         tokenMetadata.removeEndpoint(endpoint);
+        HybridLogicalClock.instance().onPeerRemoved(endpoint);
         PendingRangeCalculatorService.instance.update();
     }
 
@@ -26,10 +26,8 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
 
 import org.apache.cassandra.Treas.DoubleTreasTag;
-import org.apache.cassandra.Treas.FetchTagObject;
 import org.apache.cassandra.Treas.TreasConfig;
 import org.apache.cassandra.Treas.TreasTag;
-import org.apache.cassandra.Treas.TreasUtil;
 import org.apache.cassandra.cql3.ColumnIdentifier;
 import org.apache.cassandra.db.IMutation;
 import org.apache.cassandra.db.Mutation;
@@ -38,8 +36,10 @@ import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.db.DecoratedKey;
@@ -47,16 +47,11 @@ import org.apache.cassandra.db.ReadCommand;
 import org.apache.cassandra.db.ReadResponse;
 import org.apache.cassandra.db.SinglePartitionReadCommand;
 import org.apache.cassandra.db.Keyspace;
-import org.apache.cassandra.db.partitions.PartitionIterator;
-import org.apache.cassandra.db.partitions.UnfilteredPartitionIterators;
-import org.apache.cassandra.db.rows.Cell;
 import org.apache.cassandra.db.rows.Row;
-import org.apache.cassandra.db.rows.RowIterator;
 import org.apache.cassandra.exceptions.ReadFailureException;
 import org.apache.cassandra.exceptions.ReadTimeoutException;
 import org.apache.cassandra.exceptions.UnavailableException;
 import org.apache.cassandra.locator.InetAddressAndPort;
-import org.apache.cassandra.net.MessageIn;
 import org.apache.cassandra.net.MessageOut;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.schema.ColumnMetadata;
@@ -69,7 +64,6 @@ import org.apache.cassandra.tracing.TraceState;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.transport.Message;
 import org.apache.cassandra.utils.ByteBufferUtil;
-import org.apache.cassandra.utils.FBUtilities;
 
 /**
  * Sends a read request to the replicas needed to satisfy a given ConsistencyLevel.
@@ -141,6 +135,7 @@ public abstract class AbstractReadExecutor
     private void makeRequests(ReadCommand readCommand, Iterable<InetAddressAndPort> endpoints)
     {
         boolean hasLocalEndpoint = false;
+        boolean hasRemoteEndpoint = false;
 
         for (InetAddressAndPort endpoint : endpoints)
         {
@@ -150,6 +145,7 @@ public abstract class AbstractReadExecutor
                 continue;
             }
 
+            hasRemoteEndpoint = true;
             if (traceState != null)
                 traceState.trace("reading {} from {}", readCommand.isDigestQuery() ? "digest" : "data", endpoint);
             logger.trace("reading {} from {}", readCommand.isDigestQuery() ? "digest" : "data", endpoint);
@@ -161,10 +157,27 @@ public abstract class AbstractReadExecutor
         if (hasLocalEndpoint)
         {
             logger.trace("reading {} locally", readCommand.isDigestQuery() ? "digest" : "data");
-            StageManager.getStage(Stage.READ).maybeExecuteImmediately(new LocalReadRunnable(command, handler));
+            LocalReadRunnable localRead = new LocalReadRunnable(command, handler);
+            if (!canReadInline(hasRemoteEndpoint) || !localRead.runInline())
+                StageManager.getStage(Stage.READ).maybeExecuteImmediately(localRead);
         }
     }
 
+    /**
+     * Whether the local read can be tried on the current thread before going to the read stage: it must be the only
+     * read of a single partition query at consistency ONE or LOCAL_ONE, so that nothing waits for a remote replica
+     * while it runs, and all the sstable chunks must go through the chunk cache, so that a read needing the disk can
+     * be told apart, see {@link LocalReadRunnable#runInline()}.
+     */
+    private boolean canReadInline(boolean hasRemoteEndpoint)
+    {
+        return !hasRemoteEndpoint
+               && command instanceof SinglePartitionReadCommand
+               && (consistency == ConsistencyLevel.ONE || consistency == ConsistencyLevel.LOCAL_ONE)
+               && DatabaseDescriptor.getInlineCachedLocalReads()
+               && ChunkCache.canReadCachedOnly();
+    }
+
     /**
      * Perform additional requests if it looks like the original will time out.  May block while it waits
      * to see if the original requests are answered first.
@@ -190,6 +203,16 @@ public abstract class AbstractReadExecutor
         makeDataRequests(targetReplicas);
     }
 
+    /**
+     * Same as {@link #executeAsyncTreas()}, but the tags and shards of the responses are collected as they arrive so
+     * that {@link #awaitTreasResponses(DoubleTreasTag)} finds the value already decoded most of the time.
+     */
+    public void executeAsyncTreasValue()
+    {
+        digestResolver.collectTreasShards();
+        makeDataRequests(targetReplicas);
+    }
+
     /**
      * @return an executor appropriate for the configured speculative read policy
      */
@@ -499,123 +522,6 @@ public abstract class AbstractReadExecutor
         }
     }
 
-    public void awaitResponsesTreasTag(FetchTagObject coordinatorInfo) throws ReadTimeoutException
-    {
-        try
-        {
-            handler.awaitResults();
-        }
-        catch (ReadTimeoutException e)
-        {
-            try
-            {
-                onReadTimeout();
-            }
-            finally
-            {
-                throw e;
-            }
-        }
-
-        Long localMaxTreasTag = null;
-
-        // Each readResponse represents a response from a Replica
-        for (MessageIn<ReadResponse> message : digestResolver.getMessages())
-        {
-
-            ReadResponse response = message.payload;
-
-            // check if the response is indeed a data response
-            // we shouldn't get a digest response here
-            assert response.isDigestResponse() == false;
-
-            // get the partition iterator corresponding to the
-            // current data response
-            PartitionIterator pi = UnfilteredPartitionIterators.filter(response.makeIterator(command), command.nowInSec());
-
-            String minTagColName = null;
-            String maxFieldColName = null;
-            Long maxCoordinatorTag = null;
-            Long minCoodinatorTag = null;
-            String minFieldColName = null;
-
-            boolean myMessage = false;
-            int hit = 1;
-
-            //minTagColName == null => first time see this data
-
-            if (message.from.equals(FBUtilities.getLocalAddressAndPort())) {
-//                logger.debug("My message");
-                myMessage = true;
-            }
-
-            while (pi.hasNext())
-            {
-                // pi.next() returns a RowIterator
-                RowIterator ri = pi.next();
-                while (ri.hasNext())
-                {
-                    Long curTag = null;
-                    for (Cell c : ri.next().cells())
-                    {
-                        //TODO: Inside here we can fetch the corresponding tag the coordinator should insert
-                        // if it is a timeStamp field, we need to check it
-                        String colName = c.column().name.toString();
-                        if (colName.startsWith("tag"))
-                        {
-                            curTag = TreasUtil.getLong(c.value());
-                            if (myMessage) {
-//                                logger.debug(curTag.toString());
-                                hit++;
-                                if (minCoodinatorTag == null) {
-                                    minCoodinatorTag = curTag;
-                                    minTagColName = colName;
-                                    maxCoordinatorTag = curTag;
-                                    maxFieldColName = "field" + colName.substring(3);
-                                    minFieldColName = "field" + colName.substring(3);
-                                }
-                                else if (minCoodinatorTag.compareTo(curTag) > 0) {
-                                    minCoodinatorTag = curTag;
-                                    minTagColName = colName;
-                                    minFieldColName = "field" + colName.substring(3);
-                                }
-                                else if (curTag.compareTo(maxCoordinatorTag) > 0) {
-                                    maxCoordinatorTag = curTag;
-                                    maxFieldColName = "field" + colName.substring(3);
-                                }
-                            }
-                            if (curTag.compareTo(localMaxTreasTag) > 0)
-                            {
-                                localMaxTreasTag = curTag;
-                            }
-                        }
-                    }
-                }
-            }
-
-            if (myMessage) {
-                if (hit <= TreasConfig.num_concurrecy) {
-                    coordinatorInfo.minTagColName = "tag" + hit;
-                    coordinatorInfo.minFieldColName = "field" + hit;
-                } else {
-                    coordinatorInfo.minCoodinatorTag = minCoodinatorTag;
-                    coordinatorInfo.minTagColName = minTagColName;
-                    coordinatorInfo.minFieldColName = minFieldColName;
-                }
-                coordinatorInfo.maxCoordinatorTag = maxCoordinatorTag;
-                coordinatorInfo.maxFieldColName = maxFieldColName;
-                coordinatorInfo.hit = hit;
-            }
-
-
-        }
-
-        coordinatorInfo.maxTagAll = localMaxTreasTag;
-        setResult(digestResolver.getReadResponse());
-    }
-
-
-
     public void awaitReadRepair() throws ReadTimeoutException
     {
         try
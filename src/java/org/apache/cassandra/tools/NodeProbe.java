@@ -1560,6 +1560,23 @@ public class NodeProbe implements AutoCloseable
         }
     }
 
+    /**
+     * Retrieve the number of bytes of the internode messages sent by the node since it started, before compression
+     */
+    public long getInternodeBytesSent()
+    {
+        try
+        {
+            return JMX.newMBeanProxy(mbeanServerConn,
+                    new ObjectName("org.apache.cassandra.metrics:type=Connection,name=TotalBytesSent"),
+                    CassandraMetricsRegistry.JmxMeterMBean.class).getCount();
+        }
+        catch (MalformedObjectNameException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
     public double[] metricPercentilesAsArray(CassandraMetricsRegistry.JmxHistogramMBean metric)
     {
         return new double[]{ metric.get50thPercentile(),
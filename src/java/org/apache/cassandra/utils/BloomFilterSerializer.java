@@ -25,24 +25,41 @@ import org.apache.cassandra.io.util.DataOutputPlus;
 import org.apache.cassandra.utils.obs.IBitSet;
 import org.apache.cassandra.utils.obs.OffHeapBitSet;
 
+/**
+ * Serializes filters as their hash count followed by their bitset. {@link SplitBlockBloomFilter}s, which sstables can
+ * hold since version "nd", write {@link #SPLIT_BLOCK} instead of a hash count.
+ */
 public final class BloomFilterSerializer
 {
+    private static final int SPLIT_BLOCK = -1;
+
     private BloomFilterSerializer()
     {
     }
 
-    public static void serialize(BloomFilter bf, DataOutputPlus out) throws IOException
+    public static void serialize(IFilter filter, DataOutputPlus out) throws IOException
     {
-        out.writeInt(bf.hashCount);
-        bf.bitset.serialize(out);
+        if (filter instanceof SplitBlockBloomFilter)
+        {
+            out.writeInt(SPLIT_BLOCK);
+            ((SplitBlockBloomFilter) filter).bitset.serialize(out);
+        }
+        else
+        {
+            BloomFilter bf = (BloomFilter) filter;
+            out.writeInt(bf.hashCount);
+            bf.bitset.serialize(out);
+        }
     }
 
     @SuppressWarnings("resource")
-    public static BloomFilter deserialize(DataInputStream in, boolean oldBfFormat) throws IOException
+    public static IFilter deserialize(DataInputStream in, boolean oldBfFormat) throws IOException
     {
         int hashes = in.readInt();
-        IBitSet bs = OffHeapBitSet.deserialize(in, oldBfFormat);
+        if (hashes == SPLIT_BLOCK)
+            return new SplitBlockBloomFilter(OffHeapBitSet.deserialize(in, false));
 
+        IBitSet bs = OffHeapBitSet.deserialize(in, oldBfFormat);
         return new BloomFilter(hashes, bs);
     }
 
@@ -59,4 +76,9 @@ public final class BloomFilterSerializer
         size += bf.bitset.serializedSize();
         return size;
     }
+
+    public static long serializedSize(SplitBlockBloomFilter bf)
+    {
+        return TypeSizes.sizeof(SPLIT_BLOCK) + bf.bitset.serializedSize();
+    }
 }
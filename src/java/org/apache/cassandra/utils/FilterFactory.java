@@ -54,10 +54,24 @@ public class FilterFactory
      *         filter.
      */
     public static IFilter getFilter(long numElements, double maxFalsePosProbability)
+    {
+        return getFilter(numElements, maxFalsePosProbability, false);
+    }
+
+    /**
+     * @param splitBlock whether to return a {@link SplitBlockBloomFilter}, which checks a key with a single cache
+     *                   miss, rather than a {@link BloomFilter}
+     * @return The smallest filter that can provide the given false positive probability rate for the given number of
+     *         elements.
+     */
+    @SuppressWarnings("resource")
+    public static IFilter getFilter(long numElements, double maxFalsePosProbability, boolean splitBlock)
     {
         assert maxFalsePosProbability <= 1.0 : "Invalid probability";
         if (maxFalsePosProbability == 1.0)
             return new AlwaysPresentFilter();
+        if (splitBlock)
+            return new SplitBlockBloomFilter(new OffHeapBitSet(SplitBlockBloomFilter.numBits(numElements, maxFalsePosProbability)));
         int bucketsPerElement = BloomCalculations.maxBucketsPerElement(numElements);
         BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement, maxFalsePosProbability);
         return createFilter(spec.K, numElements, spec.bucketsPerElement);
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.locator.InetAddressAndPort;
+
+/**
+ * Hybrid logical clock generating the tags of TREAS and ABD writes.
+ *
+ * A tag is a non negative long made of, from the most significant bits down:
+ * <ul>
+ *   <li>43 bits of milliseconds since {@link #EPOCH_MILLIS} (about 278 years),</li>
+ *   <li>8 bits of logical counter, for the tags generated within the same millisecond or after a tag from the
+ *   future has been observed; when it overflows it carries over into the milliseconds,</li>
+ *   <li>12 bits identifying the coordinator, so that tags of different coordinators are never equal.</li>
+ * </ul>
+ * Tags of different coordinators are therefore ordered by wall clock first, and comparing two of them is a single
+ * long comparison. Tags are generated without locking, and each coordinator's tags strictly increase, including
+ * across the tags it {@link #update(long) observed} from others.
+ *
+ * Every node gossips its coordinator id, and a node that finds a peer with the same id refuses to generate tags until
+ * either of them is given another one with {@link #NODE_ID_PROPERTY}, as their tags could otherwise be equal.
+ */
+public final class HybridLogicalClock
+{
+    private static final Logger logger = LoggerFactory.getLogger(HybridLogicalClock.class);
+
+    /** 2020-01-01T00:00:00Z */
+    public static final long EPOCH_MILLIS = 1577836800000L;
+
+    public static final int NODE_ID_BITS = 12;
+    public static final int LOGICAL_BITS = 8;
+    public static final int PHYSICAL_SHIFT = NODE_ID_BITS + LOGICAL_BITS;
+
+    public static final long NODE_ID_MASK = (1L << NODE_ID_BITS) - 1;
+    private static final long LOGICAL_UNIT = 1L << NODE_ID_BITS;
+
+    /**
+     * Overrides the coordinator id of this node, which otherwise comes from the low bits of its broadcast address.
+     */
+    public static final String NODE_ID_PROPERTY = "cassandra.hlc_node_id";
+
+    private final long nodeId;
+    private final TimeSource timeSource;
+
+    // the last tag generated or observed, without its coordinator bits
+    private final AtomicLong last = new AtomicLong();
+
+    // the peers gossiping the same coordinator id as this node
+    private final Set<InetAddressAndPort> duplicates = ConcurrentHashMap.newKeySet();
+
+    @VisibleForTesting
+    public HybridLogicalClock(int nodeId, TimeSource timeSource)
+    {
+        if (nodeId < 0 || nodeId > NODE_ID_MASK)
+            throw new IllegalArgumentException(String.format("Node id must be between 0 and %d (got %d)", NODE_ID_MASK, nodeId));
+
+        this.nodeId = nodeId;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * @return the clock of this node, created on first use since it needs the broadcast address
+     */
+    public static HybridLogicalClock instance()
+    {
+        return Holder.instance;
+    }
+
+    public int nodeId()
+    {
+        return (int) nodeId;
+    }
+
+    /**
+     * Records the coordinator id gossiped by {@code peer}.
+     */
+    public void onPeerNodeId(InetAddressAndPort peer, int peerNodeId)
+    {
+        if (peerNodeId != nodeId)
+        {
+            duplicates.remove(peer);
+        }
+        else if (duplicates.add(peer))
+        {
+            logger.error("{} uses the same hybrid logical clock node id as this node ({}), so that the tags of the two " +
+                         "may be equal; this node will not coordinate erasure coded writes until one of them is " +
+                         "restarted with a distinct -D{}", peer, nodeId, NODE_ID_PROPERTY);
+        }
+    }
+
+    /**
+     * Forgets {@code peer}, which left the cluster.
+     */
+    public void onPeerRemoved(InetAddressAndPort peer)
+    {
+        duplicates.remove(peer);
+    }
+
+    /**
+     * @return whether a peer gossips the same coordinator id as this node, in which case their tags could be equal
+     */
+    public boolean hasDuplicateNodeId()
+    {
+        return !duplicates.isEmpty();
+    }
+
+    /**
+     * @return a tag larger than any tag previously returned or observed by this clock
+     */
+    public long next()
+    {
+        long physical = Math.max(0, timeSource.currentTimeMillis() - EPOCH_MILLIS) << PHYSICAL_SHIFT;
+        while (true)
+        {
+            long previous = last.get();
+            long next = Math.max(physical, previous + LOGICAL_UNIT);
+            if (last.compareAndSet(previous, next))
+                return next | nodeId;
+        }
+    }
+
+    /**
+     * @return a tag larger than {@code observed} and than any tag previously returned or observed by this clock
+     */
+    public long next(long observed)
+    {
+        update(observed);
+        return next();
+    }
+
+    /**
+     * Makes the tags generated from now on larger than {@code observed}, a tag generated by any coordinator.
+     */
+    public void update(long observed)
+    {
+        long observedTime = observed & ~NODE_ID_MASK;
+        while (true)
+        {
+            long previous = last.get();
+            if (observedTime <= previous || last.compareAndSet(previous, observedTime))
+                return;
+        }
+    }
+
+    public static long physicalMillis(long tag)
+    {
+        return (tag >>> PHYSICAL_SHIFT) + EPOCH_MILLIS;
+    }
+
+    public static int logical(long tag)
+    {
+        return (int) ((tag >>> NODE_ID_BITS) & ((1L << LOGICAL_BITS) - 1));
+    }
+
+    public static int nodeId(long tag)
+    {
+        return (int) (tag & NODE_ID_MASK);
+    }
+
+    public static String toString(long tag)
+    {
+        return String.format("%d.%d@%d", physicalMillis(tag), logical(tag), nodeId(tag));
+    }
+
+    /**
+     * The low 12 bits of an IPv4 address are unique within any /20 subnet; other addresses are hashed, in which case
+     * {@link #NODE_ID_PROPERTY} must be set when two coordinators end up with the same id.
+     */
+    @VisibleForTesting
+    static int nodeIdOf(InetAddress address)
+    {
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address)
+            return ((bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF)) & (int) NODE_ID_MASK;
+        return Arrays.hashCode(bytes) & (int) NODE_ID_MASK;
+    }
+
+    private static int localNodeId()
+    {
+        String configured = System.getProperty(NODE_ID_PROPERTY);
+        if (configured != null)
+            return Integer.parseInt(configured);
+        return nodeIdOf(FBUtilities.getJustBroadcastAddress());
+    }
+
+    private static final class Holder
+    {
+        static final HybridLogicalClock instance = new HybridLogicalClock(localNodeId(), new SystemTimeSource());
+    }
+}
@@ -59,7 +59,7 @@ public final class NativeLibrary
     private static final int F_GETFL   = 3;  /* get file status flags */
     private static final int F_SETFL   = 4;  /* set file status flags */
     private static final int F_NOCACHE = 48; /* Mac OS X specific flag, turns cache on/off */
-    private static final int O_DIRECT  = 040000; /* fcntl.h */
+    private static final int O_DIRECT; /* fcntl.h, architecture specific */
     private static final int O_RDONLY  = 00000000; /* fcntl.h */
 
     private static final int POSIX_FADV_NORMAL     = 0; /* fadvise.h */
@@ -93,7 +93,15 @@ public final class NativeLibrary
             default: wrappedLibrary = new NativeLibraryLinux();
         }
 
-        if (System.getProperty("os.arch").toLowerCase().contains("ppc"))
+        String arch = System.getProperty("os.arch").toLowerCase();
+        if (arch.contains("ppc"))
+            O_DIRECT = 0400000;
+        else if (arch.contains("aarch64") || arch.contains("arm"))
+            O_DIRECT = 0200000;
+        else
+            O_DIRECT = 040000;
+
+        if (arch.contains("ppc"))
         {
             if (osType == LINUX)
             {
@@ -288,6 +296,37 @@ public final class NativeLibrary
         return result;
     }
 
+    /**
+     * Switches an open file to direct I/O, bypassing the page cache. Subsequent reads and writes must use buffers,
+     * offsets and lengths aligned to the device's logical block size.
+     *
+     * @return {@code true} if O_DIRECT was set on the file, {@code false} if it is not supported here
+     */
+    public static boolean tryEnableDirectIO(int fd)
+    {
+        if (fd < 0 || osType != LINUX)
+            return false;
+
+        try
+        {
+            int flags = wrappedLibrary.callFcntl(fd, F_GETFL, 0);
+            return wrappedLibrary.callFcntl(fd, F_SETFL, flags | O_DIRECT) == 0;
+        }
+        catch (UnsatisfiedLinkError e)
+        {
+            // JNA is unavailable, the file keeps going through the page cache
+        }
+        catch (RuntimeException e)
+        {
+            if (!(e instanceof LastErrorException))
+                throw e;
+
+            logger.warn("fcntl({}, F_SETFL, O_DIRECT) failed, errno ({}).", fd, errno(e));
+        }
+
+        return false;
+    }
+
     public static int tryOpenDirectory(String path)
     {
         int fd = -1;
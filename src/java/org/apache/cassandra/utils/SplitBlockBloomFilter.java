@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteOrder;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import org.apache.cassandra.utils.concurrent.Ref;
+import org.apache.cassandra.utils.concurrent.WrappedSharedCloseable;
+import org.apache.cassandra.utils.obs.OffHeapBitSet;
+
+/**
+ * A bloom filter whose bitset is split into blocks of a cache line, 64 bytes, in which all the bits of a key are set,
+ * so that checking a key costs a single cache miss rather than one per hash, as in {@link BloomFilter}.
+ * <p>
+ * The first half of the key's murmur3 hash picks the block, and the second one picks a bit in each of the 8 words of
+ * the block, which are checked together. As the number of keys of a block varies, a split-block filter needs a few
+ * more bits per key than a {@link BloomFilter} for the same false positive probability, see {@link #numBits}.
+ * <p>
+ * Words are stored little-endian whatever the platform, so that the serialized bitset is portable.
+ */
+public class SplitBlockBloomFilter extends WrappedSharedCloseable implements IFilter
+{
+    static final int BLOCK_BITS = 512;
+    private static final int BLOCK_BYTES = BLOCK_BITS / 8;
+    private static final int WORDS_PER_BLOCK = BLOCK_BITS / 64;
+
+    private static final boolean BIG_ENDIAN = ByteOrder.nativeOrder().equals(ByteOrder.BIG_ENDIAN);
+
+    private final static FastThreadLocal<long[]> reusableHash = new FastThreadLocal<long[]>()
+    {
+        protected long[] initialValue()
+        {
+            return new long[2];
+        }
+    };
+
+    public final OffHeapBitSet bitset;
+    private final long blocks;
+
+    SplitBlockBloomFilter(OffHeapBitSet bitset)
+    {
+        super(bitset);
+        assert bitset.capacity() % BLOCK_BITS == 0 : bitset.capacity();
+        this.bitset = bitset;
+        this.blocks = bitset.capacity() / BLOCK_BITS;
+    }
+
+    private SplitBlockBloomFilter(SplitBlockBloomFilter copy)
+    {
+        super(copy);
+        this.bitset = copy.bitset;
+        this.blocks = copy.blocks;
+    }
+
+    /**
+     * @return the number of bits, a multiple of the block size, of a filter of the given number of keys whose false
+     * positive probability does not exceed the given one
+     */
+    static long numBits(long numElements, double maxFalsePosProbability)
+    {
+        assert maxFalsePosProbability > 0 && maxFalsePosProbability < 1 : maxFalsePosProbability;
+        // bisect the largest average number of keys per block that gives the probability
+        double low = 0;
+        double high = BLOCK_BITS;
+        for (int i = 0; i < 64; i++)
+        {
+            double keysPerBlock = (low + high) / 2;
+            if (falsePositiveProbability(keysPerBlock) <= maxFalsePosProbability)
+                low = keysPerBlock;
+            else
+                high = keysPerBlock;
+        }
+        long blocks = Math.max(1, (long) Math.ceil(numElements / low));
+        return blocks * BLOCK_BITS;
+    }
+
+    /**
+     * @return the false positive probability of a filter with the given average number of keys per block, whose
+     * number of keys follows a Poisson distribution of that mean
+     */
+    static double falsePositiveProbability(double keysPerBlock)
+    {
+        double probability = 0;
+        double keysProbability = Math.exp(-keysPerBlock);
+        for (int keys = 0; keys <= 2 * BLOCK_BITS; keys++)
+        {
+            if (keys > 0)
+                keysProbability *= keysPerBlock / keys;
+            // each word of the block has a bit set per key, each of which misses a given bit with probability 63/64
+            double wordProbability = 1 - Math.pow(1 - 1d / 64, keys);
+            probability += keysProbability * Math.pow(wordProbability, WORDS_PER_BLOCK);
+        }
+        return probability;
+    }
+
+    public long serializedSize()
+    {
+        return BloomFilterSerializer.serializedSize(this);
+    }
+
+    private long blockOffset(long[] hash)
+    {
+        return FBUtilities.abs(hash[0] % blocks) * BLOCK_BYTES;
+    }
+
+    /**
+     * @return the bit of the given word of a block that the given half hash sets, as a mask
+     */
+    private static long mask(long hash, int word)
+    {
+        return 1L << ((hash >>> (word * 6)) & 63);
+    }
+
+    private long getWord(long offset)
+    {
+        long word = bitset.getLong(offset);
+        return BIG_ENDIAN ? Long.reverseBytes(word) : word;
+    }
+
+    private void setWord(long offset, long word)
+    {
+        bitset.setLong(offset, BIG_ENDIAN ? Long.reverseBytes(word) : word);
+    }
+
+    public void add(FilterKey key)
+    {
+        long[] hash = reusableHash.get();
+        key.filterHash(hash);
+        long offset = blockOffset(hash);
+        for (int i = 0; i < WORDS_PER_BLOCK; i++)
+        {
+            long wordOffset = offset + i * 8;
+            setWord(wordOffset, getWord(wordOffset) | mask(hash[1], i));
+        }
+    }
+
+    public final boolean isPresent(FilterKey key)
+    {
+        long[] hash = reusableHash.get();
+        key.filterHash(hash);
+        long offset = blockOffset(hash);
+        // no early exit, so that the loop has no branch and all words of the block are loaded together
+        long missing = 0;
+        for (int i = 0; i < WORDS_PER_BLOCK; i++)
+        {
+            long mask = mask(hash[1], i);
+            missing |= ~getWord(offset + i * 8) & mask;
+        }
+        return missing == 0;
+    }
+
+    public void clear()
+    {
+        bitset.clear();
+    }
+
+    public IFilter sharedCopy()
+    {
+        return new SplitBlockBloomFilter(this);
+    }
+
+    @Override
+    public long offHeapSize()
+    {
+        return bitset.offHeapSize();
+    }
+
+    public String toString()
+    {
+        return "SplitBlockBloomFilter[blocks=" + blocks + ']';
+    }
+
+    public void addTo(Ref.IdentityCollection identities)
+    {
+        super.addTo(identities);
+        bitset.addTo(identities);
+    }
+}
@@ -122,6 +122,14 @@ public abstract class MemoryUtil
             putIntByByte(address, l);
     }
 
+    /**
+     * Stores an int with release semantics; the address must be 4-byte aligned.
+     */
+    public static void setIntVolatile(long address, int l)
+    {
+        unsafe.putIntVolatile(null, address, l);
+    }
+
     public static void setLong(long address, long l)
     {
         if (Architecture.IS_UNALIGNED)
@@ -145,11 +153,37 @@ public abstract class MemoryUtil
         return Architecture.IS_UNALIGNED ? unsafe.getInt(address) : getIntByByte(address);
     }
 
+    /**
+     * Loads an int with acquire semantics; the address must be 4-byte aligned.
+     */
+    public static int getIntVolatile(long address)
+    {
+        return unsafe.getIntVolatile(null, address);
+    }
+
     public static long getLong(long address)
     {
         return Architecture.IS_UNALIGNED ? unsafe.getLong(address) : getLongByByte(address);
     }
 
+    /**
+     * Loads a long from a byte array, in native order; unless the architecture allows unaligned access, the offset
+     * must be 8-byte aligned.
+     */
+    public static long getLong(byte[] buffer, int offset)
+    {
+        return unsafe.getLong(buffer, BYTE_ARRAY_BASE_OFFSET + offset);
+    }
+
+    /**
+     * Stores a long into a byte array, in native order; unless the architecture allows unaligned access, the offset
+     * must be 8-byte aligned.
+     */
+    public static void setLong(byte[] buffer, int offset, long l)
+    {
+        unsafe.putLong(buffer, BYTE_ARRAY_BASE_OFFSET + offset, l);
+    }
+
     public static ByteBuffer getByteBuffer(long address, int length)
     {
         return getByteBuffer(address, length, ByteOrder.nativeOrder());
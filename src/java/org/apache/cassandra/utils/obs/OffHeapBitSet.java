@@ -100,6 +100,22 @@ public class OffHeapBitSet implements IBitSet
         bytes.setByte(offset, b);
     }
 
+    /**
+     * Returns the 64 bits at the given byte offset, which should be a multiple of 8, in native byte order.
+     */
+    public long getLong(long offset)
+    {
+        return bytes.getLong(offset);
+    }
+
+    /**
+     * Sets the 64 bits at the given byte offset, which should be a multiple of 8, in native byte order.
+     */
+    public void setLong(long offset, long value)
+    {
+        bytes.setLong(offset, value);
+    }
+
     public void clear(long index)
     {
         long i = index >> 3;
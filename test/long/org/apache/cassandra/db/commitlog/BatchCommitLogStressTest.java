@@ -29,9 +29,9 @@ import org.apache.cassandra.security.EncryptionContext;
 @RunWith(Parameterized.class)
 public class BatchCommitLogStressTest extends CommitLogStressTest
 {
-    public BatchCommitLogStressTest(ParameterizedClass commitLogCompression, EncryptionContext encryptionContext)
+    public BatchCommitLogStressTest(ParameterizedClass commitLogCompression, EncryptionContext encryptionContext, boolean directIO)
     {
-        super(commitLogCompression, encryptionContext);
+        super(commitLogCompression, encryptionContext, directIO);
         DatabaseDescriptor.setCommitLogSync(Config.CommitLogSync.batch);
     }
 }
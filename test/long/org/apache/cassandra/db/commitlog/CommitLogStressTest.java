@@ -57,6 +57,7 @@ import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.schema.Schema;
 import org.apache.cassandra.security.EncryptionContext;
 import org.apache.cassandra.security.EncryptionContextGenerator;
+import org.apache.cassandra.utils.EstimatedHistogram;
 
 
 @Ignore
@@ -93,11 +94,14 @@ public abstract class CommitLogStressTest
     private boolean randomSize = false;
     private boolean discardedRun = false;
     private CommitLogPosition discardedPos;
+    // latency of CommitLog.add() in microseconds, which includes waiting for the sync in batch and group modes
+    private final EstimatedHistogram addLatency = new EstimatedHistogram(90);
 
-    public CommitLogStressTest(ParameterizedClass commitLogCompression, EncryptionContext encryptionContext)
+    public CommitLogStressTest(ParameterizedClass commitLogCompression, EncryptionContext encryptionContext, boolean directIO)
     {
         DatabaseDescriptor.setCommitLogCompression(commitLogCompression);
         DatabaseDescriptor.setEncryptionContext(encryptionContext);
+        DatabaseDescriptor.setCommitLogDirectIO(directIO);
         DatabaseDescriptor.setCommitLogSegmentSize(32);
     }
 
@@ -142,11 +146,12 @@ public abstract class CommitLogStressTest
     public static Collection<Object[]> buildParameterizedVariants()
     {
         return Arrays.asList(new Object[][]{
-        {null, EncryptionContextGenerator.createDisabledContext()}, // No compression, no encryption
-        {null, EncryptionContextGenerator.createContext(true)}, // Encryption
-        { new ParameterizedClass(LZ4Compressor.class.getName(), Collections.emptyMap()), EncryptionContextGenerator.createDisabledContext()},
-        { new ParameterizedClass(SnappyCompressor.class.getName(), Collections.emptyMap()), EncryptionContextGenerator.createDisabledContext()},
-        { new ParameterizedClass(DeflateCompressor.class.getName(), Collections.emptyMap()), EncryptionContextGenerator.createDisabledContext()}});
+        {null, EncryptionContextGenerator.createDisabledContext(), false}, // No compression, no encryption
+        {null, EncryptionContextGenerator.createDisabledContext(), true}, // Direct I/O
+        {null, EncryptionContextGenerator.createContext(true), false}, // Encryption
+        { new ParameterizedClass(LZ4Compressor.class.getName(), Collections.emptyMap()), EncryptionContextGenerator.createDisabledContext(), false},
+        { new ParameterizedClass(SnappyCompressor.class.getName(), Collections.emptyMap()), EncryptionContextGenerator.createDisabledContext(), false},
+        { new ParameterizedClass(DeflateCompressor.class.getName(), Collections.emptyMap()), EncryptionContextGenerator.createDisabledContext(), false}});
     }
 
     @Test
@@ -190,10 +195,11 @@ public abstract class CommitLogStressTest
     }
 
     private void testLog(CommitLog commitLog) throws IOException, InterruptedException {
-        System.out.format("\nTesting commit log size %.0fmb, compressor: %s, encryption enabled: %b, sync %s%s%s\n",
+        System.out.format("\nTesting commit log size %.0fmb, compressor: %s, encryption enabled: %b, direct I/O: %b, sync %s%s%s\n",
                            mb(DatabaseDescriptor.getCommitLogSegmentSize()),
                            commitLog.configuration.getCompressorName(),
                            commitLog.configuration.useEncryption(),
+                           commitLog.configuration.useDirectIO(),
                            commitLog.executor.getClass().getSimpleName(),
                            randomSize ? " random size" : "",
                            discardedRun ? " with discarded run" : "");
@@ -243,17 +249,21 @@ public abstract class CommitLogStressTest
         }
         verifySizes(commitLog);
 
+        System.out.format("Add latency: p50 %dus, p99 %dus, p999 %dus, max %dus\n",
+                          addLatency.percentile(0.5), addLatency.percentile(0.99), addLatency.percentile(0.999), addLatency.max());
+
         commitLog.shutdownBlocking();
 
         System.out.println("Stopped. Replaying... ");
         System.out.flush();
         Reader reader = new Reader();
-        File[] files = new File(location).listFiles();
+        // leave out the files kept for recycling, whose content is stale
+        File[] files = new File(location).listFiles((dir, name) -> CommitLogDescriptor.isValid(name));
 
         DummyHandler handler = new DummyHandler();
         reader.readAllFiles(handler, files);
 
-        for (File f : files)
+        for (File f : new File(location).listFiles())
             if (!f.delete())
                 Assert.fail("Failed to delete " + f);
 
@@ -411,7 +421,10 @@ public abstract class CommitLogStressTest
                     dataSize += sz;
                 }
 
-                clsp = commitLog.add(new Mutation(builder.build()));
+                Mutation mutation = new Mutation(builder.build());
+                long start = System.nanoTime();
+                clsp = commitLog.add(mutation);
+                addLatency.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
                 counter.incrementAndGet();
             }
         }
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.test.microbench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.service.ABDTag;
+import org.apache.cassandra.utils.HybridLogicalClock;
+import org.apache.cassandra.utils.SystemTimeSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the Java serialized ABD tags (an int counter and a writer id, as written before the binary format) with
+ * the binary format of {@link ABDTag}: serialization, and comparison of two cell values, which the legacy path does
+ * by deserializing both tags and the binary one directly on the buffers. {@link #compareLegacyCells()} measures
+ * reading cells left in the legacy format by the current code.
+ *
+ * The serialized size of both formats is printed at the end of each trial. Run with {@code -prof gc} to also
+ * compare the allocations per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class ABDTagBench
+{
+    private LegacyTag legacyTag;
+    private ByteBuffer legacyLeft;
+    private ByteBuffer legacyRight;
+
+    private ABDTag tag;
+    private ByteBuffer left;
+    private ByteBuffer right;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        legacyTag = new LegacyTag(41, "/127.0.0.1:7000");
+        legacyLeft = serializeLegacy(legacyTag);
+        legacyRight = serializeLegacy(new LegacyTag(42, "/127.0.0.2:7000"));
+
+        HybridLogicalClock clock = new HybridLogicalClock(1, new SystemTimeSource());
+        tag = new ABDTag(clock.next());
+        left = ABDTag.serialize(tag);
+        right = ABDTag.serialize(new ABDTag(clock.next()));
+    }
+
+    @TearDown(Level.Trial)
+    public void reportSerializedSize()
+    {
+        System.out.printf("%nserialized tag size: legacy=%d binary=%d bytes%n", legacyLeft.remaining(), left.remaining());
+    }
+
+    @Benchmark
+    public ByteBuffer serializeLegacy() throws IOException
+    {
+        return serializeLegacy(legacyTag);
+    }
+
+    @Benchmark
+    public ByteBuffer serializeBinary()
+    {
+        return ABDTag.serialize(tag);
+    }
+
+    @Benchmark
+    public boolean compareLegacy() throws Exception
+    {
+        return deserializeLegacy(legacyRight).isLarger(deserializeLegacy(legacyLeft));
+    }
+
+    @Benchmark
+    public boolean compareBinary()
+    {
+        return ABDTag.compare(right, left) > 0;
+    }
+
+    @Benchmark
+    public boolean compareLegacyCells()
+    {
+        return ABDTag.compare(legacyRight, legacyLeft) > 0;
+    }
+
+    private static ByteBuffer serializeLegacy(LegacyTag tag) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos))
+        {
+            oos.writeObject(tag);
+        }
+        return ByteBuffer.wrap(bos.toByteArray());
+    }
+
+    private static LegacyTag deserializeLegacy(ByteBuffer buf) throws Exception
+    {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+        {
+            return (LegacyTag) ois.readObject();
+        }
+    }
+
+    /**
+     * Same fields as the Java serialized ABD tags.
+     */
+    private static class LegacyTag implements Serializable
+    {
+        private final int logicalTIme;
+        private final String writerId;
+
+        LegacyTag(int logicalTIme, String writerId)
+        {
+            this.logicalTIme = logicalTIme;
+            this.writerId = writerId;
+        }
+
+        boolean isLarger(LegacyTag other)
+        {
+            if (logicalTIme != other.logicalTIme)
+                return logicalTIme > other.logicalTIme;
+            return writerId.compareTo(other.writerId) > 0;
+        }
+    }
+}
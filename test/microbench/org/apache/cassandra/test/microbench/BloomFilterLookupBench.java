@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.test.microbench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.utils.FilterFactory;
+import org.apache.cassandra.utils.IFilter;
+import org.apache.cassandra.utils.MurmurHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the lookups of classic and split-block bloom filters. Their false positive rate and memory use are logged
+ * when each trial is set up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 4, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2)
+@State(Scope.Benchmark)
+public class BloomFilterLookupBench
+{
+    private static final Logger logger = LoggerFactory.getLogger(BloomFilterLookupBench.class);
+
+    private static final int SAMPLE = 1 << 20;
+
+    @Param({"10", "1000", "10000"})
+    private long numElemsInK;
+
+    @Param({"0.01", "0.1"})
+    private double fpChance;
+
+    @Param({"false", "true"})
+    private boolean splitBlock;
+
+    private IFilter filter;
+    private final LongKey key = new LongKey();
+    private long next;
+
+    /**
+     * A key hashed as partition keys are, without the garbage of decorating one per lookup.
+     */
+    static final class LongKey implements IFilter.FilterKey
+    {
+        private final ByteBuffer buffer = ByteBuffer.allocate(8);
+
+        LongKey set(long value)
+        {
+            buffer.putLong(0, value);
+            return this;
+        }
+
+        public void filterHash(long[] dest)
+        {
+            MurmurHash.hash3_x64_128(buffer, 0, 8, 0, dest);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        long numElements = numElemsInK * 1024;
+        filter = FilterFactory.getFilter(numElements, fpChance, splitBlock);
+        // the keys added are the non-negative longs below numElements, the others are absent
+        for (long i = 0; i < numElements; i++)
+            filter.add(key.set(i));
+
+        int falsePositives = 0;
+        for (long i = 0; i < SAMPLE; i++)
+        {
+            if (filter.isPresent(key.set(-1 - i)))
+                falsePositives++;
+        }
+        logger.info("{}: false positive rate {}, {} bytes, {} bits per key",
+                    filter, String.format("%.5f", (double) falsePositives / SAMPLE), filter.offHeapSize(),
+                    String.format("%.2f", filter.offHeapSize() * 8d / numElements));
+        next = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown()
+    {
+        filter.close();
+    }
+
+    @Benchmark
+    public boolean lookupAbsent()
+    {
+        return filter.isPresent(key.set(--next));
+    }
+
+    @Benchmark
+    public boolean lookupPresent()
+    {
+        next = (next + 1) % (numElemsInK * 1024);
+        return filter.isPresent(key.set(next));
+    }
+}
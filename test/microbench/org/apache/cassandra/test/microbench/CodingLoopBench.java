@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.test.microbench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.JavaReedSolomon.src.main.java.com.backblaze.erasure.CodingLoop;
+import org.apache.cassandra.JavaReedSolomon.src.main.java.com.backblaze.erasure.ReedSolomon;
+import org.apache.cassandra.Treas.TreasConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode and decode throughput of every {@link CodingLoop} at the TREAS shard geometry, to check which one
+ * {@code ReedSolomonRegistry.codingLoop()} should pick on a given CPU.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class CodingLoopBench
+{
+    private static final int DATA_SHARDS = TreasConfig.num_recover;
+    private static final int PARITY_SHARDS = TreasConfig.num_server - TreasConfig.num_recover;
+
+    @Param({ "ByteInputOutputExpCodingLoop",
+             "ByteInputOutputTableCodingLoop",
+             "ByteOutputInputExpCodingLoop",
+             "ByteOutputInputTableCodingLoop",
+             "InputByteOutputExpCodingLoop",
+             "InputByteOutputTableCodingLoop",
+             "InputOutputByteExpCodingLoop",
+             "InputOutputByteTableCodingLoop",
+             "InputOutputLongNibbleCodingLoop",
+             "OutputByteInputExpCodingLoop",
+             "OutputByteInputTableCodingLoop",
+             "OutputInputByteExpCodingLoop",
+             "OutputInputByteTableCodingLoop" })
+    private String codingLoop;
+
+    // shards of 64KB to 1MB values
+    @Param({ "32768", "524288" })
+    private int shardSize;
+
+    private ReedSolomon codec;
+    private byte[][] shards;
+    private boolean[] shardPresent;
+
+    @Setup
+    public void setup()
+    {
+        for (CodingLoop loop : CodingLoop.ALL_CODING_LOOPS)
+        {
+            if (loop.getClass().getSimpleName().equals(codingLoop))
+                codec = new ReedSolomon(DATA_SHARDS, PARITY_SHARDS, loop);
+        }
+        if (codec == null)
+            throw new IllegalArgumentException("Unknown coding loop " + codingLoop);
+
+        Random random = new Random(12345678);
+        shards = new byte[TreasConfig.num_server][shardSize];
+        for (int i = 0; i < DATA_SHARDS; i++)
+            random.nextBytes(shards[i]);
+        codec.encodeParity(shards, 0, shardSize);
+
+        // lose every data shard so decoding has to go through the inverted matrix
+        shardPresent = new boolean[TreasConfig.num_server];
+        for (int i = DATA_SHARDS; i < TreasConfig.num_server; i++)
+            shardPresent[i] = true;
+    }
+
+    @Benchmark
+    public byte[][] encode()
+    {
+        codec.encodeParity(shards, 0, shardSize);
+        return shards;
+    }
+
+    @Benchmark
+    public byte[][] decode()
+    {
+        codec.decodeMissing(shards, shardPresent, 0, shardSize);
+        return shards;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.test.microbench;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.UpdateBuilder;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.commitlog.CommitLog;
+import org.apache.cassandra.db.commitlog.CommitLogPosition;
+import org.apache.cassandra.schema.TableMetadata;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures how commit log appends of small mutations scale with the number of writing threads, which all allocate
+ * from the same active segment. Run main() to go from 8 to 64 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class CommitLogAllocationBench extends CQLTester
+{
+    private Mutation mutation;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable
+    {
+        DatabaseDescriptor.daemonInitialization();
+        // keep syncs out of the way, we only want to see the cost of appending
+        DatabaseDescriptor.setCommitLogSync(Config.CommitLogSync.periodic);
+        DatabaseDescriptor.setCommitLogSyncPeriod(10000);
+        CQLTester.setUpClass();
+
+        String keyspace = createKeyspace("CREATE KEYSPACE %s with replication = { 'class' : 'SimpleStrategy', 'replication_factor' : 1 }");
+        String table = createTable(keyspace, "CREATE TABLE %s (userid bigint, picid bigint, commentid bigint, PRIMARY KEY(userid, picid))");
+        TableMetadata metadata = Keyspace.open(keyspace).getColumnFamilyStore(table).metadata();
+        mutation = (Mutation) UpdateBuilder.create(metadata, 1L).newRow(1L).add("commentid", 32L).makeMutation();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException, ExecutionException, InterruptedException
+    {
+        CQLTester.cleanup();
+    }
+
+    @Benchmark
+    public CommitLogPosition add()
+    {
+        return CommitLog.instance.add(mutation);
+    }
+
+    public static void main(String... args) throws Exception
+    {
+        for (int threads = 8; threads <= 64; threads *= 2)
+        {
+            Options opts = new OptionsBuilder()
+                           .include(".*" + CommitLogAllocationBench.class.getSimpleName() + ".*")
+                           .threads(threads)
+                           .build();
+            new Runner(opts).run();
+        }
+    }
+}
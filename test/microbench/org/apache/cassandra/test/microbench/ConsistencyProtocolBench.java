@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.test.microbench;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.Treas.DoubleTreasTag;
+import org.apache.cassandra.Treas.ErasureCode;
+import org.apache.cassandra.Treas.TreasConfig;
+import org.apache.cassandra.Treas.TreasTagIndex;
+import org.apache.cassandra.Treas.TreasUtil;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.ReadResponse;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.partitions.SingletonUnfilteredPartitionIterator;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.locator.InetAddressAndPort;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.service.ABDColomns;
+import org.apache.cassandra.service.ABDTag;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.service.reads.DigestResolver;
+import org.apache.cassandra.service.reads.repair.NoopReadRepair;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the coordinator side of a single key read and write with a plain table at QUORUM, with ABD and with TREAS,
+ * for 5 replicas (3 data and 2 parity shards for TREAS):
+ * <ul>
+ *     <li>writes build the mutations sent to the replicas: the same one for QUORUM, one carrying a new tag for ABD,
+ *     and for TREAS the encoding of the value and one mutation per replica with its own shard;</li>
+ *     <li>reads resolve the responses of a quorum of replicas with {@link DigestResolver}, as received off the wire:
+ *     one data and two digest responses for QUORUM, three data responses whose largest tag wins for ABD, and four
+ *     responses whose tags are counted and whose shards are decoded for TREAS;</li>
+ *     <li>{@link #treasReplicaWrite()} picks the slot of a write on a replica through {@link TreasTagIndex} and applies it.</li>
+ * </ul>
+ *
+ * The ring is made of 5 fake endpoints that no message is ever sent to. Sample time mode reports the latency
+ * percentiles (p99 included); the bytes sent on the wire for a write and a read, and the bytes stored by all the
+ * replicas for a value, are printed for each protocol at the end of each trial.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1G")
+@Threads(1)
+@State(Scope.Benchmark)
+public class ConsistencyProtocolBench extends CQLTester
+{
+    private static final int REPLICAS = 5;
+    private static final int KEYS = 1000;
+
+    @Param({ "1024", "65536" })
+    private int valueSize;
+
+    private TableMetadata quorumTable;
+    private TableMetadata abdTable;
+    private TableMetadata treasTable;
+
+    private ErasureCode codec;
+    private List<InetAddressAndPort> replicas;
+    private ByteBuffer value;
+    private ByteBuffer shard;
+    private DecoratedKey key;
+    private DecoratedKey[] slotKeys;
+
+    private SinglePartitionReadCommand quorumRead;
+    private SinglePartitionReadCommand abdRead;
+    private SinglePartitionReadCommand treasRead;
+    private List<MessageIn<ReadResponse>> quorumResponses;
+    private List<MessageIn<ReadResponse>> abdResponses;
+    private List<MessageIn<ReadResponse>> treasResponses;
+
+    private long tag;
+    private ABDTag abdTag;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable
+    {
+        CQLTester.setUpClass();
+        for (int i = 1; i <= REPLICAS; i++)
+            StorageService.instance.getTokenMetadata().updateNormalToken(Murmur3Partitioner.instance.getRandomToken(),
+                                                                         InetAddressAndPort.getByName("127.0.0." + i));
+
+        String keyspace = createKeyspace("CREATE KEYSPACE %s WITH replication = { 'class' : 'SimpleStrategy', 'replication_factor' : " + REPLICAS + " } AND durable_writes = false");
+        quorumTable = metadata(keyspace, createTable(keyspace, "CREATE TABLE %s (y_id text PRIMARY KEY, val blob)"));
+        abdTable = metadata(keyspace, createTable(keyspace, "CREATE TABLE %s (y_id text PRIMARY KEY, tag blob, val blob)"));
+        treasTable = metadata(keyspace, createTable(keyspace, "CREATE TABLE %s (y_id text PRIMARY KEY, field0 text, " +
+                                                              "tag1 bigint, field1 blob, tag2 bigint, field2 blob, tag3 bigint, field3 blob) " +
+                                                              "WITH erasure_coding = {'data_shards': 3, 'parity_shards': 2, 'concurrency': 3, 'intersect': 3}"));
+
+        codec = new ErasureCode(treasTable.params.erasureCoding);
+        byte[] bytes = new byte[valueSize];
+        new Random(12345678).nextBytes(bytes);
+        value = ByteBuffer.wrap(bytes);
+        shard = codec.encode(value)[0];
+        key = treasTable.partitioner.decorateKey(ByteBufferUtil.bytes("key"));
+        replicas = TreasUtil.shardOwners(treasTable, key.getToken());
+        slotKeys = new DecoratedKey[KEYS];
+        for (int i = 0; i < KEYS; i++)
+            slotKeys[i] = treasTable.partitioner.decorateKey(ByteBufferUtil.bytes("key" + i));
+
+        tag = System.currentTimeMillis() << 16;
+        abdTag = new ABDTag();
+
+        int nowInSec = FBUtilities.nowInSeconds();
+        quorumRead = SinglePartitionReadCommand.fullPartitionRead(quorumTable, nowInSec, key);
+        abdRead = SinglePartitionReadCommand.fullPartitionRead(abdTable, nowInSec, key);
+        treasRead = SinglePartitionReadCommand.fullPartitionRead(treasTable, nowInSec, key);
+
+        // what a quorum of replicas answers once every replica applied the writes of the benchmarks below
+        Mutation quorumMutation = quorumWrite();
+        quorumResponses = new ArrayList<>();
+        quorumResponses.add(response(replicas.get(0), ReadResponse.createRemoteDataResponse(iterator(quorumMutation), quorumRead)));
+        for (int i = 1; i < quorum(); i++)
+            quorumResponses.add(response(replicas.get(i), ReadResponse.createDigestResponse(iterator(quorumMutation), quorumRead)));
+
+        Mutation abdMutation = abdWrite();
+        abdResponses = new ArrayList<>();
+        for (int i = 0; i < quorum(); i++)
+            abdResponses.add(response(replicas.get(i), ReadResponse.createRemoteDataResponse(iterator(abdMutation), abdRead)));
+
+        List<Mutation> treasMutations = treasWrite();
+        treasResponses = new ArrayList<>();
+        for (int i = 0; i < treasTable.params.erasureCoding.quorum(); i++)
+            treasResponses.add(response(replicas.get(i), ReadResponse.createRemoteDataResponse(iterator(treasMutations.get(i)), treasRead)));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Throwable
+    {
+        int version = MessagingService.current_version;
+        long quorumWire = Mutation.serializer.serializedSize(quorumWrite(), version) * REPLICAS;
+        long quorumStored = update(quorumWrite()).dataSize() * REPLICAS;
+        long abdWire = Mutation.serializer.serializedSize(abdWrite(), version) * REPLICAS;
+        long abdStored = update(abdWrite()).dataSize() * REPLICAS;
+        long treasWire = 0;
+        long treasStored = 0;
+        for (Mutation mutation : treasWrite())
+        {
+            treasWire += Mutation.serializer.serializedSize(mutation, version);
+            treasStored += update(mutation).dataSize();
+        }
+
+        System.out.printf("%nvalueSize=%d: bytes sent to the replicas per write, quorum=%d abd=%d treas=%d%n",
+                          valueSize, quorumWire, abdWire, treasWire);
+        System.out.printf("valueSize=%d: bytes received from the replicas per read, quorum=%d abd=%d treas=%d%n",
+                          valueSize, responseSize(quorumResponses), responseSize(abdResponses), responseSize(treasResponses));
+        System.out.printf("valueSize=%d: bytes stored by the replicas per value, quorum=%d abd=%d treas=%d%n",
+                          valueSize, quorumStored, abdStored, treasStored);
+
+        CQLTester.cleanup();
+    }
+
+    @Benchmark
+    public Mutation quorumWrite()
+    {
+        Mutation.SimpleBuilder builder = Mutation.simpleBuilder(quorumTable.keyspace, key);
+        builder.update(quorumTable)
+               .timestamp(FBUtilities.timestampMicros())
+               .row()
+               .add("val", value);
+        return builder.build();
+    }
+
+    @Benchmark
+    public Mutation abdWrite()
+    {
+        abdTag = abdTag.nextTag();
+        Mutation.SimpleBuilder builder = Mutation.simpleBuilder(abdTable.keyspace, key);
+        builder.update(abdTable)
+               .timestamp(FBUtilities.timestampMicros())
+               .row()
+               .add(ABDColomns.TAG, ABDTag.serialize(abdTag))
+               .add(ABDColomns.VAL, value);
+        return builder.build();
+    }
+
+    @Benchmark
+    public List<Mutation> treasWrite()
+    {
+        ByteBuffer[] shards = codec.encode(value);
+        List<Mutation> mutations = new ArrayList<>(shards.length);
+        long writeTag = ++tag;
+        for (ByteBuffer shard : shards)
+            mutations.add(treasMutation(key, writeTag, shard));
+        return mutations;
+    }
+
+    @Benchmark
+    public void treasReplicaWrite()
+    {
+        long writeTag = ++tag;
+        TreasTagIndex.forTable(treasTable).apply(treasMutation(slotKeys[(int) (writeTag % KEYS)], writeTag, shard));
+    }
+
+    @Benchmark
+    public boolean quorumRead()
+    {
+        DigestResolver resolver = resolver(quorumRead, quorumResponses.size());
+        for (MessageIn<ReadResponse> response : quorumResponses)
+            resolver.preprocess(response);
+        return resolver.responsesMatch();
+    }
+
+    @Benchmark
+    public ReadResponse abdRead()
+    {
+        DigestResolver resolver = resolver(abdRead, abdResponses.size());
+        for (MessageIn<ReadResponse> response : abdResponses)
+            resolver.preprocess(response);
+        return resolver.extractMaxZResponse();
+    }
+
+    @Benchmark
+    public ByteBuffer treasRead()
+    {
+        DigestResolver resolver = resolver(treasRead, treasResponses.size());
+        resolver.collectTreasShards();
+        for (MessageIn<ReadResponse> response : treasResponses)
+            resolver.preprocess(response);
+        DoubleTreasTag result = new DoubleTreasTag();
+        resolver.fetchTargetTags(result);
+        return result.getReadResult();
+    }
+
+    private Mutation treasMutation(DecoratedKey key, long tag, ByteBuffer shard)
+    {
+        Mutation.SimpleBuilder builder = Mutation.simpleBuilder(treasTable.keyspace, key);
+        builder.update(treasTable)
+               .timestamp(FBUtilities.timestampMicros())
+               .row()
+               .add(TreasConfig.TAG_ONE, tag)
+               .add(TreasConfig.VAL_ONE, shard)
+               .add("field0", "");
+        return builder.build();
+    }
+
+    private static DigestResolver resolver(SinglePartitionReadCommand command, int responses)
+    {
+        Keyspace keyspace = Keyspace.open(command.metadata().keyspace);
+        return new DigestResolver(keyspace, command, ConsistencyLevel.QUORUM, NoopReadRepair.instance, responses);
+    }
+
+    private static MessageIn<ReadResponse> response(InetAddressAndPort from, ReadResponse response)
+    {
+        return MessageIn.create(from, response, Collections.emptyMap(), MessagingService.Verb.REQUEST_RESPONSE, MessagingService.current_version);
+    }
+
+    private static SingletonUnfilteredPartitionIterator iterator(Mutation mutation)
+    {
+        return new SingletonUnfilteredPartitionIterator(update(mutation).unfilteredIterator());
+    }
+
+    private static PartitionUpdate update(Mutation mutation)
+    {
+        return mutation.getPartitionUpdates().iterator().next();
+    }
+
+    private static long responseSize(List<MessageIn<ReadResponse>> responses)
+    {
+        long size = 0;
+        for (MessageIn<ReadResponse> response : responses)
+            size += ReadResponse.serializer.serializedSize(response.payload, MessagingService.current_version);
+        return size;
+    }
+
+    private static int quorum()
+    {
+        return REPLICAS / 2 + 1;
+    }
+
+    private static TableMetadata metadata(String keyspace, String table)
+    {
+        return Keyspace.open(keyspace).getColumnFamilyStore(table).metadata();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.test.microbench;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.JavaReedSolomon.src.main.java.com.backblaze.erasure.ReedSolomon;
+import org.apache.cassandra.Treas.ErasureCode;
+import org.apache.cassandra.Treas.ReedSolomonRegistry;
+import org.apache.cassandra.Treas.TreasConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ErasureCode#encode(ByteBuffer)} and {@link ErasureCode#decode(ByteBuffer[])}, decoding from the
+ * data shards with the parity shards erased, against the String path they replaced: values encoded from their UTF-8
+ * text, with each shard sent as a Base64 string. The shard bytes written per value by both paths are logged at the
+ * end of each trial.
+ *
+ * Sample time mode reports the latency percentiles (p99 included).
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class ErasureCodeBench
+{
+    private static final Logger logger = LoggerFactory.getLogger(ErasureCodeBench.class);
+
+    private static final Random random = new Random(12345678);
+
+    private static final int DATA_SHARDS = TreasConfig.num_recover;
+    private static final int PARITY_SHARDS = TreasConfig.num_server - TreasConfig.num_recover;
+
+    @Param({ "1024", "65536", "1048576" })
+    private int valueSize;
+
+    private final ErasureCode erasureCode = new ErasureCode(DATA_SHARDS, PARITY_SHARDS);
+
+    private String stringValue;
+    private ByteBuffer binaryValue;
+
+    private String[] stringShards;
+    private ByteBuffer[] binaryShards;
+
+    @Setup
+    public void setup()
+    {
+        // ycsb style printable values, so that the UTF-8 round trip of the String path is lossless
+        byte[] bytes = new byte[valueSize];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) ('a' + random.nextInt(26));
+
+        stringValue = new String(bytes, StandardCharsets.UTF_8);
+        binaryValue = ByteBuffer.wrap(bytes);
+
+        stringShards = encodeString();
+        binaryShards = encodeBinary();
+
+        // only keep num_recover shards, the others are erased and must be recomputed on decode
+        for (int i = TreasConfig.num_recover; i < TreasConfig.num_server; i++)
+        {
+            stringShards[i] = null;
+            binaryShards[i] = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportBytesWritten()
+    {
+        long stringBytes = 0;
+        for (String shard : encodeString())
+            stringBytes += shard.getBytes(StandardCharsets.UTF_8).length;
+
+        long binaryBytes = 0;
+        for (ByteBuffer shard : encodeBinary())
+            binaryBytes += shard.remaining();
+
+        logger.info("valueSize={}: shard bytes written per value, string={} binary={} ({}% saved)",
+                    valueSize, stringBytes, binaryBytes,
+                    String.format("%.1f", 100.0 * (stringBytes - binaryBytes) / stringBytes));
+    }
+
+    @Benchmark
+    public String[] encodeString()
+    {
+        byte[][] shards = encodeData(stringValue);
+        String[] encoded = new String[shards.length];
+        for (int i = 0; i < shards.length; i++)
+            encoded[i] = Base64.getEncoder().encodeToString(shards[i]);
+        return encoded;
+    }
+
+    @Benchmark
+    public ByteBuffer[] encodeBinary()
+    {
+        return erasureCode.encode(binaryValue);
+    }
+
+    @Benchmark
+    public String decodeString()
+    {
+        int length = 0;
+        boolean[] shardPresent = new boolean[TreasConfig.num_server];
+        byte[][] shards = new byte[TreasConfig.num_server][];
+        for (int i = 0; i < stringShards.length; i++)
+        {
+            if (stringShards[i] != null)
+            {
+                shards[i] = Base64.getDecoder().decode(stringShards[i]);
+                shardPresent[i] = true;
+                length = shards[i].length;
+            }
+        }
+        for (int i = 0; i < shards.length; i++)
+        {
+            if (shards[i] == null)
+                shards[i] = new byte[length];
+        }
+        return decodeData(shards, shardPresent, length);
+    }
+
+    @Benchmark
+    public ByteBuffer decodeBinary()
+    {
+        return erasureCode.decode(binaryShards);
+    }
+
+    /**
+     * The String encoding that {@link ErasureCode#encode(ByteBuffer)} replaced: the UTF-8 text of the value, prefixed
+     * by its length, split in data shards.
+     */
+    private static byte[][] encodeData(String value)
+    {
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        int storedSize = valueBytes.length + ErasureCode.BYTES_IN_INT;
+        int shardSize = (storedSize + DATA_SHARDS - 1) / DATA_SHARDS;
+
+        byte[] allBytes = new byte[shardSize * DATA_SHARDS];
+        ByteBuffer.wrap(allBytes).putInt(valueBytes.length);
+        System.arraycopy(valueBytes, 0, allBytes, ErasureCode.BYTES_IN_INT, valueBytes.length);
+
+        byte[][] shards = new byte[TreasConfig.num_server][shardSize];
+        for (int i = 0; i < DATA_SHARDS; i++)
+            System.arraycopy(allBytes, i * shardSize, shards[i], 0, shardSize);
+
+        ReedSolomon reedSolomon = ReedSolomonRegistry.get(DATA_SHARDS, PARITY_SHARDS);
+        reedSolomon.encodeParity(shards, 0, shardSize);
+        return shards;
+    }
+
+    /**
+     * The decoding counterpart of {@link #encodeData(String)}.
+     */
+    private static String decodeData(byte[][] shards, boolean[] shardPresent, int shardSize)
+    {
+        ReedSolomon reedSolomon = ReedSolomonRegistry.get(DATA_SHARDS, PARITY_SHARDS);
+        reedSolomon.decodeMissing(shards, shardPresent, 0, shardSize);
+
+        byte[] decodeBytes = new byte[shardSize * DATA_SHARDS];
+        for (int i = 0; i < DATA_SHARDS; i++)
+            System.arraycopy(shards[i], 0, decodeBytes, shardSize * i, shardSize);
+
+        int valueSize = ByteBuffer.wrap(decodeBytes).getInt();
+        return new String(decodeBytes, ErasureCode.BYTES_IN_INT, valueSize, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.test.microbench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.Treas.TreasUtil;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads the tags of a row of TREAS tag cells from 64 threads at once, the way coordinators and replicas compare
+ * tags while serving concurrent requests: through the class-wide monitor that used to guard TreasUtil.getLong, which
+ * moved and restored the buffer position, and through {@link TreasUtil#getTag(ByteBuffer)}, which reads at an
+ * absolute index. Compare with a run using {@code -t 1} to see how each scales.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512M")
+@Threads(64)
+@State(Scope.Benchmark)
+public class TreasTagReadBench
+{
+    // the number of tag columns of the row, i.e. the concurrency of the table
+    @Param({"1", "5"})
+    private int tags;
+
+    private ByteBuffer[] cells;
+
+    @Setup
+    public void setup()
+    {
+        cells = new ByteBuffer[tags];
+        for (int i = 0; i < tags; i++)
+            cells[i] = ByteBufferUtil.bytes(System.currentTimeMillis() + i);
+    }
+
+    @Benchmark
+    public long synchronizedRead()
+    {
+        long max = Long.MIN_VALUE;
+        for (ByteBuffer cell : cells)
+            max = Math.max(max, synchronizedGetLong(cell));
+        return max;
+    }
+
+    @Benchmark
+    public long absoluteRead()
+    {
+        long max = Long.MIN_VALUE;
+        for (ByteBuffer cell : cells)
+            max = Math.max(max, TreasUtil.getTag(cell));
+        return max;
+    }
+
+    // the previous implementation of TreasUtil.getLong
+    private static synchronized Long synchronizedGetLong(ByteBuffer bb)
+    {
+        int pos = bb.position();
+        Long time = bb.getLong();
+        bb.position(pos);
+        return time;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Slices a partition of a million rows, whose row index does not fit in column_index_cache_size_in_kb, so that
+ * finding the block a slice starts at goes through the index file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class WidePartitionSliceBench extends CQLTester
+{
+    private static final int ROWS = 1_000_000;
+
+    @Param({ "false", "true" })
+    boolean reversed;
+
+    @Param({ "1", "100" })
+    int sliceRows;
+
+    String keyspace;
+    String table;
+    String sliceStatement;
+    Random random;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable
+    {
+        CQLTester.prepareServer();
+        // 4KiB blocks make a row index of a quarter of a million blocks, far beyond the default cache size
+        DatabaseDescriptor.setColumnIndexSize(4);
+        keyspace = createKeyspace("CREATE KEYSPACE %s with replication = { 'class' : 'SimpleStrategy', 'replication_factor' : 1 } and durable_writes = false");
+        table = createTable(keyspace, "CREATE TABLE %s (k int, c bigint, v text, PRIMARY KEY (k, c))");
+        execute("use " + keyspace + ";");
+
+        ColumnFamilyStore cfs = Keyspace.open(keyspace).getColumnFamilyStore(table);
+        cfs.disableAutoCompaction();
+
+        String writeStatement = "INSERT INTO " + table + " (k, c, v) VALUES (?, ?, ?)";
+        String value = "a value of the size of a small row..........";
+        System.err.println("Writing " + ROWS + " rows");
+        for (long c = 0; c < ROWS; c++)
+            execute(writeStatement, 0, c, value);
+        cfs.forceBlockingFlush();
+
+        sliceStatement = "SELECT v FROM " + table + " WHERE k = 0 AND c >= ? AND c < ?" + (reversed ? " ORDER BY c DESC" : "");
+        random = new Random(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown()
+    {
+        CQLTester.cleanup();
+    }
+
+    @Benchmark
+    public UntypedResultSet slice() throws Throwable
+    {
+        long start = random.nextInt(ROWS - sliceRows);
+        return execute(sliceStatement, start, start + sliceRows);
+    }
+}
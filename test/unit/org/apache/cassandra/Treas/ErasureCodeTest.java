@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.Treas;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ErasureCodeTest
+{
+    private static ByteBuffer value(int size)
+    {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    @Test
+    public void testDecodeFromAnyDataShards()
+    {
+        ErasureCode codec = new ErasureCode(3, 2);
+        for (int size : new int[]{ 0, 1, 7, 100, 4096 })
+        {
+            ByteBuffer value = value(size);
+            ByteBuffer[] shards = codec.encode(value);
+            for (int missing = 0; missing < codec.totalShards() - 1; missing++)
+            {
+                ByteBuffer[] present = shards.clone();
+                present[missing] = null;
+                present[missing + 1] = null;
+                Assert.assertEquals(value, codec.decode(present));
+            }
+        }
+    }
+
+    @Test
+    public void testRegenerateMissingShard()
+    {
+        ErasureCode codec = new ErasureCode(3, 2);
+        ByteBuffer[] shards = codec.encode(value(1000));
+        for (int index = 0; index < codec.totalShards(); index++)
+        {
+            // a rebuilding replica only has the shards of data_shards peers
+            ByteBuffer[] present = new ByteBuffer[codec.totalShards()];
+            for (int i = 0, copied = 0; copied < codec.dataShards(); i++)
+            {
+                if (i != index)
+                {
+                    present[i] = shards[i].duplicate();
+                    copied++;
+                }
+            }
+            Assert.assertEquals(shards[index], codec.regenerate(present, index));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.Treas;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.ReadResponse;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.partitions.SingletonUnfilteredPartitionIterator;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.locator.InetAddressAndPort;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+public class TreasShardCollectorTest extends CQLTester
+{
+    private static final int REPLICAS = 5;
+
+    private TableMetadata table;
+    private DecoratedKey key;
+    private SinglePartitionReadCommand command;
+    private List<InetAddressAndPort> owners;
+
+    @BeforeClass
+    public static void setupRing() throws Throwable
+    {
+        for (int i = 1; i <= REPLICAS; i++)
+            StorageService.instance.getTokenMetadata().updateNormalToken(Murmur3Partitioner.instance.getRandomToken(),
+                                                                         InetAddressAndPort.getByName("127.0.0." + i));
+    }
+
+    private void createTreasTable(int intersect)
+    {
+        String keyspace = createKeyspace("CREATE KEYSPACE %s WITH replication = { 'class' : 'SimpleStrategy', 'replication_factor' : " + REPLICAS + " }");
+        String name = createTable(keyspace, "CREATE TABLE %s (y_id text PRIMARY KEY, field0 text, " +
+                                            "tag1 bigint, field1 blob, tag2 bigint, field2 blob, tag3 bigint, field3 blob) " +
+                                            "WITH erasure_coding = {'data_shards': 3, 'parity_shards': 2, 'concurrency': 3, 'intersect': " + intersect + '}');
+        table = Keyspace.open(keyspace).getColumnFamilyStore(name).metadata();
+        key = table.partitioner.decorateKey(ByteBufferUtil.bytes("key"));
+        command = SinglePartitionReadCommand.fullPartitionRead(table, FBUtilities.nowInSeconds(), key);
+        owners = TreasUtil.shardOwners(table, key.getToken());
+    }
+
+    private static ByteBuffer value(long tag)
+    {
+        byte[] bytes = new byte[1000];
+        new Random(tag).nextBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Adds the response of the replica storing shard {@code replica}, whose slots hold {@code tags} and, in the slot
+     * of {@code shardTag}, the shard of the value of that tag.
+     */
+    private void add(TreasShardCollector collector, int replica, long shardTag, long... tags)
+    {
+        ByteBuffer shard = new ErasureCode(table.params.erasureCoding).encode(value(shardTag))[replica];
+        Mutation.SimpleBuilder builder = Mutation.simpleBuilder(table.keyspace, key);
+        Row.SimpleBuilder row = builder.update(table)
+                                       .timestamp(FBUtilities.timestampMicros())
+                                       .row()
+                                       .add("field0", "");
+        for (int i = 0; i < tags.length; i++)
+        {
+            row.add(TreasConfig.TAG_PREFIX + (i + 1), tags[i]);
+            if (tags[i] == shardTag)
+                row.add(TreasConfig.VAL_PREFIX + (i + 1), shard);
+        }
+        PartitionUpdate update = builder.build().getPartitionUpdates().iterator().next();
+        SingletonUnfilteredPartitionIterator iterator = new SingletonUnfilteredPartitionIterator(update.unfilteredIterator());
+        collector.add(owners.get(replica), ReadResponse.createRemoteDataResponse(iterator, command));
+    }
+
+    private DoubleTreasTag resolve(TreasShardCollector collector)
+    {
+        DoubleTreasTag result = new DoubleTreasTag();
+        collector.resolve(result);
+        return result;
+    }
+
+    @Test
+    public void testDecodeOnceDataShardsArrive()
+    {
+        createTreasTable(3);
+        TreasShardCollector collector = new TreasShardCollector(command);
+
+        add(collector, 0, 10, 10);
+        add(collector, 1, 10, 10);
+        Assert.assertNull(collector.decodedTag());
+
+        add(collector, 2, 10, 10);
+        Assert.assertEquals(Long.valueOf(10), collector.decodedTag());
+
+        // a single shard of a larger tag leaves the decoded value alone
+        add(collector, 3, 20, 10, 20);
+        Assert.assertEquals(Long.valueOf(10), collector.decodedTag());
+
+        DoubleTreasTag result = resolve(collector);
+        Assert.assertEquals(key, result.getKey());
+        Assert.assertEquals(Long.valueOf(10), result.getQuorumMaxTreasTag());
+        Assert.assertEquals(Long.valueOf(10), result.getRecoverMaxTreasTag());
+        Assert.assertEquals(value(10), result.getReadResult());
+    }
+
+    @Test
+    public void testCommittedAndDecodableTags()
+    {
+        // with intersect 4, a tag 3 replicas have the shard of can be decoded without being committed
+        createTreasTable(4);
+        TreasShardCollector collector = new TreasShardCollector(command);
+        for (int replica = 0; replica < 3; replica++)
+            add(collector, replica, 20, 10, 20);
+        add(collector, 3, 10, 10);
+        add(collector, 4, 10, 10);
+
+        DoubleTreasTag result = resolve(collector);
+        Assert.assertEquals(Long.valueOf(10), result.getQuorumMaxTreasTag());
+        Assert.assertEquals(Long.valueOf(20), result.getRecoverMaxTreasTag());
+        Assert.assertEquals(value(20), result.getReadResult());
+        Assert.assertFalse(result.isRecoverTagCommitted());
+        Assert.assertTrue(result.isNeedWriteBack());
+    }
+
+    @Test
+    public void testNothingDecodable()
+    {
+        createTreasTable(3);
+        TreasShardCollector collector = new TreasShardCollector(command);
+        add(collector, 0, 10, 10);
+        add(collector, 1, 10, 10);
+        add(collector, 2, 20, 10, 20);
+        add(collector, 3, 20, 10, 20);
+
+        // tag 10 is committed but only 2 shards of each tag were received
+        DoubleTreasTag result = resolve(collector);
+        Assert.assertNull(collector.decodedTag());
+        Assert.assertNull(result.getReadResult());
+    }
+
+    @Test
+    public void testWriteBack()
+    {
+        createTreasTable(3);
+
+        // every replica that answered already holds the shard of the committed tag and nothing else
+        TreasShardCollector collector = new TreasShardCollector(command);
+        for (int replica = 0; replica < 4; replica++)
+            add(collector, replica, 10, 10);
+        DoubleTreasTag result = resolve(collector);
+        Assert.assertTrue(result.isRecoverTagCommitted());
+        Assert.assertFalse(result.isNeedWriteBack());
+
+        // a replica missed the shard
+        collector = new TreasShardCollector(command);
+        for (int replica = 0; replica < 3; replica++)
+            add(collector, replica, 20, 20);
+        add(collector, 3, 10, 10);
+        result = resolve(collector);
+        Assert.assertEquals(Long.valueOf(20), result.getRecoverMaxTreasTag());
+        Assert.assertTrue(result.isRecoverTagCommitted());
+        Assert.assertTrue(result.isNeedWriteBack());
+
+        // every replica holds the shard, but still has a slot of a superseded tag to free
+        collector = new TreasShardCollector(command);
+        add(collector, 0, 20, 10, 20);
+        for (int replica = 1; replica < 4; replica++)
+            add(collector, replica, 20, 20);
+        result = resolve(collector);
+        Assert.assertTrue(result.isRecoverTagCommitted());
+        Assert.assertTrue(result.isNeedWriteBack());
+    }
+
+    @Test
+    public void testDuplicateShards()
+    {
+        createTreasTable(3);
+        TreasShardCollector collector = new TreasShardCollector(command);
+
+        // the same replica answering twice, e.g. to a speculative retry, only counts for one shard
+        add(collector, 0, 10, 10);
+        add(collector, 0, 10, 10);
+        add(collector, 1, 10, 10);
+        Assert.assertNull(collector.decodedTag());
+        Assert.assertNull(resolve(collector).getReadResult());
+
+        add(collector, 2, 10, 10);
+        Assert.assertEquals(Long.valueOf(10), collector.decodedTag());
+        Assert.assertEquals(value(10), resolve(collector).getReadResult());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.Treas;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.locator.InetAddressAndPort;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+public class TreasShardRebuilderTest extends CQLTester
+{
+    private static final int REPLICAS = 5;
+
+    private TableMetadata table;
+    private DecoratedKey key;
+    private int localIndex;
+
+    @BeforeClass
+    public static void setupRing() throws Throwable
+    {
+        for (int i = 1; i <= REPLICAS; i++)
+            StorageService.instance.getTokenMetadata().updateNormalToken(Murmur3Partitioner.instance.getRandomToken(),
+                                                                         InetAddressAndPort.getByName("127.0.0." + i));
+    }
+
+    @Before
+    public void createTreasTable()
+    {
+        String keyspace = createKeyspace("CREATE KEYSPACE %s WITH replication = { 'class' : 'SimpleStrategy', 'replication_factor' : " + REPLICAS + " }");
+        String name = createTable(keyspace, "CREATE TABLE %s (y_id text PRIMARY KEY, field0 text, " +
+                                            "tag1 bigint, field1 blob, tag2 bigint, field2 blob, tag3 bigint, field3 blob) " +
+                                            "WITH erasure_coding = {'data_shards': 3, 'parity_shards': 2, 'concurrency': 3, 'intersect': 3}");
+        table = Keyspace.open(keyspace).getColumnFamilyStore(name).metadata();
+        key = table.partitioner.decorateKey(ByteBufferUtil.bytes("key"));
+        List<InetAddressAndPort> owners = TreasUtil.shardOwners(table, key.getToken());
+        localIndex = TreasUtil.shardIndex(owners, FBUtilities.getBroadcastAddressAndPort());
+    }
+
+    private static ByteBuffer value(long tag)
+    {
+        byte[] bytes = new byte[1000];
+        new Random(tag).nextBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private ByteBuffer shard(long tag, int replica)
+    {
+        return new ErasureCode(table.params.erasureCoding).encode(value(tag))[replica];
+    }
+
+    /**
+     * Adds the row of the replica storing shard {@code replica}, whose slots hold {@code tags} and, in the slot of
+     * {@code shardTag}, the shard of the value of that tag.
+     */
+    private void add(TreasShardRebuilder.KeySlots slots, int replica, long shardTag, long... tags)
+    {
+        Mutation.SimpleBuilder builder = Mutation.simpleBuilder(table.keyspace, key);
+        Row.SimpleBuilder row = builder.update(table)
+                                       .timestamp(FBUtilities.timestampMicros())
+                                       .row()
+                                       .add("field0", "");
+        for (int i = 0; i < tags.length; i++)
+        {
+            row.add(TreasConfig.TAG_PREFIX + (i + 1), tags[i]);
+            if (tags[i] == shardTag)
+                row.add(TreasConfig.VAL_PREFIX + (i + 1), shard(shardTag, replica));
+        }
+        slots.add(table, builder.build().getPartitionUpdates().iterator().next().iterator().next(), replica);
+    }
+
+    private UntypedResultSet readLocalSlots() throws Throwable
+    {
+        return executeFormattedQuery(String.format("SELECT tag1, field1, tag2, field2 FROM %s.%s WHERE y_id = 'key'",
+                                                   table.keyspace, table.name));
+    }
+
+    @Test
+    public void testRegenerateMissingShard() throws Throwable
+    {
+        TreasShardRebuilder rebuilder = new TreasShardRebuilder(table);
+        TreasShardRebuilder.KeySlots slots = rebuilder.new KeySlots(key);
+        for (int replica = 0; replica < REPLICAS; replica++)
+        {
+            if (replica != localIndex)
+                add(slots, replica, 10, 10);
+        }
+
+        Assert.assertTrue(rebuilder.regenerate(slots, localIndex));
+        assertRows(readLocalSlots(), row(10L, shard(10, localIndex), null, null));
+    }
+
+    @Test
+    public void testRegenerateLargestDecodableTag() throws Throwable
+    {
+        TreasShardRebuilder rebuilder = new TreasShardRebuilder(table);
+        TreasShardRebuilder.KeySlots slots = rebuilder.new KeySlots(key);
+        int[] others = new int[REPLICAS - 1];
+        for (int replica = 0, i = 0; replica < REPLICAS; replica++)
+        {
+            if (replica != localIndex)
+                others[i++] = replica;
+        }
+
+        // a write of tag 20 in progress: the sources disagree and no tag has enough shards
+        add(slots, others[0], 10, 10);
+        add(slots, others[1], 20, 10, 20);
+        add(slots, others[2], 20, 10, 20);
+        Assert.assertFalse(rebuilder.regenerate(slots, localIndex));
+        assertEmpty(readLocalSlots());
+
+        // the remaining replica has the third shard of tag 20, tag 10 stays undecodable
+        add(slots, others[3], 20, 10, 20);
+        Assert.assertTrue(rebuilder.regenerate(slots, localIndex));
+        assertRows(readLocalSlots(), row(20L, shard(20, localIndex), null, null));
+    }
+}
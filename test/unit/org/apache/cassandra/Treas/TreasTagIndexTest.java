@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.Treas;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+
+import static org.apache.cassandra.Treas.TreasTagIndex.EMPTY;
+
+public class TreasTagIndexTest
+{
+    @BeforeClass
+    public static void setupDD()
+    {
+        DatabaseDescriptor.daemonInitialization();
+    }
+
+    private static TreasTagIndex.Slots slots(long committed, long... tags)
+    {
+        return new TreasTagIndex.Slots(0, tags, committed);
+    }
+
+    private static TreasTagIndex.Decision decide(TreasTagIndex.Slots current, long tag, boolean committed)
+    {
+        return TreasTagIndex.decide(current, tag, committed, 3);
+    }
+
+    private static TreasTagIndex.Slots apply(TreasTagIndex.Slots current, TreasTagIndex.Decision decision)
+    {
+        return new TreasTagIndex.Slots(current.timestamp + 1, decision.tags, decision.committed);
+    }
+
+    @Test
+    public void testFirstFreeSlot()
+    {
+        TreasTagIndex.Decision decision = decide(slots(EMPTY, EMPTY, EMPTY, EMPTY), 10, false);
+        Assert.assertEquals(0, decision.slot);
+        Assert.assertTrue(decision.storeShard);
+        Assert.assertEquals(-1, decision.clearShard);
+
+        // the previous largest tag gives its shard up
+        decision = decide(slots(EMPTY, 10, EMPTY, EMPTY), 20, false);
+        Assert.assertEquals(1, decision.slot);
+        Assert.assertTrue(decision.storeShard);
+        Assert.assertEquals(0, decision.clearShard);
+
+        // an older tag only records its tag
+        decision = decide(slots(EMPTY, 10, 20, EMPTY), 15, false);
+        Assert.assertEquals(2, decision.slot);
+        Assert.assertFalse(decision.storeShard);
+        Assert.assertEquals(-1, decision.clearShard);
+    }
+
+    @Test
+    public void testFullSlots()
+    {
+        Assert.assertNull(decide(slots(EMPTY, 10, 20, 30), 20, false));
+        Assert.assertNull(decide(slots(EMPTY, 10, 20, 30), 5, false));
+
+        TreasTagIndex.Decision decision = decide(slots(EMPTY, 10, 20, 30), 40, false);
+        Assert.assertEquals(0, decision.slot);
+        Assert.assertArrayEquals(new long[]{ 40, 20, 30 }, decision.tags);
+        Assert.assertEquals(2, decision.clearShard);
+        Assert.assertEquals(0, decision.freed);
+    }
+
+    @Test
+    public void testCommittedTagFreesSupersededSlots()
+    {
+        TreasTagIndex.Decision decision = decide(slots(EMPTY, 10, 20, 30), 20, true);
+        Assert.assertEquals(-1, decision.slot);
+        Assert.assertFalse(decision.storeShard);
+        Assert.assertEquals(20, decision.committed);
+        Assert.assertEquals(1, decision.freed);
+        Assert.assertTrue(decision.freedSlots[0]);
+        Assert.assertArrayEquals(new long[]{ EMPTY, 20, 30 }, decision.tags);
+
+        // the same write-back again changes nothing
+        Assert.assertNull(decide(apply(slots(EMPTY, 10, 20, 30), decision), 20, true));
+
+        // a committed tag this replica missed takes the first slot and frees all the others
+        decision = decide(slots(EMPTY, 10, 20, EMPTY), 30, true);
+        Assert.assertEquals(0, decision.slot);
+        Assert.assertTrue(decision.storeShard);
+        Assert.assertEquals(-1, decision.clearShard);
+        Assert.assertArrayEquals(new long[]{ 30, EMPTY, EMPTY }, decision.tags);
+        // both superseded tags are counted, the cells of the one overwritten by the new tag are not deleted
+        Assert.assertEquals(2, decision.freed);
+        Assert.assertFalse(decision.freedSlots[0]);
+        Assert.assertTrue(decision.freedSlots[1]);
+
+        // writes of superseded tags are ignored
+        Assert.assertNull(decide(slots(30, 30, EMPTY, EMPTY), 25, false));
+    }
+
+    @Test
+    public void testSingleWriterUsesTwoSlots()
+    {
+        TreasTagIndex.Slots current = slots(EMPTY, EMPTY, EMPTY, EMPTY);
+        for (long tag = 1; tag <= 10; tag++)
+        {
+            TreasTagIndex.Decision write = decide(current, tag, false);
+            Assert.assertTrue(write.slot <= 1);
+            current = apply(current, write);
+
+            // a read finds the tag committed and writes it back
+            current = apply(current, decide(current, tag, true));
+            int used = 0;
+            for (long t : current.tags)
+                used += t == EMPTY ? 0 : 1;
+            Assert.assertEquals(1, used);
+            Assert.assertEquals(EMPTY, current.tags[2]);
+        }
+    }
+
+    @Test
+    public void testSlotsPastLoweredConcurrency()
+    {
+        // concurrency lowered from 4 to 3: the tag of the fourth slot is freed by the next write
+        TreasTagIndex.Decision decision = decide(slots(EMPTY, 10, 20, EMPTY, 15), 30, false);
+        Assert.assertEquals(2, decision.slot);
+        Assert.assertTrue(decision.storeShard);
+        Assert.assertEquals(1, decision.clearShard);
+        Assert.assertEquals(1, decision.freed);
+        Assert.assertTrue(decision.freedSlots[3]);
+        Assert.assertArrayEquals(new long[]{ 10, 20, 30 }, decision.tags);
+
+        // even by a write that changes nothing else
+        decision = decide(slots(EMPTY, 10, 20, EMPTY, 15), 20, false);
+        Assert.assertEquals(-1, decision.slot);
+        Assert.assertTrue(decision.freedSlots[3]);
+        Assert.assertArrayEquals(new long[]{ 10, 20, EMPTY }, decision.tags);
+
+        // the slot of the largest tag keeps its shard until a larger tag is written
+        decision = decide(slots(EMPTY, 10, 20, 15, 30), 25, false);
+        Assert.assertEquals(0, decision.slot);
+        Assert.assertFalse(decision.storeShard);
+        Assert.assertArrayEquals(new long[]{ 25, 20, 15, 30 }, decision.tags);
+        decision = decide(slots(EMPTY, 10, 20, EMPTY, 30), 25, false);
+        Assert.assertEquals(2, decision.slot);
+        Assert.assertFalse(decision.storeShard);
+        Assert.assertEquals(0, decision.freed);
+        Assert.assertArrayEquals(new long[]{ 10, 20, 25, 30 }, decision.tags);
+
+        decision = decide(slots(EMPTY, 10, 20, 25, 30), 40, false);
+        Assert.assertEquals(0, decision.slot);
+        Assert.assertTrue(decision.storeShard);
+        Assert.assertEquals(-1, decision.clearShard);
+        Assert.assertTrue(decision.freedSlots[3]);
+        Assert.assertArrayEquals(new long[]{ 40, 20, 25 }, decision.tags);
+    }
+}
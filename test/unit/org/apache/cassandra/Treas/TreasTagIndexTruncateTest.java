@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.Treas;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.locator.InetAddressAndPort;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+public class TreasTagIndexTruncateTest extends CQLTester
+{
+    private static final int REPLICAS = 5;
+    private static final int WRITERS = 4;
+    private static final int KEYS = 100;
+
+    @BeforeClass
+    public static void setupRing() throws Throwable
+    {
+        for (int i = 1; i <= REPLICAS; i++)
+            StorageService.instance.getTokenMetadata().updateNormalToken(Murmur3Partitioner.instance.getRandomToken(),
+                                                                         InetAddressAndPort.getByName("127.0.0." + i));
+    }
+
+    private static Mutation write(TableMetadata table, int key, long tag)
+    {
+        Mutation.SimpleBuilder builder = Mutation.simpleBuilder(table.keyspace, table.partitioner.decorateKey(ByteBufferUtil.bytes("key" + key)));
+        builder.update(table)
+               .timestamp(FBUtilities.timestampMicros())
+               .row()
+               .add(TreasConfig.TAG_ONE, tag)
+               .add(TreasConfig.VAL_ONE, ByteBuffer.wrap(new byte[100]))
+               .add("field0", "");
+        return builder.build();
+    }
+
+    @Test
+    public void testTruncateWhileWriting() throws Throwable
+    {
+        String keyspace = createKeyspace("CREATE KEYSPACE %s WITH replication = { 'class' : 'SimpleStrategy', 'replication_factor' : " + REPLICAS + " }");
+        String name = createTable(keyspace, "CREATE TABLE %s (y_id text PRIMARY KEY, field0 text, " +
+                                            "tag1 bigint, field1 blob, tag2 bigint, field2 blob, tag3 bigint, field3 blob) " +
+                                            "WITH erasure_coding = {'data_shards': 3, 'parity_shards': 2, 'concurrency': 3, 'intersect': 3}");
+        ColumnFamilyStore cfs = Keyspace.open(keyspace).getColumnFamilyStore(name);
+        TableMetadata table = cfs.metadata();
+
+        AtomicLong tags = new AtomicLong();
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        try
+        {
+            // the writers keep the index they got before the truncations, as writes in progress do
+            TreasTagIndex index = TreasTagIndex.forTable(table);
+            List<Future<Long>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++)
+            {
+                int offset = w;
+                writers.add(executor.submit(() -> {
+                    long writes = 0;
+                    while (!stop.get())
+                        index.apply(write(table, (int) (writes++ * WRITERS + offset) % KEYS, tags.incrementAndGet()));
+                    return writes;
+                }));
+            }
+
+            for (int i = 0; i < 10; i++)
+            {
+                Thread.sleep(20);
+                cfs.truncateBlocking();
+            }
+            stop.set(true);
+            for (Future<Long> writer : writers)
+                Assert.assertTrue(writer.get() > 0);
+        }
+        finally
+        {
+            stop.set(true);
+            executor.shutdown();
+        }
+
+        // the index survives the truncations, and its entries match the data
+        long tag = tags.incrementAndGet();
+        TreasTagIndex.forTable(table).apply(write(table, 0, tag));
+        long hits = cfs.metric.treasTagIndexHits.getCount();
+        TreasTagIndex.forTable(table).apply(write(table, 0, tag + 1));
+        Assert.assertEquals(hits + 1, cfs.metric.treasTagIndexHits.getCount());
+
+        cfs.truncateBlocking();
+        assertEmpty(executeFormattedQuery(String.format("SELECT * FROM %s.%s", keyspace, name)));
+        TreasTagIndex.forTable(table).apply(write(table, 0, tag + 2));
+        assertRows(executeFormattedQuery(String.format("SELECT tag1, tag2, tag3 FROM %s.%s WHERE y_id = 'key0'", keyspace, name)),
+                   row(tag + 2, null, null));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+
+public class ChunkCacheCachedOnlyTest extends CQLTester
+{
+    private boolean readCachedOnly(int k)
+    {
+        return ChunkCache.readCachedOnly(() -> {
+            try
+            {
+                assertRows(execute("SELECT v FROM %s WHERE k = ?", k), row("value" + k));
+            }
+            catch (Throwable t)
+            {
+                throw new RuntimeException(t);
+            }
+        });
+    }
+
+    @Test
+    public void testReadCachedOnly() throws Throwable
+    {
+        Assume.assumeTrue(ChunkCache.instance != null);
+        ChunkCache cache = ChunkCache.instance;
+
+        // the default compression reads the data through the cache even when it is mmapped
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v text)");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        for (int i = 0; i < 100; i++)
+            execute("INSERT INTO %s (k, v) VALUES (?, ?)", i, "value" + i);
+
+        // memtables are always read
+        Assert.assertTrue(readCachedOnly(1));
+
+        cfs.forceBlockingFlush();
+        cache.enable(true);
+
+        // a cold chunk aborts the read, without adding it to the cache
+        Assert.assertFalse(readCachedOnly(1));
+        Assert.assertEquals(0, cache.size());
+
+        // the read is run again normally, after which the chunk is cached
+        assertRows(execute("SELECT v FROM %s WHERE k = ?", 1), row("value1"));
+        Assert.assertTrue(cache.size() > 0);
+        Assert.assertTrue(readCachedOnly(1));
+
+        // other failures are not taken for misses
+        try
+        {
+            ChunkCache.readCachedOnly(() -> { throw new IllegalStateException(); });
+            Assert.fail();
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+        // and the thread reads from disk again afterwards
+        cache.enable(true);
+        assertRows(execute("SELECT v FROM %s WHERE k = ?", 1), row("value1"));
+    }
+}
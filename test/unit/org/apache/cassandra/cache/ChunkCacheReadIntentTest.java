@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.io.util.ReadIntent;
+import org.apache.cassandra.metrics.CacheMissMetrics;
+
+public class ChunkCacheReadIntentTest extends CQLTester
+{
+    @Test
+    public void testScansAndCompactionDoNotAdmitChunks() throws Throwable
+    {
+        Assume.assumeTrue(ChunkCache.instance != null);
+        ChunkCache cache = ChunkCache.instance;
+
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v text)");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        for (int i = 0; i < 100; i++)
+            execute("INSERT INTO %s (k, v) VALUES (?, ?)", i, "value" + i);
+        cfs.forceBlockingFlush();
+        cache.enable(true);
+
+        CacheMissMetrics.IntentMetrics pointRead = cache.metrics.forIntent(ReadIntent.POINT_READ);
+        CacheMissMetrics.IntentMetrics rangeScan = cache.metrics.forIntent(ReadIntent.RANGE_SCAN);
+        CacheMissMetrics.IntentMetrics compaction = cache.metrics.forIntent(ReadIntent.COMPACTION);
+
+        // a range read on an empty cache misses every chunk, and leaves none behind
+        Assert.assertEquals(100, execute("SELECT * FROM %s").size());
+        Assert.assertTrue(rangeScan.requests.getCount() > 0);
+        Assert.assertEquals(rangeScan.requests.getCount(), rangeScan.misses.getCount());
+        Assert.assertEquals(0, cache.size());
+
+        // a point read caches what it reads, which later range reads use
+        assertRows(execute("SELECT v FROM %s WHERE k = ?", 7), row("value7"));
+        Assert.assertTrue(pointRead.misses.getCount() > 0);
+        Assert.assertTrue(cache.size() > 0);
+        long rangeScanMisses = rangeScan.misses.getCount();
+        long rangeScanRequests = rangeScan.requests.getCount();
+        Assert.assertEquals(100, execute("SELECT * FROM %s").size());
+        Assert.assertTrue(rangeScan.misses.getCount() - rangeScanMisses < rangeScan.requests.getCount() - rangeScanRequests);
+
+        int cached = cache.size();
+        execute("INSERT INTO %s (k, v) VALUES (?, ?)", 100, "value100");
+        cfs.forceBlockingFlush();
+        cfs.forceMajorCompaction();
+        // compaction reads the new sstable, which nothing has cached, without caching it either
+        Assert.assertTrue(compaction.misses.getCount() > 0);
+        Assert.assertTrue(cache.size() <= cached);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.db.marshal.AsciiType;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.schema.TableMetadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapKeyCacheTest
+{
+    private static TableMetadata metadata;
+
+    @BeforeClass
+    public static void setup()
+    {
+        DatabaseDescriptor.daemonInitialization();
+        metadata = TableMetadata.builder("ks", "tbl").addPartitionKeyColumn("pk", AsciiType.instance).build();
+    }
+
+    private static KeyCacheKey key(int generation, String key)
+    {
+        Descriptor descriptor = new Descriptor(new File("/tmp"), "ks", "tbl", generation);
+        return new KeyCacheKey(metadata, descriptor, ByteBuffer.wrap(key.getBytes()));
+    }
+
+    @Test
+    public void testPutGetRemove()
+    {
+        OffHeapKeyCache cache = new OffHeapKeyCache(1 << 20);
+        cache.put(key(1, "a"), new RowIndexEntry<>(10));
+        cache.put(key(2, "a"), new RowIndexEntry<>(20));
+
+        assertEquals(10, cache.get(key(1, "a")).position);
+        assertEquals(20, cache.get(key(2, "a")).position);
+        assertNull(cache.get(key(1, "b")));
+        assertNull(cache.get(key(3, "a")));
+
+        assertFalse(cache.putIfAbsent(key(1, "a"), new RowIndexEntry<>(11)));
+        assertEquals(10, cache.get(key(1, "a")).position);
+        assertTrue(cache.replace(key(1, "a"), new RowIndexEntry<>(10), new RowIndexEntry<>(12)));
+        assertEquals(12, cache.get(key(1, "a")).position);
+
+        cache.remove(key(1, "a"));
+        assertNull(cache.get(key(1, "a")));
+        assertEquals(1, cache.size());
+        assertEquals(OffHeapKeyCache.SLOT_SIZE, cache.weightedSize());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(key(2, "a")));
+    }
+
+    @Test
+    public void testLongKeysAreNotCached()
+    {
+        OffHeapKeyCache cache = new OffHeapKeyCache(1 << 20);
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i <= OffHeapKeyCache.MAX_KEY_LENGTH; i++)
+            key.append('k');
+        cache.put(key(1, key.toString()), new RowIndexEntry<>(10));
+        assertNull(cache.get(key(1, key.toString())));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEviction()
+    {
+        long capacity = 1 << 16;
+        OffHeapKeyCache cache = new OffHeapKeyCache(capacity);
+        Map<KeyCacheKey, Long> positions = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++)
+        {
+            KeyCacheKey key = key(random.nextInt(10), Integer.toString(i));
+            cache.put(key, new RowIndexEntry<>(i));
+            positions.put(key, (long) i);
+            // the hot key stays cached, as it is read more often than the hand goes past it
+            KeyCacheKey hot = key(0, "hot");
+            if (i == 0)
+                cache.put(hot, new RowIndexEntry<>(1000000));
+            assertNotNull(cache.get(hot));
+        }
+        assertTrue(cache.weightedSize() <= capacity);
+
+        int size = 0;
+        for (Iterator<KeyCacheKey> iterator = cache.keyIterator(); iterator.hasNext(); size++)
+        {
+            KeyCacheKey key = iterator.next();
+            if (positions.containsKey(key))
+                assertEquals((long) positions.get(key), cache.get(key).position);
+        }
+        assertEquals(cache.size(), size);
+
+        // the capacity can shrink, keeping the entries that fit
+        cache.setCapacity(capacity / 4);
+        assertTrue(cache.size() > 0);
+        assertTrue(cache.weightedSize() <= capacity / 4);
+
+        for (Iterator<KeyCacheKey> iterator = cache.keyIterator(); iterator.hasNext(); )
+        {
+            iterator.next();
+            iterator.remove();
+        }
+        assertEquals(0, cache.size());
+    }
+}
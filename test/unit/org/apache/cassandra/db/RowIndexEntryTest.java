@@ -54,6 +54,7 @@ import org.apache.cassandra.db.rows.UnfilteredSerializer;
 import org.apache.cassandra.dht.Murmur3Partitioner;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.IndexInfo;
+import org.apache.cassandra.io.sstable.RowIndexTrie;
 import org.apache.cassandra.io.sstable.format.SSTableFlushObserver;
 import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.sstable.format.big.BigFormat;
@@ -190,7 +191,7 @@ public class RowIndexEntryTest extends CQLTester
                                           deletionInfo, columnIndex.headerLength, columnIndex.columnIndexCount,
                                           columnIndex.indexInfoSerializedSize(),
                                           columnIndex.indexSamples(), columnIndex.offsets(),
-                                          rieSerializer.indexInfoSerializer());
+                                          rieSerializer.indexInfoSerializer(), version);
             rieSerializer.serialize(rieNew, rieOutput, columnIndex.buffer());
             rieNewSerialized = rieOutput.buffer().duplicate();
 
@@ -439,7 +440,7 @@ public class RowIndexEntryTest extends CQLTester
 
         ByteBuffer bb = buffer.buffer();
         DataInputBuffer input = new DataInputBuffer(bb, false);
-        serializationCheck(withIndex, indexSerializer, bb, input);
+        serializationCheck(withIndex, serializer, indexSerializer, bb, input);
 
         // test with an output stream that doesn't support a file-pointer
         buffer = new DataOutputBuffer()
@@ -457,7 +458,7 @@ public class RowIndexEntryTest extends CQLTester
         serializer.serialize(withIndex, buffer);
         bb = buffer.buffer();
         input = new DataInputBuffer(bb, false);
-        serializationCheck(withIndex, indexSerializer, bb, input);
+        serializationCheck(withIndex, serializer, indexSerializer, bb, input);
 
         //
 
@@ -467,10 +468,13 @@ public class RowIndexEntryTest extends CQLTester
         Assert.assertEquals(0, bb.remaining());
     }
 
-    private static void serializationCheck(Pre_C_11206_RowIndexEntry withIndex, IndexInfo.Serializer indexSerializer, ByteBuffer bb, DataInputBuffer input) throws IOException
+    private static void serializationCheck(Pre_C_11206_RowIndexEntry withIndex, Pre_C_11206_RowIndexEntry.Serializer serializer,
+                                           IndexInfo.Serializer indexSerializer, ByteBuffer bb, DataInputBuffer input) throws IOException
     {
+        byte[] rowIndexTrie = serializer.rowIndexTrie(withIndex.columnsIndex());
+
         Assert.assertEquals(0xdeadbeef, input.readUnsignedVInt());
-        Assert.assertEquals(withIndex.promotedSize(indexSerializer), input.readUnsignedVInt());
+        Assert.assertEquals(withIndex.promotedSize(indexSerializer) + rowIndexTrie.length, input.readUnsignedVInt());
 
         Assert.assertEquals(withIndex.headerLength(), input.readUnsignedVInt());
         Assert.assertEquals(withIndex.deletionTime(), DeletionTime.serializer.deserialize(input));
@@ -494,6 +498,10 @@ public class RowIndexEntryTest extends CQLTester
             Assert.assertEquals(withIndex.columnsIndex().get(i).lastName, info.lastName);
         }
 
+        byte[] serializedRowIndexTrie = new byte[rowIndexTrie.length];
+        input.readFully(serializedRowIndexTrie);
+        Assert.assertArrayEquals(rowIndexTrie, serializedRowIndexTrie);
+
         for (int i = 0; i < withIndex.columnsIndex().size(); i++)
             Assert.assertEquals(offsets[i], input.readInt());
 
@@ -568,17 +576,21 @@ public class RowIndexEntryTest extends CQLTester
         {
             private final IndexInfo.Serializer idxSerializer;
             private final Version version;
+            private final List<AbstractType<?>> clusteringTypes;
 
             Serializer(TableMetadata metadata, Version version, SerializationHeader header)
             {
                 this.idxSerializer = IndexInfo.serializer(version, header);
                 this.version = version;
+                this.clusteringTypes = header.clusteringTypes();
             }
 
             public void serialize(Pre_C_11206_RowIndexEntry rie, DataOutputPlus out) throws IOException
             {
+                byte[] rowIndexTrie = rowIndexTrie(rie.columnsIndex());
+
                 out.writeUnsignedVInt(rie.position);
-                out.writeUnsignedVInt(rie.promotedSize(idxSerializer));
+                out.writeUnsignedVInt(rie.promotedSize(idxSerializer) + rowIndexTrie.length);
 
                 if (rie.isIndexed())
                 {
@@ -617,11 +629,48 @@ public class RowIndexEntryTest extends CQLTester
                         }
                     }
 
+                    out.write(rowIndexTrie);
+
                     for (int off : offsets)
                         out.writeInt(off);
                 }
             }
 
+            /**
+             * Since version "nc", the IndexInfo objects are followed by the position of the root of a RowIndexTrie,
+             * or -1 if there is none, which is preceded by the trie itself for the entries too large to be cached on
+             * heap. Returns these bytes, or nothing for the older versions.
+             */
+            byte[] rowIndexTrie(List<IndexInfo> columnsIndex) throws IOException
+            {
+                if (!version.hasRowIndexTrie() || columnsIndex.isEmpty())
+                    return new byte[0];
+
+                int indexedSize = columnsIndex.size() * TypeSizes.sizeof(0);
+                for (IndexInfo info : columnsIndex)
+                    indexedSize += idxSerializer.serializedSize(info);
+
+                try (DataOutputBuffer buffer = new DataOutputBuffer())
+                {
+                    if (indexedSize <= DatabaseDescriptor.getColumnIndexCacheSize() || !ByteComparableClustering.supports(clusteringTypes))
+                    {
+                        RowIndexTrie.writeNone(buffer);
+                        return buffer.toByteArray();
+                    }
+
+                    // the position of the root is relative to the first IndexInfo object
+                    RowIndexTrie.Builder builder = new RowIndexTrie.Builder(clusteringTypes);
+                    for (IndexInfo info : columnsIndex)
+                    {
+                        idxSerializer.serialize(info, buffer);
+                        builder.add(info);
+                    }
+                    int start = buffer.getLength();
+                    builder.write(buffer);
+                    return Arrays.copyOfRange(buffer.getData(), start, buffer.getLength());
+                }
+            }
+
             public Pre_C_11206_RowIndexEntry deserialize(DataInputPlus in) throws IOException
             {
                 long position = in.readUnsignedVInt();
@@ -629,14 +678,16 @@ public class RowIndexEntryTest extends CQLTester
                 int size = (int)in.readUnsignedVInt();
                 if (size > 0)
                 {
-                    long headerLength = in.readUnsignedVInt();
-                    DeletionTime deletionTime = DeletionTime.serializer.deserialize(in);
-                    int entries = (int)in.readUnsignedVInt();
+                    TrackedDataInputPlus trackedIn = new TrackedDataInputPlus(in);
+                    long headerLength = trackedIn.readUnsignedVInt();
+                    DeletionTime deletionTime = DeletionTime.serializer.deserialize(trackedIn);
+                    int entries = (int)trackedIn.readUnsignedVInt();
                     List<IndexInfo> columnsIndex = new ArrayList<>(entries);
                     for (int i = 0; i < entries; i++)
-                        columnsIndex.add(idxSerializer.deserialize(in));
+                        columnsIndex.add(idxSerializer.deserialize(trackedIn));
 
-                    in.skipBytesFully(entries * TypeSizes.sizeof(0));
+                    // skips the row index trie, if any, along with the offsets
+                    in.skipBytesFully(size - (int) trackedIn.getBytesRead());
 
                     return new Pre_C_11206_RowIndexEntry.IndexedEntry(position, deletionTime, headerLength, columnsIndex);
                 }
@@ -669,7 +720,7 @@ public class RowIndexEntryTest extends CQLTester
                 in.skipBytesFully(size);
             }
 
-            public int serializedSize(Pre_C_11206_RowIndexEntry rie)
+            public int serializedSize(Pre_C_11206_RowIndexEntry rie) throws IOException
             {
                 int indexedSize = 0;
                 if (rie.isIndexed())
@@ -683,6 +734,7 @@ public class RowIndexEntryTest extends CQLTester
                     for (IndexInfo info : index)
                         indexedSize += idxSerializer.serializedSize(info);
 
+                    indexedSize += rowIndexTrie(index).length;
                     indexedSize += index.size() * TypeSizes.sizeof(0);
                 }
 
@@ -38,9 +38,9 @@ public class BatchCommitLogTest extends CommitLogTest
 {
     private static final long CL_BATCH_SYNC_WINDOW = 1000; // 1 second
     
-    public BatchCommitLogTest(ParameterizedClass commitLogCompression, EncryptionContext encryptionContext)
+    public BatchCommitLogTest(ParameterizedClass commitLogCompression, EncryptionContext encryptionContext, boolean directIO)
     {
-        super(commitLogCompression, encryptionContext);
+        super(commitLogCompression, encryptionContext, directIO);
     }
 
     @BeforeClass
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.db.compaction.CompactionManager;
+import org.apache.cassandra.db.marshal.AsciiType;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.schema.KeyspaceParams;
+
+/**
+ * Tests that segments allocated from by many writers at once, with allocations that overshoot their end, are closed
+ * exactly where their data ends, so that replay reads all of it and nothing past it.
+ */
+public class CommitLogSegmentAllocationTest
+{
+    private static final String KEYSPACE1 = "CommitLogTest";
+    private static final String STANDARD1 = "CommitLogSegmentAllocationTest";
+
+    private static Mutation mutation;
+
+    @BeforeClass
+    public static void setUp()
+    {
+        DatabaseDescriptor.daemonInitialization();
+        DatabaseDescriptor.setCommitLogSegmentSize(1);
+        DatabaseDescriptor.setCommitLogSync(Config.CommitLogSync.periodic);
+        DatabaseDescriptor.setCommitLogSyncPeriod(10000 * 1000);
+        // keep the system keyspaces' mutations out of the segments, so that they only hold the ones written here
+        KeyspaceParams.DEFAULT_LOCAL_DURABLE_WRITES = false;
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE1,
+                                    KeyspaceParams.simple(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, STANDARD1, 0, AsciiType.instance, BytesType.instance));
+
+        CompactionManager.instance.disableAutoCompaction();
+
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(STANDARD1);
+        byte[] entropy = new byte[1024];
+        new Random().nextBytes(entropy);
+        mutation = new RowUpdateBuilder(cfs.metadata(), 0, "k")
+                   .clustering("bytes")
+                   .add("val", ByteBuffer.wrap(entropy))
+                   .build();
+    }
+
+    @Test
+    public void testConcurrentAllocationPastEnd() throws Exception
+    {
+        CommitLog.instance.resetUnsafe(true);
+
+        int threads = 16;
+        int mutationsPerThread = 1000;
+        // the end of the last allocation of each segment
+        Map<Long, Integer> allocationEnds = new ConcurrentHashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < mutationsPerThread; i++)
+                {
+                    CommitLogPosition position = CommitLog.instance.add(mutation);
+                    allocationEnds.merge(position.segmentId, position.position, Math::max);
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+
+        // the mutations fill many segments, each closed when one of the writers overshot its end
+        Assert.assertTrue(allocationEnds.size() > 1);
+        CommitLog.instance.sync(true);
+
+        EndTrackingHandler handler = readSegments();
+        Assert.assertEquals(threads * mutationsPerThread, handler.mutations);
+        Assert.assertEquals(allocationEnds, handler.entryEnds);
+    }
+
+    @Test
+    public void testDiscardUnusedTailAfterFailedAllocations() throws Exception
+    {
+        CommitLog.instance.resetUnsafe(true);
+
+        CommitLogSegment segment = CommitLog.instance.segmentManager.allocatingFrom();
+        CommitLogPosition last = null;
+        for (int i = 0; i < 10; i++)
+            last = CommitLog.instance.add(mutation);
+        Assert.assertEquals(segment.id, last.segmentId);
+
+        // allocations larger than the segment all fail, but together push its allocation position past Integer.MAX_VALUE
+        int threads = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 100; i++)
+                    Assert.assertNull(segment.allocate(mutation, DatabaseDescriptor.getCommitLogSegmentSize()));
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+
+        Assert.assertTrue(segment.getCurrentCommitLogPosition().position > last.position);
+
+        // the next mutation moves on to a new segment, discarding the tail of the first one
+        Assert.assertNotEquals(segment.id, CommitLog.instance.add(mutation).segmentId);
+        Assert.assertFalse(segment.isStillAllocating());
+        CommitLog.instance.sync(true);
+
+        // which still ends with its last mutation
+        EndTrackingHandler handler = readSegments();
+        Assert.assertEquals(11, handler.mutations);
+        Assert.assertEquals(last.position, (int) handler.entryEnds.get(segment.id));
+    }
+
+    private static EndTrackingHandler readSegments() throws IOException
+    {
+        EndTrackingHandler handler = new EndTrackingHandler();
+        CommitLogReader reader = new CommitLogReader();
+        for (File file : CommitLogReaderTest.getCommitLogs())
+            reader.readCommitLogSegment(handler, file, CommitLogReader.ALL_MUTATIONS, false);
+        Assert.assertFalse(handler.sawError);
+        return handler;
+    }
+
+    private static class EndTrackingHandler implements CommitLogReadHandler
+    {
+        // the end of the last entry read from each segment
+        final Map<Long, Integer> entryEnds = new HashMap<>();
+        int mutations;
+        boolean sawError;
+
+        public boolean shouldSkipSegmentOnError(CommitLogReadException exception)
+        {
+            sawError = true;
+            return false;
+        }
+
+        public void handleUnrecoverableError(CommitLogReadException exception)
+        {
+            sawError = true;
+        }
+
+        public void handleMutation(Mutation m, int size, int entryLocation, CommitLogDescriptor desc)
+        {
+            mutations++;
+            entryEnds.merge(desc.id, entryLocation, Math::max);
+        }
+    }
+}
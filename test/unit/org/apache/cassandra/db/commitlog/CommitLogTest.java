@@ -83,21 +83,23 @@ public abstract class CommitLogTest
     private static JVMStabilityInspector.Killer oldKiller;
     private static KillerForTests testKiller;
 
-    public CommitLogTest(ParameterizedClass commitLogCompression, EncryptionContext encryptionContext)
+    public CommitLogTest(ParameterizedClass commitLogCompression, EncryptionContext encryptionContext, boolean directIO)
     {
         DatabaseDescriptor.setCommitLogCompression(commitLogCompression);
         DatabaseDescriptor.setEncryptionContext(encryptionContext);
+        DatabaseDescriptor.setCommitLogDirectIO(directIO);
     }
 
     @Parameters()
     public static Collection<Object[]> generateData()
     {
         return Arrays.asList(new Object[][]{
-            {null, EncryptionContextGenerator.createDisabledContext()}, // No compression, no encryption
-            {null, EncryptionContextGenerator.createContext(true)}, // Encryption
-            {new ParameterizedClass(LZ4Compressor.class.getName(), Collections.emptyMap()), EncryptionContextGenerator.createDisabledContext()},
-            {new ParameterizedClass(SnappyCompressor.class.getName(), Collections.emptyMap()), EncryptionContextGenerator.createDisabledContext()},
-            {new ParameterizedClass(DeflateCompressor.class.getName(), Collections.emptyMap()), EncryptionContextGenerator.createDisabledContext()}});
+            {null, EncryptionContextGenerator.createDisabledContext(), false}, // No compression, no encryption
+            {null, EncryptionContextGenerator.createDisabledContext(), true}, // Direct I/O
+            {null, EncryptionContextGenerator.createContext(true), false}, // Encryption
+            {new ParameterizedClass(LZ4Compressor.class.getName(), Collections.emptyMap()), EncryptionContextGenerator.createDisabledContext(), false},
+            {new ParameterizedClass(SnappyCompressor.class.getName(), Collections.emptyMap()), EncryptionContextGenerator.createDisabledContext(), false},
+            {new ParameterizedClass(DeflateCompressor.class.getName(), Collections.emptyMap()), EncryptionContextGenerator.createDisabledContext(), false}});
     }
 
     public static void beforeClass() throws ConfigurationException
@@ -847,6 +849,38 @@ public abstract class CommitLogTest
         Assert.assertEquals(1, CommitLog.instance.resetUnsafe(false));
     }
 
+    @Test
+    public void testReplayFromRecycledSegmentFile() throws Exception
+    {
+        Assume.assumeTrue(CommitLog.instance.configuration.useDirectIO());
+
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(STANDARD1);
+        File directory = new File(CommitLog.instance.segmentManager.storageDirectory);
+        FilenameFilter recycled = (dir, name) -> name.startsWith(CommitLogSegmentManagerStandard.RECYCLED_FILE_PREFIX);
+
+        // flush the data of the first segment, so that it is discarded and its file kept for reuse
+        new RowUpdateBuilder(cfs.metadata(), 0, "k")
+            .clustering("flushed").add("val", ByteBuffer.allocate(100))
+            .build()
+            .apply();
+        CommitLog.instance.forceRecycleAllSegments();
+
+        // the next segments take the recycled files over
+        for (int i = 0 ; i < 3 ; i++)
+        {
+            CommitLog.instance.add(new RowUpdateBuilder(cfs.metadata(), 0, "k")
+                                   .clustering("c" + i).add("val", ByteBuffer.allocate(100))
+                                   .build());
+            CommitLog.instance.segmentManager.advanceAllocatingFrom(CommitLog.instance.segmentManager.allocatingFrom());
+        }
+        Assert.assertEquals(0, directory.listFiles(recycled).length);
+
+        // only what was written to the reused files since is replayed after a restart
+        CommitLog.instance.sync(true);
+        System.setProperty("cassandra.replayList", KEYSPACE1 + "." + STANDARD1);
+        Assert.assertEquals(3, CommitLog.instance.resetUnsafe(false));
+    }
+
     BiConsumer<ColumnFamilyStore, Memtable> flush = (cfs, current) ->
     {
         try
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.memtable;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Memtable;
+
+public class MemtableShardingTest extends CQLTester
+{
+    private static final int ROWS = 200;
+
+    @Test
+    public void testShardedWritesReadsAndFlush() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v int) WITH memtable_shards = 4");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        cfs.forceBlockingFlush();
+
+        Memtable memtable = cfs.getTracker().getView().getCurrentMemtable();
+        Assert.assertEquals(4, memtable.shardCount());
+
+        for (int i = 0; i < ROWS; i++)
+            execute("INSERT INTO %s (k, v) VALUES (?, ?)", i, i);
+
+        Assert.assertEquals(ROWS, memtable.partitionCount());
+        long liveDataSize = 0;
+        int nonEmpty = 0;
+        for (long size : memtable.getShardLiveDataSizes())
+        {
+            liveDataSize += size;
+            if (size > 0)
+                nonEmpty++;
+        }
+        Assert.assertEquals(memtable.getLiveDataSize(), liveDataSize);
+        Assert.assertEquals(4, nonEmpty);
+
+        assertRowsInTokenOrder();
+        for (int i = 0; i < ROWS; i += 17)
+            assertRows(execute("SELECT v FROM %s WHERE k = ?", i), row(i));
+
+        cfs.forceBlockingFlush();
+        Assert.assertEquals(4, cfs.getLiveSSTables().size());
+        assertRowsInTokenOrder();
+    }
+
+    @Test
+    public void testShardCountOnlyStoredWhenSet() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v int)");
+        String query = "SELECT memtable_shards FROM system_schema.tables WHERE keyspace_name = ? AND table_name = ?";
+        Assert.assertFalse(execute(query, keyspace(), currentTable()).one().has("memtable_shards"));
+
+        alterTable("ALTER TABLE %s WITH memtable_shards = 4");
+        Assert.assertEquals(4, execute(query, keyspace(), currentTable()).one().getInt("memtable_shards"));
+
+        alterTable("ALTER TABLE %s WITH memtable_shards = 0");
+        Assert.assertFalse(execute(query, keyspace(), currentTable()).one().has("memtable_shards"));
+        Assert.assertEquals(0, getCurrentColumnFamilyStore().metadata().params.memtableShards);
+    }
+
+    private void assertRowsInTokenOrder() throws Throwable
+    {
+        UntypedResultSet rows = execute("SELECT token(k) AS t FROM %s");
+        Assert.assertEquals(ROWS, rows.size());
+        long previous = Long.MIN_VALUE;
+        for (UntypedResultSet.Row row : rows)
+        {
+            long token = row.getLong("t");
+            Assert.assertTrue(token >= previous);
+            previous = token;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.memtable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.cassandra.db.BufferDecoratedKey;
+import org.apache.cassandra.db.ByteComparableKey;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
+
+public class MemtableTrieTest
+{
+    private static final long[] TOKENS = { Long.MIN_VALUE, -1000, -1, 0, 1, 255, 256, 1000, Long.MAX_VALUE };
+
+    private static DecoratedKey randomKey(Random random)
+    {
+        // few tokens and short keys full of zeros, to exercise shared prefixes and escaping
+        byte[] bytes = new byte[random.nextInt(6)];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) (random.nextBoolean() ? 0 : random.nextInt(256));
+        return new BufferDecoratedKey(new LongToken(TOKENS[random.nextInt(TOKENS.length)]), ByteBuffer.wrap(bytes));
+    }
+
+    private static PartitionPosition randomPosition(Random random)
+    {
+        switch (random.nextInt(3))
+        {
+            case 0:
+                return new LongToken(TOKENS[random.nextInt(TOKENS.length)]).minKeyBound();
+            case 1:
+                return new LongToken(TOKENS[random.nextInt(TOKENS.length)]).maxKeyBound();
+            default:
+                return randomKey(random);
+        }
+    }
+
+    private static List<Integer> scan(MemtableTrie trie, MemtableTrie.Bound lower, MemtableTrie.Bound upper)
+    {
+        List<Integer> values = new ArrayList<>();
+        MemtableTrie.Cursor cursor = trie.cursor(lower, upper);
+        for (int value = cursor.advance(); value != MemtableTrie.NOT_FOUND; value = cursor.advance())
+            values.add(value);
+        return values;
+    }
+
+    @Test
+    public void testMatchesSortedMap()
+    {
+        Random random = new Random(42);
+        MemtableTrie trie = new MemtableTrie();
+        NavigableMap<PartitionPosition, Integer> expected = new TreeMap<>();
+        try
+        {
+            for (int i = 0; i < 2000; i++)
+            {
+                DecoratedKey key = randomKey(random);
+                Integer previous = expected.putIfAbsent(key, i);
+                int existing = trie.putIfAbsent(ByteComparableKey.encode(key), i);
+                Assert.assertEquals(previous == null ? MemtableTrie.NOT_FOUND : previous, existing);
+            }
+
+            for (int i = 0; i < 500; i++)
+            {
+                DecoratedKey key = randomKey(random);
+                Integer value = expected.get(key);
+                Assert.assertEquals(value == null ? MemtableTrie.NOT_FOUND : value, trie.get(ByteComparableKey.encode(key)));
+            }
+
+            Assert.assertEquals(new ArrayList<>(expected.values()), scan(trie, null, null));
+            for (int i = 0; i < 2000; i++)
+            {
+                PartitionPosition from = randomPosition(random);
+                PartitionPosition to = randomPosition(random);
+                if (from.compareTo(to) > 0)
+                {
+                    PartitionPosition swap = from;
+                    from = to;
+                    to = swap;
+                }
+                boolean fromInclusive = random.nextBoolean();
+                boolean toInclusive = random.nextBoolean();
+                if (from.compareTo(to) == 0)
+                    fromInclusive = toInclusive = true;
+
+                List<Integer> values = scan(trie,
+                                            TriePartitionMap.bound(from, fromInclusive, true),
+                                            TriePartitionMap.bound(to, toInclusive, false));
+                Assert.assertEquals(from + " " + fromInclusive + " " + to + " " + toInclusive,
+                                    new ArrayList<>(expected.subMap(from, fromInclusive, to, toInclusive).values()),
+                                    values);
+                Assert.assertEquals(new ArrayList<>(expected.tailMap(from, fromInclusive).values()),
+                                    scan(trie, TriePartitionMap.bound(from, fromInclusive, true), null));
+                Assert.assertEquals(new ArrayList<>(expected.headMap(to, toInclusive).values()),
+                                    scan(trie, null, TriePartitionMap.bound(to, toInclusive, false)));
+            }
+        }
+        finally
+        {
+            trie.release();
+        }
+    }
+
+    @Test
+    public void testReadsWhileWriting() throws InterruptedException
+    {
+        MemtableTrie trie = new MemtableTrie();
+        int count = 50000;
+        Thread writer = new Thread(() -> {
+            Random random = new Random(7);
+            for (int i = 0; i < count; i++)
+            {
+                byte[] key = ByteComparableKey.encode(new BufferDecoratedKey(new LongToken(random.nextLong()), ByteBuffer.allocate(0)));
+                trie.putIfAbsent(key, i);
+            }
+        });
+        try
+        {
+            writer.start();
+            while (writer.isAlive())
+            {
+                // whatever has been published so far must come out whole and without repeats
+                List<Integer> values = scan(trie, null, null);
+                Assert.assertEquals(values.size(), values.stream().distinct().count());
+            }
+            writer.join();
+            Assert.assertEquals(count, scan(trie, null, null).size());
+        }
+        finally
+        {
+            writer.join();
+            trie.release();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.memtable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.BufferDecoratedKey;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.db.partitions.AtomicBTreePartition;
+import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
+
+public class TriePartitionMapTest
+{
+    // the partitions have no allocator to read their key back with, the key each was created for is kept here
+    private final Map<AtomicBTreePartition, DecoratedKey> partitionKeys = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    @BeforeClass
+    public static void setupDD()
+    {
+        DatabaseDescriptor.daemonInitialization();
+    }
+
+    private static DecoratedKey key(long token)
+    {
+        return new BufferDecoratedKey(new LongToken(token), ByteBuffer.allocate(0));
+    }
+
+    private AtomicBTreePartition partition(DecoratedKey key)
+    {
+        AtomicBTreePartition partition = new AtomicBTreePartition(null, key, null);
+        partitionKeys.put(partition, key);
+        return partition;
+    }
+
+    private List<DecoratedKey> keys(Iterable<AtomicBTreePartition> partitions)
+    {
+        List<DecoratedKey> keys = new ArrayList<>();
+        for (AtomicBTreePartition partition : partitions)
+            keys.add(partitionKeys.get(partition));
+        return keys;
+    }
+
+    @Test
+    public void testConcurrentWritersAcrossStripes() throws Exception
+    {
+        Random random = new Random(42);
+        long[] tokens = new long[20000];
+        for (int i = 0; i < tokens.length; i++)
+            tokens[i] = random.nextLong();
+
+        TriePartitionMap map = new TriePartitionMap();
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            // every key is written by two threads, only one of which adds its partition
+            List<Future<Integer>> added = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                int offset = t;
+                added.add(executor.submit(() -> {
+                    int count = 0;
+                    for (int i = 0; i < tokens.length; i++)
+                    {
+                        if (i % threads != offset && i % threads != (offset + 1) % threads)
+                            continue;
+                        DecoratedKey key = key(tokens[i]);
+                        AtomicBTreePartition existing = map.putIfAbsent(key, partition(key));
+                        if (existing == null)
+                            count++;
+                        else
+                            Assert.assertEquals(key, partitionKeys.get(existing));
+                    }
+                    return count;
+                }));
+            }
+
+            int total = 0;
+            for (Future<Integer> future : added)
+                total += future.get();
+
+            TreeSet<PartitionPosition> expected = new TreeSet<>();
+            for (long token : tokens)
+                expected.add(key(token));
+            Assert.assertEquals(expected.size(), total);
+            Assert.assertEquals(expected.size(), map.size());
+            Assert.assertEquals(new ArrayList<>(expected), keys(map.subMap(null, true, null, true)));
+
+            for (int i = 0; i < 1000; i++)
+            {
+                PartitionPosition from = new LongToken(random.nextLong()).minKeyBound();
+                PartitionPosition to = random.nextBoolean() ? new LongToken(random.nextLong()).maxKeyBound() : key(tokens[random.nextInt(tokens.length)]);
+                if (from.compareTo(to) > 0)
+                {
+                    PartitionPosition swap = from;
+                    from = to;
+                    to = swap;
+                }
+                Assert.assertEquals(new ArrayList<>(expected.subSet(from, true, to, true)), keys(map.subMap(from, true, to, true)));
+                Assert.assertEquals(new ArrayList<>(expected.tailSet(from, true)), keys(map.subMap(from, true, null, true)));
+                Assert.assertEquals(new ArrayList<>(expected.headSet(to, true)), keys(map.subMap(null, true, to, true)));
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+            map.release();
+        }
+        Assert.assertEquals(0, map.offHeapSize());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.hints;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.Treas.ErasureCode;
+import org.apache.cassandra.Treas.TreasUtil;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.locator.InetAddressAndPort;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.service.StorageProxy;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+public class TreasHintTest extends CQLTester
+{
+    private static final int REPLICAS = 5;
+
+    @BeforeClass
+    public static void setupRing() throws Throwable
+    {
+        for (int i = 1; i <= REPLICAS; i++)
+            StorageService.instance.getTokenMetadata().updateNormalToken(Murmur3Partitioner.instance.getRandomToken(),
+                                                                         InetAddressAndPort.getByName("127.0.0." + i));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testReplayedHintHoldsTargetShard() throws Throwable
+    {
+        String keyspace = createKeyspace("CREATE KEYSPACE %s WITH replication = { 'class' : 'SimpleStrategy', 'replication_factor' : " + REPLICAS + " }");
+        String name = createTable(keyspace, "CREATE TABLE %s (y_id text PRIMARY KEY, field0 text, " +
+                                            "tag1 bigint, field1 blob, tag2 bigint, field2 blob, tag3 bigint, field3 blob) " +
+                                            "WITH erasure_coding = {'data_shards': 3, 'parity_shards': 2, 'concurrency': 3, 'intersect': 3}");
+        TableMetadata table = Keyspace.open(keyspace).getColumnFamilyStore(name).metadata();
+        DecoratedKey key = table.partitioner.decorateKey(ByteBufferUtil.bytes("key"));
+
+        // this node is the target of the hint, another replica coordinated the write
+        InetAddressAndPort local = FBUtilities.getBroadcastAddressAndPort();
+        List<InetAddressAndPort> owners = TreasUtil.shardOwners(table, key.getToken());
+        int localIndex = TreasUtil.shardIndex(owners, local);
+        int coordinatorIndex = (localIndex + 1) % REPLICAS;
+
+        byte[] value = new byte[1000];
+        new Random(0).nextBytes(value);
+        ByteBuffer[] shards = new ErasureCode(table.params.erasureCoding).encode(ByteBuffer.wrap(value));
+
+        Mutation.SimpleBuilder builder = Mutation.simpleBuilder(keyspace, key);
+        builder.update(table)
+               .timestamp(FBUtilities.timestampMicros())
+               .row()
+               .add("field0", ByteBufferUtil.bytesToHex(ByteBuffer.wrap(value)));
+        Mutation hinted = StorageProxy.treasHintMutation(builder.build(), 10L, shards, owners, local);
+        Assert.assertEquals(shards[localIndex], hinted.getPartitionUpdates().iterator().next().iterator().next()
+                                                      .getCell(table.getColumn(ByteBufferUtil.bytes("field1"))).value());
+
+        // a pending replica owns no shard, and is not hinted
+        Assert.assertNull(StorageProxy.treasHintMutation(builder.build(), 10L, shards, owners, InetAddressAndPort.getByName("127.0.0.10")));
+
+        // serialize the hint as it is stored, then replay it on the target
+        Hint hint = Hint.create(hinted, System.currentTimeMillis());
+        DataOutputBuffer out = new DataOutputBuffer();
+        Hint.serializer.serialize(hint, out, MessagingService.current_version);
+        Hint replayed = Hint.serializer.deserialize(new DataInputBuffer(out.buffer(), true), MessagingService.current_version);
+        Assert.assertTrue(replayed.isErasureCoded());
+
+        HintMessage message = new HintMessage(StorageService.instance.getLocalHostUUID(), replayed);
+        MessagingService.instance().getVerbHandler(MessagingService.Verb.HINT).doVerb(
+                MessageIn.create(owners.get(coordinatorIndex), message, Collections.emptyMap(), MessagingService.Verb.HINT, MessagingService.current_version),
+                -1);
+
+        UntypedResultSet rows = executeFormattedQuery(String.format("SELECT tag1, field1 FROM %s.%s WHERE y_id = 'key'", keyspace, name));
+        assertRows(rows, row(10L, shards[localIndex]));
+        Assert.assertNotEquals(shards[coordinatorIndex], rows.one().getBytes("field1"));
+    }
+}
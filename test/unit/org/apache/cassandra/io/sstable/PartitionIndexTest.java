@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.BufferDecoratedKey;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.FileHandle;
+import org.apache.cassandra.io.util.SequentialWriter;
+
+import static org.junit.Assert.*;
+
+public class PartitionIndexTest extends CQLTester
+{
+    private static DecoratedKey randomKey(Random random, int tokenRange)
+    {
+        // few distinct bytes and tokens, to have keys sharing long prefixes
+        byte[] bytes = new byte[random.nextInt(6)];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) (random.nextInt(4) - 1);
+        long token = tokenRange > 0 ? random.nextInt(tokenRange) : random.nextLong();
+        return new BufferDecoratedKey(new LongToken(token), ByteBuffer.wrap(bytes));
+    }
+
+    @Test
+    public void testAgainstSortedMap() throws IOException
+    {
+        Random random = new Random(1);
+        testAgainstSortedMap(random, 0, 0);
+        testAgainstSortedMap(random, 1, 0);
+        testAgainstSortedMap(random, 100000, 0);
+        testAgainstSortedMap(random, 20000, 10);
+        for (int i = 0; i < 20; i++)
+            testAgainstSortedMap(random, random.nextInt(3000), random.nextBoolean() ? 0 : 1 + random.nextInt(50));
+    }
+
+    private void testAgainstSortedMap(Random random, int count, int tokenRange) throws IOException
+    {
+        TreeMap<DecoratedKey, PartitionIndex.Entry> entries = new TreeMap<>();
+        for (int i = 0; i < count; i++)
+            entries.put(randomKey(random, tokenRange), null);
+
+        File file = File.createTempFile("partitions", ".db");
+        file.deleteOnExit();
+        Map<Long, Integer> ordinals = new HashMap<>();
+        List<DecoratedKey> keys = new ArrayList<>(entries.keySet());
+        try (SequentialWriter writer = new SequentialWriter(file))
+        {
+            PartitionIndexBuilder builder = new PartitionIndexBuilder(writer);
+            long indexPosition = 0;
+            for (DecoratedKey key : keys)
+            {
+                indexPosition += 1 + random.nextInt(1000);
+                PartitionIndex.Entry entry = new PartitionIndex.Entry(indexPosition, random.nextBoolean() ? -1 : random.nextInt(Integer.MAX_VALUE));
+                entries.put(key, entry);
+                ordinals.put(indexPosition, ordinals.size());
+                builder.addEntry(key, entry.indexPosition, entry.dataPosition);
+            }
+            builder.complete();
+            writer.finish();
+        }
+
+        try (FileHandle.Builder handle = new FileHandle.Builder(file.getPath()).bufferSize(PartitionIndex.PAGE_SIZE);
+             PartitionIndex index = PartitionIndex.load(handle.complete());
+             PartitionIndex.Reader reader = index.openReader())
+        {
+            for (Map.Entry<DecoratedKey, PartitionIndex.Entry> expected : entries.entrySet())
+            {
+                PartitionIndex.Entry entry = reader.exactCandidate(expected.getKey());
+                assertNotNull(entry);
+                assertEquals(expected.getValue().indexPosition, entry.indexPosition);
+                assertEquals(expected.getValue().dataPosition, entry.dataPosition);
+            }
+
+            for (int i = 0; i < 1000; i++)
+            {
+                DecoratedKey key = randomKey(random, tokenRange);
+                PartitionIndex.Entry entry = reader.exactCandidate(key);
+                if (entries.containsKey(key))
+                    assertEquals(entries.get(key).indexPosition, entry.indexPosition);
+                else
+                    assertTrue(entry == null || ordinals.containsKey(entry.indexPosition));
+
+                long token = tokenRange > 0 ? random.nextInt(tokenRange + 2) - 1 : random.nextLong();
+                checkFloor(reader, key, keys, ordinals);
+                checkFloor(reader, new LongToken(token).minKeyBound(), keys, ordinals);
+                checkFloor(reader, new LongToken(token).maxKeyBound(), keys, ordinals);
+            }
+            checkFloor(reader, new LongToken(Long.MIN_VALUE).minKeyBound(), keys, ordinals);
+            checkFloor(reader, new LongToken(Long.MAX_VALUE).maxKeyBound(), keys, ordinals);
+        }
+    }
+
+    /**
+     * Checks that a scan of the primary index from the floor entry finds the first key not before the position
+     * within two keys, which getPosition relies on.
+     */
+    private static void checkFloor(PartitionIndex.Reader reader, PartitionPosition position, List<DecoratedKey> keys, Map<Long, Integer> ordinals) throws IOException
+    {
+        int ceiling = Collections.binarySearch(keys, position);
+        if (ceiling < 0)
+            ceiling = -ceiling - 1;
+
+        PartitionIndex.Entry entry = reader.floor(position);
+        if (entry == null)
+        {
+            assertEquals(0, ceiling);
+            return;
+        }
+        assertTrue(ordinals.containsKey(entry.indexPosition));
+        int start = ordinals.get(entry.indexPosition);
+        assertTrue(position + " found " + start + " for " + ceiling, start == ceiling || start + 1 == ceiling);
+    }
+
+    @Test
+    public void testReads() throws Throwable
+    {
+        int columnIndexSize = DatabaseDescriptor.getColumnIndexSize();
+        // index the larger partitions, so that the index has entries with and without data positions
+        DatabaseDescriptor.setColumnIndexSize(1);
+        try
+        {
+            createTable("CREATE TABLE %s (k int, c int, v text, PRIMARY KEY (k, c))");
+            for (int k = 0; k < 1000; k += 2)
+            {
+                for (int c = 0; c < (k % 10 == 0 ? 300 : 1); c++)
+                    execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", k, c, "value" + c);
+            }
+            ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+            cfs.forceBlockingFlush();
+            SSTableReader sstable = cfs.getLiveSSTables().iterator().next();
+            assertTrue(sstable.hasPartitionIndex());
+            assertTrue(new File(sstable.descriptor.filenameFor(Component.PARTITION_INDEX)).exists());
+
+            for (int k = 0; k < 1000; k++)
+            {
+                UntypedResultSet result = execute("SELECT c FROM %s WHERE k = ?", k);
+                assertEquals(k % 2 != 0 ? 0 : k % 10 == 0 ? 300 : 1, result.size());
+            }
+
+            Random random = new Random(2);
+            for (int i = 0; i < 100; i++)
+            {
+                long left = random.nextLong();
+                long right = random.nextLong();
+                if (left > right)
+                {
+                    long swap = left;
+                    left = right;
+                    right = swap;
+                }
+                int expected = 0;
+                for (int k = 0; k < 1000; k += 2)
+                {
+                    long token = (Long) Murmur3Partitioner.instance.getToken(ByteBuffer.wrap(new byte[]{ (byte) (k >> 24), (byte) (k >> 16), (byte) (k >> 8), (byte) k })).getTokenValue();
+                    if (token > left && token <= right)
+                        expected++;
+                }
+                assertEquals(expected, execute("SELECT DISTINCT k FROM %s WHERE token(k) > ? AND token(k) <= ?", left, right).size());
+            }
+        }
+        finally
+        {
+            DatabaseDescriptor.setColumnIndexSize(columnIndexSize / 1024);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ByteComparableClustering;
+import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.db.ClusteringBound;
+import org.apache.cassandra.db.ClusteringComparator;
+import org.apache.cassandra.db.ClusteringPrefix;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.LongType;
+import org.apache.cassandra.db.marshal.ReversedType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.FileHandle;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.*;
+
+public class RowIndexTrieTest extends CQLTester
+{
+    private static final List<AbstractType<?>> TYPES = Arrays.asList(Int32Type.instance,
+                                                                     ReversedType.getInstance(UTF8Type.instance),
+                                                                     LongType.instance);
+    private static final ClusteringComparator COMPARATOR = new ClusteringComparator(TYPES);
+
+    private static ByteBuffer randomValue(Random random, int i)
+    {
+        if (random.nextInt(20) == 0)
+            return ByteBuffer.allocate(0);
+        switch (i)
+        {
+            case 0:
+                return Int32Type.instance.decompose(random.nextInt(7) - 3);
+            case 1:
+                byte[] bytes = new byte[random.nextInt(3)];
+                for (int j = 0; j < bytes.length; j++)
+                    bytes[j] = (byte) (random.nextInt(3) - 1);
+                return ByteBuffer.wrap(bytes);
+            default:
+                return LongType.instance.decompose(random.nextBoolean() ? random.nextLong() : random.nextInt(3) - 1);
+        }
+    }
+
+    private static ClusteringPrefix randomPrefix(Random random, boolean clustering)
+    {
+        int size = clustering ? TYPES.size() : random.nextInt(TYPES.size() + 1);
+        ByteBuffer[] values = new ByteBuffer[size];
+        for (int i = 0; i < size; i++)
+            values[i] = randomValue(random, i);
+        if (clustering)
+            return Clustering.make(values);
+        ClusteringPrefix.Kind[] kinds = { ClusteringPrefix.Kind.INCL_START_BOUND, ClusteringPrefix.Kind.EXCL_START_BOUND,
+                                          ClusteringPrefix.Kind.INCL_END_BOUND, ClusteringPrefix.Kind.EXCL_END_BOUND };
+        return ClusteringBound.create(kinds[random.nextInt(kinds.length)], values);
+    }
+
+    @Test
+    public void testEncodingOrder()
+    {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++)
+        {
+            ClusteringPrefix left = randomPrefix(random, random.nextBoolean());
+            ClusteringPrefix right = randomPrefix(random, random.nextBoolean());
+            int expected = Integer.signum(COMPARATOR.compare(left, right));
+            int actual = Integer.signum(FBUtilities.compareUnsigned(ByteComparableClustering.encode(TYPES, left),
+                                                                     ByteComparableClustering.encode(TYPES, right)));
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testAgainstBinarySearch() throws IOException
+    {
+        Random random = new Random(2);
+        for (int count : new int[]{ 2, 10, 1000, 20000 })
+        {
+            TreeSet<ClusteringPrefix> clusterings = new TreeSet<>(COMPARATOR);
+            while (clusterings.size() < count)
+                clusterings.add(randomPrefix(random, true));
+
+            List<ClusteringPrefix> rows = new ArrayList<>(clusterings);
+            List<IndexInfo> blocks = new ArrayList<>();
+            for (int i = 0; i < rows.size(); )
+            {
+                int end = Math.min(rows.size(), i + 1 + random.nextInt(10));
+                blocks.add(new IndexInfo(rows.get(i), rows.get(end - 1), 0, 0, null));
+                i = end;
+            }
+
+            File file = File.createTempFile("rowindex", ".db");
+            file.deleteOnExit();
+            try (DataOutputBuffer out = new DataOutputBuffer();
+                 java.io.FileOutputStream stream = new java.io.FileOutputStream(file))
+            {
+                // stand-ins for the serialized IndexInfos
+                out.write(new byte[random.nextInt(100)]);
+                RowIndexTrie.Builder builder = new RowIndexTrie.Builder(TYPES);
+                for (IndexInfo block : blocks)
+                    builder.add(block);
+                builder.write(out);
+                stream.write(out.getData(), 0, out.getLength());
+            }
+
+            try (FileHandle.Builder handleBuilder = new FileHandle.Builder(file.getPath());
+                 FileHandle handle = handleBuilder.complete();
+                 RandomAccessReader in = handle.createReader())
+            {
+                in.seek(in.length() - 4);
+                RowIndexTrie.Reader reader = new RowIndexTrie.Reader(in, in.readInt());
+                for (int i = 0; i < 1000; i++)
+                {
+                    ClusteringPrefix bound = randomPrefix(random, random.nextInt(3) == 0);
+                    byte[] key = ByteComparableClustering.encode(TYPES, bound);
+
+                    int forward = blocks.size();
+                    for (int j = blocks.size() - 1; j >= 0 && COMPARATOR.compare(blocks.get(j).lastName, bound) >= 0; j--)
+                        forward = j;
+                    int ceiling = reader.ceiling(key);
+                    assertEquals(forward, ceiling < 0 ? blocks.size() : ceiling);
+
+                    int reversed = -1;
+                    for (int j = 0; j < blocks.size() && COMPARATOR.compare(blocks.get(j).firstName, bound) <= 0; j++)
+                        reversed = j;
+                    assertEquals(reversed, reader.floor(key));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSlices() throws Throwable
+    {
+        int columnIndexSize = DatabaseDescriptor.getColumnIndexSize();
+        int columnIndexCacheSize = DatabaseDescriptor.getColumnIndexCacheSize();
+        // small blocks, and no entry cached on heap, so that all indexed partitions have a trie
+        DatabaseDescriptor.setColumnIndexSize(1);
+        DatabaseDescriptor.setColumnIndexCacheSize(0);
+        try
+        {
+            for (String order : new String[]{ "ASC", "DESC" })
+            {
+                createTable("CREATE TABLE %s (k int, c int, v text, PRIMARY KEY (k, c)) WITH CLUSTERING ORDER BY (c " + order + ")");
+                for (int c = 0; c < 3000; c += 3)
+                    execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", 0, c, "value" + c);
+                flush();
+
+                Random random = new Random(3);
+                for (int i = 0; i < 200; i++)
+                {
+                    int start = random.nextInt(3100) - 50;
+                    int end = start + random.nextInt(500);
+                    int expected = 0;
+                    for (int c = 0; c < 3000; c += 3)
+                    {
+                        if (c >= start && c < end)
+                            expected++;
+                    }
+                    assertEquals(expected, execute("SELECT c FROM %s WHERE k = 0 AND c >= ? AND c < ?", start, end).size());
+                    assertEquals(expected, execute("SELECT c FROM %s WHERE k = 0 AND c >= ? AND c < ? ORDER BY c DESC", start, end).size());
+                    int c = 3 * random.nextInt(1000);
+                    assertRows(execute("SELECT c FROM %s WHERE k = 0 AND c = ?", c), row(c));
+                }
+            }
+        }
+        finally
+        {
+            DatabaseDescriptor.setColumnIndexSize(columnIndexSize / 1024);
+            DatabaseDescriptor.setColumnIndexCacheSize(columnIndexCacheSize / 1024);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.compress.BufferType;
+
+import static org.junit.Assert.*;
+
+public class PrefetchingRebuffererTest
+{
+    private static final int CHUNK_SIZE = 4096;
+
+    @BeforeClass
+    public static void setupDD()
+    {
+        DatabaseDescriptor.daemonInitialization();
+    }
+
+    private static File writeFile(byte[] data) throws IOException
+    {
+        File file = File.createTempFile("prefetching", "test");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file))
+        {
+            out.write(data);
+        }
+        return file;
+    }
+
+    @Test
+    public void testSequentialAligned() throws IOException
+    {
+        testSequential(true);
+    }
+
+    @Test
+    public void testSequentialUnaligned() throws IOException
+    {
+        testSequential(false);
+    }
+
+    private void testSequential(boolean aligned) throws IOException
+    {
+        byte[] data = new byte[CHUNK_SIZE * 20 + 123];
+        new Random(1).nextBytes(data);
+        File file = writeFile(data);
+
+        AtomicInteger readAhead = new AtomicInteger();
+        try (ChannelProxy channel = new ChannelProxy(file))
+        {
+            SimpleChunkReader source = new SimpleChunkReader(channel, data.length, BufferType.OFF_HEAP, CHUNK_SIZE);
+            PrefetchingRebufferer rebufferer = new PrefetchingRebufferer(source, CHUNK_SIZE, aligned, position -> {
+                if (Thread.currentThread().getName().startsWith("SSTableReadAhead"))
+                    readAhead.incrementAndGet();
+                return PrefetchingRebufferer.readChunk(source, position);
+            });
+
+            try (RandomAccessReader reader = new RandomAccessReader(rebufferer))
+            {
+                byte[] read = new byte[data.length];
+                reader.readFully(read);
+                assertArrayEquals(data, read);
+                assertTrue(reader.isEOF());
+            }
+        }
+        assertTrue(readAhead.get() > 0);
+    }
+
+    @Test
+    public void testSeeks() throws IOException
+    {
+        byte[] data = new byte[CHUNK_SIZE * 16];
+        new Random(2).nextBytes(data);
+        File file = writeFile(data);
+
+        Random random = new Random(3);
+        try (ChannelProxy channel = new ChannelProxy(file))
+        {
+            SimpleChunkReader source = new SimpleChunkReader(channel, data.length, BufferType.OFF_HEAP, CHUNK_SIZE);
+            try (RandomAccessReader reader = new RandomAccessReader(PrefetchingRebufferer.of(source, true)))
+            {
+                for (int i = 0; i < 200; i++)
+                {
+                    // mostly short sequential runs, with jumps both ways in between
+                    int position = random.nextInt(data.length);
+                    int length = Math.min(data.length - position, random.nextInt(CHUNK_SIZE * 4));
+                    reader.seek(position);
+                    byte[] read = new byte[length];
+                    reader.readFully(read);
+                    for (int j = 0; j < length; j++)
+                        assertEquals(data[position + j], read[j]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForReadsInProgress() throws Exception
+    {
+        byte[] data = new byte[CHUNK_SIZE * 16];
+        new Random(4).nextBytes(data);
+        File file = writeFile(data);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        try (ChannelProxy channel = new ChannelProxy(file))
+        {
+            SimpleChunkReader source = new SimpleChunkReader(channel, data.length, BufferType.OFF_HEAP, CHUNK_SIZE);
+            PrefetchingRebufferer rebufferer = new PrefetchingRebufferer(source, CHUNK_SIZE, true, position -> {
+                if (!Thread.currentThread().getName().startsWith("SSTableReadAhead"))
+                    return PrefetchingRebufferer.readChunk(source, position);
+
+                running.incrementAndGet();
+                try
+                {
+                    started.countDown();
+                    release.await(1, TimeUnit.MINUTES);
+                    return PrefetchingRebufferer.readChunk(source, position);
+                }
+                catch (InterruptedException e)
+                {
+                    throw new AssertionError(e);
+                }
+                finally
+                {
+                    running.decrementAndGet();
+                }
+            });
+
+            // two sequential chunks start the read-ahead
+            rebufferer.rebuffer(0).release();
+            rebufferer.rebuffer(CHUNK_SIZE).release();
+            assertTrue(started.await(1, TimeUnit.MINUTES));
+
+            // as when a scanner is closed early, which lets its sstable be released
+            AtomicReference<Integer> runningOnClose = new AtomicReference<>();
+            Thread closer = new Thread(() -> {
+                rebufferer.closeReader();
+                runningOnClose.set(running.get());
+            });
+            closer.start();
+            closer.join(100);
+            assertTrue(closer.isAlive());
+
+            release.countDown();
+            closer.join(TimeUnit.MINUTES.toMillis(1));
+            assertFalse(closer.isAlive());
+            assertEquals(0, (int) runningOnClose.get());
+        }
+    }
+}
@@ -186,7 +186,8 @@ public class ChannelWriterTest
         {
             public void flush(ChannelHandlerContext ctx) throws Exception
             {
-                cw.onTriggeredFlush(ctx);
+                if (cw.onTriggeredFlush(ctx))
+                    ctx.flush();
             }
         });
         omc.setChannelWriter(cw);
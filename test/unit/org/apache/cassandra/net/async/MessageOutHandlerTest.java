@@ -114,6 +114,42 @@ public class MessageOutHandlerTest
         Assert.assertTrue(channel.releaseOutbound());
     }
 
+    @Test
+    public void write_Batched()
+    {
+        // as if all the messages were queued on the event loop before it processes the first one
+        channelWriter.pendingMessageCount.set(3);
+        ChannelFuture future1 = channel.write(new QueuedMessage(new MessageOut(MessagingService.Verb.ECHO), 1));
+        ChannelFuture future2 = channel.write(new QueuedMessage(new MessageOut(MessagingService.Verb.ECHO), 2));
+        Assert.assertFalse(future1.isDone());
+        Assert.assertTrue(channel.outboundMessages().isEmpty());
+
+        // the last one flushes the batch the three of them were serialized into
+        ChannelFuture future3 = channel.write(new QueuedMessage(new MessageOut(MessagingService.Verb.ECHO), 3));
+        Assert.assertTrue(future1.isSuccess());
+        Assert.assertTrue(future2.isSuccess());
+        Assert.assertTrue(future3.isSuccess());
+        Assert.assertEquals(1, channel.outboundMessages().size());
+        Assert.assertTrue(channel.releaseOutbound());
+    }
+
+    @Test
+    public void write_NotBatched() throws Exception
+    {
+        OutboundConnectionIdentifier connectionId = OutboundConnectionIdentifier.small(InetAddressAndPort.getByNameOverrideDefaults("127.0.0.1", 0),
+                                                                                       InetAddressAndPort.getByNameOverrideDefaults("127.0.0.2", 0));
+        channel = new EmbeddedChannel();
+        channelWriter = ChannelWriter.create(channel, r -> {}, Optional.empty());
+        channel.pipeline().addLast(new MessageOutHandler(connectionId, MESSAGING_VERSION, channelWriter, () -> null, MessageOutHandler.AUTO_FLUSH_THRESHOLD, 0));
+
+        channelWriter.pendingMessageCount.set(2);
+        channel.write(new QueuedMessage(new MessageOut(MessagingService.Verb.ECHO), 1));
+        ChannelFuture future = channel.write(new QueuedMessage(new MessageOut(MessagingService.Verb.ECHO), 2));
+        Assert.assertTrue(future.isSuccess());
+        Assert.assertEquals(2, channel.outboundMessages().size());
+        Assert.assertTrue(channel.releaseOutbound());
+    }
+
     @Test
     public void wrongMessageType()
     {
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.schema;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.QueryProcessor;
+import org.apache.cassandra.exceptions.ConfigurationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ErasureCodingParamsTest extends CQLTester
+{
+    private static void assertInvalid(ErasureCodingParams params)
+    {
+        try
+        {
+            params.validate();
+            fail("Expected " + params + " to be rejected");
+        }
+        catch (ConfigurationException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testValidate()
+    {
+        ErasureCodingParams.NONE.validate();
+        ErasureCodingParams.create(3, 2, 3).validate();
+        ErasureCodingParams.create(1, 0, 1).validate();
+
+        assertInvalid(ErasureCodingParams.create(0, 2, 3));
+        assertInvalid(ErasureCodingParams.create(-1, 2, 3));
+        assertInvalid(ErasureCodingParams.create(3, -1, 3));
+        assertInvalid(ErasureCodingParams.create(3, 2, 0));
+        assertInvalid(ErasureCodingParams.create(200, 57, 3));
+        assertInvalid(ErasureCodingParams.create(3, 2, 3, 2));
+        assertInvalid(ErasureCodingParams.create(3, 2, 3, 6));
+    }
+
+    @Test
+    public void testFromMap()
+    {
+        assertEquals(ErasureCodingParams.NONE, ErasureCodingParams.fromMap(ImmutableMap.of()));
+
+        ErasureCodingParams params = ErasureCodingParams.fromMap(ImmutableMap.of("data_shards", "3", "parity_shards", "2"));
+        assertTrue(params.isEnabled());
+        assertEquals(ErasureCodingParams.DEFAULT_CONCURRENCY, params.concurrency());
+        assertEquals(3, params.intersect());
+        assertEquals(params, ErasureCodingParams.fromMap(params.asMap()));
+
+        // zero data shards reads as disabled, but is rejected rather than silently leaving the table uncoded
+        assertFalse(ErasureCodingParams.fromMap(ImmutableMap.of("data_shards", "0", "parity_shards", "2")).isEnabled());
+        assertInvalid(ErasureCodingParams.fromMap(ImmutableMap.of("data_shards", "0", "parity_shards", "2")));
+
+        try
+        {
+            ErasureCodingParams.fromMap(ImmutableMap.of("data_shards", "3"));
+            fail("Expected the missing parity_shards to be rejected");
+        }
+        catch (ConfigurationException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReplicationFactor() throws Throwable
+    {
+        String keyspace = createKeyspace("CREATE KEYSPACE %s WITH replication = { 'class' : 'SimpleStrategy', 'replication_factor' : 5 }");
+        try
+        {
+            QueryProcessor.executeOnceInternal(String.format("CREATE TABLE %s.mismatch (k int PRIMARY KEY, v text) " +
+                                                             "WITH erasure_coding = {'data_shards': 3, 'parity_shards': 1}", keyspace));
+            fail("Expected 4 shards to be rejected with 5 replicas");
+        }
+        catch (ConfigurationException e)
+        {
+            // expected
+        }
+
+        QueryProcessor.executeOnceInternal(String.format("CREATE TABLE %s.coded (k int PRIMARY KEY, v text) " +
+                                                         "WITH erasure_coding = {'data_shards': 3, 'parity_shards': 2}", keyspace));
+
+        // nor can the keyspace replication factor change under it
+        try
+        {
+            QueryProcessor.executeOnceInternal(String.format("ALTER KEYSPACE %s WITH replication = { 'class' : 'SimpleStrategy', 'replication_factor' : 3 }", keyspace));
+            fail("Expected the replication factor change to be rejected");
+        }
+        catch (ConfigurationException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGeometryCannotChange() throws Throwable
+    {
+        String keyspace = createKeyspace("CREATE KEYSPACE %s WITH replication = { 'class' : 'SimpleStrategy', 'replication_factor' : 5 }");
+        QueryProcessor.executeOnceInternal(String.format("CREATE TABLE %s.coded (k int PRIMARY KEY, v text) " +
+                                                         "WITH erasure_coding = {'data_shards': 3, 'parity_shards': 2}", keyspace));
+
+        for (String options : new String[]{ "{'data_shards': 4, 'parity_shards': 1}", "{}" })
+        {
+            try
+            {
+                QueryProcessor.executeOnceInternal(String.format("ALTER TABLE %s.coded WITH erasure_coding = %s", keyspace, options));
+                fail("Expected the erasure coding change to " + options + " to be rejected");
+            }
+            catch (ConfigurationException e)
+            {
+                // expected
+            }
+        }
+
+        // the options that do not change how values are coded can
+        QueryProcessor.executeOnceInternal(String.format("ALTER TABLE %s.coded WITH erasure_coding = " +
+                                                         "{'data_shards': 3, 'parity_shards': 2, 'concurrency': 5, 'intersect': 4}", keyspace));
+        ErasureCodingParams params = Schema.instance.getTableMetadata(keyspace, "coded").params.erasureCoding;
+        assertEquals(5, params.concurrency());
+        assertEquals(4, params.intersect());
+
+        // a table that is not erasure coded cannot become one either
+        QueryProcessor.executeOnceInternal(String.format("CREATE TABLE %s.plain (k int PRIMARY KEY, v text)", keyspace));
+        try
+        {
+            QueryProcessor.executeOnceInternal(String.format("ALTER TABLE %s.plain WITH erasure_coding = {'data_shards': 3, 'parity_shards': 2}", keyspace));
+            fail("Expected erasure coding to be rejected on an existing table");
+        }
+        catch (ConfigurationException e)
+        {
+            // expected
+        }
+    }
+}
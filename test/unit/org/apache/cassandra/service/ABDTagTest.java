@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.HybridLogicalClock;
+import org.apache.cassandra.utils.SystemTimeSource;
+
+public class ABDTagTest
+{
+    // Java serialized tags of counter 5 by /10.0.0.1:7000 and counter 7 by /10.0.0.2:7000, as written by the
+    // first version of ABDTag
+    private static final ByteBuffer COUNTER_5 = ByteBufferUtil.hexToBytes("aced0005737200236f72672e6170616368652e63617373616e6472612e736572766963652e4142445461671f0009a746e8b2ec02000249000b6c6f676963616c54496d654c000877726974657249647400124c6a6176612f6c616e672f537472696e673b78700000000574000e2f31302e302e302e313a37303030");
+    private static final ByteBuffer COUNTER_7 = ByteBufferUtil.hexToBytes("aced0005737200236f72672e6170616368652e63617373616e6472612e736572766963652e4142445461671f0009a746e8b2ec02000249000b6c6f676963616c54496d654c000877726974657249647400124c6a6176612f6c616e672f537472696e673b78700000000774000e2f31302e302e302e323a37303030");
+    // Java serialized tag holding the clock tag 123456789012345
+    private static final ByteBuffer CLOCK_TAG = ByteBufferUtil.hexToBytes("aced0005737200236f72672e6170616368652e63617373616e6472612e736572766963652e41424454616799e7c1ed0bc0f1810200014a000474696d65787000007048860ddf79");
+
+    @BeforeClass
+    public static void setUp()
+    {
+        // nextTag() uses the clock of this node, whose id otherwise comes from the configured broadcast address
+        System.setProperty(HybridLogicalClock.NODE_ID_PROPERTY, "3");
+    }
+
+    @Test
+    public void testRoundTrip()
+    {
+        HybridLogicalClock clock = new HybridLogicalClock(3, new SystemTimeSource());
+        ABDTag tag = new ABDTag(clock.next());
+        ByteBuffer serialized = ABDTag.serialize(tag);
+
+        Assert.assertEquals(ABDTag.SERIALIZED_SIZE, serialized.remaining());
+        Assert.assertEquals(tag.getTime(), ABDTag.deserialize(serialized).getTime());
+        Assert.assertEquals(0, serialized.position());
+    }
+
+    @Test
+    public void testCompare()
+    {
+        HybridLogicalClock clock = new HybridLogicalClock(3, new SystemTimeSource());
+        ByteBuffer older = ABDTag.serialize(new ABDTag(clock.next()));
+        ByteBuffer newer = ABDTag.serialize(new ABDTag(clock.next()));
+
+        Assert.assertTrue(ABDTag.compare(newer, older) > 0);
+        Assert.assertTrue(ABDTag.compare(older, newer) < 0);
+        Assert.assertEquals(0, ABDTag.compare(older, older.duplicate()));
+
+        // cell values are usually slices of a larger buffer
+        ByteBuffer slice = ByteBuffer.allocate(100);
+        slice.position(40);
+        slice.put(newer.duplicate());
+        slice.position(40).limit(40 + ABDTag.SERIALIZED_SIZE);
+        Assert.assertEquals(0, ABDTag.compare(slice.slice(), newer));
+        Assert.assertEquals(0, ABDTag.compare(slice, newer));
+    }
+
+    @Test
+    public void testLegacyTags()
+    {
+        Assert.assertEquals(123456789012345L, ABDTag.time(CLOCK_TAG));
+        Assert.assertEquals(0, CLOCK_TAG.position());
+
+        // counter tags keep their order, and order before any clock tag
+        ByteBuffer clockTag = ABDTag.serialize(new ABDTag(new HybridLogicalClock(3, new SystemTimeSource()).next()));
+        Assert.assertTrue(ABDTag.compare(COUNTER_7, COUNTER_5) > 0);
+        Assert.assertTrue(ABDTag.compare(clockTag, COUNTER_7) > 0);
+        Assert.assertTrue(ABDTag.compare(COUNTER_5, clockTag) < 0);
+
+        // the next tag of a legacy tag is a clock tag
+        Assert.assertTrue(ABDTag.deserialize(COUNTER_7).nextTag().isLarger(ABDTag.deserialize(COUNTER_7)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTag()
+    {
+        ABDTag.time(ByteBufferUtil.bytes("not a tag"));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service.reads;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.cache.ChunkCache;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.ReadResponse;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.metrics.InlineReadMetrics;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * Runs local reads through {@link AbstractReadExecutor}, which decides whether they can run on the coordinating
+ * thread, and else, or if they need a chunk that is not cached, hands them to the read stage.
+ */
+public class InlineLocalReadTest extends CQLTester
+{
+    private static Config.DiskAccessMode diskAccessMode;
+    private static Config.DiskAccessMode indexAccessMode;
+
+    @BeforeClass
+    public static void setUpAccessModes()
+    {
+        // inlining needs every chunk read to go through the chunk cache
+        diskAccessMode = DatabaseDescriptor.getDiskAccessMode();
+        indexAccessMode = DatabaseDescriptor.getIndexAccessMode();
+        DatabaseDescriptor.setDiskAccessMode(Config.DiskAccessMode.standard);
+        DatabaseDescriptor.setIndexAccessMode(Config.DiskAccessMode.standard);
+    }
+
+    @AfterClass
+    public static void resetAccessModes()
+    {
+        DatabaseDescriptor.setDiskAccessMode(diskAccessMode);
+        DatabaseDescriptor.setIndexAccessMode(indexAccessMode);
+        DatabaseDescriptor.setInlineCachedLocalReads(false);
+    }
+
+    @Before
+    public void enableInlining()
+    {
+        Assume.assumeTrue(ChunkCache.instance != null);
+        ChunkCache.instance.enable(true);
+        DatabaseDescriptor.setInlineCachedLocalReads(true);
+    }
+
+    private void read(ColumnFamilyStore cfs, int k, ConsistencyLevel consistency)
+    {
+        SinglePartitionReadCommand command = SinglePartitionReadCommand.fullPartitionRead(cfs.metadata(),
+                                                                                         FBUtilities.nowInSeconds(),
+                                                                                         cfs.decorateKey(ByteBufferUtil.bytes(k)));
+        AbstractReadExecutor executor = AbstractReadExecutor.getReadExecutor(command, consistency, System.nanoTime());
+        executor.executeAsync();
+        executor.awaitResponses();
+
+        ReadResponse response = executor.getResult();
+        try (UnfilteredPartitionIterator partitions = response.makeIterator(command))
+        {
+            Assert.assertTrue(partitions.hasNext());
+            try (UnfilteredRowIterator partition = partitions.next())
+            {
+                Assert.assertTrue(partition.hasNext());
+            }
+        }
+    }
+
+    private static void assertInlineReads(long attempts, long hits, long previousAttempts, long previousHits)
+    {
+        Assert.assertEquals(attempts, InlineReadMetrics.attempts.getCount() - previousAttempts);
+        Assert.assertEquals(hits, InlineReadMetrics.hits.getCount() - previousHits);
+    }
+
+    @Test
+    public void testInlineRead() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v text)");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        for (int i = 0; i < 10; i++)
+            execute("INSERT INTO %s (k, v) VALUES (?, ?)", i, "value" + i);
+
+        long attempts = InlineReadMetrics.attempts.getCount();
+        long hits = InlineReadMetrics.hits.getCount();
+
+        // memtables never need the disk
+        read(cfs, 1, ConsistencyLevel.ONE);
+        assertInlineReads(1, 1, attempts, hits);
+
+        cfs.forceBlockingFlush();
+
+        // the chunks are not cached yet, so the read falls back to the read stage, which caches them
+        read(cfs, 1, ConsistencyLevel.LOCAL_ONE);
+        assertInlineReads(2, 1, attempts, hits);
+        Assert.assertTrue(ChunkCache.instance.size() > 0);
+
+        read(cfs, 1, ConsistencyLevel.ONE);
+        assertInlineReads(3, 2, attempts, hits);
+    }
+
+    @Test
+    public void testNotInlined() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v text)");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+        execute("INSERT INTO %s (k, v) VALUES (?, ?)", 1, "value1");
+
+        long attempts = InlineReadMetrics.attempts.getCount();
+        long hits = InlineReadMetrics.hits.getCount();
+
+        // the read may wait for other replicas
+        read(cfs, 1, ConsistencyLevel.QUORUM);
+        assertInlineReads(0, 0, attempts, hits);
+
+        DatabaseDescriptor.setInlineCachedLocalReads(false);
+        read(cfs, 1, ConsistencyLevel.ONE);
+        assertInlineReads(0, 0, attempts, hits);
+
+        // not every chunk goes through the cache
+        DatabaseDescriptor.setInlineCachedLocalReads(true);
+        DatabaseDescriptor.setDiskAccessMode(Config.DiskAccessMode.mmap);
+        try
+        {
+            read(cfs, 1, ConsistencyLevel.ONE);
+            assertInlineReads(0, 0, attempts, hits);
+        }
+        finally
+        {
+            DatabaseDescriptor.setDiskAccessMode(Config.DiskAccessMode.standard);
+        }
+    }
+}
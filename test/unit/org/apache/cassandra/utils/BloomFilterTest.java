@@ -55,7 +55,7 @@ public class BloomFilterTest
         }
         else
         {
-            BloomFilterSerializer.serialize((BloomFilter) f, out);
+            BloomFilterSerializer.serialize(f, out);
         }
 
         ByteArrayInputStream in = new ByteArrayInputStream(out.getData(), 0, out.getLength());
@@ -140,6 +140,41 @@ public class BloomFilterTest
         BloomFilterTest.testSerialize(bfInvHashes, false).close();
     }
 
+    @Test
+    public void testSplitBlockFalsePositives()
+    {
+        double fpChance = 0.01;
+        try (IFilter filter = FilterFactory.getFilter(FilterTestHelper.ELEMENTS, fpChance, true))
+        {
+            ResetableIterator<ByteBuffer> keys = FilterTestHelper.randomKeys();
+            while (keys.hasNext())
+                filter.add(FilterTestHelper.wrap(keys.next()));
+            keys.reset();
+            while (keys.hasNext())
+                Assert.assertTrue(filter.isPresent(FilterTestHelper.wrap(keys.next())));
+
+            int falsePositives = 0;
+            ResetableIterator<ByteBuffer> otherKeys = FilterTestHelper.randomKeys2();
+            while (otherKeys.hasNext())
+            {
+                if (filter.isPresent(FilterTestHelper.wrap(otherKeys.next())))
+                    falsePositives++;
+            }
+            Assert.assertTrue("falsePositives=" + falsePositives, falsePositives < FilterTestHelper.ELEMENTS * fpChance * 1.5);
+        }
+    }
+
+    @Test
+    public void testSplitBlockSerialize() throws IOException
+    {
+        try (IFilter filter = FilterFactory.getFilter(10000L, FilterTestHelper.MAX_FAILURE_RATE, true);
+             IFilter filter2 = BloomFilterTest.testSerialize(filter, false))
+        {
+            Assert.assertTrue(filter2 instanceof SplitBlockBloomFilter);
+            Assert.assertEquals(filter.serializedSize(), filter2.serializedSize());
+        }
+    }
+
     @Test
     @Ignore
     public void testManyRandom()
@@ -216,7 +251,7 @@ public class BloomFilterTest
         filter.close();
 
         DataInputStream in = new DataInputStream(new FileInputStream(file));
-        BloomFilter filter2 = BloomFilterSerializer.deserialize(in, false);
+        IFilter filter2 = BloomFilterSerializer.deserialize(in, false);
         Assert.assertTrue(filter2.isPresent(FilterTestHelper.wrap(test)));
         FileUtils.closeQuietly(in);
         filter2.close();
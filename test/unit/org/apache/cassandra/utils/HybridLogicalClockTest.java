@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.cassandra.locator.InetAddressAndPort;
+
+public class HybridLogicalClockTest
+{
+    @Test
+    public void testLayout()
+    {
+        TestTimeSource time = new TestTimeSource();
+        HybridLogicalClock clock = new HybridLogicalClock(42, time);
+
+        long tag = clock.next();
+        Assert.assertTrue(tag > 0);
+        Assert.assertEquals(time.currentTimeMillis(), HybridLogicalClock.physicalMillis(tag));
+        Assert.assertEquals(0, HybridLogicalClock.logical(tag));
+        Assert.assertEquals(42, HybridLogicalClock.nodeId(tag));
+
+        long second = clock.next();
+        Assert.assertEquals(time.currentTimeMillis(), HybridLogicalClock.physicalMillis(second));
+        Assert.assertEquals(1, HybridLogicalClock.logical(second));
+    }
+
+    @Test
+    public void testMonotonicWithinMillisecond()
+    {
+        TestTimeSource time = new TestTimeSource();
+        HybridLogicalClock clock = new HybridLogicalClock(1, time);
+
+        // enough tags to overflow the logical counter into the milliseconds
+        long previous = clock.next();
+        for (int i = 0; i < 1000; i++)
+        {
+            long tag = clock.next();
+            Assert.assertTrue(tag > previous);
+            previous = tag;
+        }
+        Assert.assertTrue(HybridLogicalClock.physicalMillis(previous) > time.currentTimeMillis());
+
+        // the wall clock catches up with the logical time
+        time.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+        long tag = clock.next();
+        Assert.assertEquals(time.currentTimeMillis(), HybridLogicalClock.physicalMillis(tag));
+        Assert.assertEquals(0, HybridLogicalClock.logical(tag));
+    }
+
+    @Test
+    public void testObservedTags()
+    {
+        TestTimeSource time = new TestTimeSource();
+        HybridLogicalClock ahead = new HybridLogicalClock(2, time);
+        HybridLogicalClock behind = new HybridLogicalClock(1, new TestTimeSource());
+        time.sleepUninterruptibly(1, TimeUnit.MINUTES);
+
+        long observed = ahead.next();
+        Assert.assertTrue(behind.next() < observed);
+        Assert.assertTrue(behind.next(observed) > observed);
+        Assert.assertTrue(behind.next() > observed);
+
+        // observing an older tag changes nothing
+        long last = behind.next();
+        behind.update(0);
+        Assert.assertTrue(behind.next() > last);
+    }
+
+    @Test
+    public void testConcurrentTagsAreUnique() throws InterruptedException, ExecutionException
+    {
+        HybridLogicalClock clock = new HybridLogicalClock(7, new TestTimeSource());
+        Set<Long> tags = ConcurrentHashMap.newKeySet();
+        int threads = 8;
+        int perThread = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++)
+        {
+            futures.add(executor.submit(() -> {
+                long previous = -1;
+                for (int i = 0; i < perThread; i++)
+                {
+                    long tag = clock.next();
+                    Assert.assertTrue(tag > previous);
+                    tags.add(tag);
+                    previous = tag;
+                }
+            }));
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        // rethrows the assertion errors of the threads, which would otherwise be lost in their futures
+        for (Future<?> future : futures)
+            future.get();
+        Assert.assertEquals(threads * perThread, tags.size());
+    }
+
+    @Test
+    public void testNodeIdOfAddress() throws Exception
+    {
+        Assert.assertEquals(0x203, HybridLogicalClock.nodeIdOf(InetAddress.getByName("10.0.2.3")));
+        Assert.assertEquals(0xFFF, HybridLogicalClock.nodeIdOf(InetAddress.getByName("10.0.255.255")));
+        int id = HybridLogicalClock.nodeIdOf(InetAddress.getByName("::1"));
+        Assert.assertTrue(id >= 0 && id <= HybridLogicalClock.NODE_ID_MASK);
+    }
+
+    @Test
+    public void testDuplicateNodeIds() throws Exception
+    {
+        HybridLogicalClock clock = new HybridLogicalClock(7, new TestTimeSource());
+        InetAddressAndPort peer = InetAddressAndPort.getByName("127.0.0.2");
+        InetAddressAndPort other = InetAddressAndPort.getByName("127.0.0.3");
+
+        clock.onPeerNodeId(other, 8);
+        Assert.assertFalse(clock.hasDuplicateNodeId());
+
+        clock.onPeerNodeId(peer, 7);
+        clock.onPeerNodeId(peer, 7);
+        Assert.assertTrue(clock.hasDuplicateNodeId());
+
+        // the peer was restarted with another id
+        clock.onPeerNodeId(peer, 9);
+        Assert.assertFalse(clock.hasDuplicateNodeId());
+
+        clock.onPeerNodeId(other, 7);
+        Assert.assertTrue(clock.hasDuplicateNodeId());
+        clock.onPeerRemoved(other);
+        Assert.assertFalse(clock.hasDuplicateNodeId());
+    }
+}
@@ -59,11 +59,14 @@ public class StressMetrics implements MeasurementSink
     private final Uncertainty rowRateUncertainty = new Uncertainty();
     private final CountDownLatch stopped = new CountDownLatch(1);
     private final Callable<JmxCollector.GcStats> gcStatsCollector;
+    private final JmxCollector jmxCollector;
     private final HistogramLogWriter histogramWriter;
     private final long epochNs = System.nanoTime();
     private final long epochMs = System.currentTimeMillis();
 
     private volatile JmxCollector.GcStats totalGcStats = new GcStats(0);
+    private volatile JmxCollector.ClusterBytes startBytes;
+    private volatile JmxCollector.ClusterBytes endBytes;
 
     private volatile boolean stop = false;
     private volatile boolean cancelled = false;
@@ -102,10 +105,12 @@ public class StressMetrics implements MeasurementSink
             histogramWriter = null;
         }
         Callable<JmxCollector.GcStats> gcStatsCollector;
+        JmxCollector jmxCollector = null;
         totalGcStats = new JmxCollector.GcStats(0);
         try
         {
-            gcStatsCollector = new JmxCollector(settings.node.resolveAllPermitted(settings), settings.port.jmxPort);
+            jmxCollector = new JmxCollector(settings.node.resolveAllPermitted(settings), settings.port.jmxPort);
+            gcStatsCollector = jmxCollector;
         }
         catch (Throwable t)
         {
@@ -117,6 +122,7 @@ public class StressMetrics implements MeasurementSink
             gcStatsCollector = () -> totalGcStats;
         }
         this.gcStatsCollector = gcStatsCollector;
+        this.jmxCollector = jmxCollector;
         this.totalCurrentInterval = new TimingInterval(settings.rate.isFixed);
         this.totalSummaryInterval = new TimingInterval(settings.rate.isFixed);
         printHeader("", output);
@@ -127,6 +133,7 @@ public class StressMetrics implements MeasurementSink
     }
     public void start()
     {
+        startBytes = collectBytes();
         thread.start();
     }
 
@@ -148,6 +155,22 @@ public class StressMetrics implements MeasurementSink
         stop = true;
         thread.interrupt();
         stopped.await();
+        endBytes = collectBytes();
+    }
+
+    private JmxCollector.ClusterBytes collectBytes()
+    {
+        if (jmxCollector == null)
+            return null;
+
+        try
+        {
+            return jmxCollector.bytes();
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
     }
 
 
@@ -399,6 +422,15 @@ public class StressMetrics implements MeasurementSink
         output.println(String.format("Total GC time             : %,6.1f seconds", totalGcStats.summs / 1000));
         output.println(String.format("Avg GC time               : %,6.1f ms", totalGcStats.summs / totalGcStats.count));
         output.println(String.format("StdDev GC time            : %,6.1f ms", totalGcStats.sdvms));
+        if (startBytes != null && endBytes != null)
+        {
+            // live SSTables only: flush the tables before the end of the run to include the memtables
+            output.println(String.format("Total bytes on disk       : %s (%s written)",
+                                         FBUtilities.prettyPrintMemory(endBytes.onDisk, true),
+                                         FBUtilities.prettyPrintMemory(endBytes.onDisk - startBytes.onDisk, true)));
+            output.println(String.format("Total bytes on the wire   : %s",
+                                         FBUtilities.prettyPrintMemory(endBytes.onWire - startBytes.onWire, true)));
+        }
         output.println("Total operation time      : " + DurationFormatUtils.formatDuration(
                 history.runTimeMs(), "HH:mm:ss", true));
         output.println(""); // Newline is important here to separate the aggregates section from the END or the next stress iteration
@@ -73,6 +73,20 @@ public class JmxCollector implements Callable<JmxCollector.GcStats>
         }
     }
 
+    /**
+     * The bytes stored by the nodes, in their live SSTables, and the bytes of the internode messages they sent.
+     */
+    public static class ClusterBytes
+    {
+        public final long onDisk;
+        public final long onWire;
+        public ClusterBytes(long onDisk, long onWire)
+        {
+            this.onDisk = onDisk;
+            this.onWire = onWire;
+        }
+    }
+
     final NodeProbe[] probes;
 
     // TODO: should expand to whole cluster
@@ -121,5 +135,16 @@ public class JmxCollector implements Callable<JmxCollector.GcStats>
         return GcStats.aggregate(results);
     }
 
+    public ClusterBytes bytes()
+    {
+        long onDisk = 0, onWire = 0;
+        for (NodeProbe probe : probes)
+        {
+            onDisk += probe.getStorageMetric("Load");
+            onWire += probe.getInternodeBytesSent();
+        }
+        return new ClusterBytes(onDisk, onWire);
+    }
+
     private static final ExecutorService TPE = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new NamedThreadFactory("JmxCollector"));
 }